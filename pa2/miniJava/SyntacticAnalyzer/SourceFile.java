@@ -14,42 +14,63 @@
 
 package miniJava.SyntacticAnalyzer;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Serves the characters of a source file to the scanner from memory. The whole
+ * file is read in one go (or memory-mapped when it is larger than
+ * MAP_THRESHOLD bytes) instead of issuing one read per character.
+ */
 public class SourceFile {
 
 	static final char eol = '\n';
 	static final char eot = '\u0000';
 
+	// files at least this big are mapped rather than copied onto the heap
+	static final long MAP_THRESHOLD = 1 << 20;
+
 	java.io.File sourceFile;
-	java.io.FileInputStream source;
+	ByteBuffer source;
+	int offset; // index of the next character to be returned
 	int currentLine;
 
 	public SourceFile(String filename) {
 		try {
 			sourceFile = new java.io.File(filename);
-			source = new java.io.FileInputStream(sourceFile);
+			source = load(sourceFile);
 			currentLine = 1;
 		} catch (java.io.IOException s) {
 			sourceFile = null;
-			source = null;
+			source = ByteBuffer.allocate(0);
 			currentLine = 0;
 		}
 	}
 
-	char getSource() {
+	private static ByteBuffer load(java.io.File file) throws java.io.IOException {
+		java.io.FileInputStream in = new java.io.FileInputStream(file);
 		try {
-			int c = source.read();
-
-			if (c == -1) {
-				c = eot;
-			} else if (c == eol) {
-				currentLine++;
-			}
-			return (char) c;
-		} catch (java.io.IOException s) {
-			return eot;
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size >= MAP_THRESHOLD)
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			return ByteBuffer.wrap(java.nio.file.Files.readAllBytes(file.toPath()));
+		} finally {
+			in.close();
 		}
 	}
 
+	char getSource() {
+		if (offset >= source.limit())
+			return eot;
+
+		char c = (char) (source.get(offset++) & 0xff);
+		if (c == eol)
+			currentLine++;
+		return c;
+	}
+
 	int getCurrentLine() {
 		return currentLine;
 	}
@@ -0,0 +1,94 @@
+package miniJava.Benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks bounds check elimination against native code that keeps every
+ * check: each program under bounds/ is compiled with --optimize --native
+ * twice, with --check-bounds and without, and both executables are run. An
+ * access wrongly proven in bounds reads or writes past its array without
+ * the index error, so the two differ in output or exit status.
+ *
+ *   java -cp benchmarks.jar miniJava.Benchmarks.BoundsRegression [name ...]
+ *
+ * Runs the programs named, or all of them, and exits with status 1 if any
+ * differ. Needs x86-64 Linux to run the executables.
+ */
+public class BoundsRegression {
+
+	static final String[] PROGRAMS = { "descending", "offbyone" };
+
+	// what an executable wrote and how it ended
+	static class Run {
+		byte[] output;
+		int status;
+
+		boolean sameAs(Run other) {
+			return status == other.status && Arrays.equals(output, other.output);
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String[] names = args.length > 0 ? args : PROGRAMS;
+		File dir = Files.createTempDirectory("bounds").toFile();
+		boolean ok = true;
+		for (String name : names) {
+			File source = new File(dir, name + ".java");
+			Files.write(source.toPath(), resource(name + ".java"));
+			Run checked = run(compile(source, true));
+			Run optimized = run(compile(source, false));
+			boolean same = checked.sameAs(optimized);
+			System.out.printf("%-12s %s (exit %d with --check-bounds, %d without)%n", name, same ? "ok" : "DIFFERS",
+					checked.status, optimized.status);
+			ok &= same;
+		}
+		System.exit(ok ? 0 : 1);
+	}
+
+	// the executable of source, compiled in a JVM of its own
+	static File compile(File source, boolean checkBounds) throws IOException, InterruptedException {
+		File executable = new File(source.getParentFile(), source.getName() + (checkBounds ? ".checked" : ".bin"));
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "miniJava.Compiler", "--optimize"));
+		if (checkBounds)
+			command.add("--check-bounds");
+		command.addAll(Arrays.asList("--native", executable.getPath(), source.getPath()));
+		Process compiler = new ProcessBuilder(command).redirectErrorStream(true).start();
+		byte[] messages = readAll(compiler.getInputStream());
+		if (compiler.waitFor() != 0 || !executable.canExecute())
+			throw new IOException("cannot compile " + source + ":\n" + new String(messages));
+		return executable;
+	}
+
+	static Run run(File executable) throws IOException, InterruptedException {
+		Process process = new ProcessBuilder(executable.getPath()).redirectErrorStream(true).start();
+		Run run = new Run();
+		run.output = readAll(process.getInputStream());
+		run.status = process.waitFor();
+		return run;
+	}
+
+	private static byte[] resource(String name) throws IOException {
+		try (InputStream in = BoundsRegression.class.getResourceAsStream("/bounds/" + name)) {
+			if (in == null)
+				throw new IOException("bounds/" + name + " is missing");
+			return readAll(in);
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int n; (n = in.read(buffer)) > 0;)
+			bytes.write(buffer, 0, n);
+		return bytes.toByteArray();
+	}
+}
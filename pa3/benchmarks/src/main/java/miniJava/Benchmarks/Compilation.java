@@ -0,0 +1,46 @@
+package miniJava.Benchmarks;
+
+import miniJava.ErrorReporter;
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.ContextualAnalyzer.Identification;
+import miniJava.ContextualAnalyzer.StdEnvGenerator;
+import miniJava.ContextualAnalyzer.TypeChecking;
+import miniJava.SyntacticAnalyzer.*;
+
+// the phases of Compiler.compileProgram over a program held in memory, to be
+// run (and measured) one at a time
+class Compilation {
+	final byte[] text;
+	final SymbolInterner symbols = new SymbolInterner();
+	final ErrorReporter reporter = new ErrorReporter();
+	AST ast;
+	boolean userDefinedString;
+
+	Compilation(byte[] text) {
+		this.text = text;
+	}
+
+	// scanning on its own, as parse does it on the way; returns the token count
+	int scan() {
+		Scanner scanner = new Scanner(new SourceFile(text), symbols, reporter);
+		int tokens = 1;
+		while (scanner.scan().kind != Token.EOT)
+			tokens++;
+		return tokens;
+	}
+
+	void parse() {
+		ast = new Parser(new Scanner(new SourceFile(text), symbols, reporter), reporter).parse();
+	}
+
+	void identify() {
+		Identification idcheck = new Identification(ast, reporter);
+		StdEnvGenerator.genEnv(idcheck.idt, symbols);
+		ast = idcheck.check();
+		userDefinedString = idcheck.userDefinedString;
+	}
+
+	void typeCheck() {
+		new TypeChecking(ast, reporter, userDefinedString).check();
+	}
+}
@@ -0,0 +1,58 @@
+package miniJava.Benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The programs the phase benchmarks compile. small and medium are kept as
+ * resources under corpus/; huge is medium with its library section repeated
+ * HUGE_COPIES times under fresh class names (every library class name ends in
+ * 0, which each copy replaces by its number). arithmetic and arrays, also
+ * resources, are the programs the execution benchmarks run.
+ */
+public final class Corpus {
+
+	private Corpus() {
+	}
+
+	static final int HUGE_COPIES = 100;
+
+	public static byte[] program(String size) throws IOException {
+		switch (size) {
+		case "small":
+			return resource("small.java");
+		case "medium":
+			return resource("medium.java");
+		case "huge":
+			return huge(new String(resource("medium.java"), StandardCharsets.ISO_8859_1), HUGE_COPIES);
+		case "arithmetic":
+			return resource("arithmetic.java");
+		case "arrays":
+			return resource("arrays.java");
+		default:
+			throw new IllegalArgumentException("no " + size + " program in the corpus");
+		}
+	}
+
+	private static byte[] huge(String medium, int copies) {
+		String library = medium.substring(medium.indexOf("\n// library") + 1);
+		StringBuilder text = new StringBuilder(medium);
+		for (int i = 1; i < copies; i++)
+			text.append(library.replaceAll("\\b([A-Z][A-Za-z]*)0\\b", "$1" + i));
+		return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private static byte[] resource(String name) throws IOException {
+		try (InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name)) {
+			if (in == null)
+				throw new IOException("corpus/" + name + " is missing");
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) > 0;)
+				bytes.write(buffer, 0, n);
+			return bytes.toByteArray();
+		}
+	}
+}
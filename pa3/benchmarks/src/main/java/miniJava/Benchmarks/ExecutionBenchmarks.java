@@ -0,0 +1,101 @@
+package miniJava.Benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import miniJava.ErrorReporter;
+import miniJava.CodeGenerator.JVMGenerator;
+import miniJava.CodeGenerator.JVMProgram;
+import miniJava.IR.IRBuilder;
+import miniJava.IR.IRProgram;
+import miniJava.Interpreter.BytecodeGenerator;
+import miniJava.Interpreter.BytecodeProgram;
+import miniJava.Interpreter.IRBytecodeGenerator;
+import miniJava.Interpreter.Interpreter;
+import miniJava.Interpreter.VM;
+import miniJava.Optimizer.ConstantFolder;
+import miniJava.Optimizer.DeadCodeEliminator;
+import miniJava.Optimizer.IROptimizer;
+
+/**
+ * Runs the arithmetic and arrays programs of the Corpus to the end: on the
+ * AST Interpreter, as bytecode on the VM, as the bytecode --optimize makes
+ * through the IR on the VM, and as JVM classes in this JVM.
+ * Compiling, lowering and class loading happen in the trial setup, so only
+ * execution is measured, and the JIT sees the same classes run after run;
+ * the programs' output goes to a stream that drops it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionBenchmarks {
+
+	@State(Scope.Thread)
+	public static class Program {
+		@Param({ "arithmetic", "arrays" })
+		public String program;
+
+		Interpreter interpreter;
+		VM vm;
+		VM optimizedVM;
+		JVMProgram classes;
+		PrintStream sink;
+		ErrorReporter reporter;
+
+		@Setup(Level.Trial)
+		public void load() throws IOException {
+			Compilation compilation = compile();
+			sink = new PrintStream(OutputStream.nullOutputStream());
+			reporter = compilation.reporter;
+			interpreter = new Interpreter(compilation.ast, sink, reporter);
+			BytecodeProgram bytecode = new BytecodeGenerator().generate(compilation.ast);
+			vm = new VM(bytecode, sink, reporter);
+			Compilation folded = compile(); // optimizing changes the AST
+			new ConstantFolder().fold(folded.ast);
+			new DeadCodeEliminator().eliminate(folded.ast);
+			IRProgram ir = new IRBuilder().build(folded.ast);
+			new IROptimizer().optimize(ir);
+			optimizedVM = new VM(new IRBytecodeGenerator().generate(ir), sink, folded.reporter);
+			classes = new JVMGenerator(reporter).generate(compilation.ast);
+			classes.run(sink, reporter); // loads them
+		}
+
+		private Compilation compile() throws IOException {
+			Compilation compilation = new Compilation(Corpus.program(program));
+			compilation.parse();
+			if (!compilation.reporter.hasErrors())
+				compilation.identify();
+			if (!compilation.reporter.hasErrors())
+				compilation.typeCheck();
+			if (compilation.reporter.hasErrors())
+				throw new IllegalStateException(program + " program does not compile:\n" + compilation.reporter.format());
+			return compilation;
+		}
+	}
+
+	@Benchmark
+	public boolean astInterpreter(Program program) {
+		return program.interpreter.run();
+	}
+
+	@Benchmark
+	public boolean bytecodeVM(Program program) {
+		return program.vm.run();
+	}
+
+	@Benchmark
+	public boolean optimizedVM(Program program) {
+		return program.optimizedVM.run();
+	}
+
+	@Benchmark
+	public boolean jvmClasses(Program program) {
+		return program.classes.run(program.sink, program.reporter);
+	}
+}
@@ -0,0 +1,66 @@
+package miniJava.Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import miniJava.SyntacticAnalyzer.Keywords;
+import miniJava.SyntacticAnalyzer.Token;
+
+/**
+ * Compares keyword recognition through Keywords against the old approach of
+ * comparing every identifier with each entry of the token table. Each call
+ * looks up the same spread of spellings, as they turn up in a typical
+ * program, and the figures are per call, that is per WORDS.length lookups.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeywordBenchmarks {
+
+	static final String[] WORDS = { "class", "Counter", "public", "int", "count", "void", "increment", "this",
+			"count", "count", "return", "private", "static", "boolean", "done", "if", "else", "while", "i", "n",
+			"true", "false", "new", "items", "null", "length", "System", "out", "println", "main", "String", "args",
+			"x", "y", "total", "index", "value", "next", "isEmpty", "node" };
+
+	String[] words;
+
+	@Setup(Level.Trial)
+	public void check() {
+		words = WORDS.clone();
+		for (String w : words)
+			if (tableKind(w) != Keywords.kind(w))
+				throw new IllegalStateException("Keywords and the token table disagree on " + w);
+	}
+
+	// the loop Token's constructor used to run for every identifier
+	static int tableKind(String spelling) {
+		for (int k = Token.CLASS; k <= Token.NEW; k++) {
+			if (spelling.equals(Token.spell(k)) || spelling.equals("null")) {
+				if (spelling.equals("null"))
+					return Token.NULL;
+				return k;
+			}
+		}
+		return Token.IDENTIFIER;
+	}
+
+	@Benchmark
+	public long tokenTable() {
+		long sum = 0;
+		for (String w : words)
+			sum += tableKind(w);
+		return sum;
+	}
+
+	@Benchmark
+	public long keywords() {
+		long sum = 0;
+		for (String w : words)
+			sum += Keywords.kind(w);
+		return sum;
+	}
+}
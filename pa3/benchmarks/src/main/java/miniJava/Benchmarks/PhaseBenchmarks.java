@@ -0,0 +1,117 @@
+package miniJava.Benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import miniJava.ErrorReporter;
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.AbstractSyntaxTrees.ASTDisplay;
+
+/**
+ * One benchmark per compiler phase, each over the small, medium and huge
+ * programs of the Corpus. A phase only gets the input it needs: scan and parse
+ * start from the source text in memory, while identification and type
+ * checking decorate the tree they are given and so get a freshly prepared one
+ * for every call (Level.Invocation setup; its bookkeeping shows up in the
+ * small program's figures, and the GC profiler's bytes per op for these two
+ * include what the setup allocated). showTree writes to a stream that drops
+ * the text.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmarks {
+
+	@State(Scope.Thread)
+	public static class Program {
+		@Param({ "small", "medium", "huge" })
+		public String size;
+
+		byte[] text;
+
+		@Setup(Level.Trial)
+		public void load() throws IOException {
+			text = Corpus.program(size);
+			Compilation compilation = new Compilation(text);
+			compilation.parse();
+			if (!compilation.reporter.hasErrors())
+				compilation.identify();
+			if (!compilation.reporter.hasErrors())
+				compilation.typeCheck();
+			if (compilation.reporter.hasErrors())
+				throw new IllegalStateException(size + " program does not compile:\n" + compilation.reporter.format());
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Parsed {
+		Compilation compilation;
+
+		@Setup(Level.Invocation)
+		public void prepare(Program program) {
+			compilation = new Compilation(program.text);
+			compilation.parse();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Identified {
+		Compilation compilation;
+
+		@Setup(Level.Invocation)
+		public void prepare(Program program) {
+			compilation = new Compilation(program.text);
+			compilation.parse();
+			compilation.identify();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Checked {
+		Compilation compilation;
+		PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+
+		@Setup(Level.Trial)
+		public void prepare(Program program) {
+			compilation = new Compilation(program.text);
+			compilation.parse();
+			compilation.identify();
+			compilation.typeCheck();
+		}
+	}
+
+	@Benchmark
+	public int scan(Program program) {
+		return new Compilation(program.text).scan();
+	}
+
+	@Benchmark
+	public AST parse(Program program) {
+		Compilation compilation = new Compilation(program.text);
+		compilation.parse();
+		return compilation.ast;
+	}
+
+	@Benchmark
+	public AST identification(Parsed parsed) {
+		parsed.compilation.identify();
+		return parsed.compilation.ast;
+	}
+
+	@Benchmark
+	public ErrorReporter typeChecking(Identified identified) {
+		identified.compilation.typeCheck();
+		return identified.compilation.reporter;
+	}
+
+	@Benchmark
+	public void showTree(Checked checked) {
+		new ASTDisplay(checked.sink).showTree(checked.compilation.ast);
+	}
+}
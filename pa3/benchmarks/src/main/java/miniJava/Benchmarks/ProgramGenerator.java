@@ -0,0 +1,287 @@
+package miniJava.Benchmarks;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes synthetic miniJava programs that pass every phase of pa3, sized by a
+ * handful of knobs:
+ *
+ *   classes   number of classes besides Main
+ *   members   members per class (about half fields, half methods)
+ *   body      top-level statements per method body
+ *   nesting   depth of the if/while tower in each method body
+ *   expr      depth of every generated expression
+ *   chain     length of qualified references such as this.peer.peer.v0
+ *   seed      seed for the choices between equally valid constructs
+ *
+ * Class Ck has int fields v0.., a field peer of the next class, and methods
+ * m0.. taking (int a, int b) and returning an int, so any method can refer to
+ * any field along a peer chain. Main links one object of each class into a
+ * ring through peer, a method mi only calls methods mj with j < i, and loops
+ * count a fresh local up to a small bound, so the programs also run to the
+ * end.
+ *
+ *   java -cp benchmarks.jar miniJava.Benchmarks.ProgramGenerator classes=200 expr=30 > big.java
+ */
+public class ProgramGenerator {
+
+	public int classes = 10;
+	public int members = 8;
+	public int body = 10;
+	public int nesting = 2;
+	public int expr = 3;
+	public int chain = 2;
+	public long seed = 520;
+
+	private Random random;
+	private StringBuilder out;
+	private int indent;
+
+	// per method: the int locals in scope, and the next fresh local number
+	private List<String> locals = new ArrayList<String>();
+	private int nextLocal;
+	private int currentMethod;
+
+	public ProgramGenerator() {
+	}
+
+	// knobs given as name=value
+	public ProgramGenerator(String[] settings) {
+		for (String setting : settings)
+			set(setting);
+	}
+
+	public void set(String setting) {
+		int eq = setting.indexOf('=');
+		if (eq < 0)
+			throw new IllegalArgumentException("expected knob=value: " + setting);
+		String knob = setting.substring(0, eq);
+		long value = Long.parseLong(setting.substring(eq + 1));
+		switch (knob) {
+		case "classes":
+			classes = (int) value;
+			break;
+		case "members":
+			members = (int) value;
+			break;
+		case "body":
+			body = (int) value;
+			break;
+		case "nesting":
+			nesting = (int) value;
+			break;
+		case "expr":
+			expr = (int) value;
+			break;
+		case "chain":
+			chain = (int) value;
+			break;
+		case "seed":
+			seed = value;
+			break;
+		default:
+			throw new IllegalArgumentException("no knob called " + knob);
+		}
+		if (value < (knob.equals("classes") || knob.equals("chain") ? 1 : 0))
+			throw new IllegalArgumentException(knob + " is too small: " + value);
+	}
+
+	private int fields() {
+		return Math.max(1, members / 2); // int fields; peer comes on top
+	}
+
+	private int methods() {
+		return Math.max(1, members - fields());
+	}
+
+	public String generate() {
+		random = new Random(seed);
+		out = new StringBuilder();
+		indent = 0;
+
+		line("class Main {");
+		line("    public static void main(String[] args) {");
+		for (int k = 0; k < classes; k++)
+			line("        C" + k + " o" + k + " = new C" + k + "();");
+		for (int k = 0; k < classes; k++)
+			line("        o" + k + ".peer = o" + (k + 1) % classes + ";");
+		line("        System.out.println(o0.m" + (methods() - 1) + "(1, 2));");
+		line("    }");
+		line("}");
+		for (int k = 0; k < classes; k++)
+			generateClass(k);
+		return out.toString();
+	}
+
+	public byte[] generateBytes() {
+		return generate().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private void generateClass(int k) {
+		line("");
+		line("class C" + k + " {");
+		indent++;
+		for (int f = 0; f < fields(); f++)
+			line("public int v" + f + ";");
+		line("public C" + ((k + 1) % classes) + " peer;");
+		for (int m = 0; m < methods(); m++)
+			generateMethod(m);
+		indent--;
+		line("}");
+	}
+
+	private void generateMethod(int m) {
+		currentMethod = m;
+		locals.clear();
+		locals.add("a");
+		locals.add("b");
+		nextLocal = 0;
+
+		line("");
+		line("public int m" + m + "(int a, int b) {");
+		indent++;
+		int tower = body / 2;
+		for (int s = 0; s < body; s++) {
+			if (s == tower)
+				generateTower(nesting);
+			else
+				generateSimpleStatement();
+		}
+		if (body == 0)
+			generateTower(nesting);
+		line("return " + expression(expr) + ";");
+		indent--;
+		line("}");
+	}
+
+	// nesting levels of alternating if and while, each holding a couple of
+	// statements around the next level
+	private void generateTower(int levels) {
+		if (levels == 0)
+			return;
+		int scope = locals.size();
+		if (levels % 2 == 0) {
+			line("if (" + condition() + ") {");
+		} else {
+			String counter = "i" + nextLocal++;
+			line("int " + counter + " = 0;");
+			locals.add(counter);
+			scope = locals.size();
+			line("while (" + counter + " < 3) {");
+			indent++;
+			line(counter + " = " + counter + " + 1;");
+			indent--;
+		}
+		indent++;
+		generateSimpleStatement();
+		generateTower(levels - 1);
+		generateSimpleStatement();
+		indent--;
+		while (locals.size() > scope)
+			locals.remove(locals.size() - 1);
+		if (levels % 2 == 0 && random.nextBoolean()) {
+			line("} else {");
+			indent++;
+			generateSimpleStatement();
+			indent--;
+			while (locals.size() > scope)
+				locals.remove(locals.size() - 1);
+		}
+		line("}");
+	}
+
+	private void generateSimpleStatement() {
+		switch (random.nextInt(5)) {
+		case 0:
+		case 1: {
+			String local = "x" + nextLocal++;
+			line("int " + local + " = " + expression(expr) + ";");
+			locals.add(local);
+			break;
+		}
+		case 2:
+			line(pick(locals) + " = " + expression(expr) + ";");
+			break;
+		case 3:
+			line(chain("v" + random.nextInt(fields())) + " = " + expression(expr) + ";");
+			break;
+		default:
+			line("System.out.println(" + expression(expr) + ");");
+			break;
+		}
+	}
+
+	private String condition() {
+		String[] relations = { "<", ">", "<=", ">=", "==", "!=" };
+		return expression(expr) + " " + relations[random.nextInt(relations.length)] + " " + leaf();
+	}
+
+	// depth levels deep, leaning left so its size grows only linearly
+	private String expression(int depth) {
+		if (depth == 0)
+			return leaf();
+		String[] operators = { "+", "-", "*" };
+		String left = expression(depth - 1);
+		if (random.nextInt(4) == 0)
+			left = "(" + left + ")";
+		return left + " " + operators[random.nextInt(operators.length)] + " " + leaf();
+	}
+
+	private String leaf() {
+		switch (random.nextInt(6)) {
+		case 0:
+			return Integer.toString(random.nextInt(100));
+		case 1:
+		case 2:
+			return pick(locals);
+		case 3:
+			return "v" + random.nextInt(fields());
+		case 4:
+			return chain("v" + random.nextInt(fields()));
+		default:
+			if (currentMethod == 0)
+				return chain("v0");
+			return chain("m" + random.nextInt(currentMethod)) + "(" + pick(locals) + ", " + random.nextInt(10) + ")";
+		}
+	}
+
+	// a reference to member of the class chain - 1 peers along, through chain
+	// - 1 peer fields (just this.member for a chain of 1)
+	private String chain(String member) {
+		StringBuilder reference = new StringBuilder("this");
+		for (int i = 1; i < chain; i++)
+			reference.append(".peer");
+		return reference.append('.').append(member).toString();
+	}
+
+	private String pick(List<String> names) {
+		return names.get(random.nextInt(names.size()));
+	}
+
+	private void line(String text) {
+		for (int i = 0; i < indent && !text.isEmpty(); i++)
+			out.append("    ");
+		out.append(text).append('\n');
+	}
+
+	public static void main(String[] args) throws IOException {
+		String file = null;
+		List<String> settings = new ArrayList<String>();
+		for (int a = 0; a < args.length; a++) {
+			if (args[a].equals("-o"))
+				file = args[++a];
+			else
+				settings.add(args[a]);
+		}
+		byte[] program = new ProgramGenerator(settings.toArray(new String[0])).generateBytes();
+		try (OutputStream out = file == null ? System.out : new FileOutputStream(file)) {
+			out.write(program);
+		}
+	}
+}
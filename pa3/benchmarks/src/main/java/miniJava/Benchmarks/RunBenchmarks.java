@@ -0,0 +1,30 @@
+package miniJava.Benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Takes the usual JMH command line, but runs
+ * PhaseBenchmarks with the GC profiler (allocation rate per op) unless told
+ * which benchmarks or profilers to use.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar
+ *   java -jar benchmarks/target/benchmarks.jar PhaseBenchmarks.scan -p size=huge
+ *   java -jar benchmarks/target/benchmarks.jar ExecutionBenchmarks
+ *   java -jar benchmarks/target/benchmarks.jar KeywordBenchmarks
+ */
+public class RunBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (commandLine.getIncludes().isEmpty())
+			options.include(PhaseBenchmarks.class.getSimpleName());
+		if (commandLine.getProfilers().isEmpty())
+			options.addProfiler(GCProfiler.class);
+		new Runner(options.build()).run();
+	}
+}
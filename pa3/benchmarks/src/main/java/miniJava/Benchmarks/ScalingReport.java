@@ -0,0 +1,255 @@
+package miniJava.Benchmarks;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sweeps each ProgramGenerator knob in turn, the others staying at their
+ * defaults (or at the knob=value settings given), and compiles every program
+ * generated along the way. For each knob it prints a table of per-phase time
+ * and allocation, the growth exponent of each phase against the token count
+ * between neighbouring points (1 is linear; a phase well above 1 grows faster
+ * than the input), and a text plot of time and heap stacked by phase.
+ *
+ *   java -cp benchmarks.jar miniJava.Benchmarks.ScalingReport [--runs n]
+ *       [--only knob] [--csv file] [knob=value ...]
+ *
+ * Times are the best of the measured runs after a few warm-up compilations of
+ * the same program; allocation is the bytes the compiling thread allocated
+ * in each phase, and retained is the heap still held by the decorated tree.
+ */
+public class ScalingReport {
+
+	static final String[] PHASES = { "scan", "parse", "identify", "check" };
+	static final char[] MARKS = { 's', 'p', 'i', 'c' };
+
+	static final String[] KNOBS = { "classes", "members", "body", "nesting", "expr", "chain" };
+	static final int[][] SWEEPS = {
+			{ 10, 20, 40, 80, 160, 320 },
+			{ 4, 8, 16, 32, 64, 128 },
+			{ 5, 10, 20, 40, 80, 160 },
+			{ 2, 4, 8, 16, 32, 64 },
+			{ 2, 4, 8, 16, 32, 64 },
+			{ 1, 2, 4, 8, 16, 32 } };
+
+	static final int WARMUPS = 3;
+	static final int PLOT_WIDTH = 50;
+
+	private static final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private static final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+	// the measurements for one generated program
+	static class Point {
+		String knob;
+		int value;
+		int lines;
+		int tokens;
+		long[] nanos = new long[PHASES.length];
+		long[] bytes = new long[PHASES.length];
+		long retained;
+
+		long totalNanos() {
+			long total = 0;
+			for (long n : nanos)
+				total += n;
+			return total;
+		}
+
+		long totalBytes() {
+			long total = 0;
+			for (long b : bytes)
+				total += b;
+			return total;
+		}
+	}
+
+	static Point measure(String knob, int value, List<String> settings, int runs) {
+		ProgramGenerator generator = new ProgramGenerator(settings.toArray(new String[0]));
+		generator.set(knob + "=" + value);
+		byte[] text = generator.generateBytes();
+
+		Point point = new Point();
+		point.knob = knob;
+		point.value = value;
+		for (byte b : text)
+			if (b == '\n')
+				point.lines++;
+		time(text, point, runs);
+
+		long before = usedHeap();
+		Compilation kept = compile(text, new long[PHASES.length], new long[PHASES.length]);
+		point.retained = Math.max(0, usedHeap() - before);
+		if (kept.ast == null)
+			throw new IllegalStateException();
+		return point;
+	}
+
+	// kept apart from measure so that none of these compilations is still
+	// referenced from a stack slot when the retained heap is measured
+	private static void time(byte[] text, Point point, int runs) {
+		java.util.Arrays.fill(point.nanos, Long.MAX_VALUE);
+		for (int run = 0; run < WARMUPS + runs; run++) {
+			long[] nanos = new long[PHASES.length];
+			long[] bytes = new long[PHASES.length];
+			Compilation compilation = compile(text, nanos, bytes);
+			point.tokens = compilation.scan();
+			if (run < WARMUPS)
+				continue;
+			for (int p = 0; p < PHASES.length; p++) {
+				if (nanos[p] < point.nanos[p])
+					point.nanos[p] = nanos[p];
+				point.bytes[p] = bytes[p];
+			}
+		}
+	}
+
+	private static Compilation compile(byte[] text, long[] nanos, long[] bytes) {
+		Compilation compilation = new Compilation(text);
+		long thread = Thread.currentThread().getId();
+		for (int p = 0; p < PHASES.length; p++) {
+			long allocated = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			switch (p) {
+			case 0:
+				new Compilation(text).scan();
+				break;
+			case 1:
+				compilation.parse();
+				break;
+			case 2:
+				compilation.identify();
+				break;
+			default:
+				compilation.typeCheck();
+				break;
+			}
+			nanos[p] = System.nanoTime() - start;
+			bytes[p] = threads.getThreadAllocatedBytes(thread) - allocated;
+			if (compilation.reporter.hasErrors())
+				throw new IllegalStateException("generated program does not compile:\n" + compilation.reporter.format());
+		}
+		return compilation;
+	}
+
+	// one collection does not always free everything, so take the lowest
+	// reading over a few
+	private static long usedHeap() {
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+		}
+		return used;
+	}
+
+	// slope of log(phase) against log(tokens) between two points
+	private static double exponent(double a, double b, Point from, Point to) {
+		if (a <= 0 || b <= 0 || to.tokens == from.tokens)
+			return Double.NaN;
+		return Math.log(b / a) / Math.log((double) to.tokens / from.tokens);
+	}
+
+	static void report(String knob, List<Point> points) {
+		System.out.println();
+		System.out.println("=== " + knob + " ===");
+		System.out.println(String.format("%8s %8s %9s | %9s %9s %9s %9s | %9s %9s | %5s %5s %5s %5s", knob, "lines",
+				"tokens", "scan ms", "parse ms", "ident ms", "check ms", "alloc MB", "kept MB", "scan", "parse",
+				"ident", "check"));
+		Point previous = null;
+		for (Point point : points) {
+			StringBuilder row = new StringBuilder(String.format("%8d %8d %9d |", point.value, point.lines,
+					point.tokens));
+			for (long n : point.nanos)
+				row.append(String.format(" %9.3f", n / 1e6));
+			row.append(String.format(" | %9.2f %9.2f |", point.totalBytes() / 1e6, point.retained / 1e6));
+			for (int p = 0; p < PHASES.length; p++) {
+				double e = previous == null ? Double.NaN
+						: exponent(previous.nanos[p], point.nanos[p], previous, point);
+				row.append(Double.isNaN(e) ? "     -" : String.format(" %5.2f", e));
+			}
+			System.out.println(row);
+			previous = point;
+		}
+
+		long maxNanos = 1, maxBytes = 1;
+		for (Point point : points) {
+			maxNanos = Math.max(maxNanos, point.totalNanos());
+			maxBytes = Math.max(maxBytes, point.totalBytes());
+		}
+		System.out.println();
+		System.out.println("time by phase (s=scan p=parse i=identify c=check)");
+		for (Point point : points)
+			System.out.println(String.format("%8d |%s %.3f ms", point.value, bar(point.nanos, maxNanos),
+					point.totalNanos() / 1e6));
+		System.out.println("heap allocated by phase");
+		for (Point point : points)
+			System.out.println(String.format("%8d |%s %.2f MB", point.value, bar(point.bytes, maxBytes),
+					point.totalBytes() / 1e6));
+	}
+
+	// one stacked bar, each phase drawn with its own mark
+	private static String bar(long[] parts, long max) {
+		StringBuilder bar = new StringBuilder();
+		double sum = 0;
+		for (int p = 0; p < parts.length; p++) {
+			sum += parts[p];
+			int end = (int) Math.round(sum * PLOT_WIDTH / max);
+			while (bar.length() < end)
+				bar.append(MARKS[p]);
+		}
+		while (bar.length() < PLOT_WIDTH)
+			bar.append(' ');
+		return bar.toString();
+	}
+
+	public static void main(String[] args) throws IOException {
+		int runs = 5;
+		String only = null;
+		String csv = null;
+		List<String> settings = new ArrayList<String>();
+		for (int a = 0; a < args.length; a++) {
+			if (args[a].equals("--runs"))
+				runs = Integer.parseInt(args[++a]);
+			else if (args[a].equals("--only"))
+				only = args[++a];
+			else if (args[a].equals("--csv"))
+				csv = args[++a];
+			else
+				settings.add(args[a]);
+		}
+		new ProgramGenerator(settings.toArray(new String[0])); // reject bad settings up front
+
+		List<Point> all = new ArrayList<Point>();
+		for (int k = 0; k < KNOBS.length; k++) {
+			if (only != null && !only.equals(KNOBS[k]))
+				continue;
+			List<Point> points = new ArrayList<Point>();
+			for (int value : SWEEPS[k])
+				points.add(measure(KNOBS[k], value, settings, runs));
+			report(KNOBS[k], points);
+			all.addAll(points);
+		}
+
+		if (csv != null) {
+			try (PrintWriter out = new PrintWriter(new FileWriter(csv))) {
+				out.println("knob,value,lines,tokens,scan_ns,parse_ns,identify_ns,check_ns,"
+						+ "scan_bytes,parse_bytes,identify_bytes,check_bytes,retained_bytes");
+				for (Point point : all) {
+					StringBuilder row = new StringBuilder(point.knob + "," + point.value + "," + point.lines + ","
+							+ point.tokens);
+					for (long n : point.nanos)
+						row.append(',').append(n);
+					for (long b : point.bytes)
+						row.append(',').append(b);
+					out.println(row.append(',').append(point.retained));
+				}
+			}
+		}
+	}
+}
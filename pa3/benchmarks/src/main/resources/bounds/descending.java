@@ -0,0 +1,12 @@
+// a loop stepping down past the start of its array: the last access,
+// a[-1], must fail with the index error, after the three it printed
+class Main {
+    public static void main(String[] args) {
+        int[] a = new int[3];
+        int i = 2;
+        while (i >= 0 - 1) {
+            System.out.println(a[i]);
+            i = i - 1;
+        }
+    }
+}
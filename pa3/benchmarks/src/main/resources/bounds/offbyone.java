@@ -0,0 +1,26 @@
+// loops guarded by i <= n - 1, which stay in bounds, then one guarded by
+// i <= n, whose last access, a[5], must fail with the index error
+class Main {
+    public static void main(String[] args) {
+        int[] a = new int[5];
+        int n = a.length;
+        int i = 0;
+        while (i <= n - 1) {
+            a[i] = i * 2;
+            i = i + 1;
+        }
+        int s = 0;
+        i = 0;
+        while (i <= n - 1) {
+            s = s + a[i];
+            i = i + 1;
+        }
+        System.out.println(s);
+        i = 0;
+        while (i <= n) {
+            s = s + a[i];
+            i = i + 1;
+        }
+        System.out.println(s);
+    }
+}
@@ -0,0 +1,88 @@
+// integer work for the execution benchmarks: calls, loops and comparisons,
+// with no arrays (miniJava has no %, so Num.mod divides)
+class Main {
+    public static void main(String[] args) {
+        Num num = new Num();
+        int n = 2;
+        int primes = 0;
+        while (n < 3000) {
+            if (num.isPrime(n)) primes = primes + 1;
+            n = n + 1;
+        }
+        System.out.println(primes);
+
+        int longest = 0;
+        int steps = 0;
+        n = 1;
+        while (n < 2000) {
+            steps = num.collatz(n);
+            if (steps > longest) longest = steps;
+            n = n + 1;
+        }
+        System.out.println(longest);
+
+        int g = 0;
+        int a = 1;
+        while (a < 120) {
+            int b = 1;
+            while (b < 120) {
+                g = g + num.gcd(a * 7, b * 5);
+                b = b + 1;
+            }
+            a = a + 1;
+        }
+        System.out.println(g);
+
+        Counter c = new Counter();
+        int k = 0;
+        while (k < 20000) {
+            c.add(k);
+            k = k + 1;
+        }
+        System.out.println(c.total + c.calls);
+        System.out.println(num.fib(20));
+    }
+}
+class Num {
+    int mod(int a, int b) {
+        return a - a / b * b;
+    }
+    boolean isPrime(int n) {
+        boolean prime = true;
+        int d = 2;
+        while (prime && d * d <= n) {
+            if (mod(n, d) == 0) prime = false;
+            d = d + 1;
+        }
+        return prime;
+    }
+    int collatz(int n) {
+        int steps = 0;
+        while (n != 1) {
+            if (mod(n, 2) == 0) n = n / 2; else n = 3 * n + 1;
+            steps = steps + 1;
+        }
+        return steps;
+    }
+    int gcd(int a, int b) {
+        while (b != 0) {
+            int t = mod(a, b);
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+    int fib(int n) {
+        int r = n;
+        if (n > 1) r = fib(n - 1) + fib(n - 2);
+        return r;
+    }
+}
+class Counter {
+    int total;
+    int calls;
+    void add(int v) {
+        total = total + v - v / 3;
+        calls = calls + 1;
+    }
+}
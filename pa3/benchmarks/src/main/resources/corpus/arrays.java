@@ -0,0 +1,130 @@
+// array work for the execution benchmarks: a sieve, an insertion sort, a
+// matrix product over flat arrays and prefix sums through an array of objects
+class Main {
+    public static void main(String[] args) {
+        Arrays arrays = new Arrays();
+        System.out.println(arrays.sieve(20000));
+
+        int[] a = new int[600];
+        int seed = 12345;
+        int i = 0;
+        while (i < a.length) {
+            seed = seed * 1103515245 + 12345;
+            a[i] = seed / 65536;
+            i = i + 1;
+        }
+        arrays.sort(a);
+        boolean sorted = true;
+        i = 1;
+        while (i < a.length) {
+            if (a[i - 1] > a[i]) sorted = false;
+            i = i + 1;
+        }
+        if (sorted) System.out.println(1); else System.out.println(0);
+
+        Matrix m = new Matrix();
+        m.init(24);
+        Matrix p = m.times(m);
+        System.out.println(p.trace());
+
+        Cell[] cells = new Cell[2000];
+        i = 0;
+        while (i < cells.length) {
+            Cell c = new Cell();
+            c.value = i / 3;
+            cells[i] = c;
+            i = i + 1;
+        }
+        int round = 0;
+        while (round < 5) {
+            i = 1;
+            while (i < cells.length) {
+                Cell c = cells[i];
+                Cell previous = cells[i - 1];
+                c.value = c.value + previous.value / 2;
+                i = i + 1;
+            }
+            round = round + 1;
+        }
+        Cell last = cells[cells.length - 1];
+        System.out.println(last.value);
+    }
+}
+class Arrays {
+    int sieve(int n) {
+        int[] composite = new int[n];
+        int count = 0;
+        int i = 2;
+        while (i < n) {
+            if (composite[i] == 0) {
+                count = count + 1;
+                int j = i + i;
+                while (j < n) {
+                    composite[j] = 1;
+                    j = j + i;
+                }
+            }
+            i = i + 1;
+        }
+        return count;
+    }
+    void sort(int[] a) {
+        int i = 1;
+        while (i < a.length) {
+            int v = a[i];
+            int j = i - 1;
+            while (j >= 0 && a[j] > v) {
+                a[j + 1] = a[j];
+                j = j - 1;
+            }
+            a[j + 1] = v;
+            i = i + 1;
+        }
+    }
+}
+class Matrix {
+    int n;
+    int[] cells;
+    void init(int size) {
+        n = size;
+        cells = new int[n * n];
+        int i = 0;
+        while (i < cells.length) {
+            cells[i] = i / n - i / (n + 1) + 1;
+            i = i + 1;
+        }
+    }
+    Matrix times(Matrix other) {
+        Matrix result = new Matrix();
+        result.n = n;
+        result.cells = new int[n * n];
+        int i = 0;
+        while (i < n) {
+            int j = 0;
+            while (j < n) {
+                int sum = 0;
+                int k = 0;
+                while (k < n) {
+                    sum = sum + cells[i * n + k] * other.cells[k * n + j];
+                    k = k + 1;
+                }
+                result.cells[i * n + j] = sum;
+                j = j + 1;
+            }
+            i = i + 1;
+        }
+        return result;
+    }
+    int trace() {
+        int t = 0;
+        int i = 0;
+        while (i < n) {
+            t = t + cells[i * n + i];
+            i = i + 1;
+        }
+        return t;
+    }
+}
+class Cell {
+    int value;
+}
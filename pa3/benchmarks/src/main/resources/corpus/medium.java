@@ -0,0 +1,309 @@
+// medium benchmark program: a driver class followed by a library of classes.
+// Corpus.huge repeats the library with its class names renumbered, so the
+// name of every class in the library ends in 0 and only the driver has main.
+class Main {
+    public static void main(String[] args) {
+        List0 list = new List0();
+        list.init();
+        int i = 0;
+        while (i < 50) {
+            list.push(i * 3 + 1);
+            i = i + 1;
+        }
+        System.out.println(list.sum());
+        System.out.println(list.count);
+
+        Point0 p = new Point0();
+        p.set(3, 4);
+        Point0 q = new Point0();
+        q.set(-2, 7);
+        Rect0 r = new Rect0();
+        r.init(p, q);
+        System.out.println(r.area());
+        System.out.println(r.perimeter());
+
+        Calc0 c = new Calc0();
+        System.out.println(c.fib(25));
+        System.out.println(c.gcd(1071, 462));
+        System.out.println(c.power(3, 9));
+        System.out.println(Util0.max(Util0.abs(-17), Util0.min(40, 23)));
+
+        Counter0 counter = new Counter0();
+        counter.reset();
+        i = 0;
+        while (i < 100) {
+            if (c.isPrime(i)) {
+                counter.bump();
+            } else {
+                counter.skip();
+            }
+            i = i + 1;
+        }
+        System.out.println(counter.hits);
+        System.out.println(counter.misses);
+
+        Account0 a = new Account0();
+        a.open(100);
+        a.deposit(50);
+        boolean ok = a.withdraw(500);
+        if (!ok && a.balance == 150) {
+            System.out.println(1);
+        } else {
+            System.out.println(0);
+        }
+        Shape0 s = new Shape0();
+        s.init(r, 2);
+        System.out.println(s.weight());
+    }
+}
+
+// library
+class Node0 {
+    public int value;
+    public Node0 next;
+
+    public void init(int v, Node0 n) {
+        value = v;
+        next = n;
+    }
+}
+
+class List0 {
+    public Node0 head;
+    public int count;
+
+    public void init() {
+        head = null;
+        count = 0;
+    }
+
+    public void push(int v) {
+        Node0 n = new Node0();
+        n.init(v, head);
+        head = n;
+        count = count + 1;
+    }
+
+    public int sum() {
+        int total = 0;
+        Node0 n = head;
+        while (n != null) {
+            total = total + n.value;
+            n = n.next;
+        }
+        return total;
+    }
+
+    public boolean contains(int v) {
+        boolean found = false;
+        Node0 n = head;
+        while (n != null && !found) {
+            if (n.value == v)
+                found = true;
+            n = n.next;
+        }
+        return found;
+    }
+
+    public int largest() {
+        int best = 0;
+        Node0 n = head;
+        if (n != null)
+            best = n.value;
+        while (n != null) {
+            best = Util0.max(best, n.value);
+            n = n.next;
+        }
+        return best;
+    }
+}
+
+class Point0 {
+    public int x;
+    public int y;
+
+    public void set(int nx, int ny) {
+        x = nx;
+        y = ny;
+    }
+
+    public int manhattan(Point0 other) {
+        return Util0.abs(x - other.x) + Util0.abs(y - other.y);
+    }
+
+    public boolean same(Point0 other) {
+        return x == other.x && y == other.y;
+    }
+}
+
+class Rect0 {
+    public Point0 low;
+    public Point0 high;
+
+    public void init(Point0 a, Point0 b) {
+        low = new Point0();
+        high = new Point0();
+        low.set(Util0.min(a.x, b.x), Util0.min(a.y, b.y));
+        high.set(Util0.max(a.x, b.x), Util0.max(a.y, b.y));
+    }
+
+    public int width() {
+        return high.x - low.x;
+    }
+
+    public int height() {
+        return high.y - low.y;
+    }
+
+    public int area() {
+        return this.width() * this.height();
+    }
+
+    public int perimeter() {
+        return 2 * (this.width() + this.height());
+    }
+
+    public boolean inside(Point0 p) {
+        return p.x >= low.x && p.x <= high.x && p.y >= low.y && p.y <= high.y;
+    }
+}
+
+class Util0 {
+    public static int max(int a, int b) {
+        int m = a;
+        if (b > a)
+            m = b;
+        return m;
+    }
+
+    public static int min(int a, int b) {
+        int m = a;
+        if (b < a)
+            m = b;
+        return m;
+    }
+
+    public static int abs(int a) {
+        int r = a;
+        if (a < 0)
+            r = -a;
+        return r;
+    }
+
+    public static int mod(int a, int b) {
+        return a - (a / b) * b;
+    }
+}
+
+class Calc0 {
+    public int fib(int n) {
+        int a = 0;
+        int b = 1;
+        int i = 0;
+        while (i < n) {
+            int t = a + b;
+            a = b;
+            b = t;
+            i = i + 1;
+        }
+        return a;
+    }
+
+    public int gcd(int a, int b) {
+        while (b != 0) {
+            int t = Util0.mod(a, b);
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    public int power(int base, int e) {
+        int result = 1;
+        while (e > 0) {
+            result = result * base;
+            e = e - 1;
+        }
+        return result;
+    }
+
+    public boolean isPrime(int n) {
+        boolean prime = n > 1;
+        int d = 2;
+        while (prime && d * d <= n) {
+            if (Util0.mod(n, d) == 0)
+                prime = false;
+            d = d + 1;
+        }
+        return prime;
+    }
+}
+
+class Counter0 {
+    public int hits;
+    public int misses;
+
+    public void reset() {
+        hits = 0;
+        misses = 0;
+    }
+
+    public void bump() {
+        hits = hits + 1;
+    }
+
+    public void skip() {
+        misses = misses + 1;
+    }
+
+    public int total() {
+        return hits + misses;
+    }
+}
+
+class Account0 {
+    public int balance;
+    private int operations;
+
+    public void open(int amount) {
+        balance = amount;
+        operations = 1;
+    }
+
+    public void deposit(int amount) {
+        balance = balance + amount;
+        operations = operations + 1;
+    }
+
+    public boolean withdraw(int amount) {
+        boolean ok = amount <= balance;
+        if (ok) {
+            balance = balance - amount;
+            operations = operations + 1;
+        }
+        return ok;
+    }
+}
+
+class Shape0 {
+    public Rect0 bounds;
+    public int density;
+    public Shape0 parent;
+
+    public void init(Rect0 r, int d) {
+        bounds = r;
+        density = d;
+        parent = null;
+    }
+
+    public int weight() {
+        int w = bounds.area() * density;
+        if (parent != null)
+            w = w + parent.weight();
+        return w;
+    }
+
+    public boolean heavier(Shape0 other) {
+        return this.weight() > other.weight();
+    }
+}
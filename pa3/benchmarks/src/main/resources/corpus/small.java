@@ -0,0 +1,18 @@
+class Main {
+    public static void main(String[] args) {
+        Foo f = new Foo();
+        f.x = 3;
+        int y = f.get() + 2 * 4;
+        boolean b = !(y > 3) && true;
+        if (b) y = y - 1; else y = y + 1;
+        while (y < 100) { y = y * 2; }
+        System.out.println(y);
+        f.set(y);
+    }
+}
+class Foo {
+    public int x;
+    private Foo next;
+    public int get() { return x; }
+    public void set(int v) { x = v; this.next = null; }
+}
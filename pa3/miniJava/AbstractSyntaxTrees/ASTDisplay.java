@@ -5,6 +5,8 @@
  */
 package miniJava.AbstractSyntaxTrees;
 
+import java.io.PrintStream;
+
 /*
  * Display AST in text form, one node per line, using indentation to show 
  * subordinate nodes below a parent node.
@@ -21,15 +23,25 @@ package miniJava.AbstractSyntaxTrees;
 public class ASTDisplay implements Visitor<String,Object> {
 	
 	public static boolean showPosition = false;
+
+	private PrintStream out;
+
+	public ASTDisplay() {
+		this(System.out);
+	}
+
+	public ASTDisplay(PrintStream out) {
+		this.out = out;
+	}
     
     /**
      * print text representation of AST to stdout
      * @param ast root node of AST 
      */
     public void showTree(AST ast){
-        System.out.println("======= AST Display =========================");
+        out.println("======= AST Display =========================");
         ast.visit(this, "");
-        System.out.println("=============================================");
+        out.println("=============================================");
     }   
     
     // methods to format output
@@ -40,7 +52,7 @@ public class ASTDisplay implements Visitor<String,Object> {
      * @param text    preformatted node display
      */
     private void show(String prefix, String text) {
-        System.out.println(prefix + text);
+        out.println(prefix + text);
     }
     
     /**
@@ -49,7 +61,7 @@ public class ASTDisplay implements Visitor<String,Object> {
      * @param node    AST node, will be shown by name
      */
     private void show(String prefix, AST node) {
-    	System.out.println(prefix + node.toString());
+    	out.println(prefix + node.toString());
     }
     
     /**
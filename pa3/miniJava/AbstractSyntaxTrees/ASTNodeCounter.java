@@ -0,0 +1,248 @@
+package miniJava.AbstractSyntaxTrees;
+
+/**
+ * Counts the nodes of an AST: every node a visit reaches, from the package
+ * down to identifiers, operators and literals. The lists holding
+ * declarations, statements and arguments are not nodes themselves and are
+ * not counted.
+ */
+public class ASTNodeCounter implements Visitor<Object, Object> {
+
+	private int count;
+
+	public int count(AST ast) {
+		count = 0;
+		ast.visit(this, null);
+		return count;
+	}
+
+	// Package
+
+	public Object visitPackage(Package prog, Object arg) {
+		count++;
+		for (ClassDecl c : prog.classDeclList)
+			c.visit(this, null);
+		return null;
+	}
+
+	// Declarations
+
+	public Object visitClassDecl(ClassDecl clas, Object arg) {
+		count++;
+		clas.id.visit(this, null);
+		for (FieldDecl f : clas.fieldDeclList)
+			f.visit(this, null);
+		for (MethodDecl m : clas.methodDeclList)
+			m.visit(this, null);
+		return null;
+	}
+
+	public Object visitFieldDecl(FieldDecl f, Object arg) {
+		count++;
+		f.type.visit(this, null);
+		f.id.visit(this, null);
+		return null;
+	}
+
+	public Object visitMethodDecl(MethodDecl m, Object arg) {
+		count++;
+		m.type.visit(this, null);
+		m.id.visit(this, null);
+		for (ParameterDecl pd : m.parameterDeclList)
+			pd.visit(this, null);
+		for (Statement s : m.statementList)
+			s.visit(this, null);
+		return null;
+	}
+
+	public Object visitParameterDecl(ParameterDecl pd, Object arg) {
+		count++;
+		pd.type.visit(this, null);
+		pd.id.visit(this, null);
+		return null;
+	}
+
+	public Object visitVarDecl(VarDecl vd, Object arg) {
+		count++;
+		vd.type.visit(this, null);
+		vd.id.visit(this, null);
+		return null;
+	}
+
+	// Types
+
+	public Object visitBaseType(BaseType type, Object arg) {
+		count++;
+		return null;
+	}
+
+	public Object visitClassType(ClassType ct, Object arg) {
+		count++;
+		ct.className.visit(this, null);
+		return null;
+	}
+
+	public Object visitArrayType(ArrayType type, Object arg) {
+		count++;
+		type.eltType.visit(this, null);
+		return null;
+	}
+
+	// Statements
+
+	public Object visitBlockStmt(BlockStmt stmt, Object arg) {
+		count++;
+		for (Statement s : stmt.sl)
+			s.visit(this, null);
+		return null;
+	}
+
+	public Object visitVardeclStmt(VarDeclStmt stmt, Object arg) {
+		count++;
+		stmt.varDecl.visit(this, null);
+		stmt.initExp.visit(this, null);
+		return null;
+	}
+
+	public Object visitAssignStmt(AssignStmt stmt, Object arg) {
+		count++;
+		stmt.ref.visit(this, null);
+		stmt.val.visit(this, null);
+		return null;
+	}
+
+	public Object visitCallStmt(CallStmt stmt, Object arg) {
+		count++;
+		stmt.methodRef.visit(this, null);
+		for (Expression e : stmt.argList)
+			e.visit(this, null);
+		return null;
+	}
+
+	public Object visitReturnStmt(ReturnStmt stmt, Object arg) {
+		count++;
+		if (stmt.returnExpr != null)
+			stmt.returnExpr.visit(this, null);
+		return null;
+	}
+
+	public Object visitIfStmt(IfStmt stmt, Object arg) {
+		count++;
+		stmt.cond.visit(this, null);
+		stmt.thenStmt.visit(this, null);
+		if (stmt.elseStmt != null)
+			stmt.elseStmt.visit(this, null);
+		return null;
+	}
+
+	public Object visitWhileStmt(WhileStmt stmt, Object arg) {
+		count++;
+		stmt.cond.visit(this, null);
+		stmt.body.visit(this, null);
+		return null;
+	}
+
+	// Expressions
+
+	public Object visitUnaryExpr(UnaryExpr expr, Object arg) {
+		count++;
+		expr.operator.visit(this, null);
+		expr.expr.visit(this, null);
+		return null;
+	}
+
+	public Object visitBinaryExpr(BinaryExpr expr, Object arg) {
+		count++;
+		expr.operator.visit(this, null);
+		expr.left.visit(this, null);
+		expr.right.visit(this, null);
+		return null;
+	}
+
+	public Object visitRefExpr(RefExpr expr, Object arg) {
+		count++;
+		expr.ref.visit(this, null);
+		return null;
+	}
+
+	public Object visitCallExpr(CallExpr expr, Object arg) {
+		count++;
+		expr.functionRef.visit(this, null);
+		for (Expression e : expr.argList)
+			e.visit(this, null);
+		return null;
+	}
+
+	public Object visitLiteralExpr(LiteralExpr expr, Object arg) {
+		count++;
+		expr.lit.visit(this, null);
+		return null;
+	}
+
+	public Object visitNewArrayExpr(NewArrayExpr expr, Object arg) {
+		count++;
+		expr.eltType.visit(this, null);
+		expr.sizeExpr.visit(this, null);
+		return null;
+	}
+
+	public Object visitNewObjectExpr(NewObjectExpr expr, Object arg) {
+		count++;
+		expr.classtype.visit(this, null);
+		return null;
+	}
+
+	// References
+
+	public Object visitThisRef(ThisRef ref, Object arg) {
+		count++;
+		return null;
+	}
+
+	public Object visitIdRef(IdRef ref, Object arg) {
+		count++;
+		ref.id.visit(this, null);
+		return null;
+	}
+
+	public Object visitQRef(QualRef qr, Object arg) {
+		count++;
+		qr.id.visit(this, null);
+		qr.ref.visit(this, null);
+		return null;
+	}
+
+	public Object visitIxRef(IxRef ir, Object arg) {
+		count++;
+		ir.ref.visit(this, null);
+		ir.indexExpr.visit(this, null);
+		return null;
+	}
+
+	// Terminals
+
+	public Object visitIdentifier(Identifier id, Object arg) {
+		count++;
+		return null;
+	}
+
+	public Object visitOperator(Operator op, Object arg) {
+		count++;
+		return null;
+	}
+
+	public Object visitIntLiteral(IntLiteral num, Object arg) {
+		count++;
+		return null;
+	}
+
+	public Object visitBooleanLiteral(BooleanLiteral bool, Object arg) {
+		count++;
+		return null;
+	}
+
+	public Object visitNullLiteral(NullLiteral nullLiteral, Object arg) {
+		count++;
+		return null;
+	}
+}
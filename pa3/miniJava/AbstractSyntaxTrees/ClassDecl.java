@@ -5,8 +5,6 @@
  */
 package miniJava.AbstractSyntaxTrees;
 
-import java.util.HashMap;
-
 import miniJava.SyntacticAnalyzer.SourcePosition;
 
 public class ClassDecl extends Declaration {
@@ -25,22 +23,77 @@ public class ClassDecl extends Declaration {
 	public FieldDeclList fieldDeclList;
 	public MethodDeclList methodDeclList;
 
+	// interpreter - number of instance fields, see FieldDecl.offset
+	public int instanceSize;
+
+	// the one ClassType standing for this class
+	public ClassType getClassType() {
+		if (classType == null) {
+			setIdBinding();
+			classType = new ClassType(id, posn);
+		}
+		return classType;
+	}
+
+	private ClassType classType;
+
 	// pa3
-	public boolean existsMember(String name, boolean expectStatic, boolean expectPublic) {
-		for (FieldDecl fd : fieldDeclList) {
-			if (name.equals(fd.id.spelling)) {
-				if (expectStatic && !fd.isStatic) continue;
-                if (expectPublic && fd.isPrivate) continue;
-                return true;
-			}
+	public boolean existsMember(int symbol, boolean expectStatic, boolean expectPublic) {
+		return getMember(symbol, expectStatic, expectPublic) != null;
+	}
+
+	public MemberDecl getMember(int symbol) {
+		return getMember(symbol, false, false);
+	}
+
+	// the member named by symbol, provided it is static and/or public as asked
+	public MemberDecl getMember(int symbol, boolean expectStatic, boolean expectPublic) {
+		if (memberSymbols == null)
+			buildMemberIndex();
+
+		int required = (expectStatic ? STATIC : 0) | (expectPublic ? PUBLIC : 0);
+		int mask = memberSymbols.length - 1;
+		for (int i = symbol & mask; memberSymbols[i] != 0; i = (i + 1) & mask) {
+			if (memberSymbols[i] == symbol + 1)
+				return (memberAccess[i] & required) == required ? members[i] : null;
 		}
-		for (MethodDecl md : methodDeclList) {
-			if (name.equals(md.id.spelling)) {
-				if (expectStatic && !md.isStatic) continue;
-                if (expectPublic && md.isPrivate) continue;
-                return true;
-			}
+		return null;
+	}
+
+	// Member index: an open-addressed table from symbol + 1 to member, built
+	// the first time a member is looked up and never changed afterwards.
+	// memberAccess files each member under STATIC and/or PUBLIC up front.
+	private static final byte STATIC = 1, PUBLIC = 2;
+
+	private int[] memberSymbols;
+	private MemberDecl[] members;
+	private byte[] memberAccess;
+
+	private void buildMemberIndex() {
+		int capacity = 4;
+		while (capacity < 2 * (fieldDeclList.size() + methodDeclList.size()))
+			capacity *= 2;
+		int[] symbols = new int[capacity];
+		members = new MemberDecl[capacity];
+		memberAccess = new byte[capacity];
+
+		for (FieldDecl fd : fieldDeclList)
+			indexMember(symbols, fd);
+		for (MethodDecl md : methodDeclList)
+			indexMember(symbols, md);
+		memberSymbols = symbols;
+	}
+
+	private void indexMember(int[] symbols, MemberDecl md) {
+		int mask = symbols.length - 1;
+		int i = md.id.symbol & mask;
+		while (symbols[i] != 0) {
+			if (symbols[i] == md.id.symbol + 1)
+				return; // a duplicate: the first declaration wins
+			i = (i + 1) & mask;
 		}
-		return false;
+		symbols[i] = md.id.symbol + 1;
+		members[i] = md;
+		memberAccess[i] = (byte) ((md.isStatic ? STATIC : 0) | (md.isPrivate ? 0 : PUBLIC));
 	}
 }
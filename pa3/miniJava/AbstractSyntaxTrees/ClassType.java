@@ -28,7 +28,7 @@ public class ClassType extends TypeDenoter {
 			return true;
 		} else if (obj instanceof ClassType) {
 			ClassType type = (ClassType) obj;
-			return type.className.spelling.equals(this.className.spelling);
+			return type.className.symbol == this.className.symbol;
 		} else {
 			return false;
 		}
@@ -20,4 +20,8 @@ public class FieldDecl extends MemberDecl {
 	public <A, R> R visit(Visitor<A, R> v, A o) {
 		return v.visitFieldDecl(this, o);
 	}
+
+	// interpreter - index of the field in its object, or among all static
+	// fields when it is static
+	public int offset = -1;
 }
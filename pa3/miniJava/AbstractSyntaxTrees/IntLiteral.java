@@ -16,4 +16,18 @@ public class IntLiteral extends Terminal {
   public <A,R> R visit(Visitor<A,R> v, A o) {
       return v.visitIntLiteral(this, o);
   }
+
+  // the literal's value, parsed on first use; type checking rejects a
+  // literal too big for an int, apart from 2147483648 after a minus, which
+  // is Integer.MIN_VALUE either way
+  public int getValue() {
+      if (!parsed) {
+          value = new java.math.BigInteger(spelling).intValue();
+          parsed = true;
+      }
+      return value;
+  }
+
+  private int value;
+  private boolean parsed;
 }
\ No newline at end of file
@@ -13,7 +13,6 @@ public class IxRef extends Reference {
 		super(posn);
 		this.ref = ref;
 		this.indexExpr = expr;
-		// this.id = ???
 	}
 
 	public <A,R> R visit(Visitor<A,R> v, A o){
@@ -23,11 +22,10 @@ public class IxRef extends Reference {
 	public Reference ref;
 	public Expression indexExpr;
 	
-	// pa3
-	public Identifier id;
+	// pa3 - the declaration indexed is that of the array reference
 	@Override
 	public TypeDenoter getType() {
-		TypeDenoter type = id.decl.type;
+		TypeDenoter type = ref.getType();
 		if (type instanceof ArrayType) {
 			return ((ArrayType)type).eltType;
 		} else {
@@ -37,6 +35,6 @@ public class IxRef extends Reference {
 
 	@Override
 	public Declaration getDecl() {
-		return id.decl;
+		return ref.getDecl();
 	}
 }
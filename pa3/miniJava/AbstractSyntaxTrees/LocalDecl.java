@@ -13,4 +13,6 @@ public abstract class LocalDecl extends Declaration {
 		super(id,t,posn);
 	}
 
+	// interpreter - index of the variable in its method's frame
+	public int slot = -1;
 }
@@ -6,6 +6,7 @@
 package miniJava.AbstractSyntaxTrees;
 
 import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.SymbolInterner;
 
 public class MethodDecl extends MemberDecl {
 
@@ -21,19 +22,24 @@ public class MethodDecl extends MemberDecl {
 
 	public ParameterDeclList parameterDeclList;
 	public StatementList statementList;
+
+	// interpreter - frame slots for the parameters and locals
+	public int frameSize;
 	
 	// pa3 - to tell if a method is main
 	public TypeDenoter returnType;
 	public boolean isMain() {
 		if (this.isPrivate || !this.isStatic) return false;
     	if (this.type.typeKind != TypeKind.VOID) return false;
-    	if (!this.id.spelling.equals("main")) return false;
+    	if (this.id.symbol != SymbolInterner.MAIN) return false;
     	if (this.parameterDeclList.size() != 1) return false;
     	if (!(this.parameterDeclList.get(0).type instanceof ArrayType)) return false;
     	ArrayType arrayType = (ArrayType) this.parameterDeclList.get(0).type;
+    	if (arrayType.eltType.typeKind == TypeKind.UNSUPPORTED) // String, once type checked
+    		return true;
     	if (arrayType.eltType instanceof ClassType) {
     		ClassType type = (ClassType) arrayType.eltType;
-    		return type.typeKind == TypeKind.UNSUPPORTED || type.className.spelling.equals("String");
+    		return type.className.symbol == SymbolInterner.STRING;
     	}
     	return false;
 	}
@@ -14,8 +14,10 @@ abstract public class Terminal extends AST {
 	super(t.position);
     spelling = t.spelling;
     kind = t.kind;
+    symbol = t.symbol;
   }
 
   public int kind; //TokenKind
   public String spelling;
+  public int symbol; // interned spelling, see SymbolInterner
 }
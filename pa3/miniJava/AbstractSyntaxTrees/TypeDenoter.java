@@ -20,4 +20,14 @@ abstract public class TypeDenoter extends AST {
 	public abstract boolean equals(Object obj);
 	public abstract Declaration getDecl();
 
+	// the one ArrayType with this type as its element type; only meaningful
+	// when this type is itself canonical (see TypeUniverse)
+	public ArrayType getArrayType() {
+		if (arrayType == null)
+			arrayType = new ArrayType(this, posn);
+		return arrayType;
+	}
+
+	private ArrayType arrayType;
+
 }
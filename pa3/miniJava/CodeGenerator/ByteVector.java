@@ -0,0 +1,60 @@
+package miniJava.CodeGenerator;
+
+import java.util.Arrays;
+
+// a growing array of bytes written big-endian, as class files are
+class ByteVector {
+	private byte[] data = new byte[64];
+	private int size;
+
+	int size() {
+		return size;
+	}
+
+	void u1(int b) {
+		ensure(1);
+		data[size++] = (byte) b;
+	}
+
+	void u2(int s) {
+		ensure(2);
+		data[size++] = (byte) (s >>> 8);
+		data[size++] = (byte) s;
+	}
+
+	void u4(int i) {
+		u2(i >>> 16);
+		u2(i);
+	}
+
+	void bytes(byte[] b, int length) {
+		ensure(length);
+		System.arraycopy(b, 0, data, size, length);
+		size += length;
+	}
+
+	void bytes(ByteVector v) {
+		bytes(v.data, v.size);
+	}
+
+	// overwrites the two bytes at position at
+	void putU2(int at, int s) {
+		data[at] = (byte) (s >>> 8);
+		data[at + 1] = (byte) s;
+	}
+
+	// overwrites the four bytes at position at
+	void putU4(int at, int i) {
+		putU2(at, i >>> 16);
+		putU2(at + 2, i);
+	}
+
+	byte[] toByteArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	private void ensure(int more) {
+		if (size + more > data.length)
+			data = Arrays.copyOf(data, Math.max(data.length * 2, size + more));
+	}
+}
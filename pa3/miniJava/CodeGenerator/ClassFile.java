@@ -0,0 +1,59 @@
+package miniJava.CodeGenerator;
+
+// one class file being written. Classes are written for version 49 (Java 5)
+// so that the JVM verifies them by type inference and the methods need no
+// StackMapTable.
+class ClassFile {
+	static final int ACC_PUBLIC = 0x0001, ACC_STATIC = 0x0008, ACC_SUPER = 0x0020;
+
+	private static final int MAGIC = 0xCAFEBABE, MAJOR_VERSION = 49;
+
+	final ConstantPool pool = new ConstantPool();
+	private final String name;
+	private final ByteVector fields = new ByteVector();
+	private final ByteVector methods = new ByteVector();
+	private int fieldCount, methodCount;
+
+	ClassFile(String name) {
+		this.name = name;
+	}
+
+	void addField(int access, String fieldName, String descriptor) {
+		fields.u2(access);
+		fields.u2(pool.utf8(fieldName));
+		fields.u2(pool.utf8(descriptor));
+		fields.u2(0);
+		fieldCount++;
+	}
+
+	void addMethod(int access, String methodName, String descriptor, Code code) {
+		methods.u2(access);
+		methods.u2(pool.utf8(methodName));
+		methods.u2(pool.utf8(descriptor));
+		methods.u2(1);
+		code.writeTo(methods);
+		methodCount++;
+	}
+
+	byte[] toByteArray() {
+		// everything after the pool first, as it adds to the pool
+		ByteVector rest = new ByteVector();
+		rest.u2(ClassFile.ACC_PUBLIC | ClassFile.ACC_SUPER);
+		rest.u2(pool.classRef(name));
+		rest.u2(pool.classRef("java/lang/Object"));
+		rest.u2(0); // no interfaces
+		rest.u2(fieldCount);
+		rest.bytes(fields);
+		rest.u2(methodCount);
+		rest.bytes(methods);
+		rest.u2(0); // no attributes
+
+		ByteVector out = new ByteVector();
+		out.u4(MAGIC);
+		out.u2(0);
+		out.u2(MAJOR_VERSION);
+		pool.writeTo(out);
+		out.bytes(rest);
+		return out.toByteArray();
+	}
+}
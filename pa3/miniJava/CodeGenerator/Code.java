@@ -0,0 +1,231 @@
+package miniJava.CodeGenerator;
+
+import java.util.List;
+
+// the body of one method being written: its instructions, the local variable
+// slots they use, and the operand stack depth, followed along instruction by
+// instruction so that max_stack comes out right, and a line number table
+//
+// Jumps take 16-bit offsets unless wideJumps is set, when each is a goto_w,
+// a conditional one jumping over it on the opposite test. A method is first
+// written with short jumps, and again with wide ones if jumpTooFar says one
+// of them could not reach its target.
+class Code {
+	// the opcodes used
+	static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13,
+			ILOAD = 0x15, ALOAD = 0x19, ILOAD_0 = 0x1a, ALOAD_0 = 0x2a, IALOAD = 0x2e, AALOAD = 0x32,
+			BALOAD = 0x33, ISTORE = 0x36, ASTORE = 0x3a, ISTORE_0 = 0x3b, ASTORE_0 = 0x4b, IASTORE = 0x4f,
+			AASTORE = 0x53, BASTORE = 0x54, POP = 0x57, DUP = 0x59, IADD = 0x60, ISUB = 0x64, IMUL = 0x68,
+			IDIV = 0x6c, INEG = 0x74, IXOR = 0x82, IINC = 0x84, IFEQ = 0x99, IFNE = 0x9a, IF_ICMPEQ = 0x9f,
+			IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4,
+			IF_ACMPEQ = 0xa5, IF_ACMPNE = 0xa6, GOTO = 0xa7, IRETURN = 0xac, ARETURN = 0xb0, RETURN = 0xb1,
+			GETSTATIC = 0xb2, PUTSTATIC = 0xb3, GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKEVIRTUAL = 0xb6,
+			INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, NEW = 0xbb, NEWARRAY = 0xbc, ANEWARRAY = 0xbd,
+			ARRAYLENGTH = 0xbe, WIDE = 0xc4, GOTO_W = 0xc8;
+
+	// the most bytes of code a JVM method may have
+	static final int MAX_LENGTH = 0xFFFF;
+
+	// NEWARRAY element types
+	static final int T_BOOLEAN = 4, T_INT = 10;
+
+	private final ConstantPool pool;
+	private final ByteVector code = new ByteVector();
+	private final ByteVector lineNumbers = new ByteVector();
+	private int lineCount;
+	private int lastLine;
+	private int depth, maxStack;
+	private int maxLocals;
+	private final boolean wideJumps;
+	private boolean jumpTooFar;
+
+	Code(ConstantPool pool, int parameterSlots) {
+		this(pool, parameterSlots, false);
+	}
+
+	Code(ConstantPool pool, int parameterSlots, boolean wideJumps) {
+		this.pool = pool;
+		maxLocals = parameterSlots;
+		this.wideJumps = wideJumps;
+	}
+
+	int position() {
+		return code.size();
+	}
+
+	// the instructions from here on come from this source line
+	void line(int line) {
+		if (line <= 0 || line == lastLine)
+			return;
+		lineNumbers.u2(code.size());
+		lineNumbers.u2(line);
+		lineCount++;
+		lastLine = line;
+	}
+
+	// for where the stack depth is not what falls through from the previous
+	// instruction, as after a goto
+	void adjust(int change) {
+		depth += change;
+	}
+
+	void op(int opcode, int stackChange) {
+		code.u1(opcode);
+		adjust(stackChange);
+		maxStack = Math.max(maxStack, depth);
+	}
+
+	void iconst(int value) {
+		if (value >= -1 && value <= 5) {
+			op(ICONST_0 + value, 1);
+		} else if (value == (byte) value) {
+			op(BIPUSH, 1);
+			code.u1(value);
+		} else if (value == (short) value) {
+			op(SIPUSH, 1);
+			code.u2(value);
+		} else {
+			int index = pool.integer(value);
+			if (index < 256) {
+				op(LDC, 1);
+				code.u1(index);
+			} else {
+				op(LDC_W, 1);
+				code.u2(index);
+			}
+		}
+	}
+
+	void load(boolean ref, int slot) {
+		local(ref ? ALOAD : ILOAD, ref ? ALOAD_0 : ILOAD_0, slot, 1);
+	}
+
+	void store(boolean ref, int slot) {
+		local(ref ? ASTORE : ISTORE, ref ? ASTORE_0 : ISTORE_0, slot, -1);
+	}
+
+	private void local(int opcode, int shortForm, int slot, int stackChange) {
+		maxLocals = Math.max(maxLocals, slot + 1);
+		if (slot <= 3) {
+			op(shortForm + slot, stackChange);
+		} else if (slot <= 255) {
+			op(opcode, stackChange);
+			code.u1(slot);
+		} else {
+			code.u1(WIDE);
+			op(opcode, stackChange);
+			code.u2(slot);
+		}
+	}
+
+	// adds k to the int in slot, or says it cannot
+	boolean iinc(int slot, int k) {
+		if (slot > 255 || k != (byte) k)
+			return false;
+		op(IINC, 0);
+		code.u1(slot);
+		code.u1(k);
+		return true;
+	}
+
+	void field(int opcode, String owner, String name, String descriptor) {
+		int change = opcode == GETSTATIC ? 1 : opcode == PUTSTATIC ? -1 : opcode == GETFIELD ? 0 : -2;
+		op(opcode, change);
+		code.u2(pool.fieldRef(owner, name, descriptor));
+	}
+
+	void invoke(int opcode, String owner, String name, String descriptor) {
+		int change = -argumentCount(descriptor) - (opcode == INVOKESTATIC ? 0 : 1)
+				+ (descriptor.endsWith(")V") ? 0 : 1);
+		op(opcode, change);
+		code.u2(pool.methodRef(owner, name, descriptor));
+	}
+
+	// NEW or ANEWARRAY
+	void type(int opcode, String className) {
+		op(opcode, opcode == NEW ? 1 : 0);
+		code.u2(pool.classRef(className));
+	}
+
+	void newarray(int elementType) {
+		op(NEWARRAY, 0);
+		code.u1(elementType);
+	}
+
+	// emits a jump to be patched later; returns where it is
+	int jump(int opcode) {
+		int change = opcode == GOTO ? 0 : opcode == IFEQ || opcode == IFNE ? -1 : -2;
+		if (!wideJumps) {
+			int at = code.size();
+			op(opcode, change);
+			code.u2(0);
+			return at;
+		}
+		if (opcode != GOTO) {
+			op(negate(opcode), change);
+			code.u2(3 + 5); // past itself and the goto_w
+		}
+		int at = code.size();
+		op(GOTO_W, 0);
+		code.u4(0);
+		return at;
+	}
+
+	void patch(List<Integer> jumps, int target) {
+		for (int at : jumps) {
+			int offset = target - at;
+			if (wideJumps)
+				code.putU4(at + 1, offset);
+			else if (offset == (short) offset)
+				code.putU2(at + 1, offset);
+			else
+				jumpTooFar = true;
+		}
+	}
+
+	// whether a jump was left unpatched, out of reach of a 16-bit offset
+	boolean jumpTooFar() {
+		return jumpTooFar;
+	}
+
+	// the opposite test of a conditional jump; the JVM numbers each pair of
+	// opposites as an odd and the next even opcode
+	static int negate(int jump) {
+		return ((jump + 1) ^ 1) - 1;
+	}
+
+	// a Code attribute holding all this
+	void writeTo(ByteVector out) {
+		if (code.size() > MAX_LENGTH) // JVMGenerator reports these instead
+			throw new IllegalStateException("method code larger than 64K");
+		ByteVector attribute = new ByteVector();
+		attribute.u2(maxStack);
+		attribute.u2(maxLocals);
+		attribute.u4(code.size());
+		attribute.bytes(code);
+		attribute.u2(0); // no exception handlers
+		attribute.u2(1);
+		attribute.u2(pool.utf8("LineNumberTable"));
+		attribute.u4(2 + lineNumbers.size());
+		attribute.u2(lineCount);
+		attribute.bytes(lineNumbers);
+
+		out.u2(pool.utf8("Code"));
+		out.u4(attribute.size());
+		out.bytes(attribute);
+	}
+
+	// the number of parameters in a method descriptor; miniJava has no long
+	// or double, so each takes one slot
+	private static int argumentCount(String descriptor) {
+		int count = 0;
+		for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+			while (descriptor.charAt(i) == '[')
+				i++;
+			if (descriptor.charAt(i) == 'L')
+				i = descriptor.indexOf(';', i);
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,92 @@
+package miniJava.CodeGenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// the constant pool of a class file being written: an entry is added the
+// first time it is asked for, and after that only its index is handed out
+class ConstantPool {
+	private static final int UTF8 = 1, INTEGER = 3, CLASS = 7, FIELDREF = 9, METHODREF = 10, NAME_AND_TYPE = 12;
+
+	private final ByteVector entries = new ByteVector();
+	private final Map<String, Integer> indices = new HashMap<String, Integer>();
+	private int count = 1; // entry 0 is never used
+
+	// miniJava names are plain ASCII, which modified UTF-8 leaves alone
+	int utf8(String s) {
+		Integer index = indices.get("U" + s);
+		if (index != null)
+			return index;
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		entries.u1(UTF8);
+		entries.u2(bytes.length);
+		entries.bytes(bytes, bytes.length);
+		return add("U" + s);
+	}
+
+	int integer(int value) {
+		Integer index = indices.get("I" + value);
+		if (index != null)
+			return index;
+		entries.u1(INTEGER);
+		entries.u4(value);
+		return add("I" + value);
+	}
+
+	int classRef(String name) {
+		Integer index = indices.get("C" + name);
+		if (index != null)
+			return index;
+		int nameIndex = utf8(name);
+		entries.u1(CLASS);
+		entries.u2(nameIndex);
+		return add("C" + name);
+	}
+
+	int fieldRef(String owner, String name, String descriptor) {
+		return memberRef(FIELDREF, owner, name, descriptor);
+	}
+
+	int methodRef(String owner, String name, String descriptor) {
+		return memberRef(METHODREF, owner, name, descriptor);
+	}
+
+	private int memberRef(int tag, String owner, String name, String descriptor) {
+		String key = tag + owner + "." + name + ":" + descriptor;
+		Integer index = indices.get(key);
+		if (index != null)
+			return index;
+		int classIndex = classRef(owner);
+		int nameAndType = nameAndType(name, descriptor);
+		entries.u1(tag);
+		entries.u2(classIndex);
+		entries.u2(nameAndType);
+		return add(key);
+	}
+
+	private int nameAndType(String name, String descriptor) {
+		String key = "N" + name + ":" + descriptor;
+		Integer index = indices.get(key);
+		if (index != null)
+			return index;
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		entries.u1(NAME_AND_TYPE);
+		entries.u2(nameIndex);
+		entries.u2(descriptorIndex);
+		return add(key);
+	}
+
+	private int add(String key) {
+		if (count == 0xFFFF)
+			throw new IllegalStateException("constant pool overflow");
+		indices.put(key, count);
+		return count++;
+	}
+
+	void writeTo(ByteVector out) {
+		out.u2(count);
+		out.bytes(entries);
+	}
+}
@@ -0,0 +1,50 @@
+package miniJava.CodeGenerator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// a 64-bit ELF executable with no sections and two segments: the file
+// itself, headers included, loaded read-only and executable at textBase,
+// and zero-filled writable memory at dataBase, which takes no room in the
+// file. The code therefore starts HEADERS bytes past textBase.
+class ElfFile {
+	static final int HEADERS = 64 + 2 * 56; // file header, program headers
+
+	private static final int PT_LOAD = 1;
+	private static final int PF_X = 1, PF_W = 2, PF_R = 4;
+
+	static byte[] executable(byte[] text, long textBase, long entry, long dataBase, long dataSize) {
+		ByteBuffer b = ByteBuffer.allocate(HEADERS + text.length).order(ByteOrder.LITTLE_ENDIAN);
+		b.put(new byte[] { 0x7F, 'E', 'L', 'F', 2, 1, 1, 0 }); // 64-bit, little-endian, version 1, System V
+		b.put(new byte[8]);
+		b.putShort((short) 2); // ET_EXEC
+		b.putShort((short) 0x3E); // x86-64
+		b.putInt(1);
+		b.putLong(entry);
+		b.putLong(64); // program headers
+		b.putLong(0); // section headers
+		b.putInt(0);
+		b.putShort((short) 64);
+		b.putShort((short) 56);
+		b.putShort((short) 2);
+		b.putShort((short) 0);
+		b.putShort((short) 0);
+		b.putShort((short) 0);
+
+		segment(b, PF_R | PF_X, textBase, HEADERS + text.length, HEADERS + text.length);
+		segment(b, PF_R | PF_W, dataBase, 0, dataSize);
+		b.put(text);
+		return b.array();
+	}
+
+	private static void segment(ByteBuffer b, int flags, long address, long fileSize, long memorySize) {
+		b.putInt(PT_LOAD);
+		b.putInt(flags);
+		b.putLong(0); // file offset
+		b.putLong(address);
+		b.putLong(address);
+		b.putLong(fileSize);
+		b.putLong(memorySize);
+		b.putLong(0x1000);
+	}
+}
@@ -0,0 +1,514 @@
+package miniJava.CodeGenerator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+import miniJava.Interpreter.BytecodeProgram;
+import miniJava.Interpreter.Function;
+import miniJava.Interpreter.Opcode;
+
+// Chaitin-Briggs register allocation for the registers of a bytecode
+// Function. Its int and reference registers are numbered together, ints
+// first, as virtual registers. Liveness is worked out per instruction, and
+// two virtual registers interfere if one is written where the other is live
+// after, or read by the same instruction; a move's source and destination
+// do not interfere by it. A move whose two sides do not interfere is then
+// coalesced if that cannot make the graph harder to color (Briggs's test),
+// the moves of the deepest loops first.
+//
+// The graph is colored by simplifying: a virtual register with fewer
+// neighbours than it has machine registers to choose from is taken out, as
+// it will get one whatever they get; when none is left, the one cheapest
+// to spill for its degree is taken out instead, optimistically, as its
+// neighbours may still leave it a register. They are given registers in the
+// reverse order, the register of a move's other side first, and those left
+// without one are spilled to stack slots, which the spilled share where
+// they do not interfere. One live across a call may only have a
+// callee-saved register.
+//
+// The cost of spilling is the number of times the code reads or writes the
+// virtual register, each weighted by 10 to the depth of loops it is in: in
+// bytecode made from the AST or the IR, the loops are those of while
+// statements, so a local used in an inner loop keeps its register before
+// one used only outside it.
+class GraphColoring {
+	static final int[] CALLEE_SAVED = { X86Assembler.RBX, X86Assembler.R12, X86Assembler.R13, X86Assembler.R14 };
+	static final int[] CALLER_SAVED = { X86Assembler.RSI, X86Assembler.RDI, X86Assembler.R8, X86Assembler.R9,
+			X86Assembler.R10, X86Assembler.R11 };
+	static final int LOOP_WEIGHT = 10;
+
+	// the outcome, by virtual register: a machine register, a spill slot, or
+	// neither, for one that is never used
+	final int[] register;
+	final int[] slot;
+	int slots;
+	final List<Integer> calleeSaved = new ArrayList<Integer>(); // those used
+
+	private final Function f;
+	private final Function[] functions;
+	private final int n; // virtual registers
+	private final boolean[] present; // used, defined or passed in
+	private final BitSet[] interference;
+	private final boolean[] crossesCall;
+	private final double[] cost;
+	private final int[] alias; // the virtual register each was coalesced into
+	private final List<int[]> moves = new ArrayList<int[]>(); // destination, source, loop depth
+
+	GraphColoring(Function f, BytecodeProgram program) {
+		this.f = f;
+		functions = program.functions;
+		n = f.intRegisters + f.refRegisters;
+		register = new int[n];
+		slot = new int[n];
+		present = new boolean[n];
+		interference = new BitSet[n];
+		crossesCall = new boolean[n];
+		cost = new double[n];
+		alias = new int[n];
+		for (int v = 0; v < n; v++) {
+			register[v] = slot[v] = -1;
+			interference[v] = new BitSet();
+			alias[v] = v;
+		}
+		build();
+		coalesce();
+		color();
+	}
+
+	int vreg(boolean ref, int r) {
+		return ref ? f.intRegisters + r : r;
+	}
+
+	// the virtual registers the instruction at pc uses and defines
+	private void operands(int pc, BitSet use, BitSet def) {
+		int[] code = f.code;
+		int op = code[pc];
+		switch (op) {
+		case Opcode.ICONST:
+		case Opcode.GETSI:
+			def.set(vreg(false, code[pc + 1]));
+			break;
+		case Opcode.RNULL:
+		case Opcode.GETSR:
+		case Opcode.NEW:
+			def.set(vreg(true, code[pc + 1]));
+			break;
+		case Opcode.IMOV:
+		case Opcode.IADDK:
+		case Opcode.INEG:
+		case Opcode.NOT:
+			def.set(vreg(false, code[pc + 1]));
+			use.set(vreg(false, code[pc + 2]));
+			break;
+		case Opcode.RMOV:
+			def.set(vreg(true, code[pc + 1]));
+			use.set(vreg(true, code[pc + 2]));
+			break;
+		case Opcode.IADD:
+		case Opcode.ISUB:
+		case Opcode.IMUL:
+		case Opcode.IDIV:
+		case Opcode.ILT:
+		case Opcode.ILE:
+		case Opcode.IGT:
+		case Opcode.IGE:
+		case Opcode.IEQ:
+		case Opcode.INE:
+			def.set(vreg(false, code[pc + 1]));
+			use.set(vreg(false, code[pc + 2]));
+			use.set(vreg(false, code[pc + 3]));
+			break;
+		case Opcode.REQ:
+		case Opcode.RNE:
+			def.set(vreg(false, code[pc + 1]));
+			use.set(vreg(true, code[pc + 2]));
+			use.set(vreg(true, code[pc + 3]));
+			break;
+		case Opcode.JZ:
+		case Opcode.JNZ:
+		case Opcode.PRINT:
+		case Opcode.RETI:
+			use.set(vreg(false, code[pc + 1]));
+			break;
+		case Opcode.RETR:
+			use.set(vreg(true, code[pc + 1]));
+			break;
+		case Opcode.PUTSI:
+			use.set(vreg(false, code[pc + 2]));
+			break;
+		case Opcode.PUTSR:
+			use.set(vreg(true, code[pc + 2]));
+			break;
+		case Opcode.JLT:
+		case Opcode.JLE:
+		case Opcode.JGT:
+		case Opcode.JGE:
+		case Opcode.JEQ:
+		case Opcode.JNE:
+			use.set(vreg(false, code[pc + 1]));
+			use.set(vreg(false, code[pc + 2]));
+			break;
+		case Opcode.JREQ:
+		case Opcode.JRNE:
+			use.set(vreg(true, code[pc + 1]));
+			use.set(vreg(true, code[pc + 2]));
+			break;
+		case Opcode.GETI:
+		case Opcode.GETR:
+			def.set(vreg(op == Opcode.GETR, code[pc + 1]));
+			use.set(vreg(true, code[pc + 2]));
+			break;
+		case Opcode.PUTI:
+		case Opcode.PUTR:
+			use.set(vreg(true, code[pc + 1]));
+			use.set(vreg(op == Opcode.PUTR, code[pc + 3]));
+			break;
+		case Opcode.NEWAI:
+		case Opcode.NEWAR:
+			def.set(vreg(true, code[pc + 1]));
+			use.set(vreg(false, code[pc + 2]));
+			break;
+		case Opcode.ALDI:
+		case Opcode.ALDR:
+			def.set(vreg(op == Opcode.ALDR, code[pc + 1]));
+			use.set(vreg(true, code[pc + 2]));
+			use.set(vreg(false, code[pc + 3]));
+			break;
+		case Opcode.ASTI:
+		case Opcode.ASTR:
+			use.set(vreg(true, code[pc + 1]));
+			use.set(vreg(false, code[pc + 2]));
+			use.set(vreg(op == Opcode.ASTR, code[pc + 3]));
+			break;
+		case Opcode.ALEN:
+			def.set(vreg(false, code[pc + 1]));
+			use.set(vreg(true, code[pc + 2]));
+			break;
+		case Opcode.CALL: {
+			Function callee = functions[code[pc + 1]];
+			if (code[pc + 2] >= 0)
+				use.set(vreg(true, code[pc + 2]));
+			if (code[pc + 3] >= 0)
+				def.set(vreg(callee.returnsRef, code[pc + 3]));
+			for (int a = 0; a < code[pc + 4]; a++)
+				use.set(vreg(callee.paramIsRef[a], code[pc + 5 + a]));
+			break;
+		}
+		default: // JMP, RET
+		}
+	}
+
+	// the code indices control can go to from the instruction at pc
+	private int[] successors(int pc) {
+		int[] code = f.code;
+		int next = pc + Opcode.length(code, pc);
+		switch (code[pc]) {
+		case Opcode.JMP:
+			return new int[] { code[pc + 1] };
+		case Opcode.JZ:
+		case Opcode.JNZ:
+			return new int[] { code[pc + 2], next };
+		case Opcode.JLT:
+		case Opcode.JLE:
+		case Opcode.JGT:
+		case Opcode.JGE:
+		case Opcode.JEQ:
+		case Opcode.JNE:
+		case Opcode.JREQ:
+		case Opcode.JRNE:
+			return new int[] { code[pc + 3], next };
+		case Opcode.RETI:
+		case Opcode.RETR:
+		case Opcode.RET:
+			return new int[0];
+		default:
+			return new int[] { next };
+		}
+	}
+
+	// Interference
+
+	private void build() {
+		int[] code = f.code;
+		List<Integer> pcs = new ArrayList<Integer>();
+		for (int pc = 0; pc < code.length; pc += Opcode.length(code, pc))
+			pcs.add(pc);
+		int count = pcs.size();
+		int[] index = new int[code.length + 1]; // instruction number of a code index
+		for (int i = 0; i < count; i++)
+			index[pcs.get(i)] = i;
+
+		BitSet[] use = new BitSet[count], def = new BitSet[count];
+		BitSet[] liveIn = new BitSet[count], liveOut = new BitSet[count];
+		int[][] successors = new int[count][];
+		for (int i = 0; i < count; i++) {
+			use[i] = new BitSet();
+			def[i] = new BitSet();
+			liveIn[i] = new BitSet();
+			liveOut[i] = new BitSet();
+			operands(pcs.get(i), use[i], def[i]);
+			int[] targets = successors(pcs.get(i));
+			successors[i] = new int[targets.length];
+			for (int s = 0; s < targets.length; s++)
+				successors[i][s] = targets[s] < code.length ? index[targets[s]] : -1;
+		}
+
+		// backwards to a fixed point
+		for (boolean changed = true; changed;) {
+			changed = false;
+			for (int i = count - 1; i >= 0; i--) {
+				BitSet out = new BitSet();
+				for (int s : successors[i])
+					if (s >= 0)
+						out.or(liveIn[s]);
+				BitSet in = (BitSet) out.clone();
+				in.andNot(def[i]);
+				in.or(use[i]);
+				if (!in.equals(liveIn[i]) || !out.equals(liveOut[i])) {
+					liveIn[i] = in;
+					liveOut[i] = out;
+					changed = true;
+				}
+			}
+		}
+
+		// parameters, the receiver included, arrive together before the
+		// first instruction, with whatever else is live there
+		BitSet entry = count > 0 ? (BitSet) liveIn[0].clone() : new BitSet();
+		if (!f.decl.isStatic)
+			entry.set(vreg(true, 0));
+		for (int p = 0; p < f.paramRegisters.length; p++)
+			entry.set(vreg(f.paramIsRef[p], f.paramRegisters[p]));
+		for (int v = entry.nextSetBit(0); v >= 0; v = entry.nextSetBit(v + 1)) {
+			present[v] = true;
+			interfere(v, entry);
+		}
+
+		int[] depth = loopDepths(successors);
+		for (int i = 0; i < count; i++) {
+			int op = code[pcs.get(i)];
+			boolean move = op == Opcode.IMOV || op == Opcode.RMOV;
+			BitSet live = (BitSet) liveOut[i].clone();
+			if (move)
+				live.andNot(use[i]); // the two may share a register
+			else
+				live.or(use[i]); // the result may be written before an operand is read
+			for (int d = def[i].nextSetBit(0); d >= 0; d = def[i].nextSetBit(d + 1))
+				interfere(d, live);
+			if (move && !def[i].equals(use[i]))
+				moves.add(new int[] { def[i].nextSetBit(0), use[i].nextSetBit(0), depth[i] });
+			if (op == Opcode.CALL) {
+				BitSet across = (BitSet) liveOut[i].clone();
+				across.andNot(def[i]);
+				for (int v = across.nextSetBit(0); v >= 0; v = across.nextSetBit(v + 1))
+					crossesCall[v] = true;
+			}
+			BitSet touched = (BitSet) use[i].clone();
+			touched.or(def[i]);
+			for (int v = touched.nextSetBit(0); v >= 0; v = touched.nextSetBit(v + 1)) {
+				present[v] = true;
+				cost[v] += Math.pow(LOOP_WEIGHT, depth[i]);
+			}
+		}
+	}
+
+	private void interfere(int v, BitSet others) {
+		for (int u = others.nextSetBit(0); u >= 0; u = others.nextSetBit(u + 1))
+			if (u != v) {
+				interference[v].set(u);
+				interference[u].set(v);
+			}
+	}
+
+	// the number of loops around each instruction. A jump back to an earlier
+	// instruction closes a loop, whose body is what reaches the jump without
+	// going through its target; the loops closed by jumps to one target are
+	// one loop.
+	private static int[] loopDepths(int[][] successors) {
+		int count = successors.length;
+		List<List<Integer>> predecessors = new ArrayList<List<Integer>>();
+		for (int i = 0; i < count; i++)
+			predecessors.add(new ArrayList<Integer>());
+		for (int i = 0; i < count; i++)
+			for (int s : successors[i])
+				if (s >= 0)
+					predecessors.get(s).add(i);
+
+		BitSet[] loops = new BitSet[count]; // by first instruction
+		for (int i = 0; i < count; i++)
+			for (int header : successors[i]) {
+				if (header < 0 || header > i)
+					continue;
+				if (loops[header] == null)
+					loops[header] = new BitSet();
+				BitSet body = loops[header];
+				body.set(header);
+				Deque<Integer> work = new ArrayDeque<Integer>();
+				work.push(i);
+				while (!work.isEmpty()) {
+					int b = work.pop();
+					if (body.get(b))
+						continue;
+					body.set(b);
+					for (int p : predecessors.get(b))
+						work.push(p);
+				}
+			}
+
+		int[] depth = new int[count];
+		for (BitSet body : loops)
+			if (body != null)
+				for (int i = body.nextSetBit(0); i >= 0; i = body.nextSetBit(i + 1))
+					depth[i]++;
+		return depth;
+	}
+
+	// Coalescing
+
+	private int find(int v) {
+		while (alias[v] != v)
+			v = alias[v] = alias[alias[v]];
+		return v;
+	}
+
+	// how many machine registers v may have
+	private int colors(int v) {
+		return crossesCall[v] ? CALLEE_SAVED.length : CALLEE_SAVED.length + CALLER_SAVED.length;
+	}
+
+	private void coalesce() {
+		moves.sort((a, b) -> b[2] - a[2]);
+		for (int[] move : moves) {
+			int a = find(move[0]), b = find(move[1]);
+			if (a == b || interference[a].get(b))
+				continue;
+			// Briggs: the merged node has fewer neighbours of significant
+			// degree than it has colors, so it can still be simplified
+			BitSet neighbours = (BitSet) interference[a].clone();
+			neighbours.or(interference[b]);
+			int k = Math.min(colors(a), colors(b)), significant = 0;
+			for (int u = neighbours.nextSetBit(0); u >= 0; u = neighbours.nextSetBit(u + 1))
+				if (interference[u].cardinality() >= colors(u))
+					significant++;
+			if (significant >= k)
+				continue;
+			alias[b] = a;
+			crossesCall[a] |= crossesCall[b];
+			cost[a] += cost[b];
+			for (int u = interference[b].nextSetBit(0); u >= 0; u = interference[b].nextSetBit(u + 1)) {
+				interference[u].clear(b);
+				interference[u].set(a);
+			}
+			interference[a].or(interference[b]);
+			interference[b].clear();
+		}
+	}
+
+	// Coloring
+
+	private void color() {
+		List<Integer> nodes = new ArrayList<Integer>();
+		for (int v = 0; v < n; v++)
+			if (present[v] && find(v) == v)
+				nodes.add(v);
+
+		// simplify, down to nothing
+		int[] degree = new int[n];
+		boolean[] removed = new boolean[n];
+		for (int v : nodes)
+			degree[v] = interference[v].cardinality();
+		Deque<Integer> stack = new ArrayDeque<Integer>();
+		for (int left = nodes.size(); left > 0; left--) {
+			int next = -1;
+			for (int v : nodes)
+				if (!removed[v] && degree[v] < colors(v)) {
+					next = v;
+					break;
+				}
+			if (next < 0) // a spill candidate
+				for (int v : nodes)
+					if (!removed[v] && (next < 0 || cost[v] / degree[v] < cost[next] / degree[next]))
+						next = v;
+			removed[next] = true;
+			stack.push(next);
+			for (int u = interference[next].nextSetBit(0); u >= 0; u = interference[next].nextSetBit(u + 1))
+				degree[u]--;
+		}
+
+		// then select, in the reverse order
+		List<List<Integer>> partners = new ArrayList<List<Integer>>();
+		for (int v = 0; v < n; v++)
+			partners.add(new ArrayList<Integer>());
+		for (int[] move : moves) {
+			int a = find(move[0]), b = find(move[1]);
+			if (a != b) {
+				partners.get(a).add(b);
+				partners.get(b).add(a);
+			}
+		}
+		int[] color = new int[n];
+		Arrays.fill(color, -1);
+		List<Integer> spilled = new ArrayList<Integer>();
+		while (!stack.isEmpty()) {
+			int v = stack.pop();
+			boolean[] taken = new boolean[16];
+			for (int u = interference[v].nextSetBit(0); u >= 0; u = interference[v].nextSetBit(u + 1))
+				if (color[u] >= 0)
+					taken[color[u]] = true;
+			int r = -1;
+			for (int u : partners.get(v))
+				if (color[u] >= 0 && !taken[color[u]] && (!crossesCall[v] || isCalleeSaved(color[u]))) {
+					r = color[u];
+					break;
+				}
+			if (r < 0 && !crossesCall[v])
+				r = firstFree(taken, CALLER_SAVED);
+			if (r < 0)
+				r = firstFree(taken, CALLEE_SAVED);
+			if (r >= 0) {
+				color[v] = r;
+				if (isCalleeSaved(r) && !calleeSaved.contains(r))
+					calleeSaved.add(r);
+			} else {
+				spilled.add(v);
+			}
+		}
+
+		// the spilled, the costliest first, share slots where they can
+		int[] slotOf = new int[n];
+		Arrays.fill(slotOf, -1);
+		spilled.sort((a, b) -> Double.compare(cost[b], cost[a]));
+		for (int v : spilled) {
+			BitSet used = new BitSet();
+			for (int u = interference[v].nextSetBit(0); u >= 0; u = interference[v].nextSetBit(u + 1))
+				if (slotOf[u] >= 0)
+					used.set(slotOf[u]);
+			slotOf[v] = used.nextClearBit(0);
+			slots = Math.max(slots, slotOf[v] + 1);
+		}
+
+		for (int v = 0; v < n; v++)
+			if (present[v]) {
+				register[v] = color[find(v)];
+				slot[v] = slotOf[find(v)];
+			}
+	}
+
+	private static int firstFree(boolean[] taken, int[] pool) {
+		for (int r : pool)
+			if (!taken[r])
+				return r;
+		return -1;
+	}
+
+	private static boolean isCalleeSaved(int r) {
+		for (int s : CALLEE_SAVED)
+			if (s == r)
+				return true;
+		return false;
+	}
+}
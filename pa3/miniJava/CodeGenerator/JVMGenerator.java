@@ -0,0 +1,612 @@
+package miniJava.CodeGenerator;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.ErrorReporter;
+import miniJava.SyntacticAnalyzer.Token;
+
+/**
+ * Generates a JVM class file for each class of a type-checked AST, so that
+ * miniJava runs on the JVM and HotSpot's JIT compiles it like any Java code.
+ *
+ * A class becomes a public class of the unnamed package with the same name,
+ * holding its fields and methods under their own names (all public: access
+ * has been checked already) and a default constructor. int, boolean and
+ * arrays of them map to their JVM counterparts, String (main's parameter
+ * only) to java.lang.String, and System.out.println to JVMRuntime.println.
+ * Local variables get the slots after the parameters, and those of a block
+ * are free again after it. Conditions compile to compare-and-jump
+ * instructions, as javac does; a method with a jump too far for those is
+ * generated again with goto_w for every jump. A method that still comes to
+ * more code than the JVM allows is reported as an error.
+ *
+ * Each statement and each instruction that can fail is recorded in the line
+ * number table under the line of its node, so that JVMProgram can report a
+ * runtime error at the line the Interpreter would.
+ */
+public class JVMGenerator implements Visitor<Object, Object> {
+
+	private static final String RUNTIME = "miniJava/CodeGenerator/JVMRuntime";
+
+	// the method being generated
+	private MethodDecl method;
+	private Code code;
+	private Map<LocalDecl, Integer> localSlot = new IdentityHashMap<LocalDecl, Integer>();
+	private int nextSlot;
+
+	private ErrorReporter errorReporter;
+
+	public JVMGenerator(ErrorReporter errorReporter) {
+		this.errorReporter = errorReporter;
+	}
+
+	// the classes of the program, or null if a method is too large for the JVM
+	public JVMProgram generate(AST ast) {
+		Package program = (Package) ast;
+		Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+		String mainClass = null;
+		for (ClassDecl cd : program.classDeclList) {
+			classes.put(cd.id.spelling, generate(cd));
+			for (MethodDecl md : cd.methodDeclList)
+				if (md.isMain())
+					mainClass = cd.id.spelling;
+		}
+		return errorReporter.hasErrors() ? null : new JVMProgram(classes, mainClass);
+	}
+
+	private byte[] generate(ClassDecl cd) {
+		ClassFile cf = new ClassFile(cd.id.spelling);
+		for (FieldDecl fd : cd.fieldDeclList)
+			cf.addField(access(fd), fd.id.spelling, descriptor(fd.type));
+
+		Code init = new Code(cf.pool, 1);
+		init.load(true, 0);
+		init.invoke(Code.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+		init.op(Code.RETURN, 0);
+		cf.addMethod(ClassFile.ACC_PUBLIC, "<init>", "()V", init);
+
+		for (MethodDecl md : cd.methodDeclList) {
+			Code code = generate(cf, md);
+			if (code.position() > Code.MAX_LENGTH)
+				errorReporter.reportError("*** line " + md.posn.start + ":  Code generation error - method "
+						+ md.id.spelling + " needs " + code.position() + " bytes of JVM code, more than the "
+						+ Code.MAX_LENGTH + " a method may have");
+			else
+				cf.addMethod(access(md), md.id.spelling, descriptor(md), code);
+		}
+		return cf.toByteArray();
+	}
+
+	private Code generate(ClassFile cf, MethodDecl md) {
+		Code code = generate(cf, md, false);
+		return code.jumpTooFar() ? generate(cf, md, true) : code;
+	}
+
+	private Code generate(ClassFile cf, MethodDecl md, boolean wideJumps) {
+		method = md;
+		localSlot.clear();
+		nextSlot = md.isStatic ? 0 : 1; // this is in slot 0
+		for (ParameterDecl pd : md.parameterDeclList)
+			localSlot.put(pd, nextSlot++);
+		code = new Code(cf.pool, nextSlot, wideJumps);
+		code.line(md.posn.start);
+
+		StatementList sl = md.statementList;
+		statements(sl);
+		if (sl.size() == 0 || !(sl.get(sl.size() - 1) instanceof ReturnStmt)) {
+			// the end of the method is reached without a return
+			if (md.type.typeKind == TypeKind.VOID) {
+				code.op(Code.RETURN, 0);
+			} else if (isReference(md.type)) {
+				code.op(Code.ACONST_NULL, 1);
+				code.op(Code.ARETURN, -1);
+			} else {
+				code.iconst(0);
+				code.op(Code.IRETURN, -1);
+			}
+		}
+		return code;
+	}
+
+	// Types and descriptors
+
+	private static int access(MemberDecl md) {
+		return ClassFile.ACC_PUBLIC | (md.isStatic ? ClassFile.ACC_STATIC : 0);
+	}
+
+	private static String descriptor(TypeDenoter type) {
+		switch (type.typeKind) {
+		case INT:
+			return "I";
+		case BOOLEAN:
+			return "Z";
+		case VOID:
+			return "V";
+		case ARRAY:
+			return "[" + descriptor(((ArrayType) type).eltType);
+		case CLASS: {
+			ClassDecl cd = ((ClassType) type).getDecl();
+			return cd != null ? "L" + cd.id.spelling + ";" : "Ljava/lang/String;";
+		}
+		default: // String
+			return "Ljava/lang/String;";
+		}
+	}
+
+	private static String descriptor(MethodDecl md) {
+		if (md.isMain())
+			return "([Ljava/lang/String;)V";
+		StringBuilder s = new StringBuilder("(");
+		for (ParameterDecl pd : md.parameterDeclList)
+			s.append(descriptor(pd.type));
+		return s.append(')').append(descriptor(md.type)).toString();
+	}
+
+	// the name ANEWARRAY takes for an array of this type
+	private static String className(TypeDenoter type) {
+		String descriptor = descriptor(type);
+		return descriptor.charAt(0) == 'L' ? descriptor.substring(1, descriptor.length() - 1) : descriptor;
+	}
+
+	private static String owner(MemberDecl md) {
+		return md.classDecl.id.spelling;
+	}
+
+	private static boolean isReference(TypeDenoter type) {
+		return type == null || type.typeKind != TypeKind.INT && type.typeKind != TypeKind.BOOLEAN;
+	}
+
+	private static boolean isReference(Expression expr) {
+		if (expr instanceof RefExpr) {
+			Reference ref = ((RefExpr) expr).ref;
+			return ref instanceof ThisRef || isReference(ref.getType());
+		}
+		if (expr instanceof CallExpr)
+			return isReference(((CallExpr) expr).functionRef.getDecl().type);
+		if (expr instanceof LiteralExpr)
+			return ((LiteralExpr) expr).lit instanceof NullLiteral;
+		return expr instanceof NewExpr;
+	}
+
+	// the array load or store opcode for elements of this type
+	private static int arrayOpcode(TypeDenoter eltType, boolean store) {
+		switch (eltType.typeKind) {
+		case INT:
+			return store ? Code.IASTORE : Code.IALOAD;
+		case BOOLEAN:
+			return store ? Code.BASTORE : Code.BALOAD;
+		default:
+			return store ? Code.AASTORE : Code.AALOAD;
+		}
+	}
+
+	private void line(AST node) {
+		if (node.posn != null)
+			code.line(node.posn.start);
+	}
+
+	// Conditions
+
+	// emits jumps, added to patches, that are taken when cond is jumpIf;
+	// otherwise control falls through
+	private void branch(Expression cond, boolean jumpIf, List<Integer> patches) {
+		if (cond instanceof UnaryExpr && ((UnaryExpr) cond).operator.kind == Token.NOT) {
+			branch(((UnaryExpr) cond).expr, !jumpIf, patches);
+			return;
+		}
+		if (cond instanceof LiteralExpr && ((LiteralExpr) cond).lit instanceof BooleanLiteral) {
+			if ((((LiteralExpr) cond).lit.kind == Token.TRUE) == jumpIf)
+				patches.add(code.jump(Code.GOTO));
+			return;
+		}
+		if (cond instanceof BinaryExpr) {
+			BinaryExpr expr = (BinaryExpr) cond;
+			int op = expr.operator.kind;
+			if (op == Token.AND || op == Token.OR) {
+				if (jumpIf == (op == Token.OR)) { // either operand decides
+					branch(expr.left, jumpIf, patches);
+					branch(expr.right, jumpIf, patches);
+				} else { // both must
+					List<Integer> skip = new ArrayList<Integer>();
+					branch(expr.left, !jumpIf, skip);
+					branch(expr.right, jumpIf, patches);
+					code.patch(skip, code.position());
+				}
+				return;
+			}
+			int jump = compareJump(op, isReference(expr.left));
+			if (jump >= 0) {
+				expr.left.visit(this, null);
+				expr.right.visit(this, null);
+				patches.add(code.jump(jumpIf ? jump : Code.negate(jump)));
+				return;
+			}
+		}
+		cond.visit(this, null);
+		patches.add(code.jump(jumpIf ? Code.IFNE : Code.IFEQ));
+	}
+
+	// a condition's value, 0 or 1, through branches
+	private void booleanValue(Expression cond) {
+		List<Integer> whenFalse = new ArrayList<Integer>();
+		List<Integer> toEnd = new ArrayList<Integer>();
+		branch(cond, false, whenFalse);
+		code.iconst(1);
+		toEnd.add(code.jump(Code.GOTO));
+		code.adjust(-1); // the 1 is not on the stack at whenFalse
+		code.patch(whenFalse, code.position());
+		code.iconst(0);
+		code.patch(toEnd, code.position());
+	}
+
+	private static int compareJump(int op, boolean ref) {
+		switch (op) {
+		case Token.LESS:
+			return Code.IF_ICMPLT;
+		case Token.LEQUAL:
+			return Code.IF_ICMPLE;
+		case Token.GREATER:
+			return Code.IF_ICMPGT;
+		case Token.GEQUAL:
+			return Code.IF_ICMPGE;
+		case Token.EQUAL:
+			return ref ? Code.IF_ACMPEQ : Code.IF_ICMPEQ;
+		case Token.NOTEQUAL:
+			return ref ? Code.IF_ACMPNE : Code.IF_ICMPNE;
+		default:
+			return -1;
+		}
+	}
+
+	// Calls: visiting one leaves its result, if any, on the stack
+
+	private void call(Reference methodRef, ExprList args) {
+		MethodDecl md = (MethodDecl) methodRef.getDecl();
+		if (md.classDecl == null) { // predefined, so System.out.println
+			args.get(0).visit(this, null);
+			code.invoke(Code.INVOKESTATIC, RUNTIME, "println", "(I)V");
+			return;
+		}
+
+		if (!md.isStatic) {
+			if (methodRef instanceof QualRef)
+				((QualRef) methodRef).ref.visit(this, null);
+			else
+				code.load(true, 0);
+		}
+		for (Expression arg : args)
+			arg.visit(this, null);
+		line(methodRef);
+		code.invoke(md.isStatic ? Code.INVOKESTATIC : Code.INVOKEVIRTUAL, owner(md), md.id.spelling, descriptor(md));
+	}
+
+	// Package and declarations: generate visits classes and methods itself
+
+	public Object visitPackage(Package prog, Object arg) {
+		return null;
+	}
+
+	public Object visitClassDecl(ClassDecl cd, Object arg) {
+		return null;
+	}
+
+	public Object visitFieldDecl(FieldDecl fd, Object arg) {
+		return null;
+	}
+
+	public Object visitMethodDecl(MethodDecl md, Object arg) {
+		return null;
+	}
+
+	public Object visitParameterDecl(ParameterDecl pd, Object arg) {
+		return null;
+	}
+
+	public Object visitVarDecl(VarDecl decl, Object arg) {
+		return null;
+	}
+
+	// Types
+
+	public Object visitBaseType(BaseType type, Object arg) {
+		return null;
+	}
+
+	public Object visitClassType(ClassType type, Object arg) {
+		return null;
+	}
+
+	public Object visitArrayType(ArrayType type, Object arg) {
+		return null;
+	}
+
+	// Statements
+
+	// a block: the slots of its locals are free again after it
+	private void statements(StatementList sl) {
+		int slots = nextSlot;
+		for (Statement s : sl)
+			statement(s);
+		nextSlot = slots;
+	}
+
+	private void statement(Statement s) {
+		line(s);
+		s.visit(this, null);
+	}
+
+	public Object visitBlockStmt(BlockStmt stmt, Object arg) {
+		statements(stmt.sl);
+		return null;
+	}
+
+	public Object visitVardeclStmt(VarDeclStmt stmt, Object arg) {
+		stmt.initExp.visit(this, null);
+		int slot = nextSlot++;
+		localSlot.put(stmt.varDecl, slot);
+		code.store(isReference(stmt.varDecl.type), slot);
+		return null;
+	}
+
+	public Object visitAssignStmt(AssignStmt stmt, Object arg) {
+		Reference ref = stmt.ref;
+		if (ref instanceof IxRef) {
+			IxRef ix = (IxRef) ref;
+			ix.ref.visit(this, null);
+			ix.indexExpr.visit(this, null);
+			stmt.val.visit(this, null);
+			line(ix);
+			code.op(arrayOpcode(ix.getType(), true), -3);
+			return null;
+		}
+
+		Declaration decl = ref.getDecl();
+		if (decl instanceof LocalDecl) {
+			int slot = localSlot.get(decl);
+			if (!increment(slot, (LocalDecl) decl, stmt.val)) {
+				stmt.val.visit(this, null);
+				code.store(isReference(decl.type), slot);
+			}
+			return null;
+		}
+		FieldDecl fd = (FieldDecl) decl;
+		if (fd.isStatic) {
+			stmt.val.visit(this, null);
+			code.field(Code.PUTSTATIC, owner(fd), fd.id.spelling, descriptor(fd.type));
+		} else {
+			if (ref instanceof QualRef)
+				((QualRef) ref).ref.visit(this, null);
+			else
+				code.load(true, 0);
+			stmt.val.visit(this, null);
+			line(ref);
+			code.field(Code.PUTFIELD, owner(fd), fd.id.spelling, descriptor(fd.type));
+		}
+		return null;
+	}
+
+	// x = x + k and x = x - k as an IINC, when they fit one
+	private boolean increment(int slot, LocalDecl decl, Expression val) {
+		if (!(val instanceof BinaryExpr))
+			return false;
+		BinaryExpr expr = (BinaryExpr) val;
+		int op = expr.operator.kind;
+		if (op != Token.PLUS && op != Token.MINUS)
+			return false;
+		if (!(expr.left instanceof RefExpr) || ((RefExpr) expr.left).ref.getDecl() != decl
+				|| !(((RefExpr) expr.left).ref instanceof IdRef))
+			return false;
+		if (!(expr.right instanceof LiteralExpr) || !(((LiteralExpr) expr.right).lit instanceof IntLiteral))
+			return false;
+		int k = ((IntLiteral) ((LiteralExpr) expr.right).lit).getValue();
+		return code.iinc(slot, op == Token.PLUS ? k : -k);
+	}
+
+	public Object visitCallStmt(CallStmt stmt, Object arg) {
+		call(stmt.methodRef, stmt.argList);
+		MethodDecl md = (MethodDecl) stmt.methodRef.getDecl();
+		if (md.type.typeKind != TypeKind.VOID)
+			code.op(Code.POP, -1);
+		return null;
+	}
+
+	public Object visitReturnStmt(ReturnStmt stmt, Object arg) {
+		if (stmt.returnExpr == null) {
+			code.op(Code.RETURN, 0);
+		} else {
+			stmt.returnExpr.visit(this, null);
+			code.op(isReference(method.type) ? Code.ARETURN : Code.IRETURN, -1);
+		}
+		return null;
+	}
+
+	public Object visitIfStmt(IfStmt stmt, Object arg) {
+		List<Integer> toElse = new ArrayList<Integer>();
+		branch(stmt.cond, false, toElse);
+		statement(stmt.thenStmt);
+		if (stmt.elseStmt == null) {
+			code.patch(toElse, code.position());
+		} else {
+			List<Integer> toEnd = new ArrayList<Integer>();
+			toEnd.add(code.jump(Code.GOTO));
+			code.patch(toElse, code.position());
+			statement(stmt.elseStmt);
+			code.patch(toEnd, code.position());
+		}
+		return null;
+	}
+
+	// the test goes after the body, so an iteration takes one jump
+	public Object visitWhileStmt(WhileStmt stmt, Object arg) {
+		List<Integer> toTest = new ArrayList<Integer>();
+		toTest.add(code.jump(Code.GOTO));
+		int body = code.position();
+		statement(stmt.body);
+		code.patch(toTest, code.position());
+		line(stmt.cond);
+		List<Integer> toBody = new ArrayList<Integer>();
+		branch(stmt.cond, true, toBody);
+		code.patch(toBody, body);
+		return null;
+	}
+
+	// Expressions: visiting one leaves its value on the stack
+
+	public Object visitUnaryExpr(UnaryExpr expr, Object arg) {
+		expr.expr.visit(this, null);
+		if (expr.operator.kind == Token.MINUS) {
+			code.op(Code.INEG, 0);
+		} else {
+			code.iconst(1);
+			code.op(Code.IXOR, -1);
+		}
+		return null;
+	}
+
+	public Object visitBinaryExpr(BinaryExpr expr, Object arg) {
+		int op = expr.operator.kind;
+		if (op == Token.AND || op == Token.OR || compareJump(op, false) >= 0) {
+			booleanValue(expr);
+			return null;
+		}
+		expr.left.visit(this, null);
+		expr.right.visit(this, null);
+		switch (op) {
+		case Token.PLUS:
+			code.op(Code.IADD, -1);
+			break;
+		case Token.MINUS:
+			code.op(Code.ISUB, -1);
+			break;
+		case Token.TIMES:
+			code.op(Code.IMUL, -1);
+			break;
+		case Token.DIV:
+			line(expr);
+			code.op(Code.IDIV, -1);
+			break;
+		default:
+			throw new IllegalStateException("operator " + Token.spell(op));
+		}
+		return null;
+	}
+
+	public Object visitRefExpr(RefExpr expr, Object arg) {
+		return expr.ref.visit(this, null);
+	}
+
+	public Object visitCallExpr(CallExpr expr, Object arg) {
+		call(expr.functionRef, expr.argList);
+		return null;
+	}
+
+	public Object visitLiteralExpr(LiteralExpr expr, Object arg) {
+		return expr.lit.visit(this, null);
+	}
+
+	public Object visitNewObjectExpr(NewObjectExpr expr, Object arg) {
+		String name = expr.classtype.getDecl().id.spelling;
+		code.type(Code.NEW, name);
+		code.op(Code.DUP, 1);
+		code.invoke(Code.INVOKESPECIAL, name, "<init>", "()V");
+		return null;
+	}
+
+	public Object visitNewArrayExpr(NewArrayExpr expr, Object arg) {
+		expr.sizeExpr.visit(this, null);
+		line(expr);
+		if (expr.eltType.typeKind == TypeKind.INT)
+			code.newarray(Code.T_INT);
+		else if (expr.eltType.typeKind == TypeKind.BOOLEAN)
+			code.newarray(Code.T_BOOLEAN);
+		else
+			code.type(Code.ANEWARRAY, className(expr.eltType));
+		return null;
+	}
+
+	// References: visiting one loads its value
+
+	public Object visitThisRef(ThisRef ref, Object arg) {
+		code.load(true, 0);
+		return null;
+	}
+
+	public Object visitIdRef(IdRef ref, Object arg) {
+		Declaration decl = ref.id.decl;
+		if (decl instanceof LocalDecl) {
+			code.load(isReference(decl.type), localSlot.get(decl));
+			return null;
+		}
+		if (!(decl instanceof FieldDecl))
+			return null; // a class name, which has no value
+		FieldDecl fd = (FieldDecl) decl;
+		if (fd.isStatic) {
+			code.field(Code.GETSTATIC, owner(fd), fd.id.spelling, descriptor(fd.type));
+		} else {
+			code.load(true, 0);
+			code.field(Code.GETFIELD, owner(fd), fd.id.spelling, descriptor(fd.type));
+		}
+		return null;
+	}
+
+	public Object visitQRef(QualRef ref, Object arg) {
+		FieldDecl fd = (FieldDecl) ref.id.decl;
+		if (fd.classDecl == null) { // a.length, or System.out
+			if (fd.isStatic) {
+				code.op(Code.ACONST_NULL, 1);
+			} else {
+				ref.ref.visit(this, null);
+				line(ref);
+				code.op(Code.ARRAYLENGTH, 0);
+			}
+			return null;
+		}
+		if (fd.isStatic) {
+			code.field(Code.GETSTATIC, owner(fd), fd.id.spelling, descriptor(fd.type));
+		} else {
+			ref.ref.visit(this, null);
+			line(ref);
+			code.field(Code.GETFIELD, owner(fd), fd.id.spelling, descriptor(fd.type));
+		}
+		return null;
+	}
+
+	public Object visitIxRef(IxRef ref, Object arg) {
+		ref.ref.visit(this, null);
+		ref.indexExpr.visit(this, null);
+		line(ref);
+		code.op(arrayOpcode(ref.getType(), false), -1);
+		return null;
+	}
+
+	// Terminals
+
+	public Object visitIdentifier(Identifier id, Object arg) {
+		return null;
+	}
+
+	public Object visitOperator(Operator op, Object arg) {
+		return null;
+	}
+
+	public Object visitIntLiteral(IntLiteral num, Object arg) {
+		code.iconst(num.getValue());
+		return null;
+	}
+
+	public Object visitBooleanLiteral(BooleanLiteral bool, Object arg) {
+		code.iconst(bool.kind == Token.TRUE ? 1 : 0);
+		return null;
+	}
+
+	public Object visitNullLiteral(NullLiteral nullLiteral, Object arg) {
+		code.op(Code.ACONST_NULL, 1);
+		return null;
+	}
+}
@@ -0,0 +1,161 @@
+package miniJava.CodeGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import miniJava.ErrorReporter;
+
+/**
+ * The class files JVMGenerator made of a program, by class name. run loads
+ * them through a ProgramLoader of their own, once, and calls main; write
+ * saves them, to be run by java with the compiler's classes (for
+ * JVMRuntime) on the class path.
+ *
+ * The JVM makes the checks the Interpreter makes, so a runtime error is
+ * the exception it throws, reported as the Interpreter would report it: at
+ * the line of the innermost program frame, which the line number table
+ * gives, and with the message worked out from the exception's.
+ */
+public class JVMProgram {
+
+	private final Map<String, byte[]> classes;
+	private final String mainClass;
+	private Method main; // once loaded
+
+	JVMProgram(Map<String, byte[]> classes, String mainClass) {
+		this.classes = classes;
+		this.mainClass = mainClass;
+	}
+
+	public Map<String, byte[]> classes() {
+		return Collections.unmodifiableMap(classes);
+	}
+
+	public void write(File dir) throws IOException {
+		Files.createDirectories(dir.toPath());
+		for (Map.Entry<String, byte[]> c : classes.entrySet())
+			Files.write(new File(dir, c.getKey() + ".class").toPath(), c.getValue());
+	}
+
+	// runs main to the end, or until the program fails at run time, which is
+	// reported; returns whether it ran to the end. Static fields start out
+	// zero, false or null on every run.
+	public boolean run(PrintStream out, ErrorReporter reporter) {
+		JVMRuntime.out = out;
+		try {
+			if (main == null)
+				main = load();
+			else
+				clearStatics(main.getDeclaringClass().getClassLoader());
+			main.invoke(null, (Object) new String[0]);
+			return true;
+		} catch (InvocationTargetException e) {
+			Throwable failure = e.getCause();
+			if (failure instanceof StackOverflowError)
+				reporter.reportError("*** line N/A: Runtime Error - stack overflow");
+			else if (failure instanceof RuntimeException)
+				reporter.reportError("*** line " + line(failure) + ": Runtime Error - " + message(failure));
+			else
+				throw new IllegalStateException(failure);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("cannot run " + mainClass, e);
+		} finally {
+			out.flush();
+		}
+		return false;
+	}
+
+	private Method load() throws ReflectiveOperationException {
+		ClassLoader loader = new ProgramLoader(classes);
+		for (String name : classes.keySet())
+			Class.forName(name, true, loader);
+		return loader.loadClass(mainClass).getMethod("main", String[].class);
+	}
+
+	private void clearStatics(ClassLoader loader) throws ReflectiveOperationException {
+		for (String name : classes.keySet())
+			for (Field f : loader.loadClass(name).getDeclaredFields()) {
+				if (!Modifier.isStatic(f.getModifiers()))
+					continue;
+				if (f.getType() == int.class)
+					f.setInt(null, 0);
+				else if (f.getType() == boolean.class)
+					f.setBoolean(null, false);
+				else
+					f.set(null, null);
+			}
+	}
+
+	private int line(Throwable failure) {
+		for (StackTraceElement frame : failure.getStackTrace())
+			if (classes.containsKey(frame.getClassName()))
+				return frame.getLineNumber();
+		return 0;
+	}
+
+	// the Interpreter's message for what the JVM threw; for null, the JVM's
+	// own (helpful NullPointerException) message says what was done with it
+	private static String message(Throwable failure) {
+		String message = failure.getMessage();
+		if (failure instanceof ArithmeticException)
+			return "division by zero";
+		if (failure instanceof NegativeArraySizeException)
+			return "negative array size " + message;
+		if (failure instanceof ArrayIndexOutOfBoundsException)
+			return Character.toLowerCase(message.charAt(0)) + message.substring(1);
+		if (failure instanceof NullPointerException && message != null) {
+			if (message.startsWith("Cannot read field \"") || message.startsWith("Cannot assign field \""))
+				return "field " + message.split("\"")[1] + " of null";
+			if (message.startsWith("Cannot invoke \"")) {
+				String method = message.split("\"")[1];
+				return "call of " + method.substring(method.lastIndexOf('.') + 1, method.indexOf('(')) + " on null";
+			}
+			if (message.startsWith("Cannot read the array length"))
+				return "length of null";
+			if (message.startsWith("Cannot load from") || message.startsWith("Cannot store to"))
+				return "indexing null";
+		}
+		return String.valueOf(failure);
+	}
+
+	// loads the program's classes ahead of any of the same name its parent,
+	// the compiler's loader, could find
+	private static class ProgramLoader extends ClassLoader {
+		private final Map<String, byte[]> classes;
+
+		ProgramLoader(Map<String, byte[]> classes) {
+			super(JVMProgram.class.getClassLoader());
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!classes.containsKey(name))
+				return super.loadClass(name, resolve);
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if (c == null)
+					c = findClass(name);
+				if (resolve)
+					resolveClass(c);
+				return c;
+			}
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name);
+			if (bytes == null)
+				throw new ClassNotFoundException(name);
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
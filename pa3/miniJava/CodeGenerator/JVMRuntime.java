@@ -0,0 +1,20 @@
+package miniJava.CodeGenerator;
+
+import java.io.PrintStream;
+
+/**
+ * What the classes JVMGenerator writes call on at run time:
+ * System.out.println(n) becomes JVMRuntime.println(n), which prints to the
+ * stream of the JVMProgram being run.
+ */
+public final class JVMRuntime {
+
+	private JVMRuntime() {
+	}
+
+	static PrintStream out = System.out;
+
+	public static void println(int value) {
+		out.println(value);
+	}
+}
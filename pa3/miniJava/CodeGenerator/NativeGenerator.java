@@ -0,0 +1,726 @@
+package miniJava.CodeGenerator;
+
+import static miniJava.CodeGenerator.X86Assembler.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import miniJava.Interpreter.BytecodeProgram;
+import miniJava.Interpreter.Function;
+import miniJava.Interpreter.Opcode;
+
+/**
+ * Compiles a BytecodeProgram to a statically linked x86-64 Linux
+ * executable, machine code and ELF file both written here: it needs no
+ * assembler, linker or C library, only the kernel's system calls.
+ *
+ * Each Function becomes one machine-code function whose registers
+ * GraphColoring maps onto machine registers or stack slots; rax, rcx and rdx
+ * are left over for the code of a single instruction. Arguments are pushed,
+ * the receiver first, and popped by the caller, and a result comes back in
+ * rax. ints live zero-extended in 64-bit registers.
+ *
+ * Objects and arrays are carved out of one big mapping by bumping r15 and
+ * are never freed; where the address space is limited, the mapping is
+ * halved until it fits. An object's reference pointer points between its fields:
+ * its int fields above it, its reference fields below. An array starts with
+ * its length in the first of 8 bytes of header, followed by 4-byte ints or
+ * 8-byte references.
+ *
+ * The code makes the checks the VM leaves to Java (null, index, division by
+ * zero, array size, stack depth) itself, but for the array accesses the
+ * bytecode marks as in bounds (see Function.isInBounds). One that fails
+ * jumps to a stub that writes the runtime error the Interpreter would
+ * report and exits with status 4. Output goes through a buffer written out
+ * when it fills and at exit.
+ */
+public class NativeGenerator {
+
+	private static final int TEXT_BASE = 0x400000;
+	private static final int DATA_BASE = 0x10000000;
+
+	// the data, zero at startup
+	private static final int HEAP_LIMIT = DATA_BASE, STACK_LIMIT = DATA_BASE + 8, OUT_POSITION = DATA_BASE + 16;
+	private static final int OUT_BUFFER = DATA_BASE + 64, OUT_SIZE = 1 << 16;
+	private static final int STATICS = OUT_BUFFER + OUT_SIZE;
+
+	private static final long HEAP_SIZE = 1L << 32;
+	private static final int MIN_HEAP_SIZE = 16 << 20; // the least worth running with
+	private static final int STACK_SIZE = 64 << 20;
+	private static final int STACK_RESERVE = 64 << 10; // left for reporting a stack overflow
+
+	private final X86Assembler asm = new X86Assembler();
+	private BytecodeProgram program;
+	private Label[] entries; // by function
+	private Label flush, putByte, putInt, println, puts, exit, stackOverflow, outOfMemory;
+
+	// the function being generated
+	private Function f;
+	private GraphColoring registers;
+	private Label[] instructions; // by code index
+	private Label epilogue;
+	private List<Runnable> stubs;
+
+	public byte[] generate(BytecodeProgram program) {
+		this.program = program;
+		entries = new Label[program.functions.length];
+		for (int i = 0; i < entries.length; i++)
+			entries[i] = asm.label();
+		flush = asm.label();
+		putByte = asm.label();
+		putInt = asm.label();
+		println = asm.label();
+		puts = asm.label();
+		exit = asm.label();
+		stackOverflow = asm.label();
+		outOfMemory = asm.label();
+
+		Label start = asm.label();
+		start(start);
+		runtime();
+		for (int i = 0; i < entries.length; i++)
+			function(i);
+
+		long codeBase = TEXT_BASE + ElfFile.HEADERS;
+		byte[] text = asm.link((int) codeBase);
+		int dataSize = STATICS - DATA_BASE + 8 * (program.staticInts + program.staticRefs);
+		return ElfFile.executable(text, TEXT_BASE, codeBase + start.position, DATA_BASE, dataSize);
+	}
+
+	// Startup and runtime routines
+
+	// maps a stack and the heap, calls main with an empty args array and
+	// exits; the heap is HEAP_SIZE, or halved in r12 until the mapping
+	// succeeds, and if not even MIN_HEAP_SIZE can be had, out of memory is
+	// reported
+	private void start(Label start) {
+		Label mapHeap = asm.label(), heapMapped = asm.label();
+		asm.bind(start);
+		asm.movImm(RSI, STACK_SIZE);
+		mmap();
+		asm.jcc(AE, outOfMemory);
+		asm.lea(RCX, mem(RAX, STACK_RESERVE));
+		asm.mov(true, abs(STACK_LIMIT), reg(RCX));
+		asm.lea(RSP, mem(RAX, STACK_SIZE));
+
+		asm.movImm64(R12, HEAP_SIZE);
+		asm.bind(mapHeap);
+		asm.mov(RSI, R12);
+		mmap();
+		asm.jcc(B, heapMapped);
+		asm.shift(SHR, true, reg(R12), 1);
+		asm.aluImm(CMP, true, reg(R12), MIN_HEAP_SIZE);
+		asm.jcc(AE, mapHeap);
+		asm.jmp(outOfMemory);
+		asm.bind(heapMapped);
+		asm.mov(R15, RAX);
+		asm.lea(RCX, mem(R15, R12, 1, 0));
+		asm.mov(true, abs(HEAP_LIMIT), reg(RCX));
+
+		asm.push(R15); // args, of length 0
+		asm.aluImm(ADD, true, reg(R15), 8);
+		asm.call(entries[program.main]);
+		asm.movImm(RDI, 0);
+		asm.jmp(exit);
+	}
+
+	// rax = mmap(0, rsi, PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS
+	// | MAP_NORESERVE, -1, 0), then compared with the first error value
+	// (-4095), so that it is below (B) if the mapping succeeded and above or
+	// equal (AE) if it failed
+	private void mmap() {
+		asm.movImm(RAX, 9);
+		asm.movImm(RDI, 0);
+		asm.movImm(RDX, 3);
+		asm.movImm(R10, 0x4022);
+		asm.movImm64(R8, -1);
+		asm.movImm(R9, 0);
+		asm.syscall();
+		asm.aluImm(CMP, true, reg(RAX), -4095);
+	}
+
+	// The routines the generated code calls may change rax, rcx and rdx, and
+	// no other register.
+	private void runtime() {
+		// flush: writes out the output buffer
+		Label write = asm.label(), written = asm.label();
+		asm.bind(flush);
+		asm.push(RSI);
+		asm.push(RDI);
+		asm.push(R11);
+		asm.movImm(RSI, OUT_BUFFER);
+		asm.mov(false, reg(RDX), abs(OUT_POSITION));
+		asm.bind(write);
+		asm.test(false, reg(RDX), RDX);
+		asm.jcc(E, written);
+		asm.movImm(RAX, 1); // write
+		asm.movImm(RDI, 1);
+		asm.syscall();
+		asm.test(true, reg(RAX), RAX);
+		asm.jcc(LE, written);
+		asm.alu(ADD, true, RSI, reg(RAX));
+		asm.alu(SUB, false, RDX, reg(RAX));
+		asm.jmp(write);
+		asm.bind(written);
+		asm.movImm(abs(OUT_POSITION), 0);
+		asm.pop(R11);
+		asm.pop(RDI);
+		asm.pop(RSI);
+		asm.ret();
+
+		// putByte: appends al to the output buffer
+		Label room = asm.label();
+		asm.bind(putByte);
+		asm.mov(false, reg(RCX), abs(OUT_POSITION));
+		asm.aluImm(CMP, false, reg(RCX), OUT_SIZE);
+		asm.jcc(B, room);
+		asm.push(RAX);
+		asm.call(flush);
+		asm.pop(RAX);
+		asm.alu(XOR, false, RCX, reg(RCX));
+		asm.bind(room);
+		asm.storeByte(mem(-1, RCX, 1, OUT_BUFFER), RAX);
+		asm.aluImm(ADD, false, reg(RCX), 1);
+		asm.mov(false, abs(OUT_POSITION), reg(RCX));
+		asm.ret();
+
+		// putInt: appends eax in decimal, its digits pushed lowest first
+		Label positive = asm.label(), digits = asm.label(), put = asm.label();
+		asm.bind(putInt);
+		asm.test(false, reg(RAX), RAX);
+		asm.jcc(NS, positive);
+		asm.push(RAX);
+		asm.movImm(RAX, '-');
+		asm.call(putByte);
+		asm.pop(RAX);
+		asm.unary(NEG, false, reg(RAX)); // leaves MIN_VALUE as 2^31, unsigned
+		asm.bind(positive);
+		asm.push(RSI);
+		asm.movImm(RSI, 0);
+		asm.movImm(RCX, 10);
+		asm.bind(digits);
+		asm.movImm(RDX, 0);
+		asm.unary(DIV, false, reg(RCX));
+		asm.aluImm(ADD, false, reg(RDX), '0');
+		asm.push(RDX);
+		asm.aluImm(ADD, false, reg(RSI), 1);
+		asm.test(false, reg(RAX), RAX);
+		asm.jcc(NE, digits);
+		asm.bind(put);
+		asm.pop(RAX);
+		asm.call(putByte);
+		asm.aluImm(SUB, false, reg(RSI), 1);
+		asm.jcc(NE, put);
+		asm.pop(RSI);
+		asm.ret();
+
+		// println: appends eax and a newline
+		asm.bind(println);
+		asm.call(putInt);
+		asm.movImm(RAX, '\n');
+		asm.jmp(putByte);
+
+		// puts: appends the edx bytes at rsi
+		Label next = asm.label(), done = asm.label();
+		asm.bind(puts);
+		asm.push(RSI);
+		asm.bind(next);
+		asm.test(false, reg(RDX), RDX);
+		asm.jcc(E, done);
+		asm.loadByte(RAX, mem(RSI, 0));
+		asm.push(RDX);
+		asm.call(putByte);
+		asm.pop(RDX);
+		asm.aluImm(ADD, true, reg(RSI), 1);
+		asm.aluImm(SUB, false, reg(RDX), 1);
+		asm.jmp(next);
+		asm.bind(done);
+		asm.pop(RSI);
+		asm.ret();
+
+		// exit: flushes the output and exits with status edi
+		asm.bind(exit);
+		asm.call(flush);
+		asm.movImm(RAX, 231); // exit_group
+		asm.syscall();
+
+		asm.bind(stackOverflow);
+		text("*** line N/A: Runtime Error - stack overflow\n");
+		asm.movImm(RDI, 4);
+		asm.jmp(exit);
+
+		asm.bind(outOfMemory);
+		text("*** line N/A: Runtime Error - out of memory\n");
+		asm.movImm(RDI, 4);
+		asm.jmp(exit);
+	}
+
+	// appends s to the output
+	private void text(String s) {
+		asm.movData(RSI, asm.data(s));
+		asm.movImm(RDX, s.length());
+		asm.call(puts);
+	}
+
+	// Functions
+
+	private void function(int index) {
+		f = program.functions[index];
+		registers = new GraphColoring(f, program);
+		int[] code = f.code;
+		instructions = new Label[code.length];
+		for (int pc = 0; pc < code.length; pc += Opcode.length(code, pc))
+			instructions[pc] = asm.label();
+		epilogue = asm.label();
+		stubs = new ArrayList<Runnable>();
+
+		asm.bind(entries[index]);
+		asm.push(RBP);
+		asm.mov(RBP, RSP);
+		asm.alu(CMP, true, RSP, abs(STACK_LIMIT));
+		asm.jcc(B, stackOverflow);
+		for (int r : registers.calleeSaved)
+			asm.push(r);
+		if (registers.slots > 0)
+			asm.aluImm(SUB, true, reg(RSP), 8 * registers.slots);
+
+		// the arguments, the last pushed just above the return address
+		int m = f.paramRegisters.length + (f.decl.isStatic ? 0 : 1);
+		int j = 0;
+		if (!f.decl.isStatic)
+			move(location(true, 0), mem(RBP, 16 + 8 * (m - 1 - j++)));
+		for (int p = 0; p < f.paramRegisters.length; p++)
+			move(location(f.paramIsRef[p], f.paramRegisters[p]), mem(RBP, 16 + 8 * (m - 1 - j++)));
+
+		for (int pc = 0; pc < code.length; pc += Opcode.length(code, pc)) {
+			asm.bind(instructions[pc]);
+			instruction(pc);
+		}
+
+		asm.bind(epilogue);
+		asm.lea(RSP, mem(RBP, -8 * registers.calleeSaved.size()));
+		for (int i = registers.calleeSaved.size() - 1; i >= 0; i--)
+			asm.pop(registers.calleeSaved.get(i));
+		asm.pop(RBP);
+		asm.ret();
+
+		for (Runnable stub : stubs)
+			stub.run();
+	}
+
+	// where register r of the function lives
+	private Operand location(boolean ref, int r) {
+		int v = registers.vreg(ref, r);
+		if (registers.register[v] >= 0)
+			return reg(registers.register[v]);
+		return mem(RBP, -8 * (registers.calleeSaved.size() + 1 + registers.slot[v]));
+	}
+
+	private Operand i(int r) {
+		return location(false, r);
+	}
+
+	private Operand r(int r) {
+		return location(true, r);
+	}
+
+	// dst = src, all 64 bits
+	private void move(Operand dst, Operand src) {
+		if (dst.sameAs(src))
+			return;
+		if (dst.isReg() || src.isReg()) {
+			asm.mov(true, dst, src);
+		} else {
+			asm.mov(true, reg(RAX), src);
+			asm.mov(true, dst, reg(RAX));
+		}
+	}
+
+	// r = the int at src
+	private void load(int r, Operand src) {
+		if (!src.isReg() || src.reg != r)
+			asm.mov(false, reg(r), src);
+	}
+
+	private void store(Operand dst, int r) {
+		if (!dst.isReg() || dst.reg != r)
+			asm.mov(true, dst, reg(r));
+	}
+
+	// a register holding what is at loc: its own, or scratch, loaded
+	private int use(Operand loc, int scratch) {
+		if (loc.isReg())
+			return loc.reg;
+		asm.mov(true, reg(scratch), loc);
+		return scratch;
+	}
+
+	// the register to compute a result for dst in: its own, or scratch
+	private static int target(Operand dst, int scratch) {
+		return dst.isReg() ? dst.reg : scratch;
+	}
+
+	private void instruction(int pc) {
+		int[] code = f.code;
+		int op = code[pc];
+		switch (op) {
+		case Opcode.ICONST: {
+			int t = target(i(code[pc + 1]), RAX);
+			asm.movImm(t, code[pc + 2]);
+			store(i(code[pc + 1]), t);
+			break;
+		}
+		case Opcode.IMOV:
+			move(i(code[pc + 1]), i(code[pc + 2]));
+			break;
+		case Opcode.RMOV:
+			move(r(code[pc + 1]), r(code[pc + 2]));
+			break;
+		case Opcode.RNULL: {
+			Operand d = r(code[pc + 1]);
+			if (d.isReg())
+				asm.alu(XOR, false, d.reg, d);
+			else
+				asm.movImm(d, 0);
+			break;
+		}
+
+		case Opcode.IADD:
+			arithmetic(ADD, i(code[pc + 1]), i(code[pc + 2]), i(code[pc + 3]));
+			break;
+		case Opcode.ISUB:
+			arithmetic(SUB, i(code[pc + 1]), i(code[pc + 2]), i(code[pc + 3]));
+			break;
+		case Opcode.IMUL:
+			arithmetic(IMUL, i(code[pc + 1]), i(code[pc + 2]), i(code[pc + 3]));
+			break;
+		case Opcode.IDIV: {
+			// idiv faults on MIN_VALUE / -1, which is MIN_VALUE in Java
+			Label divide = asm.label(), done = asm.label();
+			load(RCX, i(code[pc + 3]));
+			asm.test(false, reg(RCX), RCX);
+			asm.jcc(E, fail(pc, "division by zero"));
+			load(RAX, i(code[pc + 2]));
+			asm.aluImm(CMP, false, reg(RCX), -1);
+			asm.jcc(NE, divide);
+			asm.unary(NEG, false, reg(RAX));
+			asm.jmp(done);
+			asm.bind(divide);
+			asm.cdq();
+			asm.unary(IDIV, false, reg(RCX));
+			asm.bind(done);
+			store(i(code[pc + 1]), RAX);
+			break;
+		}
+		case Opcode.IADDK: {
+			Operand d = i(code[pc + 1]);
+			int t = target(d, RAX);
+			load(t, i(code[pc + 2]));
+			asm.aluImm(ADD, false, reg(t), code[pc + 3]);
+			store(d, t);
+			break;
+		}
+		case Opcode.INEG:
+		case Opcode.NOT: {
+			Operand d = i(code[pc + 1]);
+			int t = target(d, RAX);
+			load(t, i(code[pc + 2]));
+			if (op == Opcode.INEG)
+				asm.unary(NEG, false, reg(t));
+			else
+				asm.aluImm(XOR, false, reg(t), 1);
+			store(d, t);
+			break;
+		}
+		case Opcode.ILT:
+		case Opcode.ILE:
+		case Opcode.IGT:
+		case Opcode.IGE:
+		case Opcode.IEQ:
+		case Opcode.INE:
+		case Opcode.REQ:
+		case Opcode.RNE: {
+			boolean refs = op == Opcode.REQ || op == Opcode.RNE;
+			compare(refs, location(refs, code[pc + 2]), location(refs, code[pc + 3]));
+			Operand d = i(code[pc + 1]);
+			int t = target(d, RAX);
+			asm.setcc(condition(op), RAX);
+			asm.movzxByte(t, RAX);
+			store(d, t);
+			break;
+		}
+
+		case Opcode.JMP:
+			asm.jmp(instructions[code[pc + 1]]);
+			break;
+		case Opcode.JZ:
+		case Opcode.JNZ:
+			asm.aluImm(CMP, false, i(code[pc + 1]), 0);
+			asm.jcc(op == Opcode.JZ ? E : NE, instructions[code[pc + 2]]);
+			break;
+		case Opcode.JLT:
+		case Opcode.JLE:
+		case Opcode.JGT:
+		case Opcode.JGE:
+		case Opcode.JEQ:
+		case Opcode.JNE:
+		case Opcode.JREQ:
+		case Opcode.JRNE: {
+			boolean refs = op == Opcode.JREQ || op == Opcode.JRNE;
+			compare(refs, location(refs, code[pc + 1]), location(refs, code[pc + 2]));
+			asm.jcc(condition(op), instructions[code[pc + 3]]);
+			break;
+		}
+
+		case Opcode.GETI:
+		case Opcode.GETR: {
+			int o = nonNull(pc, r(code[pc + 2]), "field " + f.nameAt(pc) + " of null");
+			Operand d = location(op == Opcode.GETR, code[pc + 1]);
+			int t = target(d, RCX);
+			if (op == Opcode.GETI)
+				asm.mov(false, reg(t), mem(o, 8 * code[pc + 3]));
+			else
+				asm.mov(true, reg(t), mem(o, -8 * (code[pc + 3] + 1)));
+			store(d, t);
+			break;
+		}
+		case Opcode.PUTI:
+		case Opcode.PUTR: {
+			int o = nonNull(pc, r(code[pc + 1]), "field " + f.nameAt(pc) + " of null");
+			int s = use(location(op == Opcode.PUTR, code[pc + 3]), RCX);
+			if (op == Opcode.PUTI)
+				asm.mov(true, mem(o, 8 * code[pc + 2]), reg(s));
+			else
+				asm.mov(true, mem(o, -8 * (code[pc + 2] + 1)), reg(s));
+			break;
+		}
+		case Opcode.GETSI:
+		case Opcode.GETSR: {
+			Operand d = location(op == Opcode.GETSR, code[pc + 1]);
+			int t = target(d, RAX);
+			asm.mov(true, reg(t), abs(staticField(op == Opcode.GETSR, code[pc + 2])));
+			store(d, t);
+			break;
+		}
+		case Opcode.PUTSI:
+		case Opcode.PUTSR: {
+			int s = use(location(op == Opcode.PUTSR, code[pc + 2]), RAX);
+			asm.mov(true, abs(staticField(op == Opcode.PUTSR, code[pc + 1])), reg(s));
+			break;
+		}
+
+		case Opcode.NEW: {
+			int ints = code[pc + 2], refs = code[pc + 3];
+			asm.lea(RAX, mem(R15, 8 * refs));
+			asm.aluImm(ADD, true, reg(R15), 8 * Math.max(ints + refs, 1));
+			heapCheck(pc);
+			store(r(code[pc + 1]), RAX);
+			break;
+		}
+		case Opcode.NEWAI:
+		case Opcode.NEWAR:
+			load(RCX, i(code[pc + 2]));
+			asm.test(false, reg(RCX), RCX);
+			asm.jcc(S, failSize(pc));
+			if (op == Opcode.NEWAI) {
+				asm.lea(RDX, mem(-1, RCX, 4, 8 + 7));
+				asm.aluImm(AND, true, reg(RDX), -8);
+			} else {
+				asm.lea(RDX, mem(-1, RCX, 8, 8));
+			}
+			asm.mov(RAX, R15);
+			asm.mov(false, mem(R15, 0), reg(RCX));
+			asm.alu(ADD, true, R15, reg(RDX));
+			heapCheck(pc);
+			store(r(code[pc + 1]), RAX);
+			break;
+		case Opcode.ALDI:
+		case Opcode.ALDR: {
+			int a = indexed(pc, r(code[pc + 2]), i(code[pc + 3]));
+			Operand d = location(op == Opcode.ALDR, code[pc + 1]);
+			int t = target(d, RDX);
+			if (op == Opcode.ALDI)
+				asm.mov(false, reg(t), mem(a, RCX, 4, 8));
+			else
+				asm.mov(true, reg(t), mem(a, RCX, 8, 8));
+			store(d, t);
+			break;
+		}
+		case Opcode.ASTI:
+		case Opcode.ASTR: {
+			int a = indexed(pc, r(code[pc + 1]), i(code[pc + 2]));
+			int s = use(location(op == Opcode.ASTR, code[pc + 3]), RDX);
+			if (op == Opcode.ASTI)
+				asm.mov(false, mem(a, RCX, 4, 8), reg(s));
+			else
+				asm.mov(true, mem(a, RCX, 8, 8), reg(s));
+			break;
+		}
+		case Opcode.ALEN: {
+			int a = nonNull(pc, r(code[pc + 2]), "length of null");
+			Operand d = i(code[pc + 1]);
+			int t = target(d, RCX);
+			asm.mov(false, reg(t), mem(a, 0));
+			store(d, t);
+			break;
+		}
+
+		case Opcode.CALL: {
+			Function callee = program.functions[code[pc + 1]];
+			int n = code[pc + 4];
+			int pushed = n;
+			if (code[pc + 2] >= 0) {
+				asm.push(nonNull(pc, r(code[pc + 2]), "call of " + f.nameAt(pc) + " on null"));
+				pushed++;
+			}
+			for (int a = 0; a < n; a++)
+				asm.push(location(callee.paramIsRef[a], code[pc + 5 + a]));
+			asm.call(entries[code[pc + 1]]);
+			if (pushed > 0)
+				asm.aluImm(ADD, true, reg(RSP), 8 * pushed);
+			if (code[pc + 3] >= 0)
+				store(location(callee.returnsRef, code[pc + 3]), RAX);
+			break;
+		}
+		case Opcode.RETI:
+		case Opcode.RETR:
+			asm.mov(true, reg(RAX), location(op == Opcode.RETR, code[pc + 1]));
+			asm.jmp(epilogue);
+			break;
+		case Opcode.RET:
+			asm.jmp(epilogue);
+			break;
+		case Opcode.PRINT:
+			load(RAX, i(code[pc + 1]));
+			asm.call(println);
+			break;
+		default:
+			throw new IllegalStateException(f.name + ": bad opcode " + op + " at " + pc);
+		}
+	}
+
+	// d = a op b, for ADD, SUB or IMUL
+	private void arithmetic(int op, Operand d, Operand a, Operand b) {
+		if (d.sameAs(b) && op != SUB) {
+			Operand swap = a;
+			a = b;
+			b = swap;
+		}
+		int t = d.isReg() && !d.sameAs(b) ? d.reg : RAX;
+		load(t, a);
+		asm.alu(op, false, t, b);
+		store(d, t);
+	}
+
+	private void compare(boolean refs, Operand a, Operand b) {
+		asm.alu(CMP, refs, use(a, RAX), b);
+	}
+
+	private static int condition(int op) {
+		switch (op) {
+		case Opcode.ILT:
+		case Opcode.JLT:
+			return L;
+		case Opcode.ILE:
+		case Opcode.JLE:
+			return LE;
+		case Opcode.IGT:
+		case Opcode.JGT:
+			return G;
+		case Opcode.IGE:
+		case Opcode.JGE:
+			return GE;
+		case Opcode.IEQ:
+		case Opcode.JEQ:
+		case Opcode.REQ:
+		case Opcode.JREQ:
+			return E;
+		default:
+			return NE;
+		}
+	}
+
+	private int staticField(boolean ref, int k) {
+		return STATICS + 8 * (ref ? program.staticInts + k : k);
+	}
+
+	// a register holding the reference at loc, checked not to be null
+	private int nonNull(int pc, Operand loc, String message) {
+		int r = use(loc, RAX);
+		asm.test(true, reg(r), r);
+		asm.jcc(E, fail(pc, message));
+		return r;
+	}
+
+	// checks array and index for an array access, unless the IR proved them
+	// good; returns the register holding the array, the index being in rcx
+	private int indexed(int pc, Operand array, Operand index) {
+		if (f.isInBounds(pc)) {
+			int a = use(array, RAX);
+			load(RCX, index);
+			return a;
+		}
+		int a = nonNull(pc, array, "indexing null");
+		load(RCX, index);
+		asm.alu(CMP, false, RCX, mem(a, 0)); // unsigned, so a negative index is out too
+		asm.jcc(AE, failIndex(pc, a));
+		return a;
+	}
+
+	private void heapCheck(int pc) {
+		asm.alu(CMP, true, R15, abs(HEAP_LIMIT));
+		asm.jcc(A, fail(pc, "out of memory"));
+	}
+
+	// Runtime errors
+
+	private Label fail(int pc, String message) {
+		return stub(pc, () -> text(message));
+	}
+
+	// the size is in ecx
+	private Label failSize(int pc) {
+		return stub(pc, () -> {
+			text("negative array size ");
+			asm.pop(RAX);
+			asm.call(putInt);
+		}, RCX);
+	}
+
+	// the index is in ecx
+	private Label failIndex(int pc, int array) {
+		return stub(pc, () -> {
+			text("index ");
+			asm.pop(RAX);
+			asm.call(putInt);
+			text(" out of bounds for length ");
+			asm.pop(RAX);
+			asm.call(putInt);
+		}, array, RCX);
+	}
+
+	// a stub, placed after the function, that reports the runtime error at pc,
+	// whose message message writes, and exits; saved are registers whose
+	// values message pops, the last first
+	private Label stub(int pc, Runnable message, int... saved) {
+		Label label = asm.label();
+		int line = f.lineAt(pc);
+		stubs.add(() -> {
+			asm.bind(label);
+			for (int r : saved)
+				if (r == RCX)
+					asm.push(RCX);
+				else // an array, for its length
+					asm.push(mem(r, 0));
+			text("*** line ");
+			asm.movImm(RAX, line);
+			asm.call(putInt);
+			text(": Runtime Error - ");
+			message.run();
+			text("\n");
+			asm.movImm(RDI, 4);
+			asm.jmp(exit);
+		});
+		return label;
+	}
+}
@@ -0,0 +1,361 @@
+package miniJava.CodeGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// encodes the x86-64 instructions NativeGenerator uses into machine code.
+// Operands are registers (0-15 in the usual numbering) or memory operands;
+// a memory operand is always encoded with a displacement, so rbp and r13
+// need no special case. Jumps and calls take Labels and are rel32; the code
+// can also refer to its read-only data, which follows the code, by address.
+class X86Assembler {
+	static final int RAX = 0, RCX = 1, RDX = 2, RBX = 3, RSP = 4, RBP = 5, RSI = 6, RDI = 7, R8 = 8, R9 = 9,
+			R10 = 10, R11 = 11, R12 = 12, R13 = 13, R14 = 14, R15 = 15;
+
+	// condition codes
+	static final int B = 0x2, AE = 0x3, E = 0x4, NE = 0x5, BE = 0x6, A = 0x7, S = 0x8, NS = 0x9, L = 0xC,
+			GE = 0xD, LE = 0xE, G = 0xF;
+
+	// two-operand ALU instructions, reg op= r/m: their opcodes and the /digit of
+	// their immediate forms
+	static final int ADD = 0x03, AND = 0x23, SUB = 0x2B, XOR = 0x33, CMP = 0x3B, IMUL = 0x0FAF;
+	private static final int[][] IMMEDIATE = { { ADD, 0 }, { AND, 4 }, { SUB, 5 }, { XOR, 6 }, { CMP, 7 } };
+
+	// one-operand F7 /digit instructions
+	static final int NEG = 3, DIV = 6, IDIV = 7;
+
+	// C1 /digit shifts by an immediate count
+	static final int SHL = 4, SHR = 5, SAR = 7;
+
+	static class Operand {
+		final int reg; // -1 for memory
+		final int base, index, scale; // base or index -1 for none
+		final int disp;
+
+		private Operand(int reg, int base, int index, int scale, int disp) {
+			this.reg = reg;
+			this.base = base;
+			this.index = index;
+			this.scale = scale;
+			this.disp = disp;
+		}
+
+		boolean isReg() {
+			return reg >= 0;
+		}
+
+		boolean sameAs(Operand o) {
+			return reg == o.reg && base == o.base && index == o.index && scale == o.scale && disp == o.disp;
+		}
+	}
+
+	static Operand reg(int r) {
+		return new Operand(r, -1, -1, 1, 0);
+	}
+
+	static Operand mem(int base, int disp) {
+		return new Operand(-1, base, -1, 1, disp);
+	}
+
+	static Operand mem(int base, int index, int scale, int disp) {
+		return new Operand(-1, base, index, scale, disp);
+	}
+
+	// an absolute address, which must fit in 31 bits
+	static Operand abs(int address) {
+		return new Operand(-1, -1, -1, 1, address);
+	}
+
+	static class Label {
+		int position = -1;
+		final List<Integer> uses = new ArrayList<Integer>(); // rel32 fields
+	}
+
+	private byte[] code = new byte[4096];
+	private int size;
+	private final List<Label> labels = new ArrayList<Label>();
+	private final StringBuilder data = new StringBuilder();
+	private final List<int[]> dataRefs = new ArrayList<int[]>(); // {imm32 field, data offset}
+
+	int size() {
+		return size;
+	}
+
+	// Bytes
+
+	private void u1(int b) {
+		if (size == code.length)
+			code = Arrays.copyOf(code, size * 2);
+		code[size++] = (byte) b;
+	}
+
+	private void u4(int i) {
+		u1(i);
+		u1(i >> 8);
+		u1(i >> 16);
+		u1(i >> 24);
+	}
+
+	private void putU4(int at, int i) {
+		code[at] = (byte) i;
+		code[at + 1] = (byte) (i >> 8);
+		code[at + 2] = (byte) (i >> 16);
+		code[at + 3] = (byte) (i >> 24);
+	}
+
+	// REX prefix, if one is needed
+	private void rex(boolean w, int reg, Operand rm) {
+		int rex = (w ? 8 : 0) | (reg >= 8 ? 4 : 0);
+		if (rm.isReg()) {
+			rex |= rm.reg >= 8 ? 1 : 0;
+		} else {
+			rex |= rm.index >= 8 ? 2 : 0;
+			rex |= rm.base >= 8 ? 1 : 0;
+		}
+		if (rex != 0)
+			u1(0x40 | rex);
+	}
+
+	private void opcode(int opcode) {
+		if (opcode > 0xFF)
+			u1(opcode >> 8);
+		u1(opcode);
+	}
+
+	// ModRM, and SIB and displacement for memory
+	private void modrm(int reg, Operand rm) {
+		reg &= 7;
+		if (rm.isReg()) {
+			u1(0xC0 | reg << 3 | rm.reg & 7);
+			return;
+		}
+		int scale = rm.scale == 8 ? 3 : rm.scale == 4 ? 2 : rm.scale == 2 ? 1 : 0;
+		if (rm.base < 0) { // [index*scale + disp32] or [disp32]
+			u1(0x04 | reg << 3);
+			u1(scale << 6 | (rm.index < 0 ? 4 : rm.index & 7) << 3 | 5);
+			u4(rm.disp);
+			return;
+		}
+		boolean disp8 = rm.disp == (byte) rm.disp;
+		int mod = disp8 ? 0x40 : 0x80;
+		if (rm.index < 0 && (rm.base & 7) != RSP) {
+			u1(mod | reg << 3 | rm.base & 7);
+		} else {
+			u1(mod | reg << 3 | 4);
+			u1(scale << 6 | (rm.index < 0 ? 4 : rm.index & 7) << 3 | rm.base & 7);
+		}
+		if (disp8)
+			u1(rm.disp);
+		else
+			u4(rm.disp);
+	}
+
+	private void instruction(int opcode, boolean w, int reg, Operand rm) {
+		rex(w, reg, rm);
+		opcode(opcode);
+		modrm(reg, rm);
+	}
+
+	// Moves
+
+	// mov dst, src: one of them must be a register
+	void mov(boolean w, Operand dst, Operand src) {
+		if (dst.isReg())
+			instruction(0x8B, w, dst.reg, src);
+		else
+			instruction(0x89, w, src.reg, dst);
+	}
+
+	void mov(int dst, int src) {
+		if (dst != src)
+			mov(true, reg(dst), reg(src));
+	}
+
+	// mov r32, imm32, which clears the upper half
+	void movImm(int r, int imm) {
+		if (r >= 8)
+			u1(0x41);
+		u1(0xB8 + (r & 7));
+		u4(imm);
+	}
+
+	void movImm64(int r, long imm) {
+		u1(0x48 | (r >= 8 ? 1 : 0));
+		u1(0xB8 + (r & 7));
+		u4((int) imm);
+		u4((int) (imm >>> 32));
+	}
+
+	// mov r/m64, imm32 sign-extended
+	void movImm(Operand rm, int imm) {
+		instruction(0xC7, true, 0, rm);
+		u4(imm);
+	}
+
+	// mov r32, the address of data at offset in the read-only data
+	void movData(int r, int offset) {
+		movImm(r, 0);
+		dataRefs.add(new int[] { size - 4, offset });
+	}
+
+	void loadByte(int r, Operand m) {
+		instruction(0x8A, false, r, m);
+	}
+
+	void storeByte(Operand m, int r) {
+		instruction(0x88, false, r, m);
+	}
+
+	void storeByteImm(Operand m, int imm) {
+		instruction(0xC6, false, 0, m);
+		u1(imm);
+	}
+
+	void movzxByte(int r, int src) {
+		instruction(0x0FB6, false, r, reg(src));
+	}
+
+	void lea(int r, Operand m) {
+		instruction(0x8D, true, r, m);
+	}
+
+	void push(int r) {
+		if (r >= 8)
+			u1(0x41);
+		u1(0x50 + (r & 7));
+	}
+
+	void push(Operand rm) {
+		if (rm.isReg()) {
+			push(rm.reg);
+		} else {
+			rex(false, 0, rm);
+			u1(0xFF);
+			modrm(6, rm);
+		}
+	}
+
+	void pop(int r) {
+		if (r >= 8)
+			u1(0x41);
+		u1(0x58 + (r & 7));
+	}
+
+	// Arithmetic
+
+	// op r, r/m, for op one of ADD, AND, SUB, XOR, CMP, IMUL
+	void alu(int op, boolean w, int r, Operand rm) {
+		instruction(op, w, r, rm);
+	}
+
+	// op r/m, imm, for op one of ADD, AND, SUB, XOR, CMP
+	void aluImm(int op, boolean w, Operand rm, int imm) {
+		int digit = -1;
+		for (int[] form : IMMEDIATE)
+			if (form[0] == op)
+				digit = form[1];
+		if (imm == (byte) imm) {
+			instruction(0x83, w, digit, rm);
+			u1(imm);
+		} else {
+			instruction(0x81, w, digit, rm);
+			u4(imm);
+		}
+	}
+
+	// test r/m, r
+	void test(boolean w, Operand rm, int r) {
+		instruction(0x85, w, r, rm);
+	}
+
+	// NEG, DIV or IDIV of r/m
+	void unary(int op, boolean w, Operand rm) {
+		instruction(0xF7, w, op, rm);
+	}
+
+	// SHL, SHR or SAR of r/m by count
+	void shift(int op, boolean w, Operand rm, int count) {
+		instruction(0xC1, w, op, rm);
+		u1(count);
+	}
+
+	void cdq() {
+		u1(0x99);
+	}
+
+	void setcc(int cc, int r) {
+		instruction(0x0F90 + cc, false, 0, reg(r));
+	}
+
+	void syscall() {
+		u1(0x0F);
+		u1(0x05);
+	}
+
+	void ret() {
+		u1(0xC3);
+	}
+
+	// Control
+
+	Label label() {
+		Label label = new Label();
+		labels.add(label);
+		return label;
+	}
+
+	void bind(Label label) {
+		label.position = size;
+	}
+
+	void jmp(Label target) {
+		u1(0xE9);
+		rel32(target);
+	}
+
+	void jcc(int cc, Label target) {
+		u1(0x0F);
+		u1(0x80 + cc);
+		rel32(target);
+	}
+
+	void call(Label target) {
+		u1(0xE8);
+		rel32(target);
+	}
+
+	private void rel32(Label target) {
+		target.uses.add(size);
+		u4(0);
+	}
+
+	// Read-only data
+
+	// adds the bytes of s (ASCII) to the read-only data; returns their offset
+	int data(String s) {
+		int offset = data.indexOf(s);
+		if (offset >= 0)
+			return offset;
+		offset = data.length();
+		data.append(s);
+		return offset;
+	}
+
+	// the code followed by the data, for loading at address base; every label
+	// must be bound
+	byte[] link(int base) {
+		for (Label label : labels) {
+			if (label.position < 0 && !label.uses.isEmpty())
+				throw new IllegalStateException("unbound label");
+			for (int at : label.uses)
+				putU4(at, label.position - (at + 4));
+		}
+		for (int[] ref : dataRefs)
+			putU4(ref[0], base + size + ref[1]);
+		byte[] bytes = Arrays.copyOf(code, size + data.length());
+		for (int i = 0; i < data.length(); i++)
+			bytes[size + i] = (byte) data.charAt(i);
+		return bytes;
+	}
+}
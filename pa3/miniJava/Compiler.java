@@ -1,25 +1,47 @@
 package miniJava;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import miniJava.AbstractSyntaxTrees.AST;
 import miniJava.AbstractSyntaxTrees.ASTDisplay;
-import miniJava.AbstractSyntaxTrees.BaseType;
-import miniJava.AbstractSyntaxTrees.ClassDecl;
-import miniJava.AbstractSyntaxTrees.ClassType;
-import miniJava.AbstractSyntaxTrees.FieldDecl;
-import miniJava.AbstractSyntaxTrees.FieldDeclList;
-import miniJava.AbstractSyntaxTrees.Identifier;
-import miniJava.AbstractSyntaxTrees.MethodDecl;
-import miniJava.AbstractSyntaxTrees.MethodDeclList;
-import miniJava.AbstractSyntaxTrees.ParameterDecl;
-import miniJava.AbstractSyntaxTrees.ParameterDeclList;
-import miniJava.AbstractSyntaxTrees.StatementList;
-import miniJava.AbstractSyntaxTrees.TypeKind;
+import miniJava.AbstractSyntaxTrees.ASTNodeCounter;
+import miniJava.CodeGenerator.JVMGenerator;
+import miniJava.CodeGenerator.JVMProgram;
+import miniJava.CodeGenerator.NativeGenerator;
 import miniJava.ContextualAnalyzer.Identification;
+import miniJava.ContextualAnalyzer.StdEnvGenerator;
 import miniJava.ContextualAnalyzer.TypeChecking;
+import miniJava.IR.IRBuilder;
+import miniJava.IR.IRProgram;
+import miniJava.IR.Verifier;
+import miniJava.Interpreter.BytecodeGenerator;
+import miniJava.Interpreter.BytecodeProgram;
+import miniJava.Interpreter.IRBytecodeGenerator;
+import miniJava.Interpreter.Interpreter;
+import miniJava.Interpreter.VM;
+import miniJava.Optimizer.ConstantFolder;
+import miniJava.Optimizer.DeadCodeEliminator;
+import miniJava.Optimizer.IROptimizer;
 import miniJava.SyntacticAnalyzer.*;
 /*import miniJava.AbstractSyntaxTrees.*;
 
@@ -59,73 +81,369 @@ public class Compiler {
 
 import miniJava.SyntacticAnalyzer.*;
 
+/**
+ * Compiles one file, or with --batch every .java file under a directory on a
+ * pool of worker threads. Everything a compilation needs lives in its own
+ * Compiler instance, so any number of them can run side by side in one JVM.
+ *
+ * A file is scanned, parsed, identified and type-checked, and unless told
+ * otherwise its AST is shown. From the type-checked AST come VM bytecode,
+ * JVM classes or x86-64 code, as the options ask:
+ *
+ *   --run             lower to bytecode and run it on the VM
+ *   --run=ast         run the AST on the Interpreter
+ *   --run=jvm         run as JVM classes loaded into this JVM
+ *   --bytecode        show the VM bytecode in place of the AST
+ *   --ir              show the SSA form (miniJava.IR) in place of the AST
+ *   --classes dir     also write the JVM class files to dir
+ *   --native file     also write an x86-64 Linux executable to file
+ *   --optimize        optimize the AST, and the IR the VM and native code come from
+ *   --check-bounds    keep in native code the bounds checks the IR proves needless
+ *   --stats[=json]    time each phase (see CompilerStats)
+ */
 public class Compiler {
 
-	private static Scanner scanner;
-	private static Parser parser;
-	private static ErrorReporter errorReporter;
-	private static AST ast;
-	private static Identification idcheck;
-	private static TypeChecking typecheck;
+	private SymbolInterner symbols;
+	private Scanner scanner;
+	private Parser parser;
+	private ErrorReporter errorReporter;
+	private AST ast;
+	private Identification idcheck;
+	private TypeChecking typecheck;
+	private CompilerStats stats; // null unless measuring
 
-	static boolean compileProgram(String sourceName) {
+	Compiler(int maxErrors) {
+		errorReporter = new ErrorReporter(maxErrors);
+	}
+
+	Compiler(int maxErrors, boolean measure) {
+		this(maxErrors);
+		if (measure)
+			stats = new CompilerStats();
+	}
+
+	boolean compileProgram(String sourceName) throws IOException {
+		try {
+			return compile(sourceName);
+		} finally {
+			if (stats != null)
+				count();
+		}
+	}
+
+	private boolean compile(String sourceName) throws IOException {
 		SourceFile source = new SourceFile(sourceName);
-		scanner = new Scanner(source);
-		errorReporter = new ErrorReporter();
-		parser = new Parser(scanner, errorReporter);
+		symbols = new SymbolInterner();
+		scanner = new Scanner(source, symbols, errorReporter);
+		if (stats != null) {
+			TokenBuffer tokens = new TokenBuffer();
+			stats.start(CompilerStats.Phase.SCAN);
+			scanner.scanAll(tokens);
+			stats.stop();
+			parser = new Parser(tokens, errorReporter);
+			stats.start(CompilerStats.Phase.PARSE);
+		} else
+			parser = new Parser(scanner, errorReporter);
 		ast = parser.parse();
+		if (stats != null)
+			stats.stop();
+		if (errorReporter.hasErrors())
+			return false;
+
+		if (stats != null)
+			stats.start(CompilerStats.Phase.IDENTIFICATION);
 		idcheck = new Identification(ast, errorReporter);
-		// StdEnvGenerator.genEnv(idcheck.idt);
-		////////////////////////
-		ParameterDecl n = new ParameterDecl(new BaseType(TypeKind.INT, null), new Identifier(new Token(1, "n", new SourcePosition())), null);
-		ParameterDeclList printParams = new ParameterDeclList();
-		printParams.add(n);
-		MethodDecl println = new MethodDecl(
-				new FieldDecl(false, false, new BaseType(TypeKind.VOID, null), new Identifier(new Token(1, "println", new SourcePosition())), null), printParams,
-				new StatementList(), null);
-		MethodDeclList printstreamMethods = new MethodDeclList();
-		printstreamMethods.add(println);
-		ClassDecl printstream = new ClassDecl(new Identifier(new Token(1, "_PrintStream", new SourcePosition())), new FieldDeclList(), printstreamMethods, null);
-		// System
-		FieldDecl out = new FieldDecl(false, true,
-				new ClassType(new Identifier(new Token(1, "_PrintStream", new SourcePosition())), null), new Identifier(new Token(1, "out", new SourcePosition())), null);
-		FieldDeclList sysFields = new FieldDeclList();
-		sysFields.add(out);
-		ClassDecl sys = new ClassDecl(new Identifier(new Token(1, "System", new SourcePosition())), sysFields, new MethodDeclList(), null);
-		ClassDecl str = new ClassDecl(new Identifier(new Token(1, "String", new SourcePosition())), new FieldDeclList(), new MethodDeclList(), null);
-		/*System.out.println(printstream.id.spelling);
-		System.out.println(sys.id.spelling);
-		System.out.println(str.id.spelling);*/
-		idcheck.idt.enterDecl(printstream);
-		idcheck.idt.enterDecl(sys);
-		idcheck.idt.enterDecl(str);
-		//////////////////////////
+		StdEnvGenerator.genEnv(idcheck.idt, symbols);
 		ast = idcheck.check();
+		if (stats != null)
+			stats.stop();
+
 		typecheck = new TypeChecking(ast, errorReporter, idcheck.userDefinedString);
-		if (!errorReporter.hasErrors())
+		if (!errorReporter.hasErrors()) {
+			if (stats != null)
+				stats.start(CompilerStats.Phase.TYPE_CHECKING);
 			typecheck.check();
+			if (stats != null)
+				stats.stop();
+		}
 		return errorReporter.numErrors == 0;
 	}
 
+	// fills in the counts of the phases that ran, once they are over
+	private void count() {
+		stats.files = 1;
+		stats.tokens = scanner == null ? 0 : scanner.getTokenCount();
+		stats.astNodes = ast == null ? 0 : new ASTNodeCounter().count(ast);
+		if (idcheck != null) {
+			stats.scopesOpened = idcheck.idt.getScopesOpened();
+			stats.symbolLookups = idcheck.getLookups();
+		}
+	}
+
+	// runs the optimizations of the IR, checking the IR after each, and
+	// reports what each did
+	private static void optimize(IRProgram ir, boolean checkBounds) {
+		IROptimizer optimizer = new IROptimizer();
+		optimizer.boundsChecks.keepChecks = checkBounds;
+		optimizer.optimize(ir);
+		for (String report : optimizer.reports)
+			System.out.println(report);
+	}
+
+	// Batch mode
+
+	// what became of one file of a batch
+	private static class BatchResult {
+		String file;
+		boolean compiled;
+		String crash; // set when the compiler threw instead of reporting
+		String unreadable; // set when the file could not be read
+		int errors;
+		int tokens;
+		long nanos;
+		CompilerStats stats;
+	}
+
+	private static BatchResult compileFile(Path file, int maxErrors, boolean measure) {
+		BatchResult result = new BatchResult();
+		result.file = file.toString();
+		long start = System.nanoTime();
+		Compiler compiler = new Compiler(maxErrors, measure);
+		try {
+			result.compiled = compiler.compileProgram(result.file);
+		} catch (IOException e) {
+			result.unreadable = e.toString();
+		} catch (RuntimeException e) {
+			result.crash = e.toString(); // one bad file must not stop the batch
+		}
+		result.nanos = System.nanoTime() - start;
+		result.errors = compiler.errorReporter.getNumErrors();
+		result.tokens = compiler.scanner == null ? 0 : compiler.scanner.getTokenCount();
+		result.stats = compiler.stats;
+		return result;
+	}
+
+	// compiles every .java file under dir, threads at a time, printing a line
+	// per file in name order and then the overall throughput, and with
+	// statsFormat the phase figures of all the files added together
+	static boolean compileBatch(String dir, int threads, int maxErrors, CompilerStats.Format statsFormat)
+			throws IOException, InterruptedException {
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(Paths.get(dir))) {
+			files = walk.filter(f -> Files.isRegularFile(f) && f.toString().endsWith(".java")).sorted()
+					.collect(Collectors.toList());
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		List<Future<BatchResult>> results = new ArrayList<Future<BatchResult>>();
+		for (Path file : files)
+			results.add(pool.submit(() -> compileFile(file, maxErrors, statsFormat != null)));
+
+		int compiled = 0, failed = 0, crashed = 0, unreadable = 0;
+		long tokens = 0;
+		CompilerStats stats = new CompilerStats();
+		for (Future<BatchResult> future : results) {
+			BatchResult result;
+			try {
+				result = future.get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+			tokens += result.tokens;
+			if (result.stats != null)
+				stats.add(result.stats);
+			String outcome;
+			if (result.crash != null) {
+				crashed++;
+				outcome = "CRASHED  " + result.file + "  " + result.crash;
+			} else if (result.unreadable != null) {
+				unreadable++;
+				outcome = "UNREADABLE " + result.file + "  " + result.unreadable;
+			} else if (result.compiled) {
+				compiled++;
+				outcome = "OK       " + result.file;
+			} else {
+				failed++;
+				outcome = "FAILED   " + result.file + "  " + result.errors + " error(s)";
+			}
+			System.out.println(outcome + String.format("  [%d tokens, %.2f ms]", result.tokens, result.nanos / 1e6));
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+
+		System.out.println(String.format("%d files: %d compiled, %d failed, %d crashed, %d unreadable", files.size(),
+				compiled, failed, crashed, unreadable));
+		System.out.println(String.format("%.3f s on %d threads: %.1f files/s, %.0f tokens/s", seconds, threads,
+				files.size() / seconds, tokens / seconds));
+		if (statsFormat != null)
+			stats.print(System.out, statsFormat);
+		return compiled == files.size();
+	}
+
 	public static void main(String[] args) {
 		boolean compiledOK;
-		if (args.length != 1) {
-			System.out.println("Usage: tc filename");
+		int maxErrors = Integer.MAX_VALUE;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String batchDir = null;
+		String sourceName = null;
+		CompilerStats.Format statsFormat = null;
+		String run = null; // "vm", "ast", "jvm" or null
+		boolean bytecode = false;
+		boolean showIR = false;
+		String classesDir = null;
+		String nativeFile = null;
+		boolean optimize = false;
+		boolean checkBounds = false;
+		try {
+			for (int a = 0; a < args.length; a++) {
+				if (args[a].equals("--max-errors"))
+					maxErrors = Integer.parseInt(args[++a]);
+				else if (args[a].equals("--threads"))
+					threads = Integer.parseInt(args[++a]);
+				else if (args[a].equals("--batch"))
+					batchDir = args[++a];
+				else if (args[a].equals("--stats"))
+					statsFormat = CompilerStats.Format.TEXT;
+				else if (args[a].equals("--stats=json"))
+					statsFormat = CompilerStats.Format.JSON;
+				else if (args[a].equals("--run"))
+					run = "vm";
+				else if (args[a].equals("--run=ast"))
+					run = "ast";
+				else if (args[a].equals("--run=jvm"))
+					run = "jvm";
+				else if (args[a].equals("--classes"))
+					classesDir = args[++a];
+				else if (args[a].equals("--native"))
+					nativeFile = args[++a];
+				else if (args[a].equals("--bytecode"))
+					bytecode = true;
+				else if (args[a].equals("--ir"))
+					showIR = true;
+				else if (args[a].equals("--optimize"))
+					optimize = true;
+				else if (args[a].equals("--check-bounds"))
+					checkBounds = true;
+				else if (sourceName == null)
+					sourceName = args[a];
+				else
+					throw new IllegalArgumentException();
+			}
+		} catch (RuntimeException e) {
+			sourceName = batchDir = null;
+		}
+		if ((sourceName == null) == (batchDir == null) || threads < 1
+				|| (run != null || bytecode || showIR || classesDir != null || nativeFile != null || optimize
+						|| checkBounds) && batchDir != null) {
+			System.out.println("Usage: tc [--max-errors n] [--stats[=json]] [--optimize] [--run[=ast|=jvm]]");
+			System.out.println("          [--check-bounds] [--bytecode] [--ir] [--classes dir] [--native file] filename");
+			System.out.println("       tc --batch dir [--threads n] [--max-errors n] [--stats[=json]]");
 			System.exit(3);
 		}
 
-		String sourceName = args[0];
+		if (batchDir != null) {
+			try {
+				compiledOK = compileBatch(batchDir, threads, maxErrors, statsFormat);
+			} catch (IOException | InterruptedException e) {
+				System.out.println("Cannot compile " + batchDir + ": " + e);
+				System.exit(3);
+				return;
+			}
+			System.exit(compiledOK ? 0 : 4);
+		}
 
-		compiledOK = compileProgram(sourceName);
+		Compiler compiler = new Compiler(maxErrors, statsFormat != null);
+		try {
+			compiledOK = compiler.compileProgram(sourceName);
+		} catch (NoSuchFileException e) {
+			System.out.println("Input file " + sourceName + " not found");
+			System.exit(3);
+			return;
+		} catch (IOException e) {
+			System.out.println("Cannot read " + sourceName + ": " + e);
+			System.exit(3);
+			return;
+		}
+		compiler.errorReporter.flush(System.out);
 
 		// AST ast = parser.parse();
-		if (compiledOK) {
+		if (compiledOK && optimize) {
+			ConstantFolder folder = new ConstantFolder();
+			folder.fold(compiler.ast);
+			System.out.println(folder.report());
+			DeadCodeEliminator eliminator = new DeadCodeEliminator();
+			eliminator.eliminate(compiler.ast);
+			System.out.println(eliminator.report());
+		}
+
+		JVMProgram classes = null;
+		if (compiledOK && (classesDir != null || "jvm".equals(run))) {
+			classes = new JVMGenerator(compiler.errorReporter).generate(compiler.ast);
+			compiledOK = classes != null;
+			compiler.errorReporter.flush(System.out);
+		}
+		if (compiledOK && classesDir != null) {
+			try {
+				classes.write(new File(classesDir));
+			} catch (IOException e) {
+				System.out.println("Cannot write classes to " + classesDir + ": " + e);
+				System.exit(3);
+			}
+		}
+		// the VM and native code are made through the IR when optimizing
+		boolean needsBytecode = nativeFile != null || bytecode || "vm".equals(run);
+		IRProgram ir = null;
+		String irText = null;
+		if (compiledOK && (showIR || optimize && needsBytecode)) {
+			ir = new IRBuilder().build(compiler.ast);
+			Verifier.check(ir);
+			if (optimize)
+				optimize(ir, checkBounds);
+			if (showIR)
+				irText = ir.toString(); // before making bytecode changes it
+		}
+		BytecodeProgram program = null;
+		if (compiledOK && needsBytecode)
+			program = optimize ? new IRBytecodeGenerator().generate(ir) : new BytecodeGenerator().generate(compiler.ast);
+
+		if (compiledOK && nativeFile != null) {
+			byte[] executable = new NativeGenerator().generate(program);
+			try {
+				Files.write(Paths.get(nativeFile), executable);
+				new File(nativeFile).setExecutable(true);
+			} catch (IOException e) {
+				System.out.println("Cannot write " + nativeFile + ": " + e);
+				System.exit(3);
+			}
+		}
+
+		if (compiledOK && run != null) {
 			System.out.println("Compilation was successful.");
-			new ASTDisplay().showTree(ast);
-			System.exit(0);
+			// the program's output is flushed when it ends, not on every println
+			PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16));
+			if (run.equals("ast")) {
+				compiledOK = new Interpreter(compiler.ast, out, compiler.errorReporter).run();
+			} else if (run.equals("jvm")) {
+				compiledOK = classes.run(out, compiler.errorReporter);
+			} else {
+				compiledOK = new VM(program, out, compiler.errorReporter).run();
+			}
+			compiler.errorReporter.flush(System.out);
+		} else if (compiledOK && bytecode) {
+			System.out.println("Compilation was successful.");
+			System.out.print(program);
+		} else if (compiledOK && showIR) {
+			System.out.println("Compilation was successful.");
+			System.out.print(irText);
+		} else if (compiledOK) {
+			System.out.println("Compilation was successful.");
+			new ASTDisplay().showTree(compiler.ast);
 		} else {
 			System.out.println("Compilation was unsuccessful.");
-			System.exit(4);
 		}
+		if (statsFormat != null)
+			compiler.stats.print(System.out, statsFormat);
+		System.exit(compiledOK ? 0 : 4);
 	}
 }
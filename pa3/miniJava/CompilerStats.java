@@ -0,0 +1,143 @@
+package miniJava;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * What one compilation (or, added together, a batch of them) cost: wall
+ * time, CPU time and bytes allocated by the compiling thread in each phase,
+ * plus counts of the work done - tokens, AST nodes, scopes opened and symbol
+ * lookups. Times and allocation come from the ThreadMXBean, so they belong to
+ * the thread that called start and stop; a phase the JVM cannot measure is
+ * reported as -1.
+ */
+public class CompilerStats {
+
+	public enum Phase {
+		SCAN, PARSE, IDENTIFICATION, TYPE_CHECKING
+	}
+
+	public enum Format {
+		TEXT, JSON
+	}
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private final long[] wallNanos = new long[Phase.values().length];
+	private final long[] cpuNanos = new long[Phase.values().length];
+	private final long[] allocatedBytes = new long[Phase.values().length];
+
+	public long files;
+	public long tokens;
+	public long astNodes;
+	public long scopesOpened;
+	public long symbolLookups;
+
+	// the phase being measured and where its clocks stood when it started
+	private Phase current;
+	private long wallStart, cpuStart, allocatedStart;
+
+	public void start(Phase phase) {
+		current = phase;
+		allocatedStart = allocatedBytes();
+		cpuStart = cpuNanos();
+		wallStart = System.nanoTime();
+	}
+
+	public void stop() {
+		long wall = System.nanoTime();
+		long cpu = cpuNanos();
+		long allocated = allocatedBytes();
+		int p = current.ordinal();
+		wallNanos[p] += wall - wallStart;
+		cpuNanos[p] = cpu < 0 ? -1 : cpuNanos[p] + cpu - cpuStart;
+		allocatedBytes[p] = allocated < 0 ? -1 : allocatedBytes[p] + allocated - allocatedStart;
+		current = null;
+	}
+
+	// adds the figures of another compilation to these
+	public void add(CompilerStats other) {
+		for (int p = 0; p < wallNanos.length; p++) {
+			wallNanos[p] += other.wallNanos[p];
+			cpuNanos[p] = cpuNanos[p] < 0 || other.cpuNanos[p] < 0 ? -1 : cpuNanos[p] + other.cpuNanos[p];
+			allocatedBytes[p] = allocatedBytes[p] < 0 || other.allocatedBytes[p] < 0 ? -1
+					: allocatedBytes[p] + other.allocatedBytes[p];
+		}
+		files += other.files;
+		tokens += other.tokens;
+		astNodes += other.astNodes;
+		scopesOpened += other.scopesOpened;
+		symbolLookups += other.symbolLookups;
+	}
+
+	private static long cpuNanos() {
+		return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+	}
+
+	@SuppressWarnings("deprecation") // Thread.getId; threadId() needs Java 19
+	private static long allocatedBytes() {
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+		if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	// Output
+
+	public void print(PrintStream out, Format format) {
+		out.println(format == Format.JSON ? toJson() : toString());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("%-16s %12s %12s %14s%n", "phase", "wall ms", "cpu ms", "allocated KB"));
+		long wall = 0, cpu = 0, allocated = 0;
+		for (Phase phase : Phase.values()) {
+			int p = phase.ordinal();
+			s.append(String.format("%-16s %12.3f %12s %14s%n", name(phase), wallNanos[p] / 1e6,
+					millis(cpuNanos[p]), kilobytes(allocatedBytes[p])));
+			wall += wallNanos[p];
+			cpu = cpu < 0 || cpuNanos[p] < 0 ? -1 : cpu + cpuNanos[p];
+			allocated = allocated < 0 || allocatedBytes[p] < 0 ? -1 : allocated + allocatedBytes[p];
+		}
+		s.append(String.format("%-16s %12.3f %12s %14s%n", "total", wall / 1e6, millis(cpu), kilobytes(allocated)));
+		if (files > 1)
+			s.append(String.format("%d files, ", files));
+		s.append(String.format("%d tokens, %d AST nodes, %d scopes opened, %d symbol lookups", tokens, astNodes,
+				scopesOpened, symbolLookups));
+		return s.toString();
+	}
+
+	public String toJson() {
+		StringBuilder s = new StringBuilder("{\"phases\": {");
+		for (Phase phase : Phase.values()) {
+			int p = phase.ordinal();
+			s.append(p == 0 ? "" : ", ").append('"').append(name(phase)).append("\": {");
+			s.append("\"wallNanos\": ").append(wallNanos[p]);
+			s.append(", \"cpuNanos\": ").append(cpuNanos[p]);
+			s.append(", \"allocatedBytes\": ").append(allocatedBytes[p]).append('}');
+		}
+		s.append("}, \"files\": ").append(files);
+		s.append(", \"tokens\": ").append(tokens);
+		s.append(", \"astNodes\": ").append(astNodes);
+		s.append(", \"scopesOpened\": ").append(scopesOpened);
+		s.append(", \"symbolLookups\": ").append(symbolLookups).append('}');
+		return s.toString();
+	}
+
+	private static String name(Phase phase) {
+		return phase.name().toLowerCase().replace("_", "");
+	}
+
+	private static String millis(long nanos) {
+		return nanos < 0 ? "n/a" : String.format("%.3f", nanos / 1e6);
+	}
+
+	private static String kilobytes(long bytes) {
+		return bytes < 0 ? "n/a" : String.format("%.1f", bytes / 1024.0);
+	}
+}
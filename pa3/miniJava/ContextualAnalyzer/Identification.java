@@ -3,8 +3,7 @@ package miniJava.ContextualAnalyzer;
 import miniJava.*;
 import miniJava.AbstractSyntaxTrees.*;
 import miniJava.AbstractSyntaxTrees.Package;
-import java.util.HashMap;
-import java.util.HashSet;
+import miniJava.SyntacticAnalyzer.SymbolInterner;
 
 public class Identification implements Visitor<Integer, Object> {
 
@@ -15,10 +14,10 @@ public class Identification implements Visitor<Integer, Object> {
 	public boolean containsMain;
 	private boolean inStaticMethod;
 	private ClassDecl currentClass;
-	private String currentDeclaredVariable;
+	private ClassDecl qualifyingClass; // class whose members phase 3 resolves against
+	private int currentDeclaredVariable = -1; // symbol of the variable being initialised
+	private int memberLookups; // lookups in a qualifying class, which bypass idt
 	
-	public HashMap<ClassDecl, Integer> classList;
-    private HashSet<String> localVariables;
 
 	//private Package stdAST;
 	//public StdEnvGenerator stdEnv;
@@ -31,14 +30,22 @@ public class Identification implements Visitor<Integer, Object> {
 		//stdEnv.genEnv(idt);
 	}
 
+	// symbol lookups made so far, in idt and in the classes qualifying a name
+	public int getLookups() {
+		return idt.getLookups() + memberLookups;
+	}
+
 	public AST check() {
 		containsMain = false;
-		sourceAST.visit(this, 0);
+		try {
+			sourceAST.visit(this, 0);
+		} catch (IdentificationError e) {
+			return sourceAST; // reported where it was found
+		}
 		
 		if (!containsMain) {
 			errorReporter.reportError("*** line N/A: Identification Error: main method does not exist");
-			System.exit(4);
-		} else System.out.println("Check completed, success.");
+		} else errorReporter.reportNote("Check completed, success.");
 		return sourceAST;
 	}
 	
@@ -52,14 +59,13 @@ public class Identification implements Visitor<Integer, Object> {
 		for (ClassDecl cd: cdl){ 
 			if (cd.id.spelling.startsWith("_")) {
                 errorReporter.reportError("*** line " + cd.posn.start + ": Identification Error - illegal class name, cannot start with _");
-                System.exit(4);
-                return null;
-            } else if (cd.id.spelling.equals("String")) {
+                throw new IdentificationError();
+            } else if (cd.id.symbol == SymbolInterner.STRING) {
                 this.userDefinedString = true; 
             }
             if (idt.enterDecl(cd) == null) {
                 errorReporter.reportError("*** line " + cd.posn.start + ": Identification Error - duplicate declaration of " + cd.id.spelling);
-                System.exit(4);
+                throw new IdentificationError();
             }
 		}	
 
@@ -72,39 +78,49 @@ public class Identification implements Visitor<Integer, Object> {
 			}
 		}
 
-		classList = new HashMap<ClassDecl, Integer>();
 		for (ClassDecl cd: cdl){ 
 			idt.openScope(); // open new level for each class
 			for (FieldDecl fd: cd.fieldDeclList) {
 				fd.visit(this, 0);
                 if (idt.enterDecl(fd) == null) {
                     errorReporter.reportError("*** line " + fd.posn.start + ": Identification Error - duplicate declaration of " + fd.id.spelling);
-                    System.exit(4);
+                    throw new IdentificationError();
                 }
 			}
 			for (MethodDecl md: cd.methodDeclList) {
 				if (idt.enterDecl(md) == null) {
                     errorReporter.reportError("*** line " + md.posn.start + ": Identification Error - duplicate declaration of " + md.id.spelling);
-                    System.exit(4);
+                    throw new IdentificationError();
 				}
                 if (md.isMain()) {
                 	if (containsMain) {
                 		errorReporter.reportError("*** line " + md.posn.start + ": Identification Error - duplicate declaration of main method");
-                		System.exit(4);
+                		throw new IdentificationError();
                 	} else {
                 		containsMain = true;
                 	}
                 }
 			}
-			classList.put(cd, idt.getHighestLevel()); // put class in highest level
 		}
 		
 		for (ClassDecl cd : cdl) {
             currentClass = cd;
-            idt.swapIdt(classList.get(cd), idt.getHighestLevel());
+            // re-enter the current class's members above every class level so
+            // they take precedence over members of other classes
+            idt.openScope();
+            for (FieldDecl fd : cd.fieldDeclList) {
+                idt.enterDecl(fd);
+            }
+            for (MethodDecl md : cd.methodDeclList) {
+                idt.enterDecl(md);
+            }
             cd.visit(this, 0);
+            idt.closeScope();
         }
 		
+		for (int i = 0; i < cdl.size(); i++) {
+			idt.closeScope(); // close class levels
+		}
 		idt.closeScope(); // close 1st level
 		return null;
 	}
@@ -132,7 +148,6 @@ public class Identification implements Visitor<Integer, Object> {
 	public Reference visitMethodDecl(MethodDecl md, Integer phase) {		
 		md.type.visit(this, 0);
 		inStaticMethod = md.isStatic;
-		localVariables = new HashSet<>();
 		
 		idt.openScope();
 		for (ParameterDecl pd: md.parameterDeclList) {
@@ -143,6 +158,7 @@ public class Identification implements Visitor<Integer, Object> {
 			s.visit(this, 0);
 		}
 		
+		idt.closeScope(); 
 		idt.closeScope(); 
 		return null;
 	}
@@ -152,16 +168,14 @@ public class Identification implements Visitor<Integer, Object> {
 		//idt.enterDecl(pd);
 		pd.type.visit(this, 0);
 		pd.setIdBinding();
-		if(localVariables.contains(pd.id.spelling)) {
+		if(idt.retrieve(pd.id.symbol) instanceof LocalDecl) {
 			errorReporter.reportError("*** line " + pd.posn.start + ": Identification Error - duplicate declaration of local variable " + pd.id.spelling);
-			System.exit(4);
-		} else {
-			localVariables.add(pd.id.spelling);
+			throw new IdentificationError();
 		}
 		if (idt.enterDecl(pd) == null) {
 			errorReporter.reportError("*** line " + pd.posn.start
 					+ ": Identification Error - duplicate declaration of " + pd.id.spelling);
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		return null;
 	}
@@ -170,17 +184,15 @@ public class Identification implements Visitor<Integer, Object> {
 	public Reference visitVarDecl(VarDecl decl, Integer phase) {
 		decl.type.visit(this, 0);
 		decl.setIdBinding();
-		if (localVariables.contains(decl.id.spelling)) {
+		if (idt.retrieve(decl.id.symbol) instanceof LocalDecl) { // locals may not shadow locals
         	errorReporter.reportError("*** line " + decl.posn.start + ": Identification Error - duplicate declaration of local variable " + decl.id.spelling);
-        	System.exit(4);
-		} else {
-        	localVariables.add(decl.id.spelling);
-        }
+        	throw new IdentificationError();
+		}
 		
 		if (idt.enterDecl(decl) == null) {
 			errorReporter.reportError("*** line " + decl.posn.start
 					+ ": Identification Error - duplicate declaration of " + decl.id.spelling);
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		return null;
 	}
@@ -194,10 +206,10 @@ public class Identification implements Visitor<Integer, Object> {
 
 	@Override
 	public Reference visitClassType(ClassType type, Integer phase) {
-		ClassDecl cd = (ClassDecl) idt.retrieveClass(type.className.spelling);
+		ClassDecl cd = (ClassDecl) idt.retrieveClass(type.className.symbol);
 		if (cd == null) {
 			errorReporter.reportError("*** line " + type.posn.start + ": Identification Error - class name expected ");
-			System.exit(4);
+			throw new IdentificationError();
 		} else {
 			type.className.decl = cd;
 		}
@@ -219,20 +231,15 @@ public class Identification implements Visitor<Integer, Object> {
 		for (Statement s: stmt.sl) {
 			s.visit(this, 0);
 		}
-		for(String var: idt.getCurrentIdt().keySet()) {
-			if(localVariables.contains(var)) {
-				localVariables.remove(var);
-			}
-		}
 		idt.closeScope();
 		return null;
 	}
 
 	@Override
 	public Reference visitVardeclStmt(VarDeclStmt stmt, Integer phase) {
-		currentDeclaredVariable = stmt.varDecl.id.spelling;
+		currentDeclaredVariable = stmt.varDecl.id.symbol;
 		stmt.initExp.visit(this, 0);
-		currentDeclaredVariable = "";
+		currentDeclaredVariable = -1;
 		stmt.varDecl.visit(this, 0);	
 		return null;
 	}
@@ -242,10 +249,15 @@ public class Identification implements Visitor<Integer, Object> {
 		if (stmt.ref instanceof ThisRef) {
 			errorReporter.reportError("*** line " + stmt.posn.start
 					+ ": Identification Error - \'this\' cannot be on left side of assign statement");
-			System.exit(4);
+			throw new IdentificationError();
 		} else {
 			stmt.ref.visit(this, 0);
 		}
+		if (isArrayLength(stmt.ref)) {
+			errorReporter.reportError("*** line " + stmt.posn.start
+					+ ": Identification Error - cannot assign to the length of an array");
+			throw new IdentificationError();
+		}
 		stmt.val.visit(this, 0);
 		return null;
 	}
@@ -259,8 +271,7 @@ public class Identification implements Visitor<Integer, Object> {
 		if (methodDecl.parameterDeclList.size() != stmt.argList.size()) {
 			errorReporter.reportError("*** line " + stmt.posn.start + 
 					": Identification Error - # of arguments does not equal # of parameters of method "+methodDecl.id.spelling);
-			System.exit(4);
-			return null;
+			throw new IdentificationError();
 		}
 
 		for (Expression e : stmt.argList) {
@@ -283,7 +294,7 @@ public class Identification implements Visitor<Integer, Object> {
 		if (stmt.thenStmt instanceof VarDeclStmt) {
 			errorReporter.reportError("*** line " + stmt.thenStmt.posn.start
 					+ ": Identification Error - cannot declare variable in then statement");
-			System.exit(4);
+			throw new IdentificationError();
 		} else {
 			stmt.thenStmt.visit(this, 0);
 		}
@@ -292,7 +303,7 @@ public class Identification implements Visitor<Integer, Object> {
 			if (stmt.elseStmt instanceof VarDeclStmt) {
 				errorReporter.reportError("*** line " + stmt.elseStmt.posn.start
 						+ ": Identification Error - cannot declare variable in else statement");
-				System.exit(4);
+				throw new IdentificationError();
 			} else {
 				stmt.elseStmt.visit(this, 0);
 			}
@@ -307,7 +318,7 @@ public class Identification implements Visitor<Integer, Object> {
 			if (stmt.body instanceof VarDeclStmt) {
 				errorReporter.reportError("*** line " + stmt.body.posn.start
 						+ ": Identification Error - cannot declare variable in body of while loop");
-				System.exit(4);
+				throw new IdentificationError();
 			} else stmt.body.visit(this, 0);
 		}
 		return null;
@@ -335,7 +346,7 @@ public class Identification implements Visitor<Integer, Object> {
 				&& (expr.ref.getDecl() instanceof ClassDecl || expr.ref.getDecl() instanceof MethodDecl)) {
 			errorReporter.reportError("*** line " + expr.posn.start
 					+ ": Identification Error - cannot reference class or method name in a RefExpr");
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		return null;
 	}
@@ -348,8 +359,7 @@ public class Identification implements Visitor<Integer, Object> {
 		if (methodDecl.parameterDeclList.size() != expr.argList.size()) {
 			errorReporter.reportError("*** line " + expr.posn.start + ": Identification Error - # of arguments does not "
 					+ "equal # of parameters in method "+ methodDecl.id.spelling);
-			System.exit(4);
-			return null;
+			throw new IdentificationError();
 		}
 		
 		for (Expression e : expr.argList) {
@@ -383,7 +393,7 @@ public class Identification implements Visitor<Integer, Object> {
 	public Reference visitThisRef(ThisRef ref, Integer phase) {
 		if (inStaticMethod) {
 			errorReporter.reportError("*** line"+ref.posn.start+": Identification Error - \'this\' cannot be used as static context");
-			System.exit(4);
+			throw new IdentificationError();
 		}
 		ref.declaration = currentClass;
         ref.isStatic = false;
@@ -394,17 +404,17 @@ public class Identification implements Visitor<Integer, Object> {
 	public Reference visitIdRef(IdRef ref, Integer phase) {
 		ref.isStatic = ref.id.isStatic;
 		ref.id.visit(this, phase);
-		if (ref.id.spelling.equals(currentDeclaredVariable)) {
-			errorReporter.reportError("*** line " + ref.id.posn.start + ": Identification Error - " + currentDeclaredVariable
+		if (ref.id.symbol == currentDeclaredVariable) {
+			errorReporter.reportError("*** line " + ref.id.posn.start + ": Identification Error - " + ref.id.spelling
 					+ " not initialized yet");
-			System.exit(4);
+			throw new IdentificationError();
 		} else if (ref.getDecl() instanceof MemberDecl) {
 			MemberDecl memberDecl = (MemberDecl) ref.getDecl();
 			ClassDecl cd = memberDecl.classDecl;
 			if (cd != currentClass) {
 				errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - cannot find reference: "
 								+ ref.id.spelling + " in class: " + cd.id.spelling);
-				System.exit(4);
+				throw new IdentificationError();
 			}
 		}
 		return null;
@@ -422,7 +432,9 @@ public class Identification implements Visitor<Integer, Object> {
         }
         if (qDecl instanceof ClassDecl) {
             ClassDecl classDecl = (ClassDecl) qDecl;
+            qualifyingClass = classDecl;
             ref.id.visit(this, 3);
+            qualifyingClass = null;
             ref.isStatic = ref.id.isStatic;
             Declaration declaration = ref.getDecl();
             boolean sameClass = classDecl == currentClass;
@@ -430,96 +442,104 @@ public class Identification implements Visitor<Integer, Object> {
             if (declaration instanceof MemberDecl) {
                 if (!sameClass) {
                     // Check visible & static
-                    String checkName = declaration.id.spelling;
-                    if (!classDecl.existsMember(checkName, inStaticMethod, true)) {
+                    if (!existsMember(classDecl, declaration.id.symbol, inStaticMethod, true)) {
                         errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - cannot find static and public member: " + declaration.id.spelling);
-                        System.exit(4);
+                        throw new IdentificationError();
                     }
                 } else {
-                    if (!classDecl.existsMember(declaration.id.spelling, inStaticMethod, false)) {
+                    if (!existsMember(classDecl, declaration.id.symbol, inStaticMethod, false)) {
                         errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - cannot find member: " + declaration.id.spelling);
-                        System.exit(4);
+                        throw new IdentificationError();
                     }
                 }
             } else {
                 errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - expect a member declaration: " + declaration.id.spelling);
-                System.exit(4);
+                throw new IdentificationError();
             }
 
+        } else if (qDecl.type.typeKind == TypeKind.ARRAY) {
+            if (ref.id.symbol != SymbolInterner.LENGTH) { // an array's only member
+                errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - referencing a member of an ARRAY");
+                throw new IdentificationError();
+            }
+            ref.id.decl = new FieldDecl(false, false, TypeUniverse.INT, ref.id, ref.id.posn);
+            ref.id.isStatic = false;
+            ref.isStatic = false;
         } else {
+            ClassDecl qualifier = classOf(qDecl.type);
+            qualifyingClass = qualifier;
             ref.id.visit(this, 3);
+            qualifyingClass = null;
             ref.isStatic = ref.id.isStatic;
             Declaration declaration = ref.getDecl();
             if (qDecl.type.typeKind == TypeKind.CLASS) {
-                ClassDecl classDecl = (ClassDecl) (qDecl.type.getDecl());
-                if (qDecl instanceof ClassDecl) classDecl = (ClassDecl)qDecl;
+                ClassDecl classDecl = qualifier;
                 boolean sameClass = classDecl == currentClass;
 
                 if (declaration instanceof MemberDecl) {
                     if (!sameClass) {
                         // Check visible
-                        String checkName = declaration.id.spelling;
-                        if (!classDecl.existsMember(checkName, false, true)) {
+                        if (!existsMember(classDecl, declaration.id.symbol, false, true)) {
                             errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - cannot find public member: " + declaration.id.spelling);
-                            System.exit(4);
+                            throw new IdentificationError();
                         }
                     } else {
-                        if (!classDecl.existsMember(declaration.id.spelling, false, false)) {
+                        if (!existsMember(classDecl, declaration.id.symbol, false, false)) {
                             errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - cannot member: " + declaration.id.spelling);
-                            System.exit(4);
+                            throw new IdentificationError();
                         }
                     }
                 } else {
                     errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - expect a member declaration: " + declaration.id.spelling);
-                    System.exit(4);
-                }
-            } else if (qDecl.type.typeKind == TypeKind.ARRAY) {
-                if (ref.ref instanceof IdRef || ref.ref instanceof QualRef) {
-                    ClassDecl classDecl = (ClassDecl) (qDecl.type.getDecl());
-                    boolean sameClass = classDecl == currentClass;
-
-                    if (declaration instanceof MemberDecl) {
-                        if (!sameClass) {
-                            // Check visible
-                            String checkName = declaration.id.spelling;
-                            if (!classDecl.existsMember(checkName, false, true)) {
-                                errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - cannot find public member: " + declaration.id.spelling);
-                                System.exit(4);
-                            }
-                        } else {
-                            if (!classDecl.existsMember(declaration.id.spelling, false, false)) {
-                                errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - cannot find member: " + declaration.id.spelling);
-                                System.exit(4);
-                            }
-                        }
-                    } else {
-                        errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - expect a member declaration: " + declaration.id.spelling);
-                        System.exit(4);
-                    }
-                } else {
-                    if (!ref.id.spelling.equals("length")) {
-                    	errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - referencing a member of an ARRAY");
-                    	System.exit(4);
-                    }
+                    throw new IdentificationError();
                 }
             } else {
                 errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - referncing member of primitive types");
-                System.exit(4);
+                throw new IdentificationError();
             }
         }
         inStaticMethod = oldStatic;
 
         return null;
 	}
+
+	// class declaration behind a class type (or the element class of an array
+	// type); types of the predefined classes' members were never visited, so
+	// their class is looked up here
+	private ClassDecl classOf(TypeDenoter type) {
+		Declaration decl = type.getDecl();
+		if (decl instanceof ClassDecl) {
+			return (ClassDecl) decl;
+		}
+		TypeDenoter classType = type instanceof ArrayType ? ((ArrayType) type).eltType : type;
+		if (classType instanceof ClassType) {
+			return (ClassDecl) idt.retrieveClass(((ClassType) classType).className.symbol);
+		}
+		return null;
+	}
+
+	// whether ref is a.length for an array a
+	private static boolean isArrayLength(Reference ref) {
+		if (!(ref instanceof QualRef) || ((QualRef) ref).id.symbol != SymbolInterner.LENGTH)
+			return false;
+		Declaration qualifier = ((QualRef) ref).ref.getDecl();
+		return qualifier != null && !(qualifier instanceof ClassDecl) && qualifier.type.typeKind == TypeKind.ARRAY;
+	}
+
+	private boolean existsMember(ClassDecl cd, int symbol, boolean expectStatic, boolean expectPublic) {
+		memberLookups++;
+		return cd.existsMember(symbol, expectStatic, expectPublic);
+	}
 	
 	@Override
 	public Reference visitIxRef(IxRef ref, Integer phase) {
-		ref.id.visit(this, phase);
-		ref.isStatic = ref.id.isStatic;
-		if (ref.getDecl().type.typeKind != TypeKind.ARRAY) {
-			errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - " + ref.id.spelling
-					+ " is not array type");
-			System.exit(4);
+		ref.ref.visit(this, phase);
+		ref.isStatic = ref.ref.isStatic;
+		Declaration decl = ref.getDecl();
+		if (decl == null || decl.type == null || decl.type.typeKind != TypeKind.ARRAY) {
+			errorReporter.reportError("*** line " + ref.posn.start + ": Identification Error - "
+					+ (decl == null ? "reference" : decl.id.spelling) + " is not array type");
+			throw new IdentificationError();
 		} else {
 			ref.indexExpr.visit(this, 0);
 		}
@@ -531,36 +551,34 @@ public class Identification implements Visitor<Integer, Object> {
 	@Override
 	public Reference visitIdentifier(Identifier id, Integer phase) {
 		id.isStatic = false;
-		
-		if (id.spelling.equals("length")) {
-			id.decl = new FieldDecl(false, false, new BaseType(TypeKind.INT, id.posn), id, id.posn);
-			return null;
-		}
 
 		if (phase == 2) {
-            Declaration declaration = idt.retrieveMethod(id.spelling);
+            Declaration declaration = idt.retrieveMethod(id.symbol);
             if (declaration == null) {
                 errorReporter.reportError("*** line " + id.posn.start + ": Identification Error - method name expected");
-                System.exit(4);
+                throw new IdentificationError();
             } else {
                 id.decl = declaration;
             }
             return null;
         } else if (phase == 3) {
-            Declaration declaration = idt.retrieveMember(id.spelling);
+            if (qualifyingClass != null)
+                memberLookups++;
+            Declaration declaration = qualifyingClass != null ? qualifyingClass.getMember(id.symbol)
+                    : idt.retrieveMember(id.symbol);
             if (declaration == null) {
                 errorReporter.reportError("*** line " + id.posn.start + ": Identification Error - method name expected");
-                System.exit(4);
+                throw new IdentificationError();
             } else {
                 id.decl = declaration;
             }
             return null;
         }
         
-		Declaration decl = idt.retrieve(id.spelling);
+		Declaration decl = idt.retrieve(id.symbol);
 		if (decl == null) {
 			errorReporter.reportError("*** line "+id.posn.start+": Identification Error - cannot find variable: " + id.spelling);
-			System.exit(4);
+			throw new IdentificationError();
 		} else {
 			if (decl instanceof LocalDecl) {
 				decl.type.visit(this, 0);
@@ -569,12 +587,12 @@ public class Identification implements Visitor<Integer, Object> {
 				MemberDecl memDecl = (MemberDecl) decl;
 				if (inStaticMethod && !memDecl.isStatic) {
 					errorReporter.reportError("*** line "+id.posn.start+": Identification Error - referencing non-static member declaration, " + id.spelling + ", in a static method");
-					System.exit(4);
+					throw new IdentificationError();
 				} else {
 					boolean sameClass = (currentClass == memDecl.classDecl);
 	                if (!sameClass && !inStaticMethod && memDecl.isStatic) {
 	                    errorReporter.reportError("*** line " + id.posn.start + ": Identification Error - referencing static variables in non-static methods");
-	                    System.exit(4);
+	                    throw new IdentificationError();
 	                }
 				}
 
@@ -585,7 +603,7 @@ public class Identification implements Visitor<Integer, Object> {
                 id.isStatic = true;
 			} else {
 				errorReporter.reportError("*** line "+id.posn.start+": Identification Error - id should not be here");
-				System.exit(4);
+				throw new IdentificationError();
 			}
 		}
 		return null;
@@ -0,0 +1,13 @@
+package miniJava.ContextualAnalyzer;
+
+// thrown once an identification error has been reported; Identification.check
+// catches it and returns, since later declarations cannot be trusted
+class IdentificationError extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	IdentificationError() {
+		super();
+	}
+
+}
@@ -2,129 +2,179 @@ package miniJava.ContextualAnalyzer;
 
 import miniJava.AbstractSyntaxTrees.*;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-
-public class IdentificationTable implements Cloneable{
-
-	private HashMap<String, Declaration> currlevelidt; // latest idTable
-    public ArrayList<HashMap<String, Declaration>> allLevelIdts;
-
-    // Constructors: one for first level, one for adding predetermined levels
-    public IdentificationTable() {
-        currlevelidt = new HashMap<String, Declaration>(); 
-        allLevelIdts = new ArrayList<HashMap<String, Declaration>>();
-    }
-
-    public IdentificationTable(HashMap<String, Declaration> idt) {
-        currlevelidt = idt;
-        allLevelIdts = new ArrayList<HashMap<String, Declaration>>();
-        allLevelIdts.add(currlevelidt);
-    }
-
-    // Getters
-    public int getHighestLevel() { // highest level
-        return allLevelIdts.size() - 1;
-    }
-
-    public HashMap<String, Declaration> getCurrentIdt() {
-    	return this.currlevelidt;
-    }
-    
-    // Open/Close Scopes
-    public void openScope() { // level++
-        currlevelidt = new HashMap<String, Declaration>();
-        allLevelIdts.add(currlevelidt);
-    }
-
-    public void openScope(HashMap<String, Declaration> newidt) { // level++
-        currlevelidt = newidt;
-        allLevelIdts.add(currlevelidt);
-    }
-
-    public void closeScope() { // closes highest level in IdTable; level--
-        allLevelIdts.remove(this.getHighestLevel());
-        currlevelidt = allLevelIdts.get(this.getHighestLevel());
-    }
-
-    // Enter
-    public Object enter(String id, Declaration decl) {
-    	if (currlevelidt.get(id) == null) { // id doesn't exist yet
-    		currlevelidt.put(id, decl);
-    	} else return null;
-    	return decl;
-    }
-    
-    public Object enterDecl(Declaration decl) {
-        return enter(decl.id.spelling, decl);
-    }
-    
-    // Supporting methods
-    public boolean idExistsInCurrentLevel(String id) {
-        for (String currentId : currlevelidt.keySet()) {
-            if (id.equals(currentId)) return true;
-        }
-        return false;
-    }
-
-    public void swapIdt(int idt1, int idt2) {
-    	HashMap<String, Declaration> table1 = allLevelIdts.get(idt1);
-        HashMap<String, Declaration> table2 = allLevelIdts.get(idt2);
-        allLevelIdts.remove(idt1);
-        allLevelIdts.add(idt1, table2);
-        allLevelIdts.remove(idt2);
-        allLevelIdts.add(idt2, table1);
-    }
-    
-    /*public Object clone() { //need to copy
-		try{
-			return super.clone();
+import java.util.Arrays;
+
+/**
+ * Scoped table of declarations keyed by symbol (see SymbolInterner).
+ *
+ * Every declaration entered is pushed onto one entry stack, which doubles as
+ * the undo log: an entry remembers its symbol, its scope level and the entry
+ * it shadows. An open-addressed hash maps each symbol to its innermost entry,
+ * so a lookup costs the same however deeply scopes are nested, and closeScope
+ * just pops the entries entered since the matching openScope, restoring what
+ * they shadowed.
+ *
+ * Level 0 is open from the start and holds the predefined environment.
+ */
+public class IdentificationTable {
+
+	private int level;
+	private int[] scopeStarts = new int[16]; // entry count when each level opened
+
+	// the entry stack
+	private int entryCount;
+	private Declaration[] decls = new Declaration[64];
+	private int[] symbols = new int[64];
+	private int[] levels = new int[64];
+	private int[] shadowed = new int[64]; // entry for the same symbol below, or -1
+
+	// open-addressed hash from symbol + 1 (0 = empty slot) to innermost entry
+	private int[] keys = new int[64];
+	private int[] heads = new int[64];
+	private int keyCount;
+
+	// work done, for --stats
+	private int scopesOpened;
+	private int lookups;
+
+	public IdentificationTable() {
+		level = 0;
+	}
+
+	// Getters
+	public int getHighestLevel() { // highest level
+		return level;
+	}
+
+	public int getScopesOpened() {
+		return scopesOpened;
+	}
+
+	public int getLookups() {
+		return lookups;
+	}
+
+	// Open/Close Scopes
+	public void openScope() { // level++
+		level++;
+		scopesOpened++;
+		if (level == scopeStarts.length)
+			scopeStarts = Arrays.copyOf(scopeStarts, level * 2);
+		scopeStarts[level] = entryCount;
+	}
+
+	public void closeScope() { // closes highest level in IdTable; level--
+		int start = scopeStarts[level];
+		while (entryCount > start) {
+			entryCount--;
+			heads[slot(symbols[entryCount])] = shadowed[entryCount];
+			decls[entryCount] = null;
 		}
-		catch(Exception e){ return null; }
-	}*/
-    
-    //Retrieve
-    public Declaration retrieve(String id) {
-        for (int i = getHighestLevel(); i >= 0; i--) {
-        	HashMap<String, Declaration> idt = allLevelIdts.get(i);
-            if (idt.get(id) != null) {
-                return idt.get(id);
-            }
-        }
-		
-        return null;
-    }
-
-    public Declaration retrieveClass(String id) {
-        for (int i = getHighestLevel(); i >= 0; i--) {
-        	HashMap<String, Declaration> idt = allLevelIdts.get(i);
-            if (idt.get(id) != null && idt.get(id) instanceof ClassDecl) {
-                return idt.get(id);
-            }
-        }
-
-        return null;
-    }
-
-    public Declaration retrieveMethod(String id) {
-    	for (int i = getHighestLevel(); i >= 0; i--) {
-    		HashMap<String, Declaration> idt = allLevelIdts.get(i);
-            if (idt.get(id) != null && idt.get(id) instanceof MethodDecl) {
-                return idt.get(id);
-            }
-        }
-
-        return null;
-    }
-    
-    public Declaration retrieveMember(String id) {
-    	for (int i = getHighestLevel(); i >= 0; i--) {
-    		HashMap<String, Declaration> idt = allLevelIdts.get(i);
-            if (idt.get(id) != null && idt.get(id) instanceof MemberDecl) {
-                return idt.get(id);
-            }
-        }
-
-        return null;
-    }
+		level--;
+	}
+
+	// Enter
+	public Object enter(int id, Declaration decl) {
+		int slot = slot(id);
+		if (keys[slot] == 0) {
+			keys[slot] = id + 1;
+			heads[slot] = -1;
+			if (++keyCount * 2 > keys.length) {
+				rehash();
+				slot = slot(id);
+			}
+		}
+
+		int head = heads[slot];
+		if (head >= 0 && levels[head] == level) // id already declared at this level
+			return null;
+
+		if (entryCount == decls.length) {
+			int capacity = entryCount * 2;
+			decls = Arrays.copyOf(decls, capacity);
+			symbols = Arrays.copyOf(symbols, capacity);
+			levels = Arrays.copyOf(levels, capacity);
+			shadowed = Arrays.copyOf(shadowed, capacity);
+		}
+		decls[entryCount] = decl;
+		symbols[entryCount] = id;
+		levels[entryCount] = level;
+		shadowed[entryCount] = head;
+		heads[slot] = entryCount++;
+		return decl;
+	}
+
+	public Object enterDecl(Declaration decl) {
+		return enter(decl.id.symbol, decl);
+	}
+
+	// Supporting methods
+	public boolean idExistsInCurrentLevel(int id) {
+		lookups++;
+		int head = head(id);
+		return head >= 0 && levels[head] == level;
+	}
+
+	// slot holding id, or the empty slot where it would go
+	private int slot(int id) {
+		int mask = keys.length - 1;
+		int hash = id * 0x9E3779B9;
+		int i = (hash ^ hash >>> 16) & mask;
+		while (keys[i] != 0 && keys[i] != id + 1)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private int head(int id) {
+		int slot = slot(id);
+		return keys[slot] == 0 ? -1 : heads[slot];
+	}
+
+	private void rehash() {
+		int[] oldKeys = keys;
+		int[] oldHeads = heads;
+		keys = new int[oldKeys.length * 2];
+		heads = new int[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = slot(oldKeys[i] - 1);
+				keys[slot] = oldKeys[i];
+				heads[slot] = oldHeads[i];
+			}
+		}
+	}
+
+	// Retrieve
+	public Declaration retrieve(int id) {
+		lookups++;
+		int head = head(id);
+		return head >= 0 ? decls[head] : null;
+	}
+
+	public Declaration retrieveClass(int id) {
+		lookups++;
+		for (int e = head(id); e >= 0; e = shadowed[e]) {
+			if (decls[e] instanceof ClassDecl)
+				return decls[e];
+		}
+		return null;
+	}
+
+	public Declaration retrieveMethod(int id) {
+		lookups++;
+		for (int e = head(id); e >= 0; e = shadowed[e]) {
+			if (decls[e] instanceof MethodDecl)
+				return decls[e];
+		}
+		return null;
+	}
+
+	public Declaration retrieveMember(int id) {
+		lookups++;
+		for (int e = head(id); e >= 0; e = shadowed[e]) {
+			if (decls[e] instanceof MemberDecl)
+				return decls[e];
+		}
+		return null;
+	}
 }
@@ -0,0 +1,43 @@
+package miniJava.ContextualAnalyzer;
+
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.SymbolInterner;
+import miniJava.SyntacticAnalyzer.Token;
+
+/**
+ * Enters the predefined classes every miniJava program can use into the
+ * outermost level of an identification table:
+ *
+ *   class _PrintStream { public void println(int n) {} }
+ *   class System { public static _PrintStream out; }
+ *   class String { }
+ */
+public class StdEnvGenerator {
+
+	public static void genEnv(IdentificationTable idt, SymbolInterner symbols) {
+		ParameterDecl n = new ParameterDecl(TypeUniverse.INT, identifier("n", symbols), null);
+		ParameterDeclList printParams = new ParameterDeclList();
+		printParams.add(n);
+		MethodDecl println = new MethodDecl(
+				new FieldDecl(false, false, TypeUniverse.VOID, identifier("println", symbols), null), printParams,
+				new StatementList(), null);
+		MethodDeclList printstreamMethods = new MethodDeclList();
+		printstreamMethods.add(println);
+		ClassDecl printstream = new ClassDecl(identifier("_PrintStream", symbols), new FieldDeclList(),
+				printstreamMethods, null);
+		// System
+		FieldDecl out = new FieldDecl(false, true, printstream.getClassType(), identifier("out", symbols), null);
+		FieldDeclList sysFields = new FieldDeclList();
+		sysFields.add(out);
+		ClassDecl sys = new ClassDecl(identifier("System", symbols), sysFields, new MethodDeclList(), null);
+		ClassDecl str = new ClassDecl(identifier("String", symbols), new FieldDeclList(), new MethodDeclList(), null);
+		idt.enterDecl(printstream);
+		idt.enterDecl(sys);
+		idt.enterDecl(str);
+	}
+
+	private static Identifier identifier(String name, SymbolInterner symbols) {
+		return new Identifier(new Token(Token.IDENTIFIER, name, symbols.intern(name), new SourcePosition()));
+	}
+}
@@ -1,9 +1,15 @@
 package miniJava.ContextualAnalyzer;
 
+import java.math.BigInteger;
+
 import miniJava.AbstractSyntaxTrees.*;
 import miniJava.AbstractSyntaxTrees.Package;
 import miniJava.ErrorReporter;
 import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.SymbolInterner;
+import miniJava.SyntacticAnalyzer.Token;
+
+import static miniJava.ContextualAnalyzer.TypeUniverse.*;
 
 public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 
@@ -21,7 +27,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 
 	public void check() {
 		decoratedAST.visit(this, null);
-		System.out.println("Type checking complete, success.");
+		errorReporter.reportNote("Type checking complete, success.");
 	}
 
 	// Package //
@@ -29,7 +35,23 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 	@Override
 	public TypeDenoter visitPackage(Package p, TypeDenoter arg) {
 		ClassDeclList cdl = p.classDeclList;
+		// member types are made canonical up front, since a call or field
+		// access can be checked before the member it refers to
+		for (ClassDecl cd : cdl) {
+			for (FieldDecl fd : cd.fieldDeclList) {
+				fd.type = fd.type.visit(this, arg);
+			}
+			for (MethodDecl md : cd.methodDeclList) {
+				md.type = md.type.visit(this, arg);
+				for (ParameterDecl pd : md.parameterDeclList) {
+					pd.type = pd.type.visit(this, arg);
+				}
+			}
+		}
 		for (ClassDecl cd : cdl) {
+			if (errorReporter.limitReached()) {
+				break;
+			}
 			cd.visit(this, arg);
 		}
 		return null;
@@ -40,7 +62,6 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 	@Override
 	public TypeDenoter visitClassDecl(ClassDecl cd, TypeDenoter arg) {
 		currClass = cd;
-		cd.id.visit(this, arg);
 		for (FieldDecl fd : cd.fieldDeclList) {
 			fd.visit(this, arg);
 		}
@@ -64,7 +85,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 	public TypeDenoter visitMethodDecl(MethodDecl md, TypeDenoter arg) {
 		// check main method
 		md.type = md.type.visit(this, arg);
-		if (md.id.spelling.equals("main")) {
+		if (md.id.symbol == SymbolInterner.MAIN) {
 			if (containsMain) {
 				errorReporter.reportError("*** line " + md.posn.start + ": Type error - only one main method allowed");
 
@@ -77,7 +98,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 						"*** line " + md.posn.start + ": Type error - main method must have String[] as parameter");
 
 			} else if (((ArrayType) typeDenoter).eltType.typeKind != TypeKind.UNSUPPORTED
-					&& !((ClassType) ((ArrayType) typeDenoter).eltType).className.spelling.equals("String")) {
+					&& ((ClassType) ((ArrayType) typeDenoter).eltType).className.symbol != SymbolInterner.STRING) {
 				errorReporter.reportError(
 						"*** line " + md.posn.start + ": Type error - main method must have String[] as parameter");
 
@@ -118,7 +139,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 				checkError(returnType);
 				checkUnSupported(td);
 				checkError(td);
-				if (!returnType.equals(td)) {
+				if (!matches(returnType, td)) {
 					errorReporter.reportError("*** line " + md.posn.start
 							+ ":  Type error - returning type doesn't match method type: " + md.id.spelling);
 				}
@@ -151,24 +172,24 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 
 	@Override
 	public TypeDenoter visitBaseType(BaseType type, TypeDenoter arg) {
-		return type;
+		// unsupported types keep their own position for error messages
+		return type.typeKind == TypeKind.UNSUPPORTED ? type : baseType(type.typeKind);
 	}
 
 	@Override
 	public TypeDenoter visitClassType(ClassType type, TypeDenoter arg) {
-		if (type.className.spelling.equals("String")) {
-			if (userDefinedString)
-				return type;
-			else
+		if (type.className.symbol == SymbolInterner.STRING) {
+			if (!userDefinedString)
 				return new BaseType(TypeKind.UNSUPPORTED, type.posn);
 		}
-		return type;
+		ClassDecl cd = type.getDecl();
+		return cd == null ? type : cd.getClassType();
 	}
 
 	@Override
 	public TypeDenoter visitArrayType(ArrayType type, TypeDenoter arg) {
 		TypeDenoter typeDenoter = type.eltType.visit(this, arg);
-		return new ArrayType(typeDenoter, type.posn);
+		return arrayOf(typeDenoter);
 	}
 
 	// Statements //
@@ -189,7 +210,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 			TypeDenoter assignedType = stmt.initExp.visit(this, arg);
 			checkUnSupported(assignedType);
 			checkError(assignedType);
-			if (!declaredType.equals(assignedType)) {
+			if (!matches(declaredType, assignedType)) {
 				errorReporter.reportError("*** line " + stmt.posn.start
 						+ ":  Type error - variable value type is not the same as variable type");
 
@@ -206,7 +227,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 		checkError(refType);
 		checkUnSupported(valType);
 		checkError(valType);
-		if (!refType.equals(valType)) {
+		if (!matches(refType, valType)) {
 			errorReporter.reportError(
 					"*** line " + stmt.posn.start + ":  Type error - left and right sides of assign statement are not the same types");
 
@@ -226,7 +247,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 				for (int i = 0; i < stmt.argList.size(); i++) {
 					TypeDenoter actualType = stmt.argList.get(i).visit(this, arg);
 					TypeDenoter declaredType = methodDecl.parameterDeclList.get(i).type;
-					if (!declaredType.equals(actualType)) {
+					if (!matches(declaredType, actualType)) {
 						errorReporter.reportError("*** line " + stmt.posn.start + ":  Type error - method "
 								+ methodDecl.id.spelling + ": #" + (i + 1) + " argument is wrong type");
 
@@ -244,7 +265,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 	public TypeDenoter visitReturnStmt(ReturnStmt stmt, TypeDenoter arg) {
 		TypeDenoter type;
 		if (stmt.returnExpr == null) {
-			type = new BaseType(TypeKind.VOID, stmt.posn);
+			type = VOID;
 		} else {
 			type = stmt.returnExpr.visit(this, arg);
 		}
@@ -302,75 +323,77 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 
 	@Override
 	public TypeDenoter visitUnaryExpr(UnaryExpr expr, TypeDenoter arg) {
-		String op = expr.operator.spelling;
-		TypeDenoter typeDenoter = expr.expr.visit(this, arg);
-		if (op.equals("-")) {
+		// -2147483648 is the one literal out of range that may be negated
+		TypeDenoter typeDenoter = expr.operator.kind == Token.MINUS && isMinIntMagnitude(expr.expr) ? INT
+				: expr.expr.visit(this, arg);
+		switch (expr.operator.kind) {
+		case Token.MINUS:
 			if (typeDenoter.typeKind == TypeKind.INT) {
-				return new BaseType(TypeKind.INT, new SourcePosition());
-			} else {
-				errorReporter.reportError(
-						"*** line " + expr.posn.start + ":  Type error - unaryexpr: variable after - is not int type");
-				return new BaseType(TypeKind.ERROR, new SourcePosition());
+				return INT;
 			}
-		} else if (op.equals("!")) {
+			errorReporter.reportError(
+					"*** line " + expr.posn.start + ":  Type error - unaryexpr: variable after - is not int type");
+			return ERROR;
+		case Token.NOT:
 			if (typeDenoter.typeKind == TypeKind.BOOLEAN) {
-				return new BaseType(TypeKind.BOOLEAN, new SourcePosition());
-			} else {
-				errorReporter.reportError("*** line " + expr.posn.start
-						+ ":  Type error in UnaryExpr: variable after ! operator is not boolean type");
-				return new BaseType(TypeKind.ERROR, new SourcePosition());
+				return BOOLEAN;
 			}
-		} else {
+			errorReporter.reportError("*** line " + expr.posn.start
+					+ ":  Type error in UnaryExpr: variable after ! operator is not boolean type");
+			return ERROR;
+		default:
 			errorReporter.reportError(
 					"*** line " + expr.posn.start + ":  Type error - UnaryExpr: incorrect operator, neither - or !");
-			return new BaseType(TypeKind.ERROR, new SourcePosition());
+			return ERROR;
 		}
 	}
 
 	@Override
 	public TypeDenoter visitBinaryExpr(BinaryExpr expr, TypeDenoter arg) {
-		String op = expr.operator.spelling;
 		TypeDenoter leftType = expr.left.visit(this, null);
 		TypeDenoter rightType = expr.right.visit(this, null);
-		if (op.equals("||") || op.equals("&&")) {
+		switch (expr.operator.kind) {
+		case Token.OR:
+		case Token.AND:
 			if (leftType.typeKind == TypeKind.BOOLEAN && rightType.typeKind == TypeKind.BOOLEAN) {
-				return new BaseType(TypeKind.BOOLEAN, new SourcePosition());
-			} else {
-				errorReporter.reportError(
-						"*** line " + expr.posn.start + ":  Type error - || or && can't be used with non-boolean types");
-				return new BaseType(TypeKind.ERROR, new SourcePosition());
+				return BOOLEAN;
 			}
-		} else if (op.equals("==") || op.equals("!=")) {
+			errorReporter.reportError(
+					"*** line " + expr.posn.start + ":  Type error - || or && can't be used with non-boolean types");
+			return ERROR;
+		case Token.EQUAL:
+		case Token.NOTEQUAL:
 			checkUnSupported(leftType);
 			checkError(leftType);
 			checkUnSupported(rightType);
 			checkError(rightType);
-			if (leftType.equals(rightType)) { // require the same type
-				return new BaseType(TypeKind.BOOLEAN, new SourcePosition());
-			} else {
-				errorReporter.reportError(
-						"*** line " + expr.posn.start + ":  Type error - == or != are for comparing the same type only");
-				return new BaseType(TypeKind.ERROR, new SourcePosition());
+			if (matches(leftType, rightType)) { // require the same type
+				return BOOLEAN;
 			}
-		} else if (op.equals("<=") || op.equals(">=") || op.equals(">") || op.equals("<")) {
+			errorReporter.reportError(
+					"*** line " + expr.posn.start + ":  Type error - == or != are for comparing the same type only");
+			return ERROR;
+		case Token.LEQUAL:
+		case Token.GEQUAL:
+		case Token.GREATER:
+		case Token.LESS:
 			if (leftType.typeKind == TypeKind.INT && rightType.typeKind == TypeKind.INT) {
-				return new BaseType(TypeKind.BOOLEAN, new SourcePosition());
-			} else {
-				errorReporter
-						.reportError("*** line " + expr.posn.start + ":  Type error - >= <= > < are for int type only");
-				return new BaseType(TypeKind.ERROR, new SourcePosition());
+				return BOOLEAN;
 			}
-		} else if (op.equals("+") || op.equals("-") || op.equals("*") || op.equals("/")) {
+			errorReporter.reportError("*** line " + expr.posn.start + ":  Type error - >= <= > < are for int type only");
+			return ERROR;
+		case Token.PLUS:
+		case Token.MINUS:
+		case Token.TIMES:
+		case Token.DIV:
 			if (leftType.typeKind == TypeKind.INT && rightType.typeKind == TypeKind.INT) {
-				return new BaseType(TypeKind.INT, new SourcePosition());
-			} else {
-				errorReporter
-						.reportError("*** line " + expr.posn.start + ":  Type error - + - * / are for int type only");
-				return new BaseType(TypeKind.ERROR, new SourcePosition());
+				return INT;
 			}
-		} else {
+			errorReporter.reportError("*** line " + expr.posn.start + ":  Type error - + - * / are for int type only");
+			return ERROR;
+		default:
 			errorReporter.reportError("*** line " + expr.posn.start + ":  Type error - operator doesn't exist");
-			return new BaseType(TypeKind.ERROR, new SourcePosition());
+			return ERROR;
 		}
 	}
 
@@ -399,7 +422,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 					checkError(actualType);
 					checkUnSupported(declaredType);
 					checkError(declaredType);
-					if (!declaredType.equals(actualType)) {
+					if (!matches(declaredType, actualType)) {
 						errorReporter.reportError("*** line " + expr.posn.start + ":  Type error - method "
 								+ methodDecl.id.spelling + ": #" + (i + 1) + " parameter argument is wrong type");
 					}
@@ -426,7 +449,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 
 	@Override
 	public TypeDenoter visitNewArrayExpr(NewArrayExpr expr, TypeDenoter arg) {
-		expr.type = new ArrayType(expr.eltType, expr.posn);
+		expr.type = arrayOf(expr.eltType.visit(this, arg));
 		return expr.type;
 	}
 
@@ -434,7 +457,7 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 
 	@Override
 	public TypeDenoter visitThisRef(ThisRef ref, TypeDenoter arg) {
-		return ref.getType();
+		return currClass.getClassType();
 	}
 
 	@Override
@@ -479,17 +502,29 @@ public class TypeChecking implements Visitor<TypeDenoter, TypeDenoter> {
 
 	@Override
 	public TypeDenoter visitIntLiteral(IntLiteral intLiteral, TypeDenoter arg) {
-		return new BaseType(TypeKind.INT, intLiteral.posn);
+		if (new BigInteger(intLiteral.spelling).compareTo(MAX_INT) > 0) {
+			errorReporter.reportError("*** line " + intLiteral.posn.start + ":  Type error - integer literal "
+					+ intLiteral.spelling + " is too large for an int");
+		}
+		return INT;
+	}
+
+	private static final BigInteger MAX_INT = BigInteger.valueOf(Integer.MAX_VALUE);
+
+	// whether e is the literal 2147483648, which is an int only after a minus
+	private static boolean isMinIntMagnitude(Expression e) {
+		return e instanceof LiteralExpr && ((LiteralExpr) e).lit instanceof IntLiteral
+				&& new BigInteger(((LiteralExpr) e).lit.spelling).equals(MAX_INT.add(BigInteger.ONE));
 	}
 
 	@Override
 	public TypeDenoter visitNullLiteral(NullLiteral nullLiteral, TypeDenoter arg) {
-		return new BaseType(TypeKind.NULL, nullLiteral.posn);
+		return NULL;
 	}
 
 	@Override
 	public TypeDenoter visitBooleanLiteral(BooleanLiteral booleanLiteral, TypeDenoter arg) {
-		return new BaseType(TypeKind.BOOLEAN, booleanLiteral.posn);
+		return BOOLEAN;
 	}
 
 	private void checkUnSupported(TypeDenoter typeDenoter) {
@@ -0,0 +1,68 @@
+package miniJava.ContextualAnalyzer;
+
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.SyntacticAnalyzer.SourcePosition;
+
+/**
+ * The canonical types. There is one shared instance of each base type, one
+ * ClassType per ClassDecl and one ArrayType per element type, so once the
+ * checker has replaced declared types by their canonical forms two types are
+ * the same exactly when they are the same object.
+ */
+public final class TypeUniverse {
+
+	private TypeUniverse() {
+	}
+
+	public static final BaseType INT = new BaseType(TypeKind.INT, new SourcePosition());
+	public static final BaseType BOOLEAN = new BaseType(TypeKind.BOOLEAN, new SourcePosition());
+	public static final BaseType VOID = new BaseType(TypeKind.VOID, new SourcePosition());
+	public static final BaseType NULL = new BaseType(TypeKind.NULL, new SourcePosition());
+	public static final BaseType ERROR = new BaseType(TypeKind.ERROR, new SourcePosition());
+
+	// the shared base types are used from every compilation at once, so their
+	// array types are made here rather than on first use
+	static {
+		INT.getArrayType();
+		BOOLEAN.getArrayType();
+		VOID.getArrayType();
+		NULL.getArrayType();
+		ERROR.getArrayType();
+	}
+
+	public static BaseType baseType(TypeKind kind) {
+		switch (kind) {
+		case INT:
+			return INT;
+		case BOOLEAN:
+			return BOOLEAN;
+		case VOID:
+			return VOID;
+		case NULL:
+			return NULL;
+		default:
+			return ERROR;
+		}
+	}
+
+	// the canonical array of the canonical element type elt
+	public static ArrayType arrayOf(TypeDenoter elt) {
+		if (elt.typeKind == TypeKind.UNSUPPORTED)
+			return new ArrayType(elt, elt.posn); // never equal to anything anyway
+		return elt.getArrayType();
+	}
+
+	// whether a value of type actual may be used where expected is wanted;
+	// null fits any type and error types are not complained about twice
+	public static boolean matches(TypeDenoter expected, TypeDenoter actual) {
+		if (expected.typeKind == TypeKind.NULL)
+			return true;
+		if (expected.typeKind == TypeKind.UNSUPPORTED || expected.typeKind == TypeKind.ERROR)
+			return false;
+		if (actual == null || actual.typeKind == TypeKind.UNSUPPORTED)
+			return false;
+		if (actual.typeKind == TypeKind.NULL || actual.typeKind == TypeKind.ERROR)
+			return true;
+		return expected == actual;
+	}
+}
@@ -1,39 +1,121 @@
 package miniJava;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
 import miniJava.SyntacticAnalyzer.*;
 /**
  * reports errors from different phases of compilation and maintains a count of
  * total errors for use in the compiler driver
+ *
+ * Diagnostics are collected in memory rather than printed as they come, so a
+ * phase never writes to (or exits) the process itself; the driver prints them
+ * in one write with flush. At most maxErrors errors are kept, any further ones
+ * are only counted.
  */
 public class ErrorReporter {
 
+	public enum Kind {
+		ERROR, RESTRICTION, NOTE
+	}
+
+	// one report: what it is, its text and, when the reporter knows it, where
+	public static class Diagnostic {
+		public final Kind kind;
+		public final String message;
+		public final SourcePosition posn;
+
+		Diagnostic(Kind kind, String message, SourcePosition posn) {
+			this.kind = kind;
+			this.message = message;
+			this.posn = posn;
+		}
+
+		@Override
+		public String toString() {
+			switch (kind) {
+			case ERROR:
+				return posn == null ? message : "ERROR: " + message + " " + posn.start + ".." + posn.finish;
+			case RESTRICTION:
+				return "RESTRICTION: " + message;
+			default:
+				return message;
+			}
+		}
+	}
+
 	int numErrors;
+	private int maxErrors;
+	private List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
 
 	public ErrorReporter() {
+		this(Integer.MAX_VALUE);
+	}
+
+	public ErrorReporter(int maxErrors) {
 		numErrors = 0;
+		this.maxErrors = maxErrors;
 	}
 
 	public void reportError(String message, String tokenName, SourcePosition pos) {
-		System.out.print("ERROR: ");
-
+		StringBuilder text = new StringBuilder(message.length() + tokenName.length());
 		for (int p = 0; p < message.length(); p++)
 			if (message.charAt(p) == '%')
-				System.out.print(tokenName);
+				text.append(tokenName);
 			else
-				System.out.print(message.charAt(p));
-		System.out.println(" " + pos.start + ".." + pos.finish);
-		numErrors++;
+				text.append(message.charAt(p));
+		error(new Diagnostic(Kind.ERROR, text.toString(), pos));
 	}
 	
 	public void reportError(String message) {
-		System.out.println(message);
+		error(new Diagnostic(Kind.ERROR, message, null));
+	}
+
+	private void error(Diagnostic diagnostic) {
+		if (numErrors < maxErrors)
+			diagnostics.add(diagnostic);
 		numErrors++;
 	}
 
 	public void reportRestriction(String message) {
-		System.out.println("RESTRICTION: " + message);
+		diagnostics.add(new Diagnostic(Kind.RESTRICTION, message, null));
+	}
+
+	// progress messages from the phases, kept in order with the errors
+	public void reportNote(String message) {
+		diagnostics.add(new Diagnostic(Kind.NOTE, message, null));
 	}
 
 	public boolean hasErrors() {
 		return numErrors > 0;
 	}
+
+	public int getNumErrors() {
+		return numErrors;
+	}
+
+	// whether errors are being dropped, so a phase may as well stop
+	public boolean limitReached() {
+		return numErrors >= maxErrors;
+	}
+
+	public List<Diagnostic> getDiagnostics() {
+		return diagnostics;
+	}
+
+	public String format() {
+		StringBuilder text = new StringBuilder();
+		for (Diagnostic d : diagnostics)
+			text.append(d).append(System.lineSeparator());
+		if (numErrors > maxErrors)
+			text.append("(" + (numErrors - maxErrors) + " more errors not shown)").append(System.lineSeparator());
+		return text.toString();
+	}
+
+	// prints what has been reported since the last flush in one write
+	public void flush(PrintStream out) {
+		out.print(format());
+		out.flush();
+		diagnostics.clear();
+	}
 }
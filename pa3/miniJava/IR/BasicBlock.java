@@ -0,0 +1,146 @@
+package miniJava.IR;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A basic block: its phis, then straight-line instructions, then one
+ * terminator (JUMP, BRANCH or RETURN) naming the successors. The
+ * predecessors are kept in a fixed order, the order of every phi's
+ * operands; the edge methods here keep the two in step.
+ */
+public class BasicBlock {
+
+	public final IRFunction function;
+	final int id;
+	final List<Instruction> instructions = new ArrayList<Instruction>();
+	final List<BasicBlock> predecessors = new ArrayList<BasicBlock>();
+
+	BasicBlock(IRFunction function, int id) {
+		this.function = function;
+		this.id = id;
+	}
+
+	public int id() {
+		return id;
+	}
+
+	public String name() {
+		return "b" + id;
+	}
+
+	public List<Instruction> instructions() {
+		return Collections.unmodifiableList(instructions);
+	}
+
+	public List<BasicBlock> predecessors() {
+		return Collections.unmodifiableList(predecessors);
+	}
+
+	public List<BasicBlock> successors() {
+		Instruction t = terminator();
+		return t == null || t.targets == null ? Collections.<BasicBlock>emptyList() : Arrays.asList(t.targets);
+	}
+
+	// the terminator, or null while the block is being built
+	public Instruction terminator() {
+		if (instructions.isEmpty())
+			return null;
+		Instruction last = instructions.get(instructions.size() - 1);
+		return last.op.isTerminator() ? last : null;
+	}
+
+	public List<Instruction> phis() {
+		int n = 0;
+		while (n < instructions.size() && instructions.get(n).op == Op.PHI)
+			n++;
+		return Collections.unmodifiableList(instructions.subList(0, n));
+	}
+
+	// Instructions
+
+	public Instruction add(Instruction i) {
+		return insert(instructions.size(), i);
+	}
+
+	public Instruction insert(int index, Instruction i) {
+		instructions.add(index, i);
+		i.block = this;
+		return i;
+	}
+
+	// adds i after the phis
+	public Instruction insertAtStart(Instruction i) {
+		return insert(phis().size(), i);
+	}
+
+	public Instruction insertBeforeTerminator(Instruction i) {
+		return insert(terminator() == null ? instructions.size() : instructions.size() - 1, i);
+	}
+
+	// moves i, from this block or another, to just before the terminator;
+	// its operands must still dominate it there, and it must dominate its users
+	public void moveBeforeTerminator(Instruction i) {
+		i.block.instructions.remove(i);
+		insertBeforeTerminator(i);
+	}
+
+	// Edges
+
+	public Instruction jump(BasicBlock target) {
+		Instruction jump = add(function.instruction(Op.JUMP, Type.VOID));
+		jump.targets = new BasicBlock[] { target };
+		target.predecessors.add(this);
+		return jump;
+	}
+
+	// a branch on cond, or a jump if both ways lead to the same block
+	public Instruction branch(Instruction cond, BasicBlock ifTrue, BasicBlock ifFalse) {
+		if (ifTrue == ifFalse)
+			return jump(ifTrue);
+		Instruction branch = add(function.instruction(Op.BRANCH, Type.VOID, cond));
+		branch.targets = new BasicBlock[] { ifTrue, ifFalse };
+		ifTrue.predecessors.add(this);
+		ifFalse.predecessors.add(this);
+		return branch;
+	}
+
+	public Instruction ret(Instruction value) {
+		Instruction ret = value == null ? function.instruction(Op.RETURN, Type.VOID)
+				: function.instruction(Op.RETURN, Type.VOID, value);
+		return add(ret);
+	}
+
+	// points the terminator's edges to old at now instead; the callers
+	// fix up the predecessor lists
+	void retarget(BasicBlock old, BasicBlock now) {
+		Instruction t = terminator();
+		for (int i = 0; i < t.targets.length; i++)
+			if (t.targets[i] == old)
+				t.targets[i] = now;
+	}
+
+	// removes the edge from pred, and pred's operand of each phi
+	void removePredecessor(BasicBlock pred) {
+		int k = predecessors.indexOf(pred);
+		predecessors.remove(k);
+		for (Instruction phi : phis())
+			phi.removeOperand(k);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder(name()).append(':');
+		if (!predecessors.isEmpty()) {
+			s.append("  preds");
+			for (BasicBlock p : predecessors)
+				s.append(' ').append(p.name());
+		}
+		s.append(System.lineSeparator());
+		for (Instruction i : instructions)
+			s.append("    ").append(i).append(System.lineSeparator());
+		return s.toString();
+	}
+}
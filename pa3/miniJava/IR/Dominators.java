@@ -0,0 +1,125 @@
+package miniJava.IR;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The dominator tree of a function, by the iterative algorithm of Cooper,
+ * Harvey and Kennedy ("A Simple, Fast Dominance Algorithm"): immediate
+ * dominators are refined in reverse postorder until nothing changes,
+ * intersecting two candidates by walking up the tree by postorder number.
+ *
+ * Blocks are looked up by id. The result describes the graph as it was
+ * when computed, so it must be computed again after edges change.
+ */
+public class Dominators {
+
+	private final BasicBlock[] idom; // by block id; the entry's is itself
+	private final int[] postorder; // by block id; -1 if unreachable
+	private final List<BasicBlock> reversePostorder = new ArrayList<BasicBlock>();
+	private final List<List<BasicBlock>> children = new ArrayList<List<BasicBlock>>();
+
+	public Dominators(IRFunction f) {
+		int n = f.blockCount();
+		idom = new BasicBlock[n];
+		postorder = new int[n];
+		Arrays.fill(postorder, -1);
+		number(f.entry(), new boolean[n]);
+		Collections.reverse(reversePostorder);
+
+		BasicBlock entry = f.entry();
+		idom[entry.id] = entry;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (BasicBlock b : reversePostorder) {
+				if (b == entry)
+					continue;
+				BasicBlock dom = null;
+				for (BasicBlock p : b.predecessors)
+					if (idom[p.id] != null)
+						dom = dom == null ? p : intersect(p, dom);
+				if (idom[b.id] != dom) {
+					idom[b.id] = dom;
+					changed = true;
+				}
+			}
+		}
+
+		for (int i = 0; i < n; i++)
+			children.add(new ArrayList<BasicBlock>());
+		for (BasicBlock b : reversePostorder)
+			if (b != entry)
+				children.get(idom[b.id].id).add(b);
+	}
+
+	// depth first, without recursion: a long chain of blocks is common
+	private void number(BasicBlock entry, boolean[] visited) {
+		List<BasicBlock> stack = new ArrayList<BasicBlock>();
+		List<Integer> next = new ArrayList<Integer>();
+		stack.add(entry);
+		next.add(0);
+		visited[entry.id] = true;
+		while (!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			BasicBlock b = stack.get(top);
+			List<BasicBlock> succs = b.successors();
+			int k = next.get(top);
+			if (k < succs.size()) {
+				next.set(top, k + 1);
+				BasicBlock s = succs.get(k);
+				if (!visited[s.id]) {
+					visited[s.id] = true;
+					stack.add(s);
+					next.add(0);
+				}
+			} else {
+				stack.remove(top);
+				next.remove(top);
+				postorder[b.id] = reversePostorder.size();
+				reversePostorder.add(b);
+			}
+		}
+	}
+
+	private BasicBlock intersect(BasicBlock a, BasicBlock b) {
+		while (a != b) {
+			while (postorder[a.id] < postorder[b.id])
+				a = idom[a.id];
+			while (postorder[b.id] < postorder[a.id])
+				b = idom[b.id];
+		}
+		return a;
+	}
+
+	// the immediate dominator, or null for the entry or an unreachable block
+	public BasicBlock idom(BasicBlock b) {
+		BasicBlock d = idom[b.id];
+		return d == b ? null : d;
+	}
+
+	public boolean isReachable(BasicBlock b) {
+		return b.id < postorder.length && postorder[b.id] >= 0;
+	}
+
+	public boolean dominates(BasicBlock a, BasicBlock b) {
+		if (!isReachable(b))
+			return true;
+		while (postorder[b.id] < postorder[a.id])
+			b = idom[b.id];
+		return a == b;
+	}
+
+	// the blocks b immediately dominates, in reverse postorder
+	public List<BasicBlock> children(BasicBlock b) {
+		return Collections.unmodifiableList(children.get(b.id));
+	}
+
+	// the reachable blocks, each before its successors except along back
+	// edges
+	public List<BasicBlock> reversePostorder() {
+		return Collections.unmodifiableList(reversePostorder);
+	}
+}
@@ -0,0 +1,484 @@
+package miniJava.IR;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.SyntacticAnalyzer.Token;
+
+/**
+ * Builds the SSA form of a type-checked AST, one IRFunction per method, the
+ * way Braun et al. do in "Simple and Efficient Construction of Static Single
+ * Assignment Form": local variables are never stored, but their current
+ * values are looked up through the blocks' definitions as they are read,
+ * placing phis where paths join. A block is sealed once all its
+ * predecessors are known; reading a variable in a block not yet sealed (a
+ * loop header) places a phi whose operands are filled in when it is.
+ * Trivial phis are removed as soon as their operands are known.
+ *
+ * Control flow follows BytecodeGenerator: conditions branch rather than
+ * compute booleans, with && and || short-circuited, and loops are rotated,
+ * a guard before the loop and the test again at the end of the body. The
+ * guard leads to a preheader, a block of its own that jumps to the body.
+ * Visiting an expression appends its instructions to the current block and
+ * returns its value.
+ */
+public class IRBuilder implements Visitor<Object, Instruction> {
+
+	private IRFunction function;
+	private BasicBlock current;
+	private Instruction thisValue;
+
+	private final Map<BasicBlock, Map<LocalDecl, Instruction>> definitions = new HashMap<BasicBlock, Map<LocalDecl, Instruction>>();
+	private final Map<BasicBlock, Map<LocalDecl, Instruction>> incompletePhis = new HashMap<BasicBlock, Map<LocalDecl, Instruction>>();
+	private final Set<BasicBlock> sealed = new HashSet<BasicBlock>();
+	private final Map<Instruction, Instruction> replaced = new IdentityHashMap<Instruction, Instruction>();
+
+	public IRProgram build(AST ast) {
+		Package program = (Package) ast;
+		IRProgram ir = new IRProgram(program);
+		for (ClassDecl cd : program.classDeclList)
+			for (MethodDecl md : cd.methodDeclList)
+				ir.add(build(md));
+		return ir;
+	}
+
+	private IRFunction build(MethodDecl md) {
+		function = new IRFunction(md);
+		definitions.clear();
+		incompletePhis.clear();
+		sealed.clear();
+		replaced.clear();
+
+		current = newSealedBlock();
+		thisValue = md.isStatic ? null : emit(md, function.instruction(Op.THIS, Type.REF));
+		for (int p = 0; p < md.parameterDeclList.size(); p++) {
+			ParameterDecl pd = md.parameterDeclList.get(p);
+			Instruction param = emit(pd, function.instruction(Op.PARAM, Type.of(pd.type)));
+			param.constant = p;
+			write(pd, current, param);
+		}
+
+		for (Statement s : md.statementList)
+			s.visit(this, null);
+		if (current.terminator() == null)
+			current.ret(function.returnType == Type.VOID ? null : emit(md, zero(function.returnType))).line = line(md);
+		function.removeUnreachableBlocks();
+		return function;
+	}
+
+	// Blocks and variables
+
+	private BasicBlock newSealedBlock() {
+		BasicBlock b = function.newBlock();
+		sealed.add(b);
+		return b;
+	}
+
+	private void write(LocalDecl variable, BasicBlock b, Instruction value) {
+		Map<LocalDecl, Instruction> defs = definitions.get(b);
+		if (defs == null)
+			definitions.put(b, defs = new LinkedHashMap<LocalDecl, Instruction>());
+		defs.put(variable, value);
+	}
+
+	private Instruction read(LocalDecl variable, BasicBlock b) {
+		Map<LocalDecl, Instruction> defs = definitions.get(b);
+		Instruction value = defs == null ? null : defs.get(variable);
+		if (value == null)
+			return readRecursive(variable, b);
+		while (replaced.containsKey(value))
+			value = replaced.get(value);
+		return value;
+	}
+
+	private Instruction readRecursive(LocalDecl variable, BasicBlock b) {
+		Instruction value;
+		if (!sealed.contains(b)) {
+			value = newPhi(variable, b);
+			Map<LocalDecl, Instruction> phis = incompletePhis.get(b);
+			if (phis == null)
+				incompletePhis.put(b, phis = new LinkedHashMap<LocalDecl, Instruction>());
+			phis.put(variable, value);
+		} else if (b.predecessors.size() == 1) {
+			value = read(variable, b.predecessors.get(0));
+		} else if (b.predecessors.isEmpty()) {
+			// the entry, or code after a return: a value no path defines
+			value = b.insertAtStart(zero(Type.of(variable.type)));
+		} else {
+			value = newPhi(variable, b);
+			write(variable, b, value); // breaks cycles through loops
+			value = addPhiOperands(variable, value);
+		}
+		write(variable, b, value);
+		return value;
+	}
+
+	private Instruction newPhi(LocalDecl variable, BasicBlock b) {
+		Instruction phi = function.instruction(Op.PHI, Type.of(variable.type));
+		phi.line = line(variable);
+		return b.insert(b.phis().size(), phi);
+	}
+
+	private Instruction addPhiOperands(LocalDecl variable, Instruction phi) {
+		for (BasicBlock pred : phi.block.predecessors)
+			phi.addOperand(read(variable, pred));
+		function.removeIfTrivial(phi, replaced);
+		while (replaced.containsKey(phi))
+			phi = replaced.get(phi);
+		return phi;
+	}
+
+	// all of b's predecessors are known now
+	private void seal(BasicBlock b) {
+		Map<LocalDecl, Instruction> phis = incompletePhis.remove(b);
+		if (phis != null)
+			for (Map.Entry<LocalDecl, Instruction> e : phis.entrySet())
+				addPhiOperands(e.getKey(), e.getValue());
+		sealed.add(b);
+	}
+
+	// Emitting
+
+	private Instruction emit(AST node, Instruction i) {
+		i.line = line(node);
+		return current.add(i);
+	}
+
+	private Instruction emit(AST node, Op op, Type type, Instruction... operands) {
+		return emit(node, function.instruction(op, type, operands));
+	}
+
+	private static int line(AST node) {
+		return node == null || node.posn == null ? 0 : node.posn.start;
+	}
+
+	private Instruction zero(Type type) {
+		return type == Type.REF ? function.instruction(Op.NULL, Type.REF) : function.constant(type, 0);
+	}
+
+	// Conditions
+
+	// ends the current block with branches to ifTrue when cond holds and to
+	// ifFalse when it does not. Neither may be sealed yet.
+	private void branch(Expression cond, BasicBlock ifTrue, BasicBlock ifFalse) {
+		if (cond instanceof UnaryExpr && ((UnaryExpr) cond).operator.kind == Token.NOT) {
+			branch(((UnaryExpr) cond).expr, ifFalse, ifTrue);
+			return;
+		}
+		if (cond instanceof LiteralExpr && ((LiteralExpr) cond).lit instanceof BooleanLiteral) {
+			current.jump(((LiteralExpr) cond).lit.kind == Token.TRUE ? ifTrue : ifFalse).line = line(cond);
+			return;
+		}
+		if (cond instanceof BinaryExpr) {
+			BinaryExpr expr = (BinaryExpr) cond;
+			int op = expr.operator.kind;
+			if (op == Token.AND || op == Token.OR) {
+				BasicBlock right = function.newBlock();
+				if (op == Token.AND)
+					branch(expr.left, right, ifFalse);
+				else
+					branch(expr.left, ifTrue, right);
+				seal(right);
+				current = right;
+				branch(expr.right, ifTrue, ifFalse);
+				return;
+			}
+		}
+		Instruction value = cond.visit(this, null);
+		current.branch(value, ifTrue, ifFalse).line = line(cond);
+	}
+
+	// a condition's value, through branches
+	private Instruction booleanValue(Expression cond) {
+		BasicBlock ifTrue = function.newBlock(), ifFalse = function.newBlock(), join = function.newBlock();
+		branch(cond, ifTrue, ifFalse);
+		seal(ifTrue);
+		seal(ifFalse);
+		current = ifTrue;
+		Instruction one = emit(cond, function.constant(Type.BOOLEAN, 1));
+		current.jump(join);
+		current = ifFalse;
+		Instruction zero = emit(cond, function.constant(Type.BOOLEAN, 0));
+		current.jump(join);
+		seal(join);
+		current = join;
+		Instruction phi = function.instruction(Op.PHI, Type.BOOLEAN, one, zero);
+		phi.line = line(cond);
+		return join.add(phi);
+	}
+
+	// Calls
+
+	private Instruction call(Reference methodRef, ExprList args) {
+		MethodDecl md = (MethodDecl) methodRef.getDecl();
+		if (md.classDecl == null) // predefined, so System.out.println
+			return emit(methodRef, Op.PRINT, Type.VOID, args.get(0).visit(this, null));
+
+		Instruction call = function.instruction(Op.CALL, Type.of(md.type));
+		call.method = md;
+		if (!md.isStatic)
+			call.addOperand(methodRef instanceof QualRef ? ((QualRef) methodRef).ref.visit(this, null) : thisValue);
+		for (Expression arg : args)
+			call.addOperand(arg.visit(this, null));
+		return emit(methodRef, call);
+	}
+
+	// Package and declarations: build visits methods itself
+
+	public Instruction visitPackage(Package prog, Object arg) {
+		return null;
+	}
+
+	public Instruction visitClassDecl(ClassDecl cd, Object arg) {
+		return null;
+	}
+
+	public Instruction visitFieldDecl(FieldDecl fd, Object arg) {
+		return null;
+	}
+
+	public Instruction visitMethodDecl(MethodDecl md, Object arg) {
+		return null;
+	}
+
+	public Instruction visitParameterDecl(ParameterDecl pd, Object arg) {
+		return null;
+	}
+
+	public Instruction visitVarDecl(VarDecl decl, Object arg) {
+		return null;
+	}
+
+	// Types
+
+	public Instruction visitBaseType(BaseType type, Object arg) {
+		return null;
+	}
+
+	public Instruction visitClassType(ClassType type, Object arg) {
+		return null;
+	}
+
+	public Instruction visitArrayType(ArrayType type, Object arg) {
+		return null;
+	}
+
+	// Statements
+
+	public Instruction visitBlockStmt(BlockStmt stmt, Object arg) {
+		for (Statement s : stmt.sl)
+			s.visit(this, null);
+		return null;
+	}
+
+	public Instruction visitVardeclStmt(VarDeclStmt stmt, Object arg) {
+		write(stmt.varDecl, current, stmt.initExp.visit(this, null));
+		return null;
+	}
+
+	public Instruction visitAssignStmt(AssignStmt stmt, Object arg) {
+		Reference ref = stmt.ref;
+		if (ref instanceof IxRef) {
+			IxRef ix = (IxRef) ref;
+			Instruction a = ix.ref.visit(this, null);
+			Instruction i = ix.indexExpr.visit(this, null);
+			Instruction value = stmt.val.visit(this, null);
+			emit(ix, Op.ASTORE, Type.VOID, a, i, value);
+			return null;
+		}
+
+		Declaration decl = ref.getDecl();
+		if (decl instanceof LocalDecl) {
+			write((LocalDecl) decl, current, stmt.val.visit(this, null));
+			return null;
+		}
+		FieldDecl fd = (FieldDecl) decl;
+		Instruction put;
+		if (fd.isStatic) {
+			put = emit(ref, Op.PUTSTATIC, Type.VOID, stmt.val.visit(this, null));
+		} else {
+			Instruction o = ref instanceof QualRef ? ((QualRef) ref).ref.visit(this, null) : thisValue;
+			put = emit(ref, Op.PUTFIELD, Type.VOID, o, stmt.val.visit(this, null));
+		}
+		put.field = fd;
+		return null;
+	}
+
+	public Instruction visitCallStmt(CallStmt stmt, Object arg) {
+		call(stmt.methodRef, stmt.argList);
+		return null;
+	}
+
+	// what follows a return goes in a block of its own, which nothing
+	// reaches
+	public Instruction visitReturnStmt(ReturnStmt stmt, Object arg) {
+		Instruction value = stmt.returnExpr == null ? null : stmt.returnExpr.visit(this, null);
+		current.ret(value).line = line(stmt);
+		current = newSealedBlock();
+		return null;
+	}
+
+	public Instruction visitIfStmt(IfStmt stmt, Object arg) {
+		BasicBlock thenBlock = function.newBlock(), join = function.newBlock();
+		BasicBlock elseBlock = stmt.elseStmt == null ? join : function.newBlock();
+		branch(stmt.cond, thenBlock, elseBlock);
+		seal(thenBlock);
+		current = thenBlock;
+		stmt.thenStmt.visit(this, null);
+		current.jump(join);
+		if (stmt.elseStmt != null) {
+			seal(elseBlock);
+			current = elseBlock;
+			stmt.elseStmt.visit(this, null);
+			current.jump(join);
+		}
+		seal(join);
+		current = join;
+		return null;
+	}
+
+	// guard -> preheader -> body ... test -> body or exit
+	public Instruction visitWhileStmt(WhileStmt stmt, Object arg) {
+		BasicBlock preheader = function.newBlock(), body = function.newBlock(), exit = function.newBlock();
+		branch(stmt.cond, preheader, exit);
+		seal(preheader);
+		current = preheader;
+		current.jump(body);
+		current = body;
+		stmt.body.visit(this, null);
+		branch(stmt.cond, body, exit);
+		seal(body);
+		seal(exit);
+		current = exit;
+		return null;
+	}
+
+	// Expressions
+
+	public Instruction visitUnaryExpr(UnaryExpr expr, Object arg) {
+		Instruction value = expr.expr.visit(this, null);
+		if (expr.operator.kind == Token.MINUS)
+			return emit(expr, Op.NEG, Type.INT, value);
+		return emit(expr, Op.NOT, Type.BOOLEAN, value);
+	}
+
+	public Instruction visitBinaryExpr(BinaryExpr expr, Object arg) {
+		int op = expr.operator.kind;
+		if (op == Token.AND || op == Token.OR)
+			return booleanValue(expr);
+		Instruction a = expr.left.visit(this, null);
+		Instruction b = expr.right.visit(this, null);
+		switch (op) {
+		case Token.PLUS:
+			return emit(expr, Op.ADD, Type.INT, a, b);
+		case Token.MINUS:
+			return emit(expr, Op.SUB, Type.INT, a, b);
+		case Token.TIMES:
+			return emit(expr, Op.MUL, Type.INT, a, b);
+		case Token.DIV:
+			return emit(expr, Op.DIV, Type.INT, a, b);
+		case Token.LESS:
+			return emit(expr, Op.LT, Type.BOOLEAN, a, b);
+		case Token.LEQUAL:
+			return emit(expr, Op.LE, Type.BOOLEAN, a, b);
+		case Token.GREATER:
+			return emit(expr, Op.GT, Type.BOOLEAN, a, b);
+		case Token.GEQUAL:
+			return emit(expr, Op.GE, Type.BOOLEAN, a, b);
+		case Token.EQUAL:
+			return emit(expr, Op.EQ, Type.BOOLEAN, a, b);
+		case Token.NOTEQUAL:
+			return emit(expr, Op.NE, Type.BOOLEAN, a, b);
+		default:
+			throw new IllegalStateException("operator " + Token.spell(op));
+		}
+	}
+
+	public Instruction visitRefExpr(RefExpr expr, Object arg) {
+		return expr.ref.visit(this, null);
+	}
+
+	public Instruction visitCallExpr(CallExpr expr, Object arg) {
+		return call(expr.functionRef, expr.argList);
+	}
+
+	public Instruction visitLiteralExpr(LiteralExpr expr, Object arg) {
+		return expr.lit.visit(this, null);
+	}
+
+	public Instruction visitNewObjectExpr(NewObjectExpr expr, Object arg) {
+		Instruction i = emit(expr, Op.NEW, Type.REF);
+		i.classDecl = expr.classtype.getDecl();
+		return i;
+	}
+
+	public Instruction visitNewArrayExpr(NewArrayExpr expr, Object arg) {
+		Instruction i = emit(expr, Op.NEWARRAY, Type.REF, expr.sizeExpr.visit(this, null));
+		i.elementType = Type.of(expr.eltType);
+		return i;
+	}
+
+	// References: visiting one loads its value
+
+	public Instruction visitThisRef(ThisRef ref, Object arg) {
+		return thisValue;
+	}
+
+	public Instruction visitIdRef(IdRef ref, Object arg) {
+		Declaration decl = ref.id.decl;
+		if (decl instanceof LocalDecl)
+			return read((LocalDecl) decl, current);
+		FieldDecl fd = (FieldDecl) decl;
+		Instruction get = fd.isStatic ? emit(ref, Op.GETSTATIC, Type.of(fd.type))
+				: emit(ref, Op.GETFIELD, Type.of(fd.type), thisValue);
+		get.field = fd;
+		return get;
+	}
+
+	public Instruction visitQRef(QualRef ref, Object arg) {
+		FieldDecl fd = (FieldDecl) ref.id.decl;
+		if (fd.classDecl == null) { // a.length, or System.out
+			if (!fd.isStatic)
+				return emit(ref, Op.LENGTH, Type.INT, ref.ref.visit(this, null));
+			return emit(ref, Op.NULL, Type.REF);
+		}
+		Instruction get = fd.isStatic ? emit(ref, Op.GETSTATIC, Type.of(fd.type))
+				: emit(ref, Op.GETFIELD, Type.of(fd.type), ref.ref.visit(this, null));
+		get.field = fd;
+		return get;
+	}
+
+	public Instruction visitIxRef(IxRef ref, Object arg) {
+		Instruction a = ref.ref.visit(this, null);
+		Instruction i = ref.indexExpr.visit(this, null);
+		return emit(ref, Op.ALOAD, Type.of(ref.getType()), a, i);
+	}
+
+	// Terminals
+
+	public Instruction visitIdentifier(Identifier id, Object arg) {
+		return null;
+	}
+
+	public Instruction visitOperator(Operator op, Object arg) {
+		return null;
+	}
+
+	public Instruction visitIntLiteral(IntLiteral num, Object arg) {
+		return emit(num, function.constant(Type.INT, num.getValue()));
+	}
+
+	public Instruction visitBooleanLiteral(BooleanLiteral bool, Object arg) {
+		return emit(bool, function.constant(Type.BOOLEAN, bool.kind == Token.TRUE ? 1 : 0));
+	}
+
+	public Instruction visitNullLiteral(NullLiteral nullLiteral, Object arg) {
+		return emit(nullLiteral, Op.NULL, Type.REF);
+	}
+}
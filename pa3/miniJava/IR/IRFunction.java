@@ -0,0 +1,175 @@
+package miniJava.IR;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import miniJava.AbstractSyntaxTrees.MethodDecl;
+
+/**
+ * The IR of one method: a control-flow graph of basic blocks in SSA form.
+ * The first block is the entry, which no edge leads to; it begins with the
+ * THIS (of an instance method) and PARAM instructions giving the method's
+ * inputs.
+ */
+public class IRFunction {
+
+	public final MethodDecl decl;
+	public final String name; // Class.method
+	public final Type returnType;
+	final List<BasicBlock> blocks = new ArrayList<BasicBlock>();
+	private int nextBlock, nextValue;
+
+	IRFunction(MethodDecl decl) {
+		this.decl = decl;
+		name = decl.classDecl.id.spelling + "." + decl.id.spelling;
+		returnType = Type.of(decl.type);
+	}
+
+	public List<BasicBlock> blocks() {
+		return Collections.unmodifiableList(blocks);
+	}
+
+	public BasicBlock entry() {
+		return blocks.get(0);
+	}
+
+	public BasicBlock newBlock() {
+		BasicBlock block = new BasicBlock(this, nextBlock++);
+		blocks.add(block);
+		return block;
+	}
+
+	// a new instruction, in no block yet
+	public Instruction instruction(Op op, Type type, Instruction... operands) {
+		return new Instruction(nextValue++, op, type, operands);
+	}
+
+	public Instruction constant(Type type, int value) {
+		Instruction i = instruction(Op.CONST, type);
+		i.constant = value;
+		return i;
+	}
+
+	// one more than the highest instruction id, to size arrays indexed by id
+	public int valueCount() {
+		return nextValue;
+	}
+
+	// one more than the highest block id
+	public int blockCount() {
+		return nextBlock;
+	}
+
+	// Editing the graph
+
+	// puts an empty block on the edge from pred to succ, taking pred's place
+	// among succ's predecessors so that succ's phis are unchanged
+	public BasicBlock splitEdge(BasicBlock pred, BasicBlock succ) {
+		BasicBlock middle = newBlock();
+		pred.retarget(succ, middle);
+		succ.predecessors.set(succ.predecessors.indexOf(pred), middle);
+		middle.predecessors.add(pred);
+		Instruction jump = middle.add(instruction(Op.JUMP, Type.VOID));
+		jump.targets = new BasicBlock[] { succ };
+		return middle;
+	}
+
+	// moves the instructions after i, its block's terminator among them, to
+	// a new block, which takes the place of i's block among the predecessors
+	// of its successors; i's block is left to be ended anew
+	public BasicBlock splitAfter(Instruction i) {
+		BasicBlock b = i.block, rest = newBlock();
+		List<Instruction> moved = b.instructions.subList(b.instructions.indexOf(i) + 1, b.instructions.size());
+		for (Instruction m : moved)
+			m.block = rest;
+		rest.instructions.addAll(moved);
+		moved.clear();
+		for (BasicBlock succ : rest.successors())
+			succ.predecessors.set(succ.predecessors.indexOf(b), rest);
+		return rest;
+	}
+
+	// removes the blocks no path from the entry reaches, and the operands of
+	// phis that came from them. Phis left with one operand, or with the
+	// same one throughout, are replaced by it.
+	public boolean removeUnreachableBlocks() {
+		Set<BasicBlock> reached = new HashSet<BasicBlock>();
+		Deque<BasicBlock> work = new ArrayDeque<BasicBlock>();
+		reached.add(entry());
+		work.add(entry());
+		while (!work.isEmpty())
+			for (BasicBlock succ : work.remove().successors())
+				if (reached.add(succ))
+					work.add(succ);
+		if (reached.size() == blocks.size())
+			return false;
+
+		List<BasicBlock> dead = new ArrayList<BasicBlock>();
+		for (BasicBlock b : blocks)
+			if (!reached.contains(b))
+				dead.add(b);
+		for (BasicBlock b : dead)
+			for (BasicBlock succ : b.successors())
+				if (reached.contains(succ))
+					succ.removePredecessor(b);
+		// dead code may use dead values in cycles: drop every use first
+		for (BasicBlock b : dead)
+			for (Instruction i : b.instructions)
+				while (i.operandCount() > 0)
+					i.removeOperand(i.operandCount() - 1);
+		blocks.removeAll(dead);
+		for (BasicBlock b : blocks)
+			for (Instruction phi : new ArrayList<Instruction>(b.phis()))
+				removeIfTrivial(phi);
+		return true;
+	}
+
+	// replaces a phi whose operands are all one value (or itself) by that
+	// value, and then any phi that used it and became trivial in turn
+	public void removeIfTrivial(Instruction phi) {
+		removeIfTrivial(phi, null);
+	}
+
+	// as above, recording in replaced what each removed phi was replaced by
+	void removeIfTrivial(Instruction phi, Map<Instruction, Instruction> replaced) {
+		if (phi.block == null)
+			return;
+		Instruction same = null;
+		for (Instruction operand : phi.operands()) {
+			if (operand == same || operand == phi)
+				continue;
+			if (same != null)
+				return;
+			same = operand;
+		}
+		if (same == null)
+			return; // only in unreachable code
+		List<Instruction> users = new ArrayList<Instruction>(phi.users());
+		phi.replaceAllUsesWith(same);
+		phi.remove();
+		if (replaced != null)
+			replaced.put(phi, same);
+		for (Instruction user : users)
+			if (user.op == Op.PHI && user != phi)
+				removeIfTrivial(user, replaced);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("function ").append(name).append('(');
+		int p = 0;
+		for (Instruction i : entry().instructions)
+			if (i.op == Op.THIS || i.op == Op.PARAM)
+				s.append(p++ == 0 ? "" : ", ").append(i.name()).append(": ").append(i.type);
+		s.append("): ").append(returnType).append(System.lineSeparator());
+		for (BasicBlock b : blocks)
+			s.append(b);
+		return s.toString();
+	}
+}
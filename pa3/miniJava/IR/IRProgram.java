@@ -0,0 +1,54 @@
+package miniJava.IR;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import miniJava.AbstractSyntaxTrees.MethodDecl;
+import miniJava.AbstractSyntaxTrees.Package;
+
+/**
+ * A program in IR, built by IRBuilder: one IRFunction per method, in the
+ * order of the classes and methods of the source. Fields and classes are
+ * still those of the AST, which the program keeps.
+ */
+public class IRProgram {
+
+	public final Package ast;
+	public final List<IRFunction> functions = new ArrayList<IRFunction>();
+	private final Map<MethodDecl, IRFunction> byDecl = new IdentityHashMap<MethodDecl, IRFunction>();
+	public IRFunction main;
+
+	IRProgram(Package ast) {
+		this.ast = ast;
+	}
+
+	void add(IRFunction f) {
+		functions.add(f);
+		byDecl.put(f.decl, f);
+		if (f.decl.isMain())
+			main = f;
+	}
+
+	public IRFunction function(MethodDecl decl) {
+		return byDecl.get(decl);
+	}
+
+	// the number of instructions over all functions
+	public int size() {
+		int size = 0;
+		for (IRFunction f : functions)
+			for (BasicBlock b : f.blocks)
+				size += b.instructions.size();
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (IRFunction f : functions)
+			s.append(f).append(System.lineSeparator());
+		return s.toString();
+	}
+}
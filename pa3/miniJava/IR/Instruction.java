@@ -0,0 +1,169 @@
+package miniJava.IR;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import miniJava.AbstractSyntaxTrees.ClassDecl;
+import miniJava.AbstractSyntaxTrees.FieldDecl;
+import miniJava.AbstractSyntaxTrees.MethodDecl;
+
+/**
+ * An IR instruction, which is also the SSA value it defines (unless its
+ * type is void): operands are the instructions whose values it uses. Each
+ * instruction keeps a list of its users, one entry per use, up to date as
+ * operands are set, so that a value can be replaced everywhere at once.
+ *
+ * Which of the remaining fields mean anything depends on the op (see Op).
+ */
+public class Instruction {
+
+	public final Op op;
+	public final Type type;
+	final int id; // unique in its function
+	BasicBlock block;
+
+	private final List<Instruction> operands = new ArrayList<Instruction>();
+	private final List<Instruction> users = new ArrayList<Instruction>();
+
+	BasicBlock[] targets; // JUMP: the target; BRANCH: if true, if false
+	public int constant; // CONST: the value, booleans 0 or 1; PARAM: the index
+	public FieldDecl field; // GETFIELD, PUTFIELD, GETSTATIC, PUTSTATIC
+	public MethodDecl method; // CALL
+	public ClassDecl classDecl; // NEW
+	public Type elementType; // NEWARRAY
+	public boolean inBounds; // ALOAD, ASTORE: the array is known not null and the index in bounds
+
+	public int line; // of the source, for a runtime error
+
+	Instruction(int id, Op op, Type type, Instruction... operands) {
+		this.id = id;
+		this.op = op;
+		this.type = type;
+		for (Instruction operand : operands)
+			addOperand(operand);
+	}
+
+	public int id() {
+		return id;
+	}
+
+	public BasicBlock block() {
+		return block;
+	}
+
+	// Operands and users
+
+	public int operandCount() {
+		return operands.size();
+	}
+
+	public Instruction operand(int i) {
+		return operands.get(i);
+	}
+
+	public List<Instruction> operands() {
+		return Collections.unmodifiableList(operands);
+	}
+
+	// one entry per use, so a user may appear more than once
+	public List<Instruction> users() {
+		return Collections.unmodifiableList(users);
+	}
+
+	public void addOperand(Instruction value) {
+		operands.add(value);
+		value.users.add(this);
+	}
+
+	public void setOperand(int i, Instruction value) {
+		operands.get(i).users.remove(this);
+		operands.set(i, value);
+		value.users.add(this);
+	}
+
+	public void removeOperand(int i) {
+		operands.remove(i).users.remove(this);
+	}
+
+	public void replaceAllUsesWith(Instruction value) {
+		for (Instruction user : new ArrayList<Instruction>(users))
+			for (int i = 0; i < user.operands.size(); i++)
+				if (user.operands.get(i) == this)
+					user.setOperand(i, value);
+	}
+
+	// takes the instruction out of its block, dropping its uses of its
+	// operands; nothing may use it any more
+	public void remove() {
+		if (!users.isEmpty())
+			throw new IllegalStateException(this + " is still used");
+		while (!operands.isEmpty())
+			removeOperand(operands.size() - 1);
+		block.instructions.remove(this);
+		block = null;
+	}
+
+	// Targets
+
+	public int targetCount() {
+		return targets == null ? 0 : targets.length;
+	}
+
+	public BasicBlock target(int i) {
+		return targets[i];
+	}
+
+	// Printing
+
+	public String name() {
+		return "v" + id;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		if (type != Type.VOID)
+			s.append(name()).append(": ").append(type).append(" = ");
+		s.append(op);
+		switch (op) {
+		case CONST:
+			s.append(' ').append(type == Type.BOOLEAN ? String.valueOf(constant != 0) : String.valueOf(constant));
+			break;
+		case PARAM:
+			s.append(' ').append(constant);
+			break;
+		case GETFIELD:
+		case PUTFIELD:
+			s.append(' ').append(field.id.spelling);
+			break;
+		case GETSTATIC:
+		case PUTSTATIC:
+			s.append(' ').append(field.classDecl.id.spelling).append('.').append(field.id.spelling);
+			break;
+		case CALL:
+			s.append(' ').append(method.classDecl.id.spelling).append('.').append(method.id.spelling);
+			break;
+		case NEW:
+			s.append(' ').append(classDecl.id.spelling);
+			break;
+		case NEWARRAY:
+			s.append(' ').append(elementType);
+			break;
+		case ALOAD:
+		case ASTORE:
+			if (inBounds)
+				s.append(" unchecked");
+			break;
+		default:
+		}
+		for (int i = 0; i < operands.size(); i++) {
+			s.append(i == 0 ? " " : ", ").append(operands.get(i).name());
+			if (op == Op.PHI && i < block.predecessors.size())
+				s.append(" from ").append(block.predecessors.get(i).name());
+		}
+		for (int i = 0; i < targetCount(); i++)
+			s.append(i == 0 && operands.isEmpty() ? " " : ", ").append(targets[i].name());
+		return s.toString();
+	}
+}
@@ -0,0 +1,116 @@
+package miniJava.IR;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A natural loop: a header, the target of one or more back edges (edges to
+ * a block that dominates their source), and every block from which a back
+ * edge's source can be reached without passing the header. In IR built
+ * from the AST, each is the body of a while statement, whose header is the
+ * first block of the body.
+ */
+public class Loop {
+
+	public final BasicBlock header;
+	final Set<BasicBlock> blocks = new LinkedHashSet<BasicBlock>();
+	final List<BasicBlock> latches = new ArrayList<BasicBlock>(); // sources of the back edges
+	Loop parent; // the innermost loop around this one, or null
+
+	private Loop(BasicBlock header) {
+		this.header = header;
+		blocks.add(header);
+	}
+
+	// the loops of f, each inner loop before the loops around it
+	public static List<Loop> find(IRFunction f, Dominators dominators) {
+		Map<BasicBlock, Loop> byHeader = new LinkedHashMap<BasicBlock, Loop>();
+		for (BasicBlock b : dominators.reversePostorder())
+			for (BasicBlock s : b.successors())
+				if (dominators.dominates(s, b)) {
+					Loop loop = byHeader.get(s);
+					if (loop == null)
+						byHeader.put(s, loop = new Loop(s));
+					loop.latches.add(b);
+				}
+
+		List<Loop> loops = new ArrayList<Loop>(byHeader.values());
+		for (Loop loop : loops) {
+			Deque<BasicBlock> work = new ArrayDeque<BasicBlock>(loop.latches);
+			while (!work.isEmpty()) {
+				BasicBlock b = work.pop();
+				if (loop.blocks.add(b))
+					work.addAll(b.predecessors);
+			}
+		}
+		Collections.sort(loops, new Comparator<Loop>() {
+			public int compare(Loop a, Loop b) {
+				return a.blocks.size() - b.blocks.size();
+			}
+		});
+		for (int i = 0; i < loops.size(); i++)
+			for (int j = i + 1; j < loops.size() && loops.get(i).parent == null; j++)
+				if (loops.get(j).blocks.contains(loops.get(i).header))
+					loops.get(i).parent = loops.get(j);
+		return loops;
+	}
+
+	public Set<BasicBlock> blocks() {
+		return Collections.unmodifiableSet(blocks);
+	}
+
+	public List<BasicBlock> latches() {
+		return Collections.unmodifiableList(latches);
+	}
+
+	public Loop parent() {
+		return parent;
+	}
+
+	// the number of loops this one is in, itself included
+	public int depth() {
+		int depth = 0;
+		for (Loop l = this; l != null; l = l.parent)
+			depth++;
+		return depth;
+	}
+
+	public boolean contains(BasicBlock b) {
+		return blocks.contains(b);
+	}
+
+	// whether the value is computed outside the loop
+	public boolean isInvariant(Instruction value) {
+		return !blocks.contains(value.block);
+	}
+
+	// the block, outside the loop, that is the header's only predecessor
+	// from outside and leads nowhere else, made by splitting the edge if
+	// there is none; null if the loop is entered from more than one block
+	public BasicBlock preheader() {
+		BasicBlock outside = null;
+		for (BasicBlock p : header.predecessors)
+			if (!blocks.contains(p)) {
+				if (outside != null)
+					return null;
+				outside = p;
+			}
+		if (outside == null)
+			return null;
+		if (outside.successors().size() == 1)
+			return outside;
+		BasicBlock preheader = header.function.splitEdge(outside, header);
+		for (Loop l = parent; l != null; l = l.parent)
+			if (l.blocks.contains(outside))
+				l.blocks.add(preheader);
+		return preheader;
+	}
+}
@@ -0,0 +1,37 @@
+package miniJava.IR;
+
+/**
+ * The operations of IR instructions. The operands of each, in order:
+ *
+ * CONST, NULL, THIS: none; a constant, null, the receiver
+ * PARAM: none; the parameter numbered by the instruction's constant
+ * PHI: one value for each predecessor of its block, in the same order
+ * COPY: the value copied
+ * ADD, SUB, MUL, DIV, LT, LE, GT, GE, EQ, NE: left, right
+ * NEG, NOT: the operand
+ * GETFIELD: object; PUTFIELD: object, value
+ * GETSTATIC: none; PUTSTATIC: value
+ * NEW: none; NEWARRAY: size
+ * ALOAD: array, index; ASTORE: array, index, value; LENGTH: array
+ * CALL: the receiver, for an instance method, then the arguments
+ * PRINT: the value printed
+ * JUMP: none; BRANCH: the condition; RETURN: the value, if any
+ *
+ * The last three end a block, and only they do.
+ */
+public enum Op {
+	CONST, NULL, THIS, PARAM, PHI, COPY,
+	ADD, SUB, MUL, DIV, NEG, NOT, LT, LE, GT, GE, EQ, NE,
+	GETFIELD, PUTFIELD, GETSTATIC, PUTSTATIC, NEW, NEWARRAY, ALOAD, ASTORE, LENGTH,
+	CALL, PRINT,
+	JUMP, BRANCH, RETURN;
+
+	public boolean isTerminator() {
+		return this == JUMP || this == BRANCH || this == RETURN;
+	}
+
+	@Override
+	public String toString() {
+		return name().toLowerCase();
+	}
+}
@@ -0,0 +1,30 @@
+package miniJava.IR;
+
+import miniJava.AbstractSyntaxTrees.TypeDenoter;
+
+/**
+ * The types of IR values. ints and booleans stay apart, as in the AST;
+ * every object and array type is a reference, and void is the type of an
+ * instruction with no value.
+ */
+public enum Type {
+	INT, BOOLEAN, REF, VOID;
+
+	public static Type of(TypeDenoter type) {
+		switch (type.typeKind) {
+		case INT:
+			return INT;
+		case BOOLEAN:
+			return BOOLEAN;
+		case VOID:
+			return VOID;
+		default:
+			return REF;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name().toLowerCase();
+	}
+}
@@ -0,0 +1,288 @@
+package miniJava.IR;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import miniJava.AbstractSyntaxTrees.MethodDecl;
+import miniJava.AbstractSyntaxTrees.ParameterDecl;
+
+/**
+ * Checks that a function's IR is well formed, so that a pass that breaks it
+ * is caught where it does rather than by wrong code later:
+ *
+ * - every block ends in exactly one terminator, and its successors list it
+ *   among their predecessors exactly as often as its terminator names them;
+ * - phis come first in their block, one operand per predecessor, and THIS
+ *   and PARAM only in the entry, which has no predecessors;
+ * - the operand and user lists of every instruction agree, and every
+ *   operand is an instruction of the function with a value;
+ * - every use is dominated by its definition: for a phi, the end of the
+ *   predecessor the operand comes from;
+ * - the number and types of operands suit the op and its type.
+ */
+public class Verifier {
+
+	private final List<String> problems = new ArrayList<String>();
+	private IRFunction function;
+
+	// the problems found in the function; none if it is well formed
+	public static List<String> verify(IRFunction f) {
+		Verifier v = new Verifier();
+		v.function = f;
+		v.run();
+		return v.problems;
+	}
+
+	// throws an IllegalStateException naming the problems of any function
+	// that has some
+	public static void check(IRProgram program) {
+		for (IRFunction f : program.functions) {
+			List<String> problems = verify(f);
+			if (!problems.isEmpty()) {
+				StringBuilder s = new StringBuilder("malformed IR in " + f.name + ":");
+				for (String p : problems)
+					s.append(System.lineSeparator()).append("  ").append(p);
+				throw new IllegalStateException(s.toString());
+			}
+		}
+	}
+
+	private void problem(Object where, String what) {
+		problems.add(where + ": " + what);
+	}
+
+	private void run() {
+		if (function.blocks.isEmpty()) {
+			problems.add("no blocks");
+			return;
+		}
+		Set<BasicBlock> blocks = new HashSet<BasicBlock>(function.blocks);
+		Map<Instruction, Integer> position = new HashMap<Instruction, Integer>();
+		for (BasicBlock b : function.blocks) {
+			checkBlock(b, blocks);
+			for (int k = 0; k < b.instructions.size(); k++) {
+				Instruction i = b.instructions.get(k);
+				if (position.put(i, k) != null)
+					problem(i, "appears twice");
+				if (i.block != b)
+					problem(i, "is in " + b.name() + " but belongs to "
+							+ (i.block == null ? "no block" : i.block.name()));
+			}
+		}
+		if (!problems.isEmpty())
+			return; // dominance needs a sound graph
+
+		if (!function.entry().predecessors.isEmpty())
+			problem(function.entry().name(), "the entry has predecessors");
+		Dominators dom = new Dominators(function);
+		for (BasicBlock b : function.blocks) {
+			if (!dom.isReachable(b))
+				problem(b.name(), "is unreachable");
+			for (Instruction i : b.instructions) {
+				checkUses(i, position, dom);
+				checkTypes(i);
+			}
+		}
+	}
+
+	private void checkBlock(BasicBlock b, Set<BasicBlock> blocks) {
+		String name = b.name();
+		if (b.function != function)
+			problem(name, "belongs to another function");
+		if (b.terminator() == null)
+			problem(name, "has no terminator");
+		boolean phis = true;
+		for (int k = 0; k < b.instructions.size(); k++) {
+			Instruction i = b.instructions.get(k);
+			if (i.op.isTerminator() && k != b.instructions.size() - 1)
+				problem(i, "terminator in the middle of " + name);
+			if (i.op == Op.PHI) {
+				if (!phis)
+					problem(i, "phi after other instructions");
+				if (i.operandCount() != b.predecessors.size())
+					problem(i, i.operandCount() + " operands for " + b.predecessors.size() + " predecessors");
+			} else {
+				phis = false;
+			}
+			if ((i.op == Op.THIS || i.op == Op.PARAM) && b != function.entry())
+				problem(i, "outside the entry");
+		}
+		for (BasicBlock s : b.successors()) {
+			if (!blocks.contains(s))
+				problem(name, "branches to " + s.name() + ", not in the function");
+			else if (count(s.predecessors, b) != count(b.successors(), s))
+				problem(name, "is not a predecessor of " + s.name() + " as often as it branches there");
+		}
+		for (BasicBlock p : b.predecessors)
+			if (!blocks.contains(p) || count(p.successors(), b) == 0)
+				problem(name, p.name() + " is a predecessor but does not branch here");
+	}
+
+	private static <T> int count(List<T> list, T item) {
+		int n = 0;
+		for (T x : list)
+			if (x == item)
+				n++;
+		return n;
+	}
+
+	private void checkUses(Instruction i, Map<Instruction, Integer> position, Dominators dom) {
+		for (Instruction user : i.users())
+			if (!user.operands().contains(i))
+				problem(i, "lists " + user.name() + " as a user, but is not its operand");
+		for (int k = 0; k < i.operandCount(); k++) {
+			Instruction v = i.operand(k);
+			if (count(v.users(), i) != count(i.operands(), v))
+				problem(i, "operand " + v.name() + " does not list it as a user once per use");
+			if (!position.containsKey(v)) {
+				problem(i, "operand " + v.name() + " is not in the function");
+				continue;
+			}
+			if (v.type == Type.VOID)
+				problem(i, "operand " + v.name() + " has no value");
+			if (i.op == Op.PHI) {
+				if (k < i.block.predecessors.size() && !dom.dominates(v.block, i.block.predecessors.get(k)))
+					problem(i, v.name() + " does not reach it from " + i.block.predecessors.get(k).name());
+			} else if (v.block == i.block ? position.get(v) >= position.get(i) : !dom.dominates(v.block, i.block)) {
+				problem(i, "uses " + v.name() + " before its definition");
+			}
+		}
+	}
+
+	private static final Type I = Type.INT, B = Type.BOOLEAN, R = Type.REF, V = Type.VOID;
+
+	private void checkTypes(Instruction i) {
+		switch (i.op) {
+		case CONST:
+			if (i.type != I && i.type != B)
+				problem(i, "a constant must be an int or a boolean");
+			expect(i, i.type);
+			break;
+		case NULL:
+		case THIS:
+		case NEW:
+			expect(i, R);
+			break;
+		case PARAM:
+			MethodDecl md = function.decl;
+			if (i.constant < 0 || i.constant >= md.parameterDeclList.size())
+				problem(i, "no parameter " + i.constant);
+			else
+				expect(i, Type.of(md.parameterDeclList.get(i.constant).type));
+			break;
+		case PHI:
+			if (i.type == V)
+				problem(i, "a phi must have a value");
+			for (Instruction v : i.operands())
+				if (v.type != i.type)
+					problem(i, "operand " + v.name() + " is " + v.type + ", not " + i.type);
+			break;
+		case COPY:
+			expect(i, i.type, i.type);
+			break;
+		case ADD:
+		case SUB:
+		case MUL:
+		case DIV:
+			expect(i, I, I, I);
+			break;
+		case NEG:
+			expect(i, I, I);
+			break;
+		case NOT:
+			expect(i, B, B);
+			break;
+		case LT:
+		case LE:
+		case GT:
+		case GE:
+			expect(i, B, I, I);
+			break;
+		case EQ:
+		case NE:
+			if (i.operandCount() == 2)
+				expect(i, B, i.operand(0).type, i.operand(0).type);
+			else
+				expect(i, B, V, V);
+			break;
+		case GETFIELD:
+			expect(i, Type.of(i.field.type), R);
+			break;
+		case PUTFIELD:
+			expect(i, V, R, Type.of(i.field.type));
+			break;
+		case GETSTATIC:
+			expect(i, Type.of(i.field.type));
+			break;
+		case PUTSTATIC:
+			expect(i, V, Type.of(i.field.type));
+			break;
+		case NEWARRAY:
+			if (i.elementType == V)
+				problem(i, "an array element must have a value");
+			expect(i, R, I);
+			break;
+		case ALOAD:
+			if (i.type == V)
+				problem(i, "an array element must have a value");
+			expect(i, i.type, R, I);
+			break;
+		case ASTORE:
+			expect(i, V, R, I, i.operandCount() == 3 ? i.operand(2).type : V);
+			break;
+		case LENGTH:
+			expect(i, I, R);
+			break;
+		case CALL:
+			checkCall(i);
+			break;
+		case PRINT:
+			expect(i, V, I);
+			break;
+		case JUMP:
+			expect(i, V);
+			if (i.targetCount() != 1)
+				problem(i, "a jump has one target");
+			break;
+		case BRANCH:
+			expect(i, V, B);
+			if (i.targetCount() != 2)
+				problem(i, "a branch has two targets");
+			break;
+		case RETURN:
+			if (function.returnType == V)
+				expect(i, V);
+			else
+				expect(i, V, function.returnType);
+			break;
+		}
+		if (!i.op.isTerminator() && i.targetCount() != 0)
+			problem(i, "only a terminator has targets");
+	}
+
+	private void checkCall(Instruction i) {
+		MethodDecl md = i.method;
+		List<Type> params = new ArrayList<Type>();
+		if (!md.isStatic)
+			params.add(R);
+		for (ParameterDecl pd : md.parameterDeclList)
+			params.add(Type.of(pd.type));
+		expect(i, Type.of(md.type), params.toArray(new Type[params.size()]));
+	}
+
+	private void expect(Instruction i, Type type, Type... operands) {
+		if (i.type != type)
+			problem(i, "should be " + type);
+		if (i.operandCount() != operands.length) {
+			problem(i, operands.length + " operands expected");
+			return;
+		}
+		for (int k = 0; k < operands.length; k++)
+			if (i.operand(k).type != operands[k])
+				problem(i, "operand " + i.operand(k).name() + " should be " + operands[k]);
+	}
+}
@@ -0,0 +1,609 @@
+package miniJava.Interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.SyntacticAnalyzer.Token;
+
+/**
+ * Lowers a type-checked AST to register bytecode (see Opcode), one Function
+ * per method.
+ *
+ * Every parameter and local variable gets a register of its own for as long
+ * as it is in scope: ints and booleans in the int file, references in the
+ * reference file. Expression temporaries are taken above the locals and
+ * given back at the end of each statement. Visiting an expression emits code
+ * that leaves its value in a register and returns that register; the visit's
+ * argument is the register the caller wants it in, or ANY. Conditions
+ * compile to compare-and-jump instructions rather than to boolean values.
+ *
+ * Fields, functions and locals are all resolved to indices here, through the
+ * decl links of the AST, so the VM never sees a name.
+ */
+public class BytecodeGenerator implements Visitor<Integer, Integer> {
+
+	private static final int ANY = -1;
+
+	// the program
+	private Map<MethodDecl, Integer> functionIndex = new IdentityHashMap<MethodDecl, Integer>();
+	private Map<FieldDecl, Integer> fieldOffset = new IdentityHashMap<FieldDecl, Integer>();
+	private Map<ClassDecl, int[]> classSize = new IdentityHashMap<ClassDecl, int[]>(); // int, reference fields
+
+	// the function being generated
+	private Function function;
+	private Map<LocalDecl, Integer> localRegister = new IdentityHashMap<LocalDecl, Integer>();
+	private int nextInt, nextRef; // first free register of each file
+	private int[] code = new int[256];
+	private int[] lines = new int[256];
+	private String[] names = new String[256];
+	private int size;
+
+	public BytecodeProgram generate(AST ast) {
+		Package program = (Package) ast;
+		List<MethodDecl> methods = new ArrayList<MethodDecl>();
+		int staticInts = 0, staticRefs = 0;
+		int main = -1;
+		for (ClassDecl cd : program.classDeclList) {
+			int ints = 0, refs = 0;
+			for (FieldDecl fd : cd.fieldDeclList) {
+				boolean ref = isReference(fd.type);
+				if (fd.isStatic)
+					fieldOffset.put(fd, ref ? staticRefs++ : staticInts++);
+				else
+					fieldOffset.put(fd, ref ? refs++ : ints++);
+			}
+			classSize.put(cd, new int[] { ints, refs });
+			for (MethodDecl md : cd.methodDeclList) {
+				if (md.isMain())
+					main = methods.size();
+				functionIndex.put(md, methods.size());
+				methods.add(md);
+			}
+		}
+
+		Function[] functions = new Function[methods.size()];
+		for (int f = 0; f < functions.length; f++) {
+			functions[f] = new Function(methods.get(f));
+			generate(functions[f]);
+		}
+		return new BytecodeProgram(functions, main, staticInts, staticRefs);
+	}
+
+	private void generate(Function f) {
+		MethodDecl md = f.decl;
+		function = f;
+		localRegister.clear();
+		size = 0;
+		nextInt = 0;
+		nextRef = md.isStatic ? 0 : 1; // the receiver is in reference register 0
+		f.intRegisters = nextInt;
+		f.refRegisters = nextRef;
+
+		int n = md.parameterDeclList.size();
+		f.paramRegisters = new int[n];
+		f.paramIsRef = new boolean[n];
+		for (int p = 0; p < n; p++) {
+			ParameterDecl pd = md.parameterDeclList.get(p);
+			f.paramIsRef[p] = isReference(pd.type);
+			f.paramRegisters[p] = newRegister(f.paramIsRef[p]);
+			localRegister.put(pd, f.paramRegisters[p]);
+		}
+		f.returnsRef = isReference(md.type);
+
+		statements(md.statementList);
+		emit(md, Opcode.RET);
+
+		f.code = Arrays.copyOf(code, size);
+		f.lines = Arrays.copyOf(lines, size);
+		f.names = Arrays.copyOf(names, size);
+	}
+
+	// Registers
+
+	private int newRegister(boolean ref) {
+		if (ref) {
+			if (nextRef == function.refRegisters)
+				function.refRegisters++;
+			return nextRef++;
+		}
+		if (nextInt == function.intRegisters)
+			function.intRegisters++;
+		return nextInt++;
+	}
+
+	// the register a value of this kind should go to when the caller wants it
+	// in target
+	private int destination(int target, boolean ref) {
+		return target == ANY ? newRegister(ref) : target;
+	}
+
+	// leaves the value in register r where the caller wants it
+	private int move(int target, int r, boolean ref) {
+		if (target == ANY || target == r)
+			return r;
+		emit(null, ref ? Opcode.RMOV : Opcode.IMOV, target, r);
+		return target;
+	}
+
+	private static boolean isReference(TypeDenoter type) {
+		return type == null || type.typeKind != TypeKind.INT && type.typeKind != TypeKind.BOOLEAN;
+	}
+
+	private static boolean isReference(Expression expr) {
+		if (expr instanceof RefExpr) {
+			Reference ref = ((RefExpr) expr).ref;
+			return ref instanceof ThisRef || isReference(ref.getType());
+		}
+		if (expr instanceof CallExpr)
+			return isReference(((CallExpr) expr).functionRef.getDecl().type);
+		if (expr instanceof LiteralExpr)
+			return ((LiteralExpr) expr).lit instanceof NullLiteral;
+		return expr instanceof NewExpr;
+	}
+
+	// Emitting
+
+	private void emit(AST node, int... instruction) {
+		emitNamed(node, null, instruction);
+	}
+
+	private void emitNamed(AST node, String name, int... instruction) {
+		if (size + instruction.length > code.length) {
+			int capacity = Math.max(code.length * 2, size + instruction.length);
+			code = Arrays.copyOf(code, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+			names = Arrays.copyOf(names, capacity);
+		}
+		lines[size] = node == null || node.posn == null ? 0 : node.posn.start;
+		names[size] = name;
+		System.arraycopy(instruction, 0, code, size, instruction.length);
+		size += instruction.length;
+	}
+
+	// emits a jump whose target is the last operand, to be patched later
+	private void emitJump(AST node, List<Integer> patches, int... instruction) {
+		emit(node, instruction);
+		patches.add(size - 1);
+	}
+
+	private void patch(List<Integer> patches, int target) {
+		for (int at : patches)
+			code[at] = target;
+	}
+
+	// Conditions
+
+	// emits jumps, added to patches, that are taken when cond is jumpIf;
+	// otherwise control falls through
+	private void branch(Expression cond, boolean jumpIf, List<Integer> patches) {
+		if (cond instanceof UnaryExpr && ((UnaryExpr) cond).operator.kind == Token.NOT) {
+			branch(((UnaryExpr) cond).expr, !jumpIf, patches);
+			return;
+		}
+		if (cond instanceof LiteralExpr && ((LiteralExpr) cond).lit instanceof BooleanLiteral) {
+			if ((((LiteralExpr) cond).lit.kind == Token.TRUE) == jumpIf)
+				emitJump(cond, patches, Opcode.JMP, 0);
+			return;
+		}
+		if (cond instanceof BinaryExpr) {
+			BinaryExpr expr = (BinaryExpr) cond;
+			int op = expr.operator.kind;
+			if (op == Token.AND || op == Token.OR) {
+				if (jumpIf == (op == Token.OR)) { // either operand decides
+					branch(expr.left, jumpIf, patches);
+					branch(expr.right, jumpIf, patches);
+				} else { // both must
+					List<Integer> skip = new ArrayList<Integer>();
+					branch(expr.left, !jumpIf, skip);
+					branch(expr.right, jumpIf, patches);
+					patch(skip, size);
+				}
+				return;
+			}
+			int jump = compareJump(op, isReference(expr.left));
+			if (jump >= 0) {
+				int a = expr.left.visit(this, ANY);
+				int b = expr.right.visit(this, ANY);
+				emitJump(expr, patches, jumpIf ? jump : Opcode.negate(jump), a, b, 0);
+				return;
+			}
+		}
+		int s = cond.visit(this, ANY);
+		emitJump(cond, patches, jumpIf ? Opcode.JNZ : Opcode.JZ, s, 0);
+	}
+
+	// a condition's value, 0 or 1, through branches
+	private int booleanValue(Expression cond, int target) {
+		List<Integer> whenFalse = new ArrayList<Integer>();
+		List<Integer> toEnd = new ArrayList<Integer>();
+		branch(cond, false, whenFalse);
+		int d = destination(target, false);
+		emit(cond, Opcode.ICONST, d, 1);
+		emitJump(cond, toEnd, Opcode.JMP, 0);
+		patch(whenFalse, size);
+		emit(cond, Opcode.ICONST, d, 0);
+		patch(toEnd, size);
+		return d;
+	}
+
+	private static int compareJump(int op, boolean ref) {
+		switch (op) {
+		case Token.LESS:
+			return Opcode.JLT;
+		case Token.LEQUAL:
+			return Opcode.JLE;
+		case Token.GREATER:
+			return Opcode.JGT;
+		case Token.GEQUAL:
+			return Opcode.JGE;
+		case Token.EQUAL:
+			return ref ? Opcode.JREQ : Opcode.JEQ;
+		case Token.NOTEQUAL:
+			return ref ? Opcode.JRNE : Opcode.JNE;
+		default:
+			return -1;
+		}
+	}
+
+	// Calls
+
+	private int call(Reference methodRef, ExprList args, int target, boolean result) {
+		MethodDecl md = (MethodDecl) methodRef.getDecl();
+		if (md.classDecl == null) { // predefined, so System.out.println
+			emit(methodRef, Opcode.PRINT, args.get(0).visit(this, ANY));
+			return ANY;
+		}
+
+		int receiver = ANY;
+		if (!md.isStatic)
+			receiver = methodRef instanceof QualRef ? ((QualRef) methodRef).ref.visit(this, ANY) : 0;
+		int n = args.size();
+		int[] instruction = new int[5 + n];
+		for (int a = 0; a < n; a++)
+			instruction[5 + a] = args.get(a).visit(this, ANY);
+		int d = result ? destination(target, isReference(md.type)) : ANY;
+		instruction[0] = Opcode.CALL;
+		instruction[1] = functionIndex.get(md);
+		instruction[2] = receiver;
+		instruction[3] = d;
+		instruction[4] = n;
+		emitNamed(methodRef, md.id.spelling, instruction);
+		return d;
+	}
+
+	// Package and declarations: generate visits methods itself
+
+	public Integer visitPackage(Package prog, Integer target) {
+		return null;
+	}
+
+	public Integer visitClassDecl(ClassDecl cd, Integer target) {
+		return null;
+	}
+
+	public Integer visitFieldDecl(FieldDecl fd, Integer target) {
+		return null;
+	}
+
+	public Integer visitMethodDecl(MethodDecl md, Integer target) {
+		return null;
+	}
+
+	public Integer visitParameterDecl(ParameterDecl pd, Integer target) {
+		return null;
+	}
+
+	public Integer visitVarDecl(VarDecl decl, Integer target) {
+		return null;
+	}
+
+	// Types
+
+	public Integer visitBaseType(BaseType type, Integer target) {
+		return null;
+	}
+
+	public Integer visitClassType(ClassType type, Integer target) {
+		return null;
+	}
+
+	public Integer visitArrayType(ArrayType type, Integer target) {
+		return null;
+	}
+
+	// Statements
+
+	// a block: its locals and every statement's temporaries are given back
+	private void statements(StatementList sl) {
+		int ints = nextInt, refs = nextRef;
+		for (Statement s : sl) {
+			int tempInts = nextInt, tempRefs = nextRef;
+			s.visit(this, ANY);
+			if (!(s instanceof VarDeclStmt)) {
+				nextInt = tempInts;
+				nextRef = tempRefs;
+			}
+		}
+		nextInt = ints;
+		nextRef = refs;
+	}
+
+	public Integer visitBlockStmt(BlockStmt stmt, Integer target) {
+		statements(stmt.sl);
+		return null;
+	}
+
+	public Integer visitVardeclStmt(VarDeclStmt stmt, Integer target) {
+		boolean ref = isReference(stmt.varDecl.type);
+		int r = newRegister(ref);
+		localRegister.put(stmt.varDecl, r);
+		int tempInts = nextInt, tempRefs = nextRef;
+		stmt.initExp.visit(this, r);
+		nextInt = tempInts;
+		nextRef = tempRefs;
+		return null;
+	}
+
+	public Integer visitAssignStmt(AssignStmt stmt, Integer target) {
+		Reference ref = stmt.ref;
+		if (ref instanceof IxRef) {
+			IxRef ix = (IxRef) ref;
+			int a = ix.ref.visit(this, ANY);
+			int i = ix.indexExpr.visit(this, ANY);
+			int s = stmt.val.visit(this, ANY);
+			emit(ix, isReference(ix.getType()) ? Opcode.ASTR : Opcode.ASTI, a, i, s);
+			return null;
+		}
+
+		Declaration decl = ref.getDecl();
+		if (decl instanceof LocalDecl) {
+			stmt.val.visit(this, localRegister.get(decl));
+			return null;
+		}
+		FieldDecl fd = (FieldDecl) decl;
+		boolean isRef = isReference(fd.type);
+		int k = fieldOffset.get(fd);
+		if (fd.isStatic) {
+			int s = stmt.val.visit(this, ANY);
+			emit(ref, isRef ? Opcode.PUTSR : Opcode.PUTSI, k, s);
+		} else {
+			int o = ref instanceof QualRef ? ((QualRef) ref).ref.visit(this, ANY) : 0;
+			int s = stmt.val.visit(this, ANY);
+			emitNamed(ref, fd.id.spelling, isRef ? Opcode.PUTR : Opcode.PUTI, o, k, s);
+		}
+		return null;
+	}
+
+	public Integer visitCallStmt(CallStmt stmt, Integer target) {
+		call(stmt.methodRef, stmt.argList, ANY, false);
+		return null;
+	}
+
+	public Integer visitReturnStmt(ReturnStmt stmt, Integer target) {
+		if (stmt.returnExpr == null)
+			emit(stmt, Opcode.RET);
+		else
+			emit(stmt, function.returnsRef ? Opcode.RETR : Opcode.RETI, stmt.returnExpr.visit(this, ANY));
+		return null;
+	}
+
+	public Integer visitIfStmt(IfStmt stmt, Integer target) {
+		List<Integer> toElse = new ArrayList<Integer>();
+		branch(stmt.cond, false, toElse);
+		stmt.thenStmt.visit(this, ANY);
+		if (stmt.elseStmt == null) {
+			patch(toElse, size);
+		} else {
+			List<Integer> toEnd = new ArrayList<Integer>();
+			emitJump(stmt, toEnd, Opcode.JMP, 0);
+			patch(toElse, size);
+			stmt.elseStmt.visit(this, ANY);
+			patch(toEnd, size);
+		}
+		return null;
+	}
+
+	// the test goes after the body, so an iteration takes one jump
+	public Integer visitWhileStmt(WhileStmt stmt, Integer target) {
+		List<Integer> toTest = new ArrayList<Integer>();
+		emitJump(stmt, toTest, Opcode.JMP, 0);
+		int body = size;
+		stmt.body.visit(this, ANY);
+		patch(toTest, size);
+		List<Integer> toBody = new ArrayList<Integer>();
+		branch(stmt.cond, true, toBody);
+		patch(toBody, body);
+		return null;
+	}
+
+	// Expressions
+
+	public Integer visitUnaryExpr(UnaryExpr expr, Integer target) {
+		int s = expr.expr.visit(this, ANY);
+		int d = destination(target, false);
+		emit(expr, expr.operator.kind == Token.MINUS ? Opcode.INEG : Opcode.NOT, d, s);
+		return d;
+	}
+
+	public Integer visitBinaryExpr(BinaryExpr expr, Integer target) {
+		int op = expr.operator.kind;
+		if (op == Token.AND || op == Token.OR)
+			return booleanValue(expr, target);
+
+		// x + k, k + x and x - k add an immediate
+		if (op == Token.PLUS || op == Token.MINUS) {
+			Expression variable = null;
+			int k = 0;
+			if (isIntLiteral(expr.right)) {
+				variable = expr.left;
+				k = literalValue(expr.right);
+				if (op == Token.MINUS)
+					k = -k;
+			} else if (op == Token.PLUS && isIntLiteral(expr.left)) {
+				variable = expr.right;
+				k = literalValue(expr.left);
+			}
+			if (variable != null) {
+				int a = variable.visit(this, ANY);
+				int d = destination(target, false);
+				emit(expr, Opcode.IADDK, d, a, k);
+				return d;
+			}
+		}
+
+		boolean ref = (op == Token.EQUAL || op == Token.NOTEQUAL) && isReference(expr.left);
+		int a = expr.left.visit(this, ANY);
+		int b = expr.right.visit(this, ANY);
+		int d = destination(target, false);
+		emit(expr, operation(op, ref), d, a, b);
+		return d;
+	}
+
+	private static boolean isIntLiteral(Expression expr) {
+		return expr instanceof LiteralExpr && ((LiteralExpr) expr).lit instanceof IntLiteral;
+	}
+
+	private static int literalValue(Expression expr) {
+		return ((IntLiteral) ((LiteralExpr) expr).lit).getValue();
+	}
+
+	private static int operation(int op, boolean ref) {
+		switch (op) {
+		case Token.PLUS:
+			return Opcode.IADD;
+		case Token.MINUS:
+			return Opcode.ISUB;
+		case Token.TIMES:
+			return Opcode.IMUL;
+		case Token.DIV:
+			return Opcode.IDIV;
+		case Token.LESS:
+			return Opcode.ILT;
+		case Token.LEQUAL:
+			return Opcode.ILE;
+		case Token.GREATER:
+			return Opcode.IGT;
+		case Token.GEQUAL:
+			return Opcode.IGE;
+		case Token.EQUAL:
+			return ref ? Opcode.REQ : Opcode.IEQ;
+		case Token.NOTEQUAL:
+			return ref ? Opcode.RNE : Opcode.INE;
+		default:
+			throw new IllegalStateException("operator " + Token.spell(op));
+		}
+	}
+
+	public Integer visitRefExpr(RefExpr expr, Integer target) {
+		return expr.ref.visit(this, target);
+	}
+
+	public Integer visitCallExpr(CallExpr expr, Integer target) {
+		return call(expr.functionRef, expr.argList, target, true);
+	}
+
+	public Integer visitLiteralExpr(LiteralExpr expr, Integer target) {
+		return expr.lit.visit(this, target);
+	}
+
+	public Integer visitNewObjectExpr(NewObjectExpr expr, Integer target) {
+		int[] fields = classSize.get(expr.classtype.getDecl());
+		int d = destination(target, true);
+		emit(expr, Opcode.NEW, d, fields[0], fields[1]);
+		return d;
+	}
+
+	public Integer visitNewArrayExpr(NewArrayExpr expr, Integer target) {
+		int s = expr.sizeExpr.visit(this, ANY);
+		int d = destination(target, true);
+		emit(expr, isReference(expr.eltType) ? Opcode.NEWAR : Opcode.NEWAI, d, s);
+		return d;
+	}
+
+	// References: visiting one loads its value
+
+	public Integer visitThisRef(ThisRef ref, Integer target) {
+		return move(target, 0, true);
+	}
+
+	public Integer visitIdRef(IdRef ref, Integer target) {
+		Declaration decl = ref.id.decl;
+		if (decl instanceof LocalDecl)
+			return move(target, localRegister.get(decl), isReference(decl.type));
+		FieldDecl fd = (FieldDecl) decl;
+		boolean isRef = isReference(fd.type);
+		int d = destination(target, isRef);
+		if (fd.isStatic)
+			emit(ref, isRef ? Opcode.GETSR : Opcode.GETSI, d, fieldOffset.get(fd));
+		else
+			emitNamed(ref, fd.id.spelling, isRef ? Opcode.GETR : Opcode.GETI, d, 0, fieldOffset.get(fd));
+		return d;
+	}
+
+	public Integer visitQRef(QualRef ref, Integer target) {
+		FieldDecl fd = (FieldDecl) ref.id.decl;
+		if (fd.classDecl == null) { // a.length, or System.out
+			if (!fd.isStatic) {
+				int a = ref.ref.visit(this, ANY);
+				int d = destination(target, false);
+				emit(ref, Opcode.ALEN, d, a);
+				return d;
+			}
+			int d = destination(target, true);
+			emit(ref, Opcode.RNULL, d);
+			return d;
+		}
+		boolean isRef = isReference(fd.type);
+		if (fd.isStatic) {
+			int d = destination(target, isRef);
+			emit(ref, isRef ? Opcode.GETSR : Opcode.GETSI, d, fieldOffset.get(fd));
+			return d;
+		}
+		int o = ref.ref.visit(this, ANY);
+		int d = destination(target, isRef);
+		emitNamed(ref, fd.id.spelling, isRef ? Opcode.GETR : Opcode.GETI, d, o, fieldOffset.get(fd));
+		return d;
+	}
+
+	public Integer visitIxRef(IxRef ref, Integer target) {
+		int a = ref.ref.visit(this, ANY);
+		int i = ref.indexExpr.visit(this, ANY);
+		boolean isRef = isReference(ref.getType());
+		int d = destination(target, isRef);
+		emit(ref, isRef ? Opcode.ALDR : Opcode.ALDI, d, a, i);
+		return d;
+	}
+
+	// Terminals
+
+	public Integer visitIdentifier(Identifier id, Integer target) {
+		return null;
+	}
+
+	public Integer visitOperator(Operator op, Integer target) {
+		return null;
+	}
+
+	public Integer visitIntLiteral(IntLiteral num, Integer target) {
+		int d = destination(target, false);
+		emit(num, Opcode.ICONST, d, num.getValue());
+		return d;
+	}
+
+	public Integer visitBooleanLiteral(BooleanLiteral bool, Integer target) {
+		int d = destination(target, false);
+		emit(bool, Opcode.ICONST, d, bool.kind == Token.TRUE ? 1 : 0);
+		return d;
+	}
+
+	public Integer visitNullLiteral(NullLiteral nullLiteral, Integer target) {
+		int d = destination(target, true);
+		emit(nullLiteral, Opcode.RNULL, d);
+		return d;
+	}
+}
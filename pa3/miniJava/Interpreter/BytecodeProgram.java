@@ -0,0 +1,37 @@
+package miniJava.Interpreter;
+
+/**
+ * A program lowered to bytecode by BytecodeGenerator: one Function per
+ * method, CALL instructions naming them by index, and the number of static
+ * fields of each kind.
+ */
+public class BytecodeProgram {
+
+	public final Function[] functions;
+	public final int main; // index of main in functions
+	public final int staticInts;
+	public final int staticRefs;
+
+	BytecodeProgram(Function[] functions, int main, int staticInts, int staticRefs) {
+		this.functions = functions;
+		this.main = main;
+		this.staticInts = staticInts;
+		this.staticRefs = staticRefs;
+	}
+
+	// the number of ints of code over all functions
+	public int size() {
+		int size = 0;
+		for (Function f : functions)
+			size += f.code.length;
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int f = 0; f < functions.length; f++)
+			s.append(f).append(' ').append(functions[f]).append(System.lineSeparator());
+		return s.toString();
+	}
+}
@@ -0,0 +1,61 @@
+package miniJava.Interpreter;
+
+import java.util.BitSet;
+
+import miniJava.AbstractSyntaxTrees.MethodDecl;
+
+/**
+ * The bytecode of one method (see Opcode) and what the VM needs to call it:
+ * the size of its two register files and the registers its parameters
+ * arrive in. An instance method finds its receiver in reference register 0.
+ */
+public class Function {
+
+	public final MethodDecl decl;
+	public final String name; // Class.method
+
+	public int[] code;
+	public int intRegisters;
+	public int refRegisters;
+	public int[] paramRegisters;
+	public boolean[] paramIsRef;
+	public boolean returnsRef;
+
+	// for each instruction, at its opcode's index: the source line it came
+	// from and, where it helps a runtime error message, the name involved
+	int[] lines;
+	String[] names;
+	// the array accesses, by opcode index, whose array is known not to be
+	// null and index to be in bounds, so that native code need not check
+	BitSet inBounds = new BitSet();
+
+	Function(MethodDecl decl) {
+		this.decl = decl;
+		name = decl.classDecl.id.spelling + "." + decl.id.spelling;
+	}
+
+	public int lineAt(int pc) {
+		return lines[pc];
+	}
+
+	public String nameAt(int pc) {
+		return names[pc];
+	}
+
+	public boolean isInBounds(int pc) {
+		return inBounds.get(pc);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append(name).append(String.format(": %d int, %d reference registers%n", intRegisters, refRegisters));
+		for (int pc = 0; pc < code.length; pc += Opcode.length(code, pc)) {
+			s.append(String.format("%6d  %-6s", pc, Opcode.name(code[pc])));
+			for (int i = pc + 1; i < pc + Opcode.length(code, pc); i++)
+				s.append(i == pc + 1 ? " " : ", ").append(code[i]);
+			s.append(System.lineSeparator());
+		}
+		return s.toString();
+	}
+}
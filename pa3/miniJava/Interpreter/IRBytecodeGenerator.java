@@ -0,0 +1,702 @@
+package miniJava.Interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import miniJava.AbstractSyntaxTrees.ClassDecl;
+import miniJava.AbstractSyntaxTrees.FieldDecl;
+import miniJava.AbstractSyntaxTrees.MethodDecl;
+import miniJava.IR.BasicBlock;
+import miniJava.IR.IRFunction;
+import miniJava.IR.IRProgram;
+import miniJava.IR.Instruction;
+import miniJava.IR.Op;
+import miniJava.IR.Type;
+
+/**
+ * Lowers a program in SSA form (see miniJava.IR) to register bytecode, as
+ * BytecodeGenerator does from the AST. The IR is changed on the way, so it
+ * cannot be used again.
+ *
+ * Phis are taken out of SSA as Sreedhar et al. do in their Method I: a copy
+ * of each phi operand at the end of the predecessor it comes from, and a
+ * copy of the phi's value after the phis, so that the phi and its operand
+ * copies never interfere and can share one register. (Critical edges are
+ * split first, so that every such copy has a block to go in.) Values are
+ * then given registers by coloring the interference graph, one graph for
+ * each register file, after coalescing every copy whose two sides do not
+ * interfere, which removes most of them. The receiver keeps reference
+ * register 0, where the VM puts it.
+ *
+ * As in BytecodeGenerator, a constant added to a value becomes an
+ * immediate, and a comparison that only decides a branch becomes a
+ * compare-and-jump instruction.
+ */
+public class IRBytecodeGenerator {
+
+	// the program
+	private Map<MethodDecl, Integer> functionIndex = new IdentityHashMap<MethodDecl, Integer>();
+	private Map<FieldDecl, Integer> fieldOffset = new IdentityHashMap<FieldDecl, Integer>();
+	private Map<ClassDecl, int[]> classSize = new IdentityHashMap<ClassDecl, int[]>(); // int, reference fields
+
+	// the function being generated
+	private IRFunction function;
+	private Instruction[] values; // by id
+	private boolean[] hasRegister; // by id
+	private int[] register; // by id
+	private BitSet[] interference; // by id
+	private int[] parent; // union-find of values sharing a register
+
+	private int[] code = new int[256];
+	private int[] lines = new int[256];
+	private String[] names = new String[256];
+	private BitSet inBounds = new BitSet();
+	private int size;
+
+	public BytecodeProgram generate(IRProgram ir) {
+		int staticInts = 0, staticRefs = 0;
+		for (ClassDecl cd : ir.ast.classDeclList) {
+			int ints = 0, refs = 0;
+			for (FieldDecl fd : cd.fieldDeclList) {
+				boolean ref = Type.of(fd.type) == Type.REF;
+				if (fd.isStatic)
+					fieldOffset.put(fd, ref ? staticRefs++ : staticInts++);
+				else
+					fieldOffset.put(fd, ref ? refs++ : ints++);
+			}
+			classSize.put(cd, new int[] { ints, refs });
+		}
+		for (IRFunction f : ir.functions)
+			functionIndex.put(f.decl, functionIndex.size());
+
+		Function[] functions = new Function[ir.functions.size()];
+		for (int f = 0; f < functions.length; f++) {
+			functions[f] = new Function(ir.functions.get(f).decl);
+			generate(ir.functions.get(f), functions[f]);
+		}
+		return new BytecodeProgram(functions, functionIndex.get(ir.main.decl), staticInts, staticRefs);
+	}
+
+	private void generate(IRFunction irf, Function f) {
+		function = irf;
+		leaveSSA();
+		fuseComparisons();
+		List<BasicBlock> layout = layout();
+		allocateRegisters(f, layout);
+
+		size = 0;
+		inBounds = new BitSet();
+		emitCode(layout);
+		f.code = Arrays.copyOf(code, size);
+		f.lines = Arrays.copyOf(lines, size);
+		f.names = Arrays.copyOf(names, size);
+		f.inBounds = inBounds;
+	}
+
+	private static boolean isRef(Instruction value) {
+		return value.type == Type.REF;
+	}
+
+	// Out of SSA
+
+	// splits the critical edges into blocks with phis, then replaces each
+	// phi v = phi(a, b) by copies: a' = a at the end of the first
+	// predecessor, b' = b at the end of the second, v = phi(a', b') and
+	// v' = v after the phis, v' replacing v everywhere else. v, a' and b'
+	// are then put in one class.
+	private void leaveSSA() {
+		for (BasicBlock b : new ArrayList<BasicBlock>(function.blocks())) {
+			if (b.successors().size() < 2)
+				continue;
+			for (BasicBlock s : new ArrayList<BasicBlock>(b.successors()))
+				if (s.predecessors().size() > 1 && !s.phis().isEmpty())
+					function.splitEdge(b, s);
+		}
+
+		for (BasicBlock b : function.blocks()) {
+			List<Instruction> phis = new ArrayList<Instruction>(b.phis());
+			for (Instruction phi : phis) {
+				for (int k = 0; k < phi.operandCount(); k++) {
+					Instruction copy = function.instruction(Op.COPY, phi.type, phi.operand(k));
+					copy.line = phi.line;
+					b.predecessors().get(k).insertBeforeTerminator(copy);
+					phi.setOperand(k, copy);
+				}
+				List<Instruction> users = new ArrayList<Instruction>(phi.users());
+				Instruction copy = function.instruction(Op.COPY, phi.type, phi);
+				copy.line = phi.line;
+				b.insertAtStart(copy);
+				for (Instruction user : users)
+					for (int k = 0; k < user.operandCount(); k++)
+						if (user.operand(k) == phi)
+							user.setOperand(k, copy);
+			}
+		}
+	}
+
+	// moves each comparison whose only user is its block's branch to just
+	// before the branch, where the two become one instruction
+	private void fuseComparisons() {
+		for (BasicBlock b : function.blocks()) {
+			Instruction branch = b.terminator();
+			if (branch.op != Op.BRANCH)
+				continue;
+			Instruction cond = branch.operand(0);
+			if (cond.block() == b && isComparison(cond) && cond.users().size() == 1)
+				b.moveBeforeTerminator(cond);
+		}
+	}
+
+	private static boolean isComparison(Instruction i) {
+		switch (i.op) {
+		case LT:
+		case LE:
+		case GT:
+		case GE:
+		case EQ:
+		case NE:
+		case NOT:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isFused(Instruction i) {
+		if (!isComparison(i) || i.users().size() != 1)
+			return false;
+		List<Instruction> block = i.block().instructions();
+		int at = block.indexOf(i);
+		return at == block.size() - 2 && block.get(at + 1).op == Op.BRANCH && block.get(at + 1).operand(0) == i;
+	}
+
+	// the operand of an ADD or SUB that becomes an immediate, or -1
+	private static int immediate(Instruction i) {
+		if (i.op == Op.ADD || i.op == Op.SUB) {
+			if (isIntConstant(i.operand(1)))
+				return 1;
+			if (i.op == Op.ADD && isIntConstant(i.operand(0)))
+				return 0;
+		}
+		return -1;
+	}
+
+	private static boolean isIntConstant(Instruction i) {
+		return i.op == Op.CONST && i.type == Type.INT;
+	}
+
+	// whether operand k of i is read from a register
+	private boolean readsRegister(Instruction i, int k) {
+		return hasRegister[i.operand(k).id()] && k != immediate(i);
+	}
+
+	// Layout
+
+	// depth first from the entry, visiting a block's successors last first,
+	// so that each block comes before its successors except along back
+	// edges, a branch's true side first, and a loop's body right after
+	// its preheader and before what follows the loop
+	private List<BasicBlock> layout() {
+		List<BasicBlock> postorder = new ArrayList<BasicBlock>();
+		Set<BasicBlock> visited = new HashSet<BasicBlock>();
+		List<BasicBlock> stack = new ArrayList<BasicBlock>();
+		List<Integer> next = new ArrayList<Integer>();
+		stack.add(function.entry());
+		next.add(0);
+		visited.add(function.entry());
+		while (!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			List<BasicBlock> succs = stack.get(top).successors();
+			int k = next.get(top);
+			if (k < succs.size()) {
+				next.set(top, k + 1);
+				BasicBlock s = succs.get(succs.size() - 1 - k);
+				if (visited.add(s)) {
+					stack.add(s);
+					next.add(0);
+				}
+			} else {
+				postorder.add(stack.remove(top));
+				next.remove(top);
+			}
+		}
+		List<BasicBlock> layout = new ArrayList<BasicBlock>();
+		for (int i = postorder.size() - 1; i >= 0; i--)
+			layout.add(postorder.get(i));
+		return layout;
+	}
+
+	// Registers
+
+	private void allocateRegisters(Function f, List<BasicBlock> layout) {
+		int n = function.valueCount();
+		values = new Instruction[n];
+		hasRegister = new boolean[n];
+		register = new int[n];
+		Arrays.fill(register, -1);
+		for (BasicBlock b : layout)
+			for (Instruction i : b.instructions())
+				values[i.id()] = i;
+		for (Instruction i : values)
+			if (i != null)
+				hasRegister[i.id()] = needsRegister(i);
+
+		buildInterference(layout);
+
+		parent = new int[n];
+		for (int v = 0; v < n; v++)
+			parent[v] = v;
+		BitSet[] members = new BitSet[n];
+		BitSet[] neighbours = new BitSet[n];
+		for (int v = 0; v < n; v++)
+			if (hasRegister[v]) {
+				members[v] = new BitSet();
+				members[v].set(v);
+				neighbours[v] = interference[v];
+			}
+		for (BasicBlock b : layout)
+			for (Instruction phi : b.phis())
+				for (Instruction copy : phi.operands())
+					if (!union(phi.id(), copy.id(), members, neighbours))
+						throw new IllegalStateException(phi + " interferes with " + copy);
+		for (BasicBlock b : layout)
+			for (Instruction i : b.instructions())
+				if (i.op == Op.COPY && hasRegister[i.id()] && hasRegister[i.operand(0).id()])
+					union(i.id(), i.operand(0).id(), members, neighbours);
+
+		// color the classes in the order of their first definition, the
+		// receiver's first
+		int[] color = new int[n];
+		Arrays.fill(color, -1);
+		int ints = 0, refs = f.decl.isStatic ? 0 : 1;
+		for (Instruction i : layout.get(0).instructions())
+			if (i.op == Op.THIS)
+				color[find(i.id())] = 0;
+		for (BasicBlock b : layout)
+			for (Instruction i : b.instructions()) {
+				if (!hasRegister[i.id()] || color[find(i.id())] >= 0)
+					continue;
+				int c = find(i.id());
+				BitSet taken = new BitSet();
+				for (int v = neighbours[c].nextSetBit(0); v >= 0; v = neighbours[c].nextSetBit(v + 1))
+					if (color[find(v)] >= 0)
+						taken.set(color[find(v)]);
+				color[c] = taken.nextClearBit(0);
+				if (isRef(i))
+					refs = Math.max(refs, color[c] + 1);
+				else
+					ints = Math.max(ints, color[c] + 1);
+			}
+		for (int v = 0; v < n; v++)
+			if (hasRegister[v])
+				register[v] = color[find(v)];
+
+		int params = f.decl.parameterDeclList.size();
+		f.paramRegisters = new int[params];
+		f.paramIsRef = new boolean[params];
+		Arrays.fill(f.paramRegisters, -1);
+		for (int p = 0; p < params; p++)
+			f.paramIsRef[p] = Type.of(f.decl.parameterDeclList.get(p).type) == Type.REF;
+		for (Instruction i : layout.get(0).instructions())
+			if (i.op == Op.PARAM)
+				f.paramRegisters[i.constant] = register[i.id()];
+		for (int p = 0; p < params; p++)
+			if (f.paramRegisters[p] < 0) // a parameter no one reads
+				f.paramRegisters[p] = f.paramIsRef[p] ? refs++ : ints++;
+		f.intRegisters = ints;
+		f.refRegisters = refs;
+		f.returnsRef = function.returnType == Type.REF;
+	}
+
+	// a value needs no register if it is a constant used only as an
+	// immediate, a comparison fused with its branch, or a call's unused
+	// result
+	private boolean needsRegister(Instruction i) {
+		if (i.type == Type.VOID || isFused(i) || i.op == Op.CALL && i.users().isEmpty())
+			return false;
+		if (i.op != Op.CONST)
+			return true;
+		for (Instruction user : i.users())
+			for (int k = 0; k < user.operandCount(); k++)
+				if (user.operand(k) == i && k != immediate(user))
+					return true;
+		return false;
+	}
+
+	// two values interfere if one is defined where the other is live, and
+	// they are of the same register file; a copy does not interfere with
+	// its source. The receiver and parameters all interfere, as they are
+	// all set on entry.
+	private void buildInterference(List<BasicBlock> layout) {
+		int n = function.valueCount();
+		interference = new BitSet[n];
+		for (int v = 0; v < n; v++)
+			if (hasRegister[v])
+				interference[v] = new BitSet();
+
+		BitSet[] liveIn = new BitSet[function.blockCount()];
+		for (BasicBlock b : layout)
+			liveIn[b.id()] = new BitSet();
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int k = layout.size() - 1; k >= 0; k--) {
+				BasicBlock b = layout.get(k);
+				BitSet live = liveOut(b, liveIn);
+				for (int j = b.instructions().size() - 1; j >= 0; j--)
+					transfer(b.instructions().get(j), live, false);
+				if (!live.equals(liveIn[b.id()])) {
+					liveIn[b.id()] = live;
+					changed = true;
+				}
+			}
+		}
+
+		for (BasicBlock b : layout) {
+			BitSet live = liveOut(b, liveIn);
+			for (int j = b.instructions().size() - 1; j >= 0; j--)
+				transfer(b.instructions().get(j), live, true);
+		}
+
+		List<Instruction> inputs = new ArrayList<Instruction>();
+		for (Instruction i : layout.get(0).instructions())
+			if (i.op == Op.THIS || i.op == Op.PARAM)
+				inputs.add(i);
+		for (Instruction a : inputs)
+			for (Instruction b : inputs)
+				if (a != b && isRef(a) == isRef(b))
+					interference[a.id()].set(b.id());
+	}
+
+	private BitSet liveOut(BasicBlock b, BitSet[] liveIn) {
+		BitSet live = new BitSet();
+		for (BasicBlock s : b.successors()) {
+			live.or(liveIn[s.id()]);
+			int k = s.predecessors().indexOf(b);
+			for (Instruction phi : s.phis())
+				if (hasRegister[phi.operand(k).id()])
+					live.set(phi.operand(k).id());
+		}
+		return live;
+	}
+
+	// steps live back over i; all phis of a block are defined at once, at
+	// its start, and their operands are live at the ends of the
+	// predecessors instead
+	private void transfer(Instruction i, BitSet live, boolean interfere) {
+		int d = i.id();
+		if (hasRegister[d]) {
+			if (interfere) {
+				int source = i.op == Op.COPY ? i.operand(0).id() : -1;
+				List<Instruction> phis = i.op == Op.PHI ? i.block().phis() : null;
+				for (int v = live.nextSetBit(0); v >= 0; v = live.nextSetBit(v + 1))
+					if (v != d && v != source && isRef(values[v]) == isRef(i))
+						addInterference(d, v);
+				if (phis != null)
+					for (Instruction phi : phis)
+						if (phi != i && isRef(phi) == isRef(i))
+							addInterference(d, phi.id());
+			}
+			live.clear(d);
+		}
+		if (i.op != Op.PHI)
+			for (int k = 0; k < i.operandCount(); k++)
+				if (readsRegister(i, k))
+					live.set(i.operand(k).id());
+	}
+
+	private void addInterference(int a, int b) {
+		interference[a].set(b);
+		interference[b].set(a);
+	}
+
+	private int find(int v) {
+		while (parent[v] != v)
+			v = parent[v] = parent[parent[v]];
+		return v;
+	}
+
+	// puts the classes of a and b together unless they interfere
+	private boolean union(int a, int b, BitSet[] members, BitSet[] neighbours) {
+		a = find(a);
+		b = find(b);
+		if (a == b)
+			return true;
+		if (isRef(values[a]) != isRef(values[b]) || neighbours[a].intersects(members[b]))
+			return false;
+		parent[b] = a;
+		members[a] = (BitSet) members[a].clone();
+		members[a].or(members[b]);
+		neighbours[a] = (BitSet) neighbours[a].clone();
+		neighbours[a].or(neighbours[b]);
+		return true;
+	}
+
+	// Emitting
+
+	private void emit(Instruction source, int... instruction) {
+		emitNamed(source, null, instruction);
+	}
+
+	private void emitNamed(Instruction source, String name, int... instruction) {
+		if (size + instruction.length > code.length) {
+			int capacity = Math.max(code.length * 2, size + instruction.length);
+			code = Arrays.copyOf(code, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+			names = Arrays.copyOf(names, capacity);
+		}
+		lines[size] = source.line;
+		names[size] = name;
+		System.arraycopy(instruction, 0, code, size, instruction.length);
+		size += instruction.length;
+	}
+
+	private int r(Instruction value) {
+		return register[value.id()];
+	}
+
+	// a block that only jumps is passed over: what jumps to it jumps on.
+	// Many do once their copies are coalesced.
+	private boolean isEmpty(BasicBlock b) {
+		if (b.terminator().op != Op.JUMP)
+			return false;
+		for (Instruction i : b.instructions())
+			if (!i.op.isTerminator() && !emitsNothing(i))
+				return false;
+		return true;
+	}
+
+	private boolean emitsNothing(Instruction i) {
+		switch (i.op) {
+		case THIS:
+		case PARAM:
+		case PHI:
+			return true;
+		case CONST:
+			return !hasRegister[i.id()];
+		case COPY:
+			return r(i) == r(i.operand(0));
+		default:
+			return false;
+		}
+	}
+
+	private BasicBlock resolve(BasicBlock b) {
+		for (int hops = 0; isEmpty(b) && hops < 1000; hops++)
+			b = b.terminator().target(0);
+		return b;
+	}
+
+	private void emitCode(List<BasicBlock> layout) {
+		List<BasicBlock> emitted = new ArrayList<BasicBlock>();
+		for (BasicBlock b : layout)
+			if (b == layout.get(0) || !isEmpty(b))
+				emitted.add(b);
+
+		int[] start = new int[function.blockCount()];
+		List<int[]> patches = new ArrayList<int[]>(); // code index, block id
+		for (int k = 0; k < emitted.size(); k++) {
+			BasicBlock b = emitted.get(k);
+			BasicBlock next = k + 1 < emitted.size() ? emitted.get(k + 1) : null;
+			start[b.id()] = size;
+			for (Instruction i : b.instructions())
+				emitInstruction(i, next, patches);
+		}
+		for (int[] patch : patches)
+			code[patch[0]] = start[patch[1]];
+	}
+
+	private void jump(Instruction source, List<int[]> patches, BasicBlock target, int... instruction) {
+		emit(source, instruction);
+		patches.add(new int[] { size - 1, target.id() });
+	}
+
+	private void emitInstruction(Instruction i, BasicBlock next, List<int[]> patches) {
+		switch (i.op) {
+		case CONST:
+			if (hasRegister[i.id()])
+				emit(i, Opcode.ICONST, r(i), i.constant);
+			break;
+		case NULL:
+			emit(i, Opcode.RNULL, r(i));
+			break;
+		case THIS:
+		case PARAM:
+		case PHI:
+			break;
+		case COPY:
+			if (r(i) != r(i.operand(0)))
+				emit(i, isRef(i) ? Opcode.RMOV : Opcode.IMOV, r(i), r(i.operand(0)));
+			break;
+		case ADD:
+		case SUB: {
+			int k = immediate(i);
+			if (k < 0) {
+				emit(i, i.op == Op.ADD ? Opcode.IADD : Opcode.ISUB, r(i), r(i.operand(0)), r(i.operand(1)));
+			} else {
+				int value = i.operand(k).constant;
+				emit(i, Opcode.IADDK, r(i), r(i.operand(1 - k)), i.op == Op.SUB ? -value : value);
+			}
+			break;
+		}
+		case MUL:
+			emit(i, Opcode.IMUL, r(i), r(i.operand(0)), r(i.operand(1)));
+			break;
+		case DIV:
+			emit(i, Opcode.IDIV, r(i), r(i.operand(0)), r(i.operand(1)));
+			break;
+		case NEG:
+			emit(i, Opcode.INEG, r(i), r(i.operand(0)));
+			break;
+		case NOT:
+		case LT:
+		case LE:
+		case GT:
+		case GE:
+		case EQ:
+		case NE:
+			if (!isFused(i)) {
+				if (i.op == Op.NOT)
+					emit(i, Opcode.NOT, r(i), r(i.operand(0)));
+				else
+					emit(i, operation(i), r(i), r(i.operand(0)), r(i.operand(1)));
+			}
+			break;
+		case GETFIELD:
+			emitNamed(i, i.field.id.spelling, isRef(i) ? Opcode.GETR : Opcode.GETI, r(i), r(i.operand(0)),
+					fieldOffset.get(i.field));
+			break;
+		case PUTFIELD:
+			emitNamed(i, i.field.id.spelling, isRef(i.operand(1)) ? Opcode.PUTR : Opcode.PUTI, r(i.operand(0)),
+					fieldOffset.get(i.field), r(i.operand(1)));
+			break;
+		case GETSTATIC:
+			emit(i, isRef(i) ? Opcode.GETSR : Opcode.GETSI, r(i), fieldOffset.get(i.field));
+			break;
+		case PUTSTATIC:
+			emit(i, isRef(i.operand(0)) ? Opcode.PUTSR : Opcode.PUTSI, fieldOffset.get(i.field), r(i.operand(0)));
+			break;
+		case NEW: {
+			int[] fields = classSize.get(i.classDecl);
+			emit(i, Opcode.NEW, r(i), fields[0], fields[1]);
+			break;
+		}
+		case NEWARRAY:
+			emit(i, i.elementType == Type.REF ? Opcode.NEWAR : Opcode.NEWAI, r(i), r(i.operand(0)));
+			break;
+		case ALOAD:
+			inBounds.set(size, i.inBounds);
+			emit(i, isRef(i) ? Opcode.ALDR : Opcode.ALDI, r(i), r(i.operand(0)), r(i.operand(1)));
+			break;
+		case ASTORE:
+			inBounds.set(size, i.inBounds);
+			emit(i, isRef(i.operand(2)) ? Opcode.ASTR : Opcode.ASTI, r(i.operand(0)), r(i.operand(1)),
+					r(i.operand(2)));
+			break;
+		case LENGTH:
+			emit(i, Opcode.ALEN, r(i), r(i.operand(0)));
+			break;
+		case CALL: {
+			MethodDecl md = i.method;
+			int first = md.isStatic ? 0 : 1;
+			int n = i.operandCount() - first;
+			int[] instruction = new int[5 + n];
+			instruction[0] = Opcode.CALL;
+			instruction[1] = functionIndex.get(md);
+			instruction[2] = md.isStatic ? -1 : r(i.operand(0));
+			instruction[3] = hasRegister[i.id()] ? r(i) : -1;
+			instruction[4] = n;
+			for (int a = 0; a < n; a++)
+				instruction[5 + a] = r(i.operand(first + a));
+			emitNamed(i, md.id.spelling, instruction);
+			break;
+		}
+		case PRINT:
+			emit(i, Opcode.PRINT, r(i.operand(0)));
+			break;
+		case JUMP: {
+			BasicBlock target = resolve(i.target(0));
+			if (target != next)
+				jump(i, patches, target, Opcode.JMP, 0);
+			break;
+		}
+		case BRANCH:
+			branch(i, next, patches);
+			break;
+		case RETURN:
+			if (i.operandCount() == 0)
+				emit(i, Opcode.RET);
+			else
+				emit(i, isRef(i.operand(0)) ? Opcode.RETR : Opcode.RETI, r(i.operand(0)));
+			break;
+		}
+	}
+
+	private void branch(Instruction i, BasicBlock next, List<int[]> patches) {
+		BasicBlock ifTrue = resolve(i.target(0)), ifFalse = resolve(i.target(1));
+		if (ifTrue == ifFalse) {
+			if (ifTrue != next)
+				jump(i, patches, ifTrue, Opcode.JMP, 0);
+			return;
+		}
+		Instruction cond = i.operand(0);
+		int[] jump; // jumping if cond holds, its target last
+		if (!isFused(cond))
+			jump = new int[] { Opcode.JNZ, r(cond), 0 };
+		else if (cond.op == Op.NOT)
+			jump = new int[] { Opcode.JZ, r(cond.operand(0)), 0 };
+		else
+			jump = new int[] { compareJump(cond), r(cond.operand(0)), r(cond.operand(1)), 0 };
+
+		if (ifTrue == next) {
+			jump[0] = Opcode.negate(jump[0]);
+			jump(i, patches, ifFalse, jump);
+			return;
+		}
+		jump(i, patches, ifTrue, jump);
+		if (ifFalse != next)
+			jump(i, patches, ifFalse, Opcode.JMP, 0);
+	}
+
+	private static int operation(Instruction i) {
+		boolean ref = isRef(i.operand(0));
+		switch (i.op) {
+		case LT:
+			return Opcode.ILT;
+		case LE:
+			return Opcode.ILE;
+		case GT:
+			return Opcode.IGT;
+		case GE:
+			return Opcode.IGE;
+		case EQ:
+			return ref ? Opcode.REQ : Opcode.IEQ;
+		default:
+			return ref ? Opcode.RNE : Opcode.INE;
+		}
+	}
+
+	private static int compareJump(Instruction i) {
+		boolean ref = isRef(i.operand(0));
+		switch (i.op) {
+		case LT:
+			return Opcode.JLT;
+		case LE:
+			return Opcode.JLE;
+		case GT:
+			return Opcode.JGT;
+		case GE:
+			return Opcode.JGE;
+		case EQ:
+			return ref ? Opcode.JREQ : Opcode.JEQ;
+		default:
+			return ref ? Opcode.JRNE : Opcode.JNE;
+		}
+	}
+}
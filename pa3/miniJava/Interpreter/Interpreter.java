@@ -0,0 +1,456 @@
+package miniJava.Interpreter;
+
+import java.io.PrintStream;
+
+import miniJava.ErrorReporter;
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.Token;
+
+/**
+ * Runs a type-checked program by walking its AST, starting at main.
+ *
+ * Before anything runs, every local variable gets a slot in its method's
+ * frame (LocalDecl.slot) and every field an offset in its object or in the
+ * static area (FieldDecl.offset). References are then executed through the
+ * decl links Identification left on their identifiers, so running a program
+ * never looks a name up.
+ *
+ * Values are Integers, Booleans, null, Instances, int[] for int arrays and
+ * Object[] for other arrays. System.out.println is the one predefined method.
+ */
+public class Interpreter implements Visitor<Interpreter.Frame, Object> {
+
+	// the activation of a method: its receiver, its parameters and locals,
+	// and what it returns once a return statement has run
+	static final class Frame {
+		final Object self;
+		final Object[] slots;
+		Object result;
+		boolean returned;
+
+		Frame(Object self, Object[] slots) {
+			this.self = self;
+			this.slots = slots;
+		}
+	}
+
+	// an object of a class declared in the program
+	static final class Instance {
+		final ClassDecl classDecl;
+		final Object[] fields;
+
+		Instance(ClassDecl classDecl) {
+			this.classDecl = classDecl;
+			fields = new Object[classDecl.instanceSize];
+			for (FieldDecl fd : classDecl.fieldDeclList)
+				if (!fd.isStatic)
+					fields[fd.offset] = initialValue(fd.type);
+		}
+	}
+
+	private static final Integer ZERO = 0;
+
+	private Package program;
+	private PrintStream out;
+	private ErrorReporter errorReporter;
+	private MethodDecl main;
+	private Object[] statics;
+
+	public Interpreter(AST ast, PrintStream out, ErrorReporter reporter) {
+		program = (Package) ast;
+		this.out = out;
+		errorReporter = reporter;
+		layout();
+	}
+
+	// runs main to the end, or until the program fails at run time, which is
+	// reported; returns whether it ran to the end
+	public boolean run() {
+		initStatics();
+		try {
+			Object[] slots = new Object[main.frameSize];
+			slots[0] = new Object[0]; // args
+			invoke(main, null, slots);
+			return true;
+		} catch (RuntimeError e) {
+			errorReporter.reportError("*** line " + e.posn.start + ": Runtime Error - " + e.getMessage());
+		} catch (StackOverflowError e) {
+			errorReporter.reportError("*** line N/A: Runtime Error - stack overflow");
+		} finally {
+			out.flush();
+		}
+		return false;
+	}
+
+	// Layout
+
+	private void layout() {
+		int staticCount = 0;
+		for (ClassDecl cd : program.classDeclList) {
+			int fieldCount = 0;
+			for (FieldDecl fd : cd.fieldDeclList)
+				fd.offset = fd.isStatic ? staticCount++ : fieldCount++;
+			cd.instanceSize = fieldCount;
+
+			for (MethodDecl md : cd.methodDeclList) {
+				int slot = 0;
+				for (ParameterDecl pd : md.parameterDeclList)
+					pd.slot = slot++;
+				md.frameSize = layout(md.statementList, slot);
+				if (md.isMain())
+					main = md;
+			}
+		}
+		statics = new Object[staticCount];
+	}
+
+	// gives every static field its default value, before each run
+	private void initStatics() {
+		for (ClassDecl cd : program.classDeclList)
+			for (FieldDecl fd : cd.fieldDeclList)
+				if (fd.isStatic)
+					statics[fd.offset] = initialValue(fd.type);
+	}
+
+	// gives the locals declared in sl the slots from next on; those of a
+	// nested block are free again after it. Returns the frame size needed.
+	private int layout(StatementList sl, int next) {
+		int size = next;
+		for (Statement s : sl) {
+			if (s instanceof VarDeclStmt) {
+				((VarDeclStmt) s).varDecl.slot = next++;
+				size = Math.max(size, next);
+			} else {
+				size = Math.max(size, layout(s, next));
+			}
+		}
+		return size;
+	}
+
+	private int layout(Statement s, int next) {
+		if (s instanceof BlockStmt)
+			return layout(((BlockStmt) s).sl, next);
+		if (s instanceof IfStmt) {
+			IfStmt stmt = (IfStmt) s;
+			int size = layout(stmt.thenStmt, next);
+			return stmt.elseStmt == null ? size : Math.max(size, layout(stmt.elseStmt, next));
+		}
+		if (s instanceof WhileStmt)
+			return layout(((WhileStmt) s).body, next);
+		return next;
+	}
+
+	private static Object initialValue(TypeDenoter type) {
+		switch (type.typeKind) {
+		case INT:
+			return ZERO;
+		case BOOLEAN:
+			return Boolean.FALSE;
+		default:
+			return null;
+		}
+	}
+
+	// Calls
+
+	private Object invoke(MethodDecl md, Object self, Object[] slots) {
+		Frame frame = new Frame(self, slots);
+		StatementList sl = md.statementList;
+		for (int i = 0, n = sl.size(); i < n && !frame.returned; i++)
+			sl.get(i).visit(this, frame);
+		return frame.result;
+	}
+
+	private Object call(Reference methodRef, ExprList args, Frame frame) {
+		MethodDecl md = (MethodDecl) methodRef.getDecl();
+		if (md.classDecl == null) { // predefined, so System.out.println
+			out.println(((Integer) args.get(0).visit(this, frame)).intValue());
+			return null;
+		}
+
+		Object self = null;
+		if (!md.isStatic) {
+			self = methodRef instanceof QualRef ? ((QualRef) methodRef).ref.visit(this, frame) : frame.self;
+			if (self == null)
+				throw new RuntimeError("call of " + md.id.spelling + " on null", methodRef.posn);
+		}
+		Object[] slots = new Object[md.frameSize];
+		for (int i = 0, n = args.size(); i < n; i++)
+			slots[i] = args.get(i).visit(this, frame);
+		return invoke(md, self, slots);
+	}
+
+	// Package and declarations: executed through run, never visited
+
+	public Object visitPackage(Package prog, Frame frame) {
+		return null;
+	}
+
+	public Object visitClassDecl(ClassDecl cd, Frame frame) {
+		return null;
+	}
+
+	public Object visitFieldDecl(FieldDecl fd, Frame frame) {
+		return null;
+	}
+
+	public Object visitMethodDecl(MethodDecl md, Frame frame) {
+		return null;
+	}
+
+	public Object visitParameterDecl(ParameterDecl pd, Frame frame) {
+		return null;
+	}
+
+	public Object visitVarDecl(VarDecl decl, Frame frame) {
+		return null;
+	}
+
+	// Types
+
+	public Object visitBaseType(BaseType type, Frame frame) {
+		return null;
+	}
+
+	public Object visitClassType(ClassType type, Frame frame) {
+		return null;
+	}
+
+	public Object visitArrayType(ArrayType type, Frame frame) {
+		return null;
+	}
+
+	// Statements
+
+	public Object visitBlockStmt(BlockStmt stmt, Frame frame) {
+		StatementList sl = stmt.sl;
+		for (int i = 0, n = sl.size(); i < n && !frame.returned; i++)
+			sl.get(i).visit(this, frame);
+		return null;
+	}
+
+	public Object visitVardeclStmt(VarDeclStmt stmt, Frame frame) {
+		frame.slots[stmt.varDecl.slot] = stmt.initExp.visit(this, frame);
+		return null;
+	}
+
+	public Object visitAssignStmt(AssignStmt stmt, Frame frame) {
+		Reference ref = stmt.ref;
+		if (ref instanceof IxRef) {
+			IxRef ix = (IxRef) ref;
+			Object array = ix.ref.visit(this, frame);
+			int index = (Integer) ix.indexExpr.visit(this, frame);
+			Object value = stmt.val.visit(this, frame);
+			checkIndex(array, index, ix.posn);
+			if (array instanceof int[])
+				((int[]) array)[index] = (Integer) value;
+			else
+				((Object[]) array)[index] = value;
+			return null;
+		}
+
+		if (ref instanceof QualRef) {
+			QualRef qr = (QualRef) ref;
+			FieldDecl fd = (FieldDecl) qr.id.decl;
+			Object object = fd.isStatic ? null : qr.ref.visit(this, frame);
+			Object value = stmt.val.visit(this, frame);
+			(fd.isStatic ? statics : fieldsOf(object, qr))[fd.offset] = value;
+			return null;
+		}
+
+		Declaration decl = ((IdRef) ref).id.decl;
+		Object value = stmt.val.visit(this, frame);
+		if (decl instanceof LocalDecl) {
+			frame.slots[((LocalDecl) decl).slot] = value;
+		} else {
+			FieldDecl fd = (FieldDecl) decl;
+			(fd.isStatic ? statics : ((Instance) frame.self).fields)[fd.offset] = value;
+		}
+		return null;
+	}
+
+	public Object visitCallStmt(CallStmt stmt, Frame frame) {
+		call(stmt.methodRef, stmt.argList, frame);
+		return null;
+	}
+
+	public Object visitReturnStmt(ReturnStmt stmt, Frame frame) {
+		if (stmt.returnExpr != null)
+			frame.result = stmt.returnExpr.visit(this, frame);
+		frame.returned = true;
+		return null;
+	}
+
+	public Object visitIfStmt(IfStmt stmt, Frame frame) {
+		if ((Boolean) stmt.cond.visit(this, frame))
+			stmt.thenStmt.visit(this, frame);
+		else if (stmt.elseStmt != null)
+			stmt.elseStmt.visit(this, frame);
+		return null;
+	}
+
+	public Object visitWhileStmt(WhileStmt stmt, Frame frame) {
+		while (!frame.returned && (Boolean) stmt.cond.visit(this, frame))
+			stmt.body.visit(this, frame);
+		return null;
+	}
+
+	// Expressions
+
+	public Object visitUnaryExpr(UnaryExpr expr, Frame frame) {
+		Object value = expr.expr.visit(this, frame);
+		if (expr.operator.kind == Token.MINUS)
+			return -(Integer) value;
+		return !(Boolean) value;
+	}
+
+	public Object visitBinaryExpr(BinaryExpr expr, Frame frame) {
+		int op = expr.operator.kind;
+		Object left = expr.left.visit(this, frame);
+		if (op == Token.AND)
+			return (Boolean) left ? expr.right.visit(this, frame) : Boolean.FALSE;
+		if (op == Token.OR)
+			return (Boolean) left ? Boolean.TRUE : expr.right.visit(this, frame);
+		Object right = expr.right.visit(this, frame);
+
+		switch (op) {
+		case Token.EQUAL:
+			return left instanceof Integer ? left.equals(right) : left == right;
+		case Token.NOTEQUAL:
+			return left instanceof Integer ? !left.equals(right) : left != right;
+		}
+
+		int l = (Integer) left, r = (Integer) right;
+		switch (op) {
+		case Token.PLUS:
+			return l + r;
+		case Token.MINUS:
+			return l - r;
+		case Token.TIMES:
+			return l * r;
+		case Token.DIV:
+			if (r == 0)
+				throw new RuntimeError("division by zero", expr.posn);
+			return l / r;
+		case Token.LESS:
+			return l < r;
+		case Token.GREATER:
+			return l > r;
+		case Token.LEQUAL:
+			return l <= r;
+		case Token.GEQUAL:
+			return l >= r;
+		default:
+			throw new IllegalStateException("operator " + expr.operator.spelling);
+		}
+	}
+
+	public Object visitRefExpr(RefExpr expr, Frame frame) {
+		return expr.ref.visit(this, frame);
+	}
+
+	public Object visitCallExpr(CallExpr expr, Frame frame) {
+		return call(expr.functionRef, expr.argList, frame);
+	}
+
+	public Object visitLiteralExpr(LiteralExpr expr, Frame frame) {
+		return expr.lit.visit(this, frame);
+	}
+
+	public Object visitNewObjectExpr(NewObjectExpr expr, Frame frame) {
+		return new Instance(expr.classtype.getDecl());
+	}
+
+	public Object visitNewArrayExpr(NewArrayExpr expr, Frame frame) {
+		int size = (Integer) expr.sizeExpr.visit(this, frame);
+		if (size < 0)
+			throw new RuntimeError("negative array size " + size, expr.posn);
+		if (expr.eltType.typeKind == TypeKind.INT)
+			return new int[size];
+		Object[] array = new Object[size];
+		if (expr.eltType.typeKind == TypeKind.BOOLEAN)
+			java.util.Arrays.fill(array, Boolean.FALSE);
+		return array;
+	}
+
+	// References: visiting one loads its value
+
+	public Object visitThisRef(ThisRef ref, Frame frame) {
+		return frame.self;
+	}
+
+	public Object visitIdRef(IdRef ref, Frame frame) {
+		Declaration decl = ref.id.decl;
+		if (decl instanceof LocalDecl)
+			return frame.slots[((LocalDecl) decl).slot];
+		if (!(decl instanceof FieldDecl))
+			return null; // a class name, which has no value
+		FieldDecl fd = (FieldDecl) decl;
+		return fd.isStatic ? statics[fd.offset] : ((Instance) frame.self).fields[fd.offset];
+	}
+
+	public Object visitQRef(QualRef ref, Frame frame) {
+		FieldDecl fd = (FieldDecl) ref.id.decl;
+		if (fd.classDecl == null) { // a.length, or System.out
+			if (!fd.isStatic)
+				return lengthOf(ref.ref.visit(this, frame), ref);
+			return null;
+		}
+		if (fd.isStatic)
+			return statics[fd.offset];
+		return fieldsOf(ref.ref.visit(this, frame), ref)[fd.offset];
+	}
+
+	public Object visitIxRef(IxRef ref, Frame frame) {
+		Object array = ref.ref.visit(this, frame);
+		int index = (Integer) ref.indexExpr.visit(this, frame);
+		checkIndex(array, index, ref.posn);
+		if (array instanceof int[])
+			return ((int[]) array)[index];
+		return ((Object[]) array)[index];
+	}
+
+	private static Object[] fieldsOf(Object object, QualRef ref) {
+		if (object == null)
+			throw new RuntimeError("field " + ref.id.spelling + " of null", ref.posn);
+		return ((Instance) object).fields;
+	}
+
+	private static int lengthOf(Object array, Reference ref) {
+		if (array == null)
+			throw new RuntimeError("length of null", ref.posn);
+		return array instanceof int[] ? ((int[]) array).length : ((Object[]) array).length;
+	}
+
+	private static void checkIndex(Object array, int index, SourcePosition posn) {
+		if (array == null)
+			throw new RuntimeError("indexing null", posn);
+		int length = array instanceof int[] ? ((int[]) array).length : ((Object[]) array).length;
+		if (index < 0 || index >= length)
+			throw new RuntimeError("index " + index + " out of bounds for length " + length, posn);
+	}
+
+	// Terminals
+
+	public Object visitIdentifier(Identifier id, Frame frame) {
+		return null;
+	}
+
+	public Object visitOperator(Operator op, Frame frame) {
+		return null;
+	}
+
+	public Object visitIntLiteral(IntLiteral num, Frame frame) {
+		return num.getValue();
+	}
+
+	public Object visitBooleanLiteral(BooleanLiteral bool, Frame frame) {
+		return bool.kind == Token.TRUE;
+	}
+
+	public Object visitNullLiteral(NullLiteral nullLiteral, Frame frame) {
+		return null;
+	}
+}
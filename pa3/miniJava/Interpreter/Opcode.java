@@ -0,0 +1,104 @@
+package miniJava.Interpreter;
+
+/**
+ * The instructions of the register bytecode run by the VM. An instruction is
+ * its opcode followed by its operands, all in one int[]. Operands named d, a,
+ * b, s, o and i are registers: those of int and boolean values (booleans are 0
+ * or 1) in the int register file, object and array references in the
+ * reference file, as the opcode says. k is an immediate int, L the code
+ * index a jump goes to.
+ */
+public final class Opcode {
+
+	private Opcode() {
+	}
+
+	public static final int
+	// moves and constants
+	ICONST = 0, // d k
+	IMOV = 1, // d s
+	RMOV = 2, // d s
+	RNULL = 3, // d
+
+	// int arithmetic and comparisons, giving 0 or 1
+	IADD = 4, ISUB = 5, IMUL = 6, IDIV = 7, // d a b
+	IADDK = 8, // d a k
+	INEG = 9, NOT = 10, // d s
+	ILT = 11, ILE = 12, IGT = 13, IGE = 14, IEQ = 15, INE = 16, // d a b
+	REQ = 17, RNE = 18, // d a b on references
+
+	// jumps
+	JMP = 19, // L
+	JZ = 20, JNZ = 21, // s L
+	JLT = 22, JLE = 23, JGT = 24, JGE = 25, JEQ = 26, JNE = 27, // a b L
+	JREQ = 28, JRNE = 29, // a b L on references
+
+	// fields, by offset among the object's (or all static) fields of a kind
+	GETI = 30, GETR = 31, // d o k
+	PUTI = 32, PUTR = 33, // o k s
+	GETSI = 34, GETSR = 35, // d k
+	PUTSI = 36, PUTSR = 37, // k s
+
+	// objects and arrays
+	NEW = 38, // d k1 k2: an object with k1 int and k2 reference fields
+	NEWAI = 39, NEWAR = 40, // d s: an array of s ints or references
+	ALDI = 41, ALDR = 42, // d a i
+	ASTI = 43, ASTR = 44, // a i s
+	ALEN = 45, // d a
+
+	// calls: CALL f o d n a1 .. an calls function f on receiver o (or none,
+	// -1) with the n argument registers and puts its result in d (or
+	// nowhere, -1)
+	CALL = 46,
+	RETI = 47, RETR = 48, // s
+	RET = 49,
+	PRINT = 50; // s
+
+	private static final String[] names = { "ICONST", "IMOV", "RMOV", "RNULL", "IADD", "ISUB", "IMUL", "IDIV",
+			"IADDK", "INEG", "NOT", "ILT", "ILE", "IGT", "IGE", "IEQ", "INE", "REQ", "RNE", "JMP", "JZ", "JNZ", "JLT",
+			"JLE", "JGT", "JGE", "JEQ", "JNE", "JREQ", "JRNE", "GETI", "GETR", "PUTI", "PUTR", "GETSI", "GETSR",
+			"PUTSI", "PUTSR", "NEW", "NEWAI", "NEWAR", "ALDI", "ALDR", "ASTI", "ASTR", "ALEN", "CALL", "RETI", "RETR",
+			"RET", "PRINT" };
+
+	// operands after the opcode; CALL has 4 more than the count it holds
+	private static final int[] operands = { 2, 2, 2, 1, 3, 3, 3, 3, 3, 2, 2, 3, 3, 3, 3, 3, 3, 3, 3, 1, 2, 2, 3, 3,
+			3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 2, 2, 2, 2, 3, 2, 2, 3, 3, 3, 3, 2, 4, 1, 1, 0, 1 };
+
+	public static String name(int op) {
+		return names[op];
+	}
+
+	// length in ints of the instruction at code[pc]
+	public static int length(int[] code, int pc) {
+		int op = code[pc];
+		return 1 + operands[op] + (op == CALL ? code[pc + 4] : 0);
+	}
+
+	// the opposite test of a conditional jump: JLT and JGE, JZ and JNZ, ...
+	static int negate(int jump) {
+		switch (jump) {
+		case JZ:
+			return JNZ;
+		case JNZ:
+			return JZ;
+		case JLT:
+			return JGE;
+		case JGE:
+			return JLT;
+		case JLE:
+			return JGT;
+		case JGT:
+			return JLE;
+		case JEQ:
+			return JNE;
+		case JNE:
+			return JEQ;
+		case JREQ:
+			return JRNE;
+		case JRNE:
+			return JREQ;
+		default:
+			throw new IllegalArgumentException(name(jump) + " is not a conditional jump");
+		}
+	}
+}
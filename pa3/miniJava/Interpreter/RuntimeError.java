@@ -0,0 +1,19 @@
+package miniJava.Interpreter;
+
+import miniJava.SyntacticAnalyzer.SourcePosition;
+
+// thrown when the program being run does something Java would throw for:
+// a null dereference, an index out of bounds, a division by zero; run
+// reports it and stops the program
+class RuntimeError extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	final SourcePosition posn;
+
+	RuntimeError(String message, SourcePosition posn) {
+		super(message, null, false, false); // no stack trace, it is never shown
+		this.posn = posn;
+	}
+
+}
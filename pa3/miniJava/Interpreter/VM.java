@@ -0,0 +1,347 @@
+package miniJava.Interpreter;
+
+import java.io.PrintStream;
+
+import miniJava.ErrorReporter;
+import miniJava.SyntacticAnalyzer.SourcePosition;
+
+/**
+ * Runs a BytecodeProgram. Each call gets a fresh pair of register files, an
+ * int[] for ints and booleans and an Object[] for references, and the
+ * function's code is run by one switch over the opcodes.
+ *
+ * An object is an Instance holding its int and reference fields apart; int
+ * and boolean arrays are int[], others Object[]. The instructions leave the
+ * checks Java makes anyway (null, index, division by zero) to Java, and
+ * when one fails the code index still points at the failing instruction,
+ * which is turned into the same runtime error the Interpreter reports.
+ */
+public class VM {
+
+	static final class Instance {
+		final int[] ints;
+		final Object[] refs;
+
+		Instance(int ints, int refs) {
+			this.ints = new int[ints];
+			this.refs = new Object[refs];
+		}
+	}
+
+	private Function[] functions;
+	private Function main;
+	private BytecodeProgram program;
+	private PrintStream out;
+	private ErrorReporter errorReporter;
+
+	private int[] intStatics;
+	private Object[] refStatics;
+
+	// what the last function to return returned, by kind
+	private int intResult;
+	private Object refResult;
+
+	public VM(BytecodeProgram program, PrintStream out, ErrorReporter reporter) {
+		this.program = program;
+		functions = program.functions;
+		main = functions[program.main];
+		this.out = out;
+		errorReporter = reporter;
+	}
+
+	// runs main to the end, or until the program fails at run time, which is
+	// reported; returns whether it ran to the end
+	public boolean run() {
+		intStatics = new int[program.staticInts];
+		refStatics = new Object[program.staticRefs];
+		try {
+			Object[] refs = new Object[main.refRegisters];
+			refs[main.paramRegisters[0]] = new Object[0]; // args
+			execute(main, new int[main.intRegisters], refs);
+			return true;
+		} catch (RuntimeError e) {
+			errorReporter.reportError("*** line " + e.posn.start + ": Runtime Error - " + e.getMessage());
+		} catch (StackOverflowError e) {
+			errorReporter.reportError("*** line N/A: Runtime Error - stack overflow");
+		} finally {
+			out.flush();
+		}
+		return false;
+	}
+
+	private void execute(Function f, int[] i, Object[] r) {
+		final int[] code = f.code;
+		int pc = 0;
+		try {
+			for (;;) {
+				switch (code[pc]) {
+				case Opcode.ICONST:
+					i[code[pc + 1]] = code[pc + 2];
+					pc += 3;
+					break;
+				case Opcode.IMOV:
+					i[code[pc + 1]] = i[code[pc + 2]];
+					pc += 3;
+					break;
+				case Opcode.RMOV:
+					r[code[pc + 1]] = r[code[pc + 2]];
+					pc += 3;
+					break;
+				case Opcode.RNULL:
+					r[code[pc + 1]] = null;
+					pc += 2;
+					break;
+
+				case Opcode.IADD:
+					i[code[pc + 1]] = i[code[pc + 2]] + i[code[pc + 3]];
+					pc += 4;
+					break;
+				case Opcode.ISUB:
+					i[code[pc + 1]] = i[code[pc + 2]] - i[code[pc + 3]];
+					pc += 4;
+					break;
+				case Opcode.IMUL:
+					i[code[pc + 1]] = i[code[pc + 2]] * i[code[pc + 3]];
+					pc += 4;
+					break;
+				case Opcode.IDIV:
+					i[code[pc + 1]] = i[code[pc + 2]] / i[code[pc + 3]];
+					pc += 4;
+					break;
+				case Opcode.IADDK:
+					i[code[pc + 1]] = i[code[pc + 2]] + code[pc + 3];
+					pc += 4;
+					break;
+				case Opcode.INEG:
+					i[code[pc + 1]] = -i[code[pc + 2]];
+					pc += 3;
+					break;
+				case Opcode.NOT:
+					i[code[pc + 1]] = 1 - i[code[pc + 2]];
+					pc += 3;
+					break;
+				case Opcode.ILT:
+					i[code[pc + 1]] = i[code[pc + 2]] < i[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Opcode.ILE:
+					i[code[pc + 1]] = i[code[pc + 2]] <= i[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Opcode.IGT:
+					i[code[pc + 1]] = i[code[pc + 2]] > i[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Opcode.IGE:
+					i[code[pc + 1]] = i[code[pc + 2]] >= i[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Opcode.IEQ:
+					i[code[pc + 1]] = i[code[pc + 2]] == i[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Opcode.INE:
+					i[code[pc + 1]] = i[code[pc + 2]] != i[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Opcode.REQ:
+					i[code[pc + 1]] = r[code[pc + 2]] == r[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case Opcode.RNE:
+					i[code[pc + 1]] = r[code[pc + 2]] != r[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+
+				case Opcode.JMP:
+					pc = code[pc + 1];
+					break;
+				case Opcode.JZ:
+					pc = i[code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+					break;
+				case Opcode.JNZ:
+					pc = i[code[pc + 1]] != 0 ? code[pc + 2] : pc + 3;
+					break;
+				case Opcode.JLT:
+					pc = i[code[pc + 1]] < i[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case Opcode.JLE:
+					pc = i[code[pc + 1]] <= i[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case Opcode.JGT:
+					pc = i[code[pc + 1]] > i[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case Opcode.JGE:
+					pc = i[code[pc + 1]] >= i[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case Opcode.JEQ:
+					pc = i[code[pc + 1]] == i[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case Opcode.JNE:
+					pc = i[code[pc + 1]] != i[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case Opcode.JREQ:
+					pc = r[code[pc + 1]] == r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case Opcode.JRNE:
+					pc = r[code[pc + 1]] != r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+
+				case Opcode.GETI:
+					i[code[pc + 1]] = ((Instance) r[code[pc + 2]]).ints[code[pc + 3]];
+					pc += 4;
+					break;
+				case Opcode.GETR:
+					r[code[pc + 1]] = ((Instance) r[code[pc + 2]]).refs[code[pc + 3]];
+					pc += 4;
+					break;
+				case Opcode.PUTI:
+					((Instance) r[code[pc + 1]]).ints[code[pc + 2]] = i[code[pc + 3]];
+					pc += 4;
+					break;
+				case Opcode.PUTR:
+					((Instance) r[code[pc + 1]]).refs[code[pc + 2]] = r[code[pc + 3]];
+					pc += 4;
+					break;
+				case Opcode.GETSI:
+					i[code[pc + 1]] = intStatics[code[pc + 2]];
+					pc += 3;
+					break;
+				case Opcode.GETSR:
+					r[code[pc + 1]] = refStatics[code[pc + 2]];
+					pc += 3;
+					break;
+				case Opcode.PUTSI:
+					intStatics[code[pc + 1]] = i[code[pc + 2]];
+					pc += 3;
+					break;
+				case Opcode.PUTSR:
+					refStatics[code[pc + 1]] = r[code[pc + 2]];
+					pc += 3;
+					break;
+
+				case Opcode.NEW:
+					r[code[pc + 1]] = new Instance(code[pc + 2], code[pc + 3]);
+					pc += 4;
+					break;
+				case Opcode.NEWAI:
+					r[code[pc + 1]] = new int[i[code[pc + 2]]];
+					pc += 3;
+					break;
+				case Opcode.NEWAR:
+					r[code[pc + 1]] = new Object[i[code[pc + 2]]];
+					pc += 3;
+					break;
+				case Opcode.ALDI:
+					i[code[pc + 1]] = ((int[]) r[code[pc + 2]])[i[code[pc + 3]]];
+					pc += 4;
+					break;
+				case Opcode.ALDR:
+					r[code[pc + 1]] = ((Object[]) r[code[pc + 2]])[i[code[pc + 3]]];
+					pc += 4;
+					break;
+				case Opcode.ASTI:
+					((int[]) r[code[pc + 1]])[i[code[pc + 2]]] = i[code[pc + 3]];
+					pc += 4;
+					break;
+				case Opcode.ASTR:
+					((Object[]) r[code[pc + 1]])[i[code[pc + 2]]] = r[code[pc + 3]];
+					pc += 4;
+					break;
+				case Opcode.ALEN: {
+					Object array = r[code[pc + 2]];
+					i[code[pc + 1]] = array instanceof int[] ? ((int[]) array).length : ((Object[]) array).length;
+					pc += 3;
+					break;
+				}
+
+				case Opcode.CALL: {
+					Function callee = functions[code[pc + 1]];
+					int[] calleeInts = new int[callee.intRegisters];
+					Object[] calleeRefs = new Object[callee.refRegisters];
+					int n = code[pc + 4];
+					int[] params = callee.paramRegisters;
+					boolean[] paramIsRef = callee.paramIsRef;
+					for (int a = 0; a < n; a++) {
+						if (paramIsRef[a])
+							calleeRefs[params[a]] = r[code[pc + 5 + a]];
+						else
+							calleeInts[params[a]] = i[code[pc + 5 + a]];
+					}
+					if (code[pc + 2] >= 0) {
+						Object receiver = r[code[pc + 2]];
+						if (receiver == null)
+							throw new NullPointerException();
+						calleeRefs[0] = receiver;
+					}
+					execute(callee, calleeInts, calleeRefs);
+					int d = code[pc + 3];
+					if (d >= 0) {
+						if (callee.returnsRef)
+							r[d] = refResult;
+						else
+							i[d] = intResult;
+					}
+					pc += 5 + n;
+					break;
+				}
+				case Opcode.RETI:
+					intResult = i[code[pc + 1]];
+					return;
+				case Opcode.RETR:
+					refResult = r[code[pc + 1]];
+					return;
+				case Opcode.RET:
+					return;
+				case Opcode.PRINT:
+					out.println(i[code[pc + 1]]);
+					pc += 2;
+					break;
+				default:
+					throw new IllegalStateException(f.name + ": bad opcode " + code[pc] + " at " + pc);
+				}
+			}
+		} catch (NullPointerException | ArrayIndexOutOfBoundsException | ArithmeticException
+				| NegativeArraySizeException e) {
+			throw fault(f, pc, i, r);
+		}
+	}
+
+	// the runtime error for the instruction at pc, which Java has just
+	// refused to carry out
+	private static RuntimeError fault(Function f, int pc, int[] i, Object[] r) {
+		int[] code = f.code;
+		String message;
+		switch (code[pc]) {
+		case Opcode.IDIV:
+			message = "division by zero";
+			break;
+		case Opcode.NEWAI:
+		case Opcode.NEWAR:
+			message = "negative array size " + i[code[pc + 2]];
+			break;
+		case Opcode.GETI:
+		case Opcode.GETR:
+		case Opcode.PUTI:
+		case Opcode.PUTR:
+			message = "field " + f.names[pc] + " of null";
+			break;
+		case Opcode.CALL:
+			message = "call of " + f.names[pc] + " on null";
+			break;
+		case Opcode.ALEN:
+			message = "length of null";
+			break;
+		default: // indexing
+			boolean load = code[pc] == Opcode.ALDI || code[pc] == Opcode.ALDR;
+			Object array = r[code[pc + (load ? 2 : 1)]];
+			int index = i[code[pc + (load ? 3 : 2)]];
+			if (array == null)
+				message = "indexing null";
+			else
+				message = "index " + index + " out of bounds for length "
+						+ (array instanceof int[] ? ((int[]) array).length : ((Object[]) array).length);
+		}
+		return new RuntimeError(message, new SourcePosition(f.lines[pc], f.lines[pc]));
+	}
+}
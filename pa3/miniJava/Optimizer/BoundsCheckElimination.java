@@ -0,0 +1,293 @@
+package miniJava.Optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import miniJava.IR.BasicBlock;
+import miniJava.IR.Dominators;
+import miniJava.IR.IRFunction;
+import miniJava.IR.IRProgram;
+import miniJava.IR.Instruction;
+import miniJava.IR.Op;
+import miniJava.IR.Type;
+
+/**
+ * Proves array accesses in bounds by range analysis of their indices, and
+ * marks them so that native code leaves out their checks: a[i] needs none
+ * if 0 <= i and i < a.length hold wherever it runs.
+ *
+ * What holds at a block are the comparisons of ints decided by the
+ * branches on the way to it: a block reached only by one edge of a branch
+ * knows the condition of that edge, and everything its immediate dominator
+ * knows. SSA values never change, so a fact about a value stays true below
+ * the branch that established it. Through a phi, a bound holds if it holds
+ * for each operand on the edge it comes in on, which covers the rotated
+ * loops IRBuilder makes of while statements: for
+ *
+ *   i = 0; while (i < a.length) { ... a[i] ... i = i + 1; }
+ *
+ * i is 0 from the guard, where 0 < a.length, or i + 1 from the end of the
+ * body, where i + 1 < a.length. i is not negative if each operand is not,
+ * assuming it of the phi itself around the loop, for that bound only: a
+ * loop stepping i down by one would need i >= 1 of it. An increment of
+ * one cannot wrap round, since something is bigger than what it
+ * increments, or at most something less than the largest int.
+ * a.length is the LENGTH of the same array or, for an array just made,
+ * its size; either way, the array is not null where a bound on its length
+ * was tested.
+ *
+ * With keepChecks set the accesses are counted but not marked, so that
+ * native code checks them all, as a way to check the analysis.
+ */
+public class BoundsCheckElimination {
+
+	public boolean keepChecks;
+	public int accesses; // array loads and stores
+	public int proven; // of those, known in bounds
+
+	// a fact that holds at a point: left < right (op LT) or left <= right (LE)
+	private static class Fact {
+		final Op op;
+		final Instruction left, right;
+
+		Fact(Op op, Instruction left, Instruction right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+	}
+
+	// the bounds taken to hold of phis around a loop while they are being
+	// proven, and the phis being proven again for a larger bound
+	private static class Assumptions {
+		final Map<Instruction, Long> bounds = new HashMap<Instruction, Long>();
+		final Set<Instruction> raised = new HashSet<Instruction>();
+	}
+
+	private Map<BasicBlock, List<Fact>> facts = new HashMap<BasicBlock, List<Fact>>();
+
+	public void eliminate(IRProgram program) {
+		for (IRFunction f : program.functions)
+			eliminate(f);
+	}
+
+	public String report() {
+		return String.format("Bounds check elimination: %d of %d array accesses proven in bounds%s", proven, accesses,
+				keepChecks ? ", all checks kept" : "");
+	}
+
+	private void eliminate(IRFunction f) {
+		Dominators dominators = new Dominators(f);
+		facts.clear();
+		for (BasicBlock b : dominators.reversePostorder()) {
+			BasicBlock idom = dominators.idom(b);
+			List<Fact> known = idom == null ? new ArrayList<Fact>() : new ArrayList<Fact>(facts.get(idom));
+			if (b.predecessors().size() == 1)
+				addEdgeFacts(b.predecessors().get(0), b, known);
+			facts.put(b, known);
+		}
+
+		for (BasicBlock b : dominators.reversePostorder())
+			for (Instruction i : b.instructions()) {
+				if (i.op != Op.ALOAD && i.op != Op.ASTORE)
+					continue;
+				accesses++;
+				Instruction array = i.operand(0), index = i.operand(1);
+				List<Fact> known = facts.get(b);
+				if (atLeast(index, 0, known, new Assumptions())
+						&& belowLength(index, array, known, new HashSet<Instruction>())) {
+					proven++;
+					i.inBounds = !keepChecks;
+				}
+			}
+	}
+
+	// Facts
+
+	// what holds on the edge from p to s, if p branches
+	private static void addEdgeFacts(BasicBlock p, BasicBlock s, List<Fact> known) {
+		Instruction t = p.terminator();
+		if (t.op == Op.BRANCH)
+			addConditionFacts(t.operand(0), s == t.target(0), known);
+	}
+
+	private static List<Fact> onEdge(BasicBlock p, BasicBlock s, Map<BasicBlock, List<Fact>> facts) {
+		List<Fact> known = facts.containsKey(p) ? new ArrayList<Fact>(facts.get(p)) : new ArrayList<Fact>();
+		addEdgeFacts(p, s, known);
+		return known;
+	}
+
+	// what holds where cond is known to be value
+	private static void addConditionFacts(Instruction cond, boolean value, List<Fact> known) {
+		if (cond.op == Op.NOT) {
+			addConditionFacts(cond.operand(0), !value, known);
+			return;
+		}
+		if (cond.operandCount() != 2 || cond.operand(0).type != Type.INT)
+			return;
+		Instruction x = cond.operand(0), y = cond.operand(1);
+		switch (cond.op) {
+		case LT:
+			known.add(value ? new Fact(Op.LT, x, y) : new Fact(Op.LE, y, x));
+			break;
+		case LE:
+			known.add(value ? new Fact(Op.LE, x, y) : new Fact(Op.LT, y, x));
+			break;
+		case GT:
+			known.add(value ? new Fact(Op.LT, y, x) : new Fact(Op.LE, x, y));
+			break;
+		case GE:
+			known.add(value ? new Fact(Op.LE, y, x) : new Fact(Op.LT, x, y));
+			break;
+		case EQ:
+		case NE:
+			if (value == (cond.op == Op.EQ)) {
+				known.add(new Fact(Op.LE, x, y));
+				known.add(new Fact(Op.LE, y, x));
+			}
+			break;
+		default:
+		}
+	}
+
+	// Bounds
+
+	// whether value >= k; a phi is taken to be at least the bound assumed of
+	// it around a loop, and proven again, once, for a larger one: around a
+	// loop stepping down by c, phi >= k needs phi >= k + c
+	private boolean atLeast(Instruction value, long k, List<Fact> known, Assumptions assumed) {
+		if (k <= Integer.MIN_VALUE)
+			return true;
+		if (k > Integer.MAX_VALUE)
+			return false;
+		if (value.op == Op.CONST)
+			return value.constant >= k;
+		if (value.op == Op.LENGTH && k <= 0)
+			return true;
+		for (Fact fact : known)
+			if (fact.right == value && fact.left.op == Op.CONST
+					&& (fact.op == Op.LE ? fact.left.constant >= k : fact.left.constant >= k - 1))
+				return true;
+		if (value.op == Op.PHI) {
+			Long bound = assumed.bounds.get(value);
+			if (bound != null && k <= bound)
+				return true;
+			if (bound != null && !assumed.raised.add(value))
+				return false;
+			assumed.bounds.put(value, k);
+			boolean holds = true;
+			for (int i = 0; holds && i < value.operandCount(); i++) {
+				BasicBlock pred = value.block().predecessors().get(i);
+				holds = atLeast(value.operand(i), k, onEdge(pred, value.block(), facts), assumed);
+			}
+			if (bound != null) {
+				assumed.bounds.put(value, bound);
+				assumed.raised.remove(value);
+			} else if (!holds) {
+				assumed.bounds.remove(value);
+			}
+			return holds;
+		}
+		// x + c >= k if x >= k - c, and x + c does not wrap round: it cannot
+		// for c <= 0 then, and for c = 1 if x is less than something
+		Instruction x = offsetBase(value);
+		if (x == null)
+			return false;
+		int c = offset(value);
+		if (c > 1 || c == 1 && !bounded(x, known, new HashSet<Instruction>()))
+			return false;
+		return atLeast(x, k - c, known, assumed);
+	}
+
+	// whether value is known to be less than something, so that adding one
+	// to it does not wrap round: less than anything, or at most something
+	// below the largest int
+	private boolean bounded(Instruction value, List<Fact> known, Set<Instruction> visiting) {
+		if (value.op == Op.CONST)
+			return value.constant < Integer.MAX_VALUE;
+		for (Fact fact : known)
+			if (fact.left == value && (fact.op == Op.LT || belowMax(fact.right, known)))
+				return true;
+		if (value.op != Op.PHI || !visiting.add(value))
+			return false;
+		for (int k = 0; k < value.operandCount(); k++) {
+			BasicBlock pred = value.block().predecessors().get(k);
+			if (!bounded(value.operand(k), onEdge(pred, value.block(), facts), visiting))
+				return false;
+		}
+		return true;
+	}
+
+	// whether value < Integer.MAX_VALUE: a constant that is, or x - c for
+	// c > 0 where x - c does not wrap round, as for a length less one
+	private boolean belowMax(Instruction value, List<Fact> known) {
+		if (value.op == Op.CONST)
+			return value.constant < Integer.MAX_VALUE;
+		Instruction x = offsetBase(value);
+		return x != null && offset(value) < 0
+				&& atLeast(x, (long) Integer.MIN_VALUE - offset(value), known, new Assumptions());
+	}
+
+	// whether value < the length of array; phis in assumed are taken to be,
+	// around a loop
+	private boolean belowLength(Instruction value, Instruction array, List<Fact> known, Set<Instruction> assumed) {
+		if (atMostLength(value, array, true))
+			return true;
+		for (Fact fact : known)
+			if (fact.left == value && atMostLength(fact.right, array, fact.op == Op.LE))
+				return true;
+		if (value.op == Op.PHI) {
+			if (!assumed.add(value))
+				return true;
+			for (int k = 0; k < value.operandCount(); k++) {
+				BasicBlock pred = value.block().predecessors().get(k);
+				if (!belowLength(value.operand(k), array, onEdge(pred, value.block(), facts), assumed))
+					return false;
+			}
+			return true;
+		}
+		// x + c for c <= 0, which cannot wrap round when x >= 0
+		Instruction x = offsetBase(value);
+		return x != null && offset(value) <= 0 && belowLength(x, array, known, assumed)
+				&& atLeast(x, 0, known, new Assumptions());
+	}
+
+	// whether bound <= the length of array, or < it if strict: the length
+	// itself, the length less a constant, which cannot wrap round, or a
+	// constant and the array one just made of a constant size
+	private static boolean atMostLength(Instruction bound, Instruction array, boolean strict) {
+		if (bound.op == Op.CONST && array.op == Op.NEWARRAY && array.operand(0).op == Op.CONST)
+			return strict ? bound.constant < array.operand(0).constant : bound.constant <= array.operand(0).constant;
+		if (isLength(bound, array))
+			return !strict;
+		Instruction x = offsetBase(bound);
+		return x != null && isLength(x, array) && (strict ? offset(bound) < 0 : offset(bound) <= 0);
+	}
+
+	private static boolean isLength(Instruction value, Instruction array) {
+		return value.op == Op.LENGTH && value.operand(0) == array
+				|| array.op == Op.NEWARRAY && array.operand(0) == value;
+	}
+
+	// for value = x + c or x - c with c a constant, x; otherwise null
+	private static Instruction offsetBase(Instruction value) {
+		if (value.op == Op.ADD && value.operand(1).op == Op.CONST)
+			return value.operand(0);
+		if (value.op == Op.ADD && value.operand(0).op == Op.CONST)
+			return value.operand(1);
+		if (value.op == Op.SUB && value.operand(1).op == Op.CONST && value.operand(1).constant != Integer.MIN_VALUE)
+			return value.operand(0);
+		return null;
+	}
+
+	// the c of value = x + c, x - c being x + -c
+	private static int offset(Instruction value) {
+		if (value.op == Op.SUB)
+			return -value.operand(1).constant;
+		return value.operand(value.operand(1).op == Op.CONST ? 1 : 0).constant;
+	}
+}
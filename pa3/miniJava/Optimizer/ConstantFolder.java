@@ -0,0 +1,411 @@
+package miniJava.Optimizer;
+
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.SyntacticAnalyzer.Token;
+
+/**
+ * Folds the constant subexpressions of a type-checked AST into literals and
+ * simplifies identities: x * 1, x + 0, x - 0, x / 1, - - x, !!b, b == true,
+ * true && e, false || e and the like. An if statement whose condition folds
+ * to a literal is replaced by the branch it takes, and a while statement
+ * whose condition is false is dropped.
+ *
+ * Nothing that could fail or have an effect at run time is folded away: a
+ * division by a constant zero is left for the program to report, and x * 0
+ * or e && false become literals only when x and e are plain variables,
+ * literals or arithmetic on them.
+ *
+ * Each visit returns the node to put in place of the one visited - itself,
+ * a subtree of it or a new literal - and a statement visit returns null for
+ * a statement to drop. After fold, the counters say what was done, and
+ * removedNodes how many nodes (as ASTNodeCounter counts them) the AST lost.
+ */
+public class ConstantFolder implements Visitor<Object, AST> {
+
+	public int folded; // expressions replaced by a literal
+	public int simplified; // identities applied
+	public int pruned; // if and while statements decided
+	public int removedNodes;
+
+	private MethodDecl method; // the one being folded
+
+	public void fold(AST ast) {
+		ASTNodeCounter counter = new ASTNodeCounter();
+		int before = counter.count(ast);
+		ast.visit(this, null);
+		removedNodes = before - counter.count(ast);
+	}
+
+	public String report() {
+		return String.format("Constant folding: %d AST nodes removed (%d expressions folded, %d simplified, "
+				+ "%d branches pruned)", removedNodes, folded, simplified, pruned);
+	}
+
+	private Expression expression(Expression expr) {
+		return (Expression) expr.visit(this, null);
+	}
+
+	private StatementList statements(StatementList sl) {
+		StatementList folded = new StatementList();
+		for (Statement s : sl) {
+			Statement stmt = (Statement) s.visit(this, null);
+			if (stmt != null)
+				folded.add(stmt);
+		}
+		return folded;
+	}
+
+	// the statement in place of a branch of an if or the body of a while,
+	// where a dropped statement leaves an empty block
+	private Statement branch(Statement s) {
+		Statement stmt = (Statement) s.visit(this, null);
+		if (stmt != null)
+			return stmt;
+		BlockStmt empty = new BlockStmt(new StatementList(), s.posn);
+		empty.methodDecl = method;
+		return empty;
+	}
+
+	private ExprList arguments(ExprList args) {
+		ExprList folded = new ExprList();
+		for (Expression e : args)
+			folded.add(expression(e));
+		return folded;
+	}
+
+	// Package
+
+	public AST visitPackage(Package prog, Object arg) {
+		for (ClassDecl cd : prog.classDeclList)
+			cd.visit(this, null);
+		return prog;
+	}
+
+	// Declarations
+
+	public AST visitClassDecl(ClassDecl cd, Object arg) {
+		for (MethodDecl md : cd.methodDeclList)
+			md.visit(this, null);
+		return cd;
+	}
+
+	public AST visitFieldDecl(FieldDecl fd, Object arg) {
+		return fd;
+	}
+
+	public AST visitMethodDecl(MethodDecl md, Object arg) {
+		method = md;
+		md.statementList = statements(md.statementList);
+		return md;
+	}
+
+	public AST visitParameterDecl(ParameterDecl pd, Object arg) {
+		return pd;
+	}
+
+	public AST visitVarDecl(VarDecl decl, Object arg) {
+		return decl;
+	}
+
+	// Types
+
+	public AST visitBaseType(BaseType type, Object arg) {
+		return type;
+	}
+
+	public AST visitClassType(ClassType type, Object arg) {
+		return type;
+	}
+
+	public AST visitArrayType(ArrayType type, Object arg) {
+		return type;
+	}
+
+	// Statements
+
+	public AST visitBlockStmt(BlockStmt stmt, Object arg) {
+		stmt.sl = statements(stmt.sl);
+		return stmt;
+	}
+
+	public AST visitVardeclStmt(VarDeclStmt stmt, Object arg) {
+		if (stmt.initExp != null)
+			stmt.initExp = expression(stmt.initExp);
+		return stmt;
+	}
+
+	public AST visitAssignStmt(AssignStmt stmt, Object arg) {
+		stmt.ref.visit(this, null);
+		stmt.val = expression(stmt.val);
+		return stmt;
+	}
+
+	public AST visitCallStmt(CallStmt stmt, Object arg) {
+		stmt.methodRef.visit(this, null);
+		stmt.argList = arguments(stmt.argList);
+		return stmt;
+	}
+
+	public AST visitReturnStmt(ReturnStmt stmt, Object arg) {
+		if (stmt.returnExpr != null)
+			stmt.returnExpr = expression(stmt.returnExpr);
+		return stmt;
+	}
+
+	public AST visitIfStmt(IfStmt stmt, Object arg) {
+		stmt.cond = expression(stmt.cond);
+		stmt.thenStmt = branch(stmt.thenStmt);
+		if (stmt.elseStmt != null)
+			stmt.elseStmt = branch(stmt.elseStmt);
+		Boolean cond = booleanValue(stmt.cond);
+		if (cond == null)
+			return stmt;
+		pruned++;
+		return cond ? stmt.thenStmt : stmt.elseStmt;
+	}
+
+	public AST visitWhileStmt(WhileStmt stmt, Object arg) {
+		stmt.cond = expression(stmt.cond);
+		stmt.body = branch(stmt.body);
+		if (booleanValue(stmt.cond) != Boolean.FALSE)
+			return stmt;
+		pruned++;
+		return null;
+	}
+
+	// Expressions
+
+	public AST visitUnaryExpr(UnaryExpr expr, Object arg) {
+		expr.expr = expression(expr.expr);
+		int op = expr.operator.kind;
+		Integer i = intValue(expr.expr);
+		Boolean b = booleanValue(expr.expr);
+		if (op == Token.MINUS && i != null)
+			return literal(expr, -i);
+		if (op == Token.NOT && b != null)
+			return literal(expr, !b);
+		if (expr.expr instanceof UnaryExpr && ((UnaryExpr) expr.expr).operator.kind == op) {
+			simplified++;
+			return ((UnaryExpr) expr.expr).expr;
+		}
+		return expr;
+	}
+
+	public AST visitBinaryExpr(BinaryExpr expr, Object arg) {
+		expr.left = expression(expr.left);
+		expr.right = expression(expr.right);
+		int op = expr.operator.kind;
+		Integer l = intValue(expr.left), r = intValue(expr.right);
+		Boolean bl = booleanValue(expr.left), br = booleanValue(expr.right);
+
+		if (l != null && r != null) {
+			switch (op) {
+			case Token.PLUS:
+				return literal(expr, l + r);
+			case Token.MINUS:
+				return literal(expr, l - r);
+			case Token.TIMES:
+				return literal(expr, l * r);
+			case Token.DIV:
+				return r == 0 ? expr : literal(expr, l / r);
+			case Token.LESS:
+				return literal(expr, l < r);
+			case Token.GREATER:
+				return literal(expr, l > r);
+			case Token.LEQUAL:
+				return literal(expr, l <= r);
+			case Token.GEQUAL:
+				return literal(expr, l >= r);
+			case Token.EQUAL:
+				return literal(expr, l.intValue() == r.intValue());
+			case Token.NOTEQUAL:
+				return literal(expr, l.intValue() != r.intValue());
+			}
+		}
+
+		switch (op) {
+		case Token.PLUS:
+			if (isInt(r, 0))
+				return simplified(expr.left);
+			if (isInt(l, 0))
+				return simplified(expr.right);
+			break;
+		case Token.MINUS:
+			if (isInt(r, 0))
+				return simplified(expr.left);
+			break;
+		case Token.TIMES:
+			if (isInt(r, 1))
+				return simplified(expr.left);
+			if (isInt(l, 1))
+				return simplified(expr.right);
+			if (isInt(r, 0) && isPure(expr.left) || isInt(l, 0) && isPure(expr.right))
+				return literal(expr, 0);
+			break;
+		case Token.DIV:
+			if (isInt(r, 1))
+				return simplified(expr.left);
+			break;
+		case Token.AND:
+			// the right operand is only evaluated when the left is true
+			if (bl != null)
+				return bl ? simplified(expr.right) : literal(expr, false);
+			if (br == Boolean.TRUE)
+				return simplified(expr.left);
+			if (br == Boolean.FALSE && isPure(expr.left))
+				return literal(expr, false);
+			break;
+		case Token.OR:
+			if (bl != null)
+				return bl ? literal(expr, true) : simplified(expr.right);
+			if (br == Boolean.FALSE)
+				return simplified(expr.left);
+			if (br == Boolean.TRUE && isPure(expr.left))
+				return literal(expr, true);
+			break;
+		case Token.EQUAL:
+		case Token.NOTEQUAL:
+			// b == true is b and b == false is !b, and the other way round for !=
+			if (bl != null && br != null)
+				return literal(expr, (bl == br) == (op == Token.EQUAL));
+			if (bl != null)
+				return simplified(negated(expr.right, bl != (op == Token.EQUAL)));
+			if (br != null)
+				return simplified(negated(expr.left, br != (op == Token.EQUAL)));
+			break;
+		}
+		return expr;
+	}
+
+	public AST visitRefExpr(RefExpr expr, Object arg) {
+		expr.ref.visit(this, null);
+		return expr;
+	}
+
+	public AST visitCallExpr(CallExpr expr, Object arg) {
+		expr.functionRef.visit(this, null);
+		expr.argList = arguments(expr.argList);
+		return expr;
+	}
+
+	public AST visitLiteralExpr(LiteralExpr expr, Object arg) {
+		return expr;
+	}
+
+	public AST visitNewObjectExpr(NewObjectExpr expr, Object arg) {
+		return expr;
+	}
+
+	public AST visitNewArrayExpr(NewArrayExpr expr, Object arg) {
+		expr.sizeExpr = expression(expr.sizeExpr);
+		return expr;
+	}
+
+	// References
+
+	public AST visitThisRef(ThisRef ref, Object arg) {
+		return ref;
+	}
+
+	public AST visitIdRef(IdRef ref, Object arg) {
+		return ref;
+	}
+
+	public AST visitQRef(QualRef ref, Object arg) {
+		ref.ref.visit(this, null);
+		return ref;
+	}
+
+	public AST visitIxRef(IxRef ref, Object arg) {
+		ref.ref.visit(this, null);
+		ref.indexExpr = expression(ref.indexExpr);
+		return ref;
+	}
+
+	// Terminals
+
+	public AST visitIdentifier(Identifier id, Object arg) {
+		return id;
+	}
+
+	public AST visitOperator(Operator op, Object arg) {
+		return op;
+	}
+
+	public AST visitIntLiteral(IntLiteral num, Object arg) {
+		return num;
+	}
+
+	public AST visitBooleanLiteral(BooleanLiteral bool, Object arg) {
+		return bool;
+	}
+
+	public AST visitNullLiteral(NullLiteral nullLiteral, Object arg) {
+		return nullLiteral;
+	}
+
+	// Values
+
+	// the value of an int literal, or null for any other expression
+	private static Integer intValue(Expression expr) {
+		if (expr instanceof LiteralExpr && ((LiteralExpr) expr).lit instanceof IntLiteral)
+			return ((IntLiteral) ((LiteralExpr) expr).lit).getValue();
+		return null;
+	}
+
+	private static Boolean booleanValue(Expression expr) {
+		if (expr instanceof LiteralExpr && ((LiteralExpr) expr).lit instanceof BooleanLiteral)
+			return ((LiteralExpr) expr).lit.kind == Token.TRUE;
+		return null;
+	}
+
+	private static boolean isInt(Integer value, int i) {
+		return value != null && value == i;
+	}
+
+	// whether evaluating expr can neither fail nor have an effect, so that
+	// it may be left out
+	static boolean isPure(Expression expr) {
+		if (expr instanceof LiteralExpr)
+			return true;
+		if (expr instanceof RefExpr) {
+			Reference ref = ((RefExpr) expr).ref;
+			return ref instanceof ThisRef || ref instanceof IdRef;
+		}
+		if (expr instanceof UnaryExpr)
+			return isPure(((UnaryExpr) expr).expr);
+		if (expr instanceof BinaryExpr) {
+			BinaryExpr b = (BinaryExpr) expr;
+			if (b.operator.kind == Token.DIV && (intValue(b.right) == null || intValue(b.right) == 0))
+				return false;
+			return isPure(b.left) && isPure(b.right);
+		}
+		return false;
+	}
+
+	private LiteralExpr literal(Expression expr, Object value) {
+		Token token;
+		if (value instanceof Integer)
+			token = new Token(Token.INTLITERAL, value.toString(), expr.posn);
+		else
+			token = new Token((Boolean) value ? Token.TRUE : Token.FALSE, value.toString(), expr.posn);
+		folded++;
+		return new LiteralExpr(value instanceof Integer ? new IntLiteral(token) : new BooleanLiteral(token),
+				expr.posn);
+	}
+
+	private Expression simplified(Expression expr) {
+		simplified++;
+		return expr;
+	}
+
+	// !expr if negate, otherwise expr
+	private static Expression negated(Expression expr, boolean negate) {
+		if (!negate)
+			return expr;
+		if (expr instanceof UnaryExpr && ((UnaryExpr) expr).operator.kind == Token.NOT)
+			return ((UnaryExpr) expr).expr;
+		return new UnaryExpr(new Operator(new Token(Token.NOT, "!", expr.posn)), expr, expr.posn);
+	}
+}
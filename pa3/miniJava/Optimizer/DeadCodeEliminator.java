@@ -0,0 +1,335 @@
+package miniJava.Optimizer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import miniJava.AbstractSyntaxTrees.*;
+import miniJava.AbstractSyntaxTrees.Package;
+
+/**
+ * Removes the code of each method that is never run or whose result is
+ * never used: the statements after a return in a statement list, and the
+ * stores to locals (variables and parameters) that nothing reads before
+ * they are stored to again or the method returns. A local that is then
+ * never read anywhere loses its declaration too.
+ *
+ * Which locals are live, that is may still be read, is found backwards over
+ * each statement list, from nothing live after the method. A local is live
+ * before a statement if the statement reads it, or if it is live after and
+ * the statement may not store to it; after an if statement, it is live if
+ * it is live after either branch, and where a while statement tests its
+ * condition, if it is live after the loop, read by the condition or live
+ * at the start of the body, which is found by going round the body until
+ * nothing changes.
+ *
+ * A dead store whose value could fail or have an effect to compute is not
+ * simply dropped: the call computing it is kept as a call statement, and
+ * anything else that might fail (a division, a field or an element) keeps
+ * the store. Dropping a store can leave others dead, so a method is gone
+ * over until nothing more goes.
+ *
+ * Each statement visit is given the locals live after the statement, turns
+ * them into those live before it, and returns the statement to put in its
+ * place, or null for one to drop; an expression or reference visit adds
+ * the locals it reads. After eliminate, the counters say what was done, and
+ * removedNodes how many nodes (as ASTNodeCounter counts them) the AST lost.
+ */
+public class DeadCodeEliminator implements Visitor<Set<LocalDecl>, AST> {
+
+	public int unreachable; // statements after a return
+	public int deadStores; // stores and initializations of locals removed
+	public int removedNodes;
+
+	private MethodDecl method; // the one being gone over
+	private int analyzing; // inside a loop being gone round, where nothing is changed yet
+	private boolean changed;
+	private Set<LocalDecl> referenced = new HashSet<LocalDecl>(); // in what has been kept
+
+	public void eliminate(AST ast) {
+		ASTNodeCounter counter = new ASTNodeCounter();
+		int before = counter.count(ast);
+		ast.visit(this, null);
+		removedNodes = before - counter.count(ast);
+	}
+
+	public String report() {
+		return String.format("Dead code elimination: %d AST nodes removed (%d unreachable statements, "
+				+ "%d dead stores)", removedNodes, unreachable, deadStores);
+	}
+
+	// the statements of sl that are run and kept, visited last to first
+	private StatementList statements(StatementList sl, Set<LocalDecl> live) {
+		int end = 0; // after the first return
+		while (end < sl.size() && !(sl.get(end++) instanceof ReturnStmt))
+			;
+		List<Statement> kept = new ArrayList<Statement>();
+		for (int i = end - 1; i >= 0; i--) {
+			Statement stmt = (Statement) sl.get(i).visit(this, live);
+			if (stmt != null)
+				kept.add(0, stmt);
+		}
+		if (analyzing > 0)
+			return sl;
+		if (end < sl.size()) {
+			unreachable += sl.size() - end;
+			changed = true;
+		}
+		StatementList result = new StatementList();
+		for (Statement stmt : kept)
+			result.add(stmt);
+		return result;
+	}
+
+	// the statement in place of a branch of an if or the body of a while,
+	// where a dropped statement leaves an empty block
+	private Statement branch(Statement s, Set<LocalDecl> live) {
+		Statement stmt = (Statement) s.visit(this, live);
+		if (stmt != null)
+			return stmt;
+		BlockStmt empty = new BlockStmt(new StatementList(), s.posn);
+		empty.methodDecl = method;
+		return empty;
+	}
+
+	// what is kept of stmt, a store of val to a local that is not read:
+	// nothing if val is pure, the call if val is one, otherwise stmt
+	private Statement deadStore(Statement stmt, Expression val, Set<LocalDecl> live) {
+		if (ConstantFolder.isPure(val) || val instanceof NewObjectExpr) {
+			deadStores++;
+			changed = true;
+			return null;
+		}
+		if (val instanceof CallExpr) {
+			CallExpr call = (CallExpr) val;
+			deadStores++;
+			changed = true;
+			return (Statement) new CallStmt(call.functionRef, call.argList, stmt.posn).visit(this, live);
+		}
+		return stmt;
+	}
+
+	// Package
+
+	public AST visitPackage(Package prog, Set<LocalDecl> live) {
+		for (ClassDecl cd : prog.classDeclList)
+			cd.visit(this, null);
+		return prog;
+	}
+
+	// Declarations
+
+	public AST visitClassDecl(ClassDecl cd, Set<LocalDecl> live) {
+		for (MethodDecl md : cd.methodDeclList)
+			md.visit(this, null);
+		return cd;
+	}
+
+	public AST visitFieldDecl(FieldDecl fd, Set<LocalDecl> live) {
+		return fd;
+	}
+
+	public AST visitMethodDecl(MethodDecl md, Set<LocalDecl> live) {
+		method = md;
+		do {
+			changed = false;
+			referenced.clear();
+			md.statementList = statements(md.statementList, new HashSet<LocalDecl>());
+		} while (changed);
+		return md;
+	}
+
+	public AST visitParameterDecl(ParameterDecl pd, Set<LocalDecl> live) {
+		return pd;
+	}
+
+	public AST visitVarDecl(VarDecl decl, Set<LocalDecl> live) {
+		return decl;
+	}
+
+	// Types
+
+	public AST visitBaseType(BaseType type, Set<LocalDecl> live) {
+		return type;
+	}
+
+	public AST visitClassType(ClassType type, Set<LocalDecl> live) {
+		return type;
+	}
+
+	public AST visitArrayType(ArrayType type, Set<LocalDecl> live) {
+		return type;
+	}
+
+	// Statements
+
+	public AST visitBlockStmt(BlockStmt stmt, Set<LocalDecl> live) {
+		stmt.sl = statements(stmt.sl, live);
+		return stmt;
+	}
+
+	// everything in the scope of the variable has been gone over by now, so
+	// if it is not referenced there, the declaration can go
+	public AST visitVardeclStmt(VarDeclStmt stmt, Set<LocalDecl> live) {
+		boolean dead = !live.remove(stmt.varDecl);
+		if (analyzing == 0 && dead && !referenced.contains(stmt.varDecl)) {
+			Statement kept = deadStore(stmt, stmt.initExp, live);
+			if (kept != stmt)
+				return kept;
+		}
+		stmt.initExp.visit(this, live);
+		return stmt;
+	}
+
+	public AST visitAssignStmt(AssignStmt stmt, Set<LocalDecl> live) {
+		if (stmt.ref instanceof IdRef && stmt.ref.getDecl() instanceof LocalDecl) {
+			LocalDecl local = (LocalDecl) stmt.ref.getDecl();
+			boolean dead = !live.remove(local);
+			if (analyzing == 0 && dead) {
+				Statement kept = deadStore(stmt, stmt.val, live);
+				if (kept != stmt)
+					return kept;
+			}
+			if (analyzing == 0)
+				referenced.add(local);
+		} else {
+			stmt.ref.visit(this, live);
+		}
+		stmt.val.visit(this, live);
+		return stmt;
+	}
+
+	public AST visitCallStmt(CallStmt stmt, Set<LocalDecl> live) {
+		stmt.methodRef.visit(this, live);
+		for (Expression e : stmt.argList)
+			e.visit(this, live);
+		return stmt;
+	}
+
+	public AST visitReturnStmt(ReturnStmt stmt, Set<LocalDecl> live) {
+		live.clear();
+		if (stmt.returnExpr != null)
+			stmt.returnExpr.visit(this, live);
+		return stmt;
+	}
+
+	public AST visitIfStmt(IfStmt stmt, Set<LocalDecl> live) {
+		Set<LocalDecl> elseLive = new HashSet<LocalDecl>(live);
+		stmt.thenStmt = branch(stmt.thenStmt, live);
+		if (stmt.elseStmt != null)
+			stmt.elseStmt = branch(stmt.elseStmt, elseLive);
+		live.addAll(elseLive);
+		stmt.cond.visit(this, live);
+		return stmt;
+	}
+
+	// the locals live where the condition is tested are found first, and
+	// the body is changed only then, once they are known; a loop inside is
+	// gone round each time the loop around it is
+	public AST visitWhileStmt(WhileStmt stmt, Set<LocalDecl> live) {
+		Set<LocalDecl> head = new HashSet<LocalDecl>(live);
+		int size;
+		analyzing++;
+		do {
+			size = head.size();
+			stmt.cond.visit(this, head);
+			Set<LocalDecl> body = new HashSet<LocalDecl>(head);
+			stmt.body.visit(this, body);
+			head.addAll(body);
+		} while (head.size() != size);
+		analyzing--;
+		if (analyzing == 0) {
+			stmt.body = branch(stmt.body, new HashSet<LocalDecl>(head));
+			stmt.cond.visit(this, new HashSet<LocalDecl>(head));
+		}
+		live.addAll(head);
+		return stmt;
+	}
+
+	// Expressions
+
+	public AST visitUnaryExpr(UnaryExpr expr, Set<LocalDecl> live) {
+		expr.expr.visit(this, live);
+		return expr;
+	}
+
+	public AST visitBinaryExpr(BinaryExpr expr, Set<LocalDecl> live) {
+		expr.left.visit(this, live);
+		expr.right.visit(this, live);
+		return expr;
+	}
+
+	public AST visitRefExpr(RefExpr expr, Set<LocalDecl> live) {
+		expr.ref.visit(this, live);
+		return expr;
+	}
+
+	public AST visitCallExpr(CallExpr expr, Set<LocalDecl> live) {
+		expr.functionRef.visit(this, live);
+		for (Expression e : expr.argList)
+			e.visit(this, live);
+		return expr;
+	}
+
+	public AST visitLiteralExpr(LiteralExpr expr, Set<LocalDecl> live) {
+		return expr;
+	}
+
+	public AST visitNewObjectExpr(NewObjectExpr expr, Set<LocalDecl> live) {
+		return expr;
+	}
+
+	public AST visitNewArrayExpr(NewArrayExpr expr, Set<LocalDecl> live) {
+		expr.sizeExpr.visit(this, live);
+		return expr;
+	}
+
+	// References
+
+	public AST visitThisRef(ThisRef ref, Set<LocalDecl> live) {
+		return ref;
+	}
+
+	public AST visitIdRef(IdRef ref, Set<LocalDecl> live) {
+		if (ref.getDecl() instanceof LocalDecl) {
+			live.add((LocalDecl) ref.getDecl());
+			if (analyzing == 0)
+				referenced.add((LocalDecl) ref.getDecl());
+		}
+		return ref;
+	}
+
+	public AST visitQRef(QualRef ref, Set<LocalDecl> live) {
+		ref.ref.visit(this, live);
+		return ref;
+	}
+
+	public AST visitIxRef(IxRef ref, Set<LocalDecl> live) {
+		ref.ref.visit(this, live);
+		ref.indexExpr.visit(this, live);
+		return ref;
+	}
+
+	// Terminals
+
+	public AST visitIdentifier(Identifier id, Set<LocalDecl> live) {
+		return id;
+	}
+
+	public AST visitOperator(Operator op, Set<LocalDecl> live) {
+		return op;
+	}
+
+	public AST visitIntLiteral(IntLiteral num, Set<LocalDecl> live) {
+		return num;
+	}
+
+	public AST visitBooleanLiteral(BooleanLiteral bool, Set<LocalDecl> live) {
+		return bool;
+	}
+
+	public AST visitNullLiteral(NullLiteral nullLiteral, Set<LocalDecl> live) {
+		return nullLiteral;
+	}
+}
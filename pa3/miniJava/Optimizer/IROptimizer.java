@@ -0,0 +1,44 @@
+package miniJava.Optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import miniJava.IR.IRProgram;
+import miniJava.IR.Verifier;
+
+/**
+ * Runs the optimizations of the IR in order, checking the IR after each:
+ * inlining first, so that the rest see through the calls it removes, then
+ * scalar replacement of the objects that do not escape, then value
+ * numbering, so that loop optimization sees each invariant computed
+ * once, then loop optimization, and last bounds check elimination, over
+ * the loops as they end up. After optimize, reports holds a line for each
+ * saying what it did.
+ */
+public class IROptimizer {
+
+	public final Inliner inliner = new Inliner();
+	public final ScalarReplacement scalarReplacement = new ScalarReplacement();
+	public final ValueNumbering valueNumbering = new ValueNumbering();
+	public final LoopOptimizer loops = new LoopOptimizer();
+	public final BoundsCheckElimination boundsChecks = new BoundsCheckElimination();
+	public final List<String> reports = new ArrayList<String>();
+
+	public void optimize(IRProgram ir) {
+		inliner.inline(ir);
+		Verifier.check(ir);
+		reports.add(inliner.report());
+		scalarReplacement.replace(ir);
+		Verifier.check(ir);
+		reports.add(scalarReplacement.report());
+		valueNumbering.number(ir);
+		Verifier.check(ir);
+		reports.add(valueNumbering.report());
+		loops.optimize(ir);
+		Verifier.check(ir);
+		reports.add(loops.report());
+		boundsChecks.eliminate(ir);
+		Verifier.check(ir);
+		reports.add(boundsChecks.report());
+	}
+}
@@ -0,0 +1,235 @@
+package miniJava.Optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import miniJava.IR.BasicBlock;
+import miniJava.IR.IRFunction;
+import miniJava.IR.IRProgram;
+import miniJava.IR.Instruction;
+import miniJava.IR.Op;
+import miniJava.IR.Type;
+
+/**
+ * Inlines calls of small methods, static or instance, into their callers:
+ * the callee's blocks are copied in place of the call, with its inputs
+ * replaced by the call's receiver and arguments and each return by a jump
+ * to the rest of the caller, where a phi gathers the results. The method a
+ * call runs is the MethodDecl its reference resolved to (a CALL's method);
+ * miniJava has no overriding, so there is exactly one.
+ *
+ * Methods are inlined into their callers bottom up, so a callee has had
+ * its own calls inlined first. A method that can reach itself through
+ * calls is never inlined, which also keeps inlining from going on forever.
+ * A callee is inlined only if it has at most CALLEE_LIMIT instructions,
+ * and only while its caller has not grown past GROWTH_LIMIT times its
+ * size before plus CALLEE_LIMIT.
+ *
+ * A call on a receiver that may be null fails before the callee runs, so
+ * the inlined body is put behind a test of the receiver, and the call
+ * itself is kept on the null side, where it fails as it did.
+ */
+public class Inliner {
+
+	public static final int CALLEE_LIMIT = 40; // instructions
+	public static final int GROWTH_LIMIT = 2;
+
+	public int inlined; // call sites
+	public int guarded; // of those, behind a test for a null receiver
+	public int sizeBefore, sizeAfter; // instructions in the program
+
+	private IRProgram program;
+	private Map<IRFunction, Set<IRFunction>> callees;
+	private Set<IRFunction> recursive = new HashSet<IRFunction>();
+
+	public void inline(IRProgram program) {
+		this.program = program;
+		sizeBefore = program.size();
+		callees = new LinkedHashMap<IRFunction, Set<IRFunction>>();
+		for (IRFunction f : program.functions) {
+			Set<IRFunction> called = new LinkedHashSet<IRFunction>();
+			for (BasicBlock b : f.blocks())
+				for (Instruction i : b.instructions())
+					if (i.op == Op.CALL && program.function(i.method) != null)
+						called.add(program.function(i.method));
+			callees.put(f, called);
+		}
+		for (IRFunction f : program.functions)
+			if (reaches(f, f))
+				recursive.add(f);
+
+		List<IRFunction> order = new ArrayList<IRFunction>(); // callees before callers
+		Set<IRFunction> visited = new HashSet<IRFunction>();
+		for (IRFunction f : program.functions)
+			postorder(f, visited, order);
+		for (IRFunction f : order)
+			inline(f);
+		sizeAfter = program.size();
+	}
+
+	public String report() {
+		return String.format("Inlining: %d call sites inlined (%d behind a null test), code grew by %d instructions "
+				+ "(%d to %d)", inlined, guarded, sizeAfter - sizeBefore, sizeBefore, sizeAfter);
+	}
+
+	// Call graph
+
+	private boolean reaches(IRFunction from, IRFunction to) {
+		Set<IRFunction> seen = new HashSet<IRFunction>();
+		List<IRFunction> work = new ArrayList<IRFunction>(callees.get(from));
+		while (!work.isEmpty()) {
+			IRFunction f = work.remove(work.size() - 1);
+			if (f == to)
+				return true;
+			if (seen.add(f))
+				work.addAll(callees.get(f));
+		}
+		return false;
+	}
+
+	// call chains are as deep as the program's, so this recursion is too
+	private void postorder(IRFunction f, Set<IRFunction> visited, List<IRFunction> order) {
+		if (!visited.add(f))
+			return;
+		for (IRFunction callee : callees.get(f))
+			postorder(callee, visited, order);
+		order.add(f);
+	}
+
+	private static int size(IRFunction f) {
+		int size = 0;
+		for (BasicBlock b : f.blocks())
+			size += b.instructions().size();
+		return size;
+	}
+
+	// Inlining
+
+	private void inline(IRFunction f) {
+		int size = size(f), limit = GROWTH_LIMIT * size + CALLEE_LIMIT;
+		List<Instruction> calls = new ArrayList<Instruction>();
+		for (BasicBlock b : f.blocks())
+			for (Instruction i : b.instructions())
+				if (i.op == Op.CALL)
+					calls.add(i);
+		for (Instruction call : calls) {
+			IRFunction callee = program.function(call.method);
+			if (callee == null || recursive.contains(callee))
+				continue;
+			int calleeSize = size(callee);
+			if (calleeSize > CALLEE_LIMIT || size + calleeSize > limit)
+				continue;
+			inline(call, callee);
+			inlined++;
+			size = size(f);
+		}
+	}
+
+	private void inline(Instruction call, IRFunction callee) {
+		BasicBlock b = call.block();
+		IRFunction f = b.function;
+		BasicBlock after = f.splitAfter(call);
+
+		Map<Instruction, Instruction> values = new HashMap<Instruction, Instruction>();
+		int first = call.method.isStatic ? 0 : 1; // operand of the first argument
+		Instruction receiver = first == 0 ? null : call.operand(0);
+		for (Instruction i : callee.entry().instructions())
+			if (i.op == Op.THIS)
+				values.put(i, receiver);
+			else if (i.op == Op.PARAM)
+				values.put(i, call.operand(first + i.constant));
+
+		// the blocks and instructions, then the operands, which may come
+		// later in a phi, then the edges, which the phis' order follows
+		Map<BasicBlock, BasicBlock> blocks = new LinkedHashMap<BasicBlock, BasicBlock>();
+		Map<BasicBlock, BasicBlock> originals = new HashMap<BasicBlock, BasicBlock>();
+		for (BasicBlock cb : callee.blocks()) {
+			BasicBlock copy = f.newBlock();
+			blocks.put(cb, copy);
+			originals.put(copy, cb);
+		}
+		for (BasicBlock cb : callee.blocks())
+			for (Instruction i : cb.instructions())
+				if (!values.containsKey(i) && !i.op.isTerminator())
+					values.put(i, blocks.get(cb).add(copy(f, i)));
+		for (BasicBlock cb : callee.blocks())
+			for (Instruction i : cb.instructions())
+				if (i.op != Op.PHI && !i.op.isTerminator())
+					for (Instruction operand : i.operands())
+						values.get(i).addOperand(values.get(operand));
+
+		Map<BasicBlock, Instruction> results = new HashMap<BasicBlock, Instruction>();
+		for (BasicBlock cb : callee.blocks()) {
+			BasicBlock copy = blocks.get(cb);
+			Instruction t = cb.terminator(), edge;
+			switch (t.op) {
+			case JUMP:
+				edge = copy.jump(blocks.get(t.target(0)));
+				break;
+			case BRANCH:
+				edge = copy.branch(values.get(t.operand(0)), blocks.get(t.target(0)), blocks.get(t.target(1)));
+				break;
+			default:
+				edge = copy.jump(after);
+				results.put(copy, t.operandCount() == 0 ? null : values.get(t.operand(0)));
+			}
+			edge.line = t.line;
+		}
+		for (BasicBlock cb : callee.blocks())
+			for (Instruction phi : cb.phis()) {
+				Instruction copy = values.get(phi);
+				for (BasicBlock p : copy.block().predecessors())
+					copy.addOperand(values.get(phi.operand(cb.predecessors().indexOf(originals.get(p)))));
+			}
+
+		BasicBlock start = blocks.get(callee.entry());
+		boolean guard = receiver != null && !LoopOptimizer.isNonNull(receiver);
+		if (guard) {
+			Instruction none = b.add(f.instruction(Op.NULL, Type.REF));
+			Instruction isNull = b.add(f.instruction(Op.EQ, Type.BOOLEAN, receiver, none));
+			BasicBlock fails = f.newBlock();
+			b.branch(isNull, fails, start);
+			fails.moveBeforeTerminator(call);
+			fails.jump(after);
+			results.put(fails, call);
+			none.line = isNull.line = b.terminator().line = fails.terminator().line = call.line;
+			guarded++;
+		} else {
+			b.jump(start).line = call.line;
+		}
+
+		if (call.type != Type.VOID && !after.predecessors().isEmpty()) {
+			Instruction result;
+			if (after.predecessors().size() == 1) {
+				result = results.get(after.predecessors().get(0));
+				call.replaceAllUsesWith(result);
+			} else {
+				result = after.insert(0, f.instruction(Op.PHI, call.type));
+				result.line = call.line;
+				call.replaceAllUsesWith(result); // before it is an operand itself
+				for (BasicBlock p : after.predecessors())
+					result.addOperand(results.get(p));
+			}
+		}
+		f.removeUnreachableBlocks(); // the rest, if the callee never returns
+		if (!guard)
+			call.remove();
+	}
+
+	private static Instruction copy(IRFunction f, Instruction i) {
+		Instruction copy = f.instruction(i.op, i.type);
+		copy.constant = i.constant;
+		copy.field = i.field;
+		copy.method = i.method;
+		copy.classDecl = i.classDecl;
+		copy.elementType = i.elementType;
+		copy.line = i.line;
+		return copy;
+	}
+}
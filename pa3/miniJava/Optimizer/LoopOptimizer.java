@@ -0,0 +1,241 @@
+package miniJava.Optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import miniJava.IR.BasicBlock;
+import miniJava.IR.Dominators;
+import miniJava.IR.IRFunction;
+import miniJava.IR.IRProgram;
+import miniJava.IR.Instruction;
+import miniJava.IR.Loop;
+import miniJava.IR.Op;
+import miniJava.IR.Type;
+
+/**
+ * Optimizes the natural loops of each method, inner loops first: in IR
+ * built from the AST, the bodies of while statements.
+ *
+ * Loop-invariant code motion moves what a loop computes the same way on
+ * every iteration to its preheader, the block that leads into it: an
+ * instruction whose operands are all computed outside the loop, and that
+ * loads nothing the loop stores to. Nothing that has an effect is moved. An
+ * instruction that could fail (a load through a reference that might be
+ * null, an array element, a division) is moved only from the first block
+ * of the loop and only if nothing before it there has an effect or could
+ * fail, so that it fails the same way and after the same output: the
+ * preheader of a rotated loop only leads to its first block, which then
+ * runs at least once.
+ *
+ * Strength reduction then replaces each product i * k of a basic induction
+ * variable i, a phi of the loop's first block stepped by a constant c each
+ * time round, and a loop-invariant k, by an induction variable of its own:
+ * one starting at init * k and stepped by c * k, an addition in place of a
+ * multiplication. Ints wrap, so the two stay equal whatever the values.
+ */
+public class LoopOptimizer {
+
+	public int loops; // loops with a preheader, which could be optimized
+	public int hoisted; // instructions moved to a preheader
+	public int reduced; // multiplications replaced by additions
+
+	public void optimize(IRProgram program) {
+		for (IRFunction f : program.functions)
+			optimize(f);
+	}
+
+	public String report() {
+		return String.format("Loop optimization: %d instructions hoisted out of %d loops, "
+				+ "%d multiplications strength-reduced", hoisted, loops, reduced);
+	}
+
+	private void optimize(IRFunction f) {
+		List<Loop> found = Loop.find(f, new Dominators(f));
+		for (Loop loop : found) {
+			BasicBlock preheader = loop.preheader();
+			if (preheader == null)
+				continue;
+			loops++;
+			hoist(loop, preheader, new Dominators(f)); // the preheader may be new
+			reduce(loop, preheader);
+		}
+	}
+
+	// Code motion
+
+	private void hoist(Loop loop, BasicBlock preheader, Dominators dominators) {
+		Set<Object> stored = new HashSet<Object>(); // fields and array element types
+		boolean calls = false;
+		for (BasicBlock b : loop.blocks())
+			for (Instruction i : b.instructions()) {
+				if (i.op == Op.PUTFIELD || i.op == Op.PUTSTATIC)
+					stored.add(i.field);
+				else if (i.op == Op.ASTORE)
+					stored.add(i.operand(2).type);
+				else if (i.op == Op.CALL)
+					calls = true;
+			}
+
+		for (BasicBlock b : dominators.reversePostorder()) {
+			if (!loop.contains(b))
+				continue;
+			boolean mayFail = b == loop.header; // until something stays that might fail
+			for (Instruction i : new ArrayList<Instruction>(b.instructions())) {
+				if (isInvariant(i, loop) && canMove(i, mayFail, stored, calls)) {
+					preheader.moveBeforeTerminator(i);
+					hoisted++;
+				} else if (hasEffect(i) || mightFail(i)) {
+					mayFail = false;
+				}
+			}
+		}
+	}
+
+	private static boolean isInvariant(Instruction i, Loop loop) {
+		for (Instruction operand : i.operands())
+			if (!loop.isInvariant(operand))
+				return false;
+		return true;
+	}
+
+	private static boolean canMove(Instruction i, boolean mayFail, Set<Object> stored, boolean calls) {
+		switch (i.op) {
+		case CONST:
+		case NULL:
+		case ADD:
+		case SUB:
+		case MUL:
+		case NEG:
+		case NOT:
+		case LT:
+		case LE:
+		case GT:
+		case GE:
+		case EQ:
+		case NE:
+			return true;
+		case DIV:
+		case LENGTH:
+			return mayFail || !mightFail(i);
+		case GETFIELD:
+		case GETSTATIC:
+			return !calls && !stored.contains(i.field) && (mayFail || !mightFail(i));
+		case ALOAD:
+			return !calls && !stored.contains(i.type) && mayFail;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean hasEffect(Instruction i) {
+		switch (i.op) {
+		case PUTFIELD:
+		case PUTSTATIC:
+		case ASTORE:
+		case CALL:
+		case PRINT:
+		case NEW:
+		case NEWARRAY:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	static boolean mightFail(Instruction i) {
+		switch (i.op) {
+		case DIV:
+			return i.operand(1).op != Op.CONST || i.operand(1).constant == 0;
+		case GETFIELD:
+		case PUTFIELD:
+		case LENGTH:
+			return !isNonNull(i.operand(0));
+		case ALOAD:
+		case ASTORE:
+		case NEWARRAY: // a negative size
+		case CALL: // a null receiver, or whatever the method does
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	static boolean isNonNull(Instruction value) {
+		return value.op == Op.THIS || value.op == Op.NEW || value.op == Op.NEWARRAY;
+	}
+
+	// Strength reduction
+
+	private void reduce(Loop loop, BasicBlock preheader) {
+		BasicBlock header = loop.header;
+		if (loop.latches().size() != 1 || header.predecessors().size() != 2)
+			return;
+		int entry = header.predecessors().indexOf(preheader), back = 1 - entry;
+		for (Instruction phi : new ArrayList<Instruction>(header.phis())) {
+			Instruction next = phi.operand(back);
+			int step;
+			if (phi.type != Type.INT || !loop.contains(next.block()) || next.operandCount() != 2)
+				continue;
+			if (next.op == Op.ADD && next.operand(0) == phi && next.operand(1).op == Op.CONST)
+				step = next.operand(1).constant;
+			else if (next.op == Op.ADD && next.operand(1) == phi && next.operand(0).op == Op.CONST)
+				step = next.operand(0).constant;
+			else if (next.op == Op.SUB && next.operand(0) == phi && next.operand(1).op == Op.CONST)
+				step = -next.operand(1).constant;
+			else
+				continue;
+
+			// the induction variable made for each factor, and its next value
+			Map<Instruction, Instruction[]> scaled = new HashMap<Instruction, Instruction[]>();
+			for (Instruction iv : new Instruction[] { phi, next })
+				for (Instruction mul : new ArrayList<Instruction>(iv.users())) {
+					if (mul.op != Op.MUL || mul.block() == null || !loop.contains(mul.block()))
+						continue;
+					Instruction factor = mul.operand(mul.operand(0) == iv ? 1 : 0);
+					if (!loop.isInvariant(factor) || factor == iv)
+						continue;
+					Instruction[] variable = scaled.get(factor);
+					if (variable == null)
+						scaled.put(factor, variable = scale(phi, next, step, factor, preheader, entry));
+					mul.replaceAllUsesWith(iv == phi ? variable[0] : variable[1]);
+					mul.remove();
+					reduced++;
+				}
+		}
+	}
+
+	// makes j = phi(init * factor, j + step * factor) beside the induction
+	// variable i = phi(init, next), next = i + step; returns j and its next
+	// value
+	private static Instruction[] scale(Instruction phi, Instruction next, int step, Instruction factor,
+			BasicBlock preheader, int entry) {
+		IRFunction f = preheader.function;
+		Instruction init = phi.operand(entry);
+		Instruction start, increment;
+		if (init.op == Op.CONST && factor.op == Op.CONST)
+			start = preheader.insertBeforeTerminator(f.constant(Type.INT, init.constant * factor.constant));
+		else
+			start = preheader.insertBeforeTerminator(f.instruction(Op.MUL, Type.INT, init, factor));
+		if (factor.op == Op.CONST)
+			increment = preheader.insertBeforeTerminator(f.constant(Type.INT, step * factor.constant));
+		else if (step == 1)
+			increment = factor;
+		else
+			increment = preheader.insertBeforeTerminator(
+					f.instruction(Op.MUL, Type.INT, preheader.insertBeforeTerminator(f.constant(Type.INT, step)), factor));
+
+		BasicBlock header = phi.block();
+		Instruction j = header.insert(header.phis().size(), f.instruction(Op.PHI, Type.INT));
+		j.line = phi.line;
+		Instruction jNext = f.instruction(Op.ADD, Type.INT, j, increment);
+		jNext.line = next.line;
+		next.block().insert(next.block().instructions().indexOf(next) + 1, jNext);
+		for (int k = 0; k < header.predecessors().size(); k++)
+			j.addOperand(k == entry ? start : jNext);
+		return new Instruction[] { j, jNext };
+	}
+}
@@ -0,0 +1,224 @@
+package miniJava.Optimizer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import miniJava.AbstractSyntaxTrees.FieldDecl;
+import miniJava.IR.BasicBlock;
+import miniJava.IR.IRFunction;
+import miniJava.IR.IRProgram;
+import miniJava.IR.Instruction;
+import miniJava.IR.Op;
+import miniJava.IR.Type;
+
+/**
+ * Escape analysis and scalar replacement of objects made by new: an object
+ * escapes its method if its reference is stored, passed, returned, printed,
+ * compared or merged with another in a phi, that is used any way but as
+ * the object of a field load or store. An object that does not escape is
+ * never seen outside the method, and nothing else can reach its fields, so
+ * each of them becomes an SSA value of its own: each store a new
+ * definition, each load the definition reaching it, with phis where the
+ * definitions of different paths meet, as IRBuilder does for the locals of
+ * the source. The allocation and its loads and stores then go.
+ *
+ * Inlining comes first, so that an object whose only use was as the
+ * receiver of a small method's call no longer escapes through it.
+ */
+public class ScalarReplacement {
+
+	public int allocations; // objects allocated by new
+	public int replaced; // of those, made into values
+	public int loads, stores; // removed with them
+
+	private IRFunction function;
+	private FieldDecl field; // being made a value
+	private Map<BasicBlock, Instruction> lastStore = new HashMap<BasicBlock, Instruction>();
+	private Map<BasicBlock, Instruction> atStart = new HashMap<BasicBlock, Instruction>();
+	private List<Instruction> phis = new ArrayList<Instruction>();
+	private Instruction undefined; // before the object exists
+
+	public void replace(IRProgram program) {
+		for (IRFunction f : program.functions) {
+			function = f;
+			List<Instruction> news = new ArrayList<Instruction>();
+			for (BasicBlock b : f.blocks())
+				for (Instruction i : b.instructions())
+					if (i.op == Op.NEW)
+						news.add(i);
+			allocations += news.size();
+			for (Instruction object : news)
+				if (!escapes(object)) {
+					replace(object);
+					replaced++;
+				}
+		}
+	}
+
+	public String report() {
+		return String.format("Scalar replacement: %d of %d allocations removed (%d field loads, %d stores)", replaced,
+				allocations, loads, stores);
+	}
+
+	private static boolean escapes(Instruction object) {
+		for (Instruction user : object.users())
+			if (user.op != Op.GETFIELD && (user.op != Op.PUTFIELD || user.operand(1) == object))
+				return true;
+		return false;
+	}
+
+	// Replacement
+
+	private void replace(Instruction object) {
+		Set<FieldDecl> fields = new HashSet<FieldDecl>();
+		for (Instruction user : object.users())
+			fields.add(user.field);
+		for (FieldDecl fd : fields)
+			replace(object, fd);
+		object.remove();
+	}
+
+	// replaces the loads of one field of the object by the values stored to
+	// it, or by its initial value
+	private void replace(Instruction object, FieldDecl fd) {
+		field = fd;
+		lastStore.clear();
+		atStart.clear();
+		phis.clear();
+		Type type = Type.of(fd.type);
+		undefined = function.entry().insertBeforeTerminator(initial(type));
+
+		// what the object holds in the field at the end of each block that
+		// stores to it, a new object holding the initial value
+		List<Instruction> uses = new ArrayList<Instruction>();
+		Instruction start = object.block().insert(object.block().instructions().indexOf(object) + 1, initial(type));
+		start.line = object.line;
+		for (Instruction user : new ArrayList<Instruction>(object.users()))
+			if (user.field == fd)
+				uses.add(user);
+		for (BasicBlock b : function.blocks()) {
+			Instruction value = null;
+			for (Instruction i : b.instructions())
+				if (i.op == Op.PUTFIELD && i.field == fd && i.operand(0) == object)
+					value = i.operand(1);
+				else if (i == start)
+					value = start;
+			if (value != null)
+				lastStore.put(b, value);
+		}
+
+		// then each load in turn, from the value before it in its block
+		for (Instruction use : uses) {
+			BasicBlock b = use.block();
+			Instruction value = null;
+			for (Instruction i : b.instructions()) {
+				if (i == use)
+					break;
+				if (i.op == Op.PUTFIELD && i.field == fd && i.operand(0) == object)
+					value = i.operand(1);
+				else if (i == start)
+					value = start;
+			}
+			if (use.op == Op.GETFIELD) {
+				use.replaceAllUsesWith(value != null ? value : valueAtStart(b));
+				loads++;
+			}
+		}
+		for (Instruction use : uses) {
+			if (use.op == Op.PUTFIELD)
+				stores++;
+			use.remove();
+		}
+
+		for (Instruction phi : phis)
+			function.removeIfTrivial(phi);
+		removeDeadPhis();
+		if (undefined.users().isEmpty())
+			undefined.remove();
+		if (start.users().isEmpty())
+			start.remove();
+	}
+
+	private Instruction initial(Type type) {
+		return type == Type.REF ? function.instruction(Op.NULL, Type.REF) : function.constant(type, 0);
+	}
+
+	// the value at the end of b, which must be known
+	private Instruction valueAtEnd(BasicBlock b) {
+		Instruction value = lastStore.get(b);
+		return value != null ? value : atStart.get(b);
+	}
+
+	private boolean isKnown(BasicBlock b) {
+		return lastStore.containsKey(b) || atStart.containsKey(b);
+	}
+
+	// the value reaching the start of b, made with phis over the paths that
+	// reach it; the work list stands in for recursion over long chains of
+	// blocks
+	private Instruction valueAtStart(BasicBlock b) {
+		Deque<BasicBlock> work = new ArrayDeque<BasicBlock>();
+		work.push(b);
+		while (!work.isEmpty()) {
+			BasicBlock top = work.peek();
+			List<BasicBlock> preds = top.predecessors();
+			if (atStart.containsKey(top)) {
+				work.pop();
+			} else if (preds.isEmpty()) {
+				atStart.put(top, undefined);
+				work.pop();
+			} else if (preds.size() == 1) {
+				if (isKnown(preds.get(0))) {
+					atStart.put(top, valueAtEnd(preds.get(0)));
+					work.pop();
+				} else {
+					work.push(preds.get(0));
+				}
+			} else { // a phi, whose operands come once each predecessor is known
+				Instruction phi = top.insert(0, function.instruction(Op.PHI, Type.of(field.type)));
+				atStart.put(top, phi);
+				phis.add(phi);
+				work.pop();
+				for (BasicBlock pred : preds)
+					if (!isKnown(pred))
+						work.push(pred);
+			}
+		}
+		// operands of the phis made, now that every block they need is known
+		for (Instruction phi : phis)
+			if (phi.operandCount() == 0)
+				for (BasicBlock pred : phi.block().predecessors())
+					phi.addOperand(valueAtEnd(pred));
+		return atStart.get(b);
+	}
+
+	// removes the phis made that only feed other phis made
+	private void removeDeadPhis() {
+		Set<Instruction> live = new HashSet<Instruction>();
+		Deque<Instruction> work = new ArrayDeque<Instruction>();
+		for (Instruction phi : phis)
+			if (phi.block() != null)
+				for (Instruction user : phi.users())
+					if (!phis.contains(user) && live.add(phi))
+						work.push(phi);
+		while (!work.isEmpty())
+			for (Instruction operand : work.pop().operands())
+				if (phis.contains(operand) && live.add(operand))
+					work.push(operand);
+		List<Instruction> dead = new ArrayList<Instruction>();
+		for (Instruction phi : phis)
+			if (phi.block() != null && !live.contains(phi))
+				dead.add(phi);
+		for (Instruction phi : dead)
+			while (phi.operandCount() > 0)
+				phi.removeOperand(phi.operandCount() - 1);
+		for (Instruction phi : dead)
+			phi.remove();
+	}
+}
@@ -0,0 +1,306 @@
+package miniJava.Optimizer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import miniJava.IR.BasicBlock;
+import miniJava.IR.Dominators;
+import miniJava.IR.IRFunction;
+import miniJava.IR.IRProgram;
+import miniJava.IR.Instruction;
+import miniJava.IR.Op;
+
+/**
+ * Global value numbering over the SSA form of each method: an instruction
+ * that computes what a dominating one already has is replaced by it, as in
+ * the dominator-tree value numbering of Briggs, Cooper and Simpson. Blocks
+ * are visited down the dominator tree with a scoped table from each
+ * instruction's operation and operands (in a fixed order where the
+ * operation commutes) to the first instruction that computed it.
+ *
+ * Loads are numbered too, under the version of the memory they read. The
+ * memory is split into locations that cannot alias: each field, and the
+ * elements of arrays of each type. A store to a location starts a new
+ * version of it, under which the stored value is what a load of the same
+ * object (and index) gives, so loads after stores are forwarded; a call
+ * may store anywhere, and starts a new version of everything. On entry to a
+ * block reached other than straight from its immediate dominator, the
+ * locations stored to on the paths from there start new versions.
+ *
+ * A division, array length, field or element load that fails would have
+ * failed at the dominating instruction first, so these are numbered like
+ * the rest.
+ */
+public class ValueNumbering {
+
+	public int arithmetic; // redundant computations removed
+	public int loads; // redundant loads removed
+	public int forwarded; // loads replaced by the value last stored
+	public int phis; // phis that were trivial or the same as another
+
+	private static final Object EVERYTHING = new Object(); // what a call may store to
+
+	private Dominators dominators;
+	private Map<List<Object>, Instruction> table = new HashMap<List<Object>, Instruction>();
+	private Set<List<Object>> stored = new HashSet<List<Object>>(); // keys of values stores left
+	private Map<Object, Integer> versions; // of each location, in the current scope
+	private int nextVersion;
+
+	public void number(IRProgram program) {
+		for (IRFunction f : program.functions)
+			number(f);
+	}
+
+	public int removed() {
+		return arithmetic + loads + forwarded + phis;
+	}
+
+	public String report() {
+		return String.format("Value numbering: %d instructions removed (%d computations, %d loads, "
+				+ "%d loads forwarded from stores, %d phis)", removed(), arithmetic, loads, forwarded, phis);
+	}
+
+	// a step of the walk down the dominator tree: entering a block, or
+	// leaving it and undoing what it added to the table
+	private static class Scope {
+		final BasicBlock block;
+		final Map<Object, Integer> versions;
+		List<List<Object>> added;
+
+		Scope(BasicBlock block, Map<Object, Integer> versions) {
+			this.block = block;
+			this.versions = versions;
+		}
+	}
+
+	private void number(IRFunction f) {
+		dominators = new Dominators(f);
+		table.clear();
+		stored.clear();
+		nextVersion = 0;
+
+		Deque<Scope> stack = new ArrayDeque<Scope>();
+		stack.push(new Scope(f.entry(), new HashMap<Object, Integer>()));
+		while (!stack.isEmpty()) {
+			Scope scope = stack.peek();
+			if (scope.added != null) {
+				stack.pop();
+				for (List<Object> key : scope.added) {
+					table.remove(key);
+					stored.remove(key);
+				}
+				continue;
+			}
+			scope.added = new ArrayList<List<Object>>();
+			versions = new HashMap<Object, Integer>(scope.versions);
+			killOnEntry(scope.block);
+			number(scope.block, scope.added);
+			List<BasicBlock> children = dominators.children(scope.block);
+			for (int c = children.size() - 1; c >= 0; c--)
+				stack.push(new Scope(children.get(c), versions));
+		}
+	}
+
+	// Memory
+
+	private int version(Object location) {
+		if (!versions.containsKey(EVERYTHING))
+			versions.put(EVERYTHING, nextVersion++);
+		Integer v = versions.get(location);
+		return v == null ? -1 - versions.get(EVERYTHING) : v;
+	}
+
+	private void store(Object location) {
+		if (location == EVERYTHING) {
+			versions.clear();
+			versions.put(EVERYTHING, nextVersion++);
+		} else {
+			version(EVERYTHING);
+			versions.put(location, nextVersion++);
+		}
+	}
+
+	// the location an instruction loads from or stores to, EVERYTHING for a
+	// call, or null
+	private static Object location(Instruction i) {
+		switch (i.op) {
+		case GETFIELD:
+		case PUTFIELD:
+		case GETSTATIC:
+		case PUTSTATIC:
+			return i.field;
+		case ALOAD:
+			return i.type;
+		case ASTORE:
+			return i.operand(2).type;
+		case CALL:
+			return EVERYTHING;
+		default:
+			return null;
+		}
+	}
+
+	private static boolean isStore(Instruction i) {
+		return i.op == Op.PUTFIELD || i.op == Op.PUTSTATIC || i.op == Op.ASTORE || i.op == Op.CALL;
+	}
+
+	// starts new versions of the locations stored to on the paths from b's
+	// immediate dominator to b, b included if it is in a loop
+	private void killOnEntry(BasicBlock b) {
+		BasicBlock idom = dominators.idom(b);
+		if (idom == null || b.predecessors().size() == 1 && b.predecessors().get(0) == idom)
+			return;
+		Set<BasicBlock> between = new HashSet<BasicBlock>();
+		Deque<BasicBlock> work = new ArrayDeque<BasicBlock>(b.predecessors());
+		while (!work.isEmpty()) {
+			BasicBlock p = work.pop();
+			if (p == idom || !between.add(p))
+				continue;
+			work.addAll(p.predecessors());
+		}
+		Set<Object> locations = new HashSet<Object>();
+		for (BasicBlock p : between)
+			for (Instruction i : p.instructions())
+				if (isStore(i))
+					locations.add(location(i));
+		if (locations.contains(EVERYTHING))
+			store(EVERYTHING);
+		else
+			for (Object location : locations)
+				store(location);
+	}
+
+	// Numbering
+
+	private void number(BasicBlock b, List<List<Object>> added) {
+		for (Instruction i : new ArrayList<Instruction>(b.instructions())) {
+			if (i.op == Op.PHI && replaceTrivialPhi(i))
+				continue;
+			if (isStore(i)) {
+				store(location(i));
+				if (i.op != Op.CALL) { // what a load of the location now gives
+					List<Object> key = loadKey(i);
+					remember(key, i.operand(i.operandCount() - 1), added);
+					stored.add(key);
+				}
+				continue;
+			}
+			List<Object> key = key(i);
+			if (key == null)
+				continue;
+			Instruction same = table.get(key);
+			if (same == null) {
+				remember(key, i, added);
+				continue;
+			}
+			if (i.op == Op.PHI)
+				phis++;
+			else if (stored.contains(key))
+				forwarded++;
+			else if (location(i) != null || i.op == Op.LENGTH)
+				loads++;
+			else
+				arithmetic++;
+			i.replaceAllUsesWith(same);
+			i.remove();
+		}
+	}
+
+	private void remember(List<Object> key, Instruction value, List<List<Object>> added) {
+		if (table.put(key, value) == null)
+			added.add(key);
+	}
+
+	private boolean replaceTrivialPhi(Instruction phi) {
+		Instruction same = null;
+		for (Instruction operand : phi.operands()) {
+			if (operand == phi || operand == same)
+				continue;
+			if (same != null)
+				return false;
+			same = operand;
+		}
+		if (same == null)
+			return false;
+		phi.replaceAllUsesWith(same);
+		phi.remove();
+		phis++;
+		return true;
+	}
+
+	// the key under which a store leaves the value it stores: that of the
+	// load of the same location
+	private List<Object> loadKey(Instruction store) {
+		switch (store.op) {
+		case PUTFIELD:
+			return Arrays.<Object>asList(Op.GETFIELD, store.operand(0), store.field, version(store.field));
+		case PUTSTATIC:
+			return Arrays.<Object>asList(Op.GETSTATIC, store.field, version(store.field));
+		default:
+			Object location = location(store);
+			return Arrays.<Object>asList(Op.ALOAD, store.operand(0), store.operand(1), location, version(location));
+		}
+	}
+
+	// what the instruction computes, or null if it is not to be numbered
+	private List<Object> key(Instruction i) {
+		switch (i.op) {
+		case CONST:
+			return Arrays.<Object>asList(i.op, i.type, i.constant);
+		case NULL:
+			return Arrays.<Object>asList(i.op);
+		case ADD:
+		case MUL:
+		case EQ:
+		case NE:
+			return commutative(i);
+		case SUB:
+		case DIV:
+		case LT:
+		case LE:
+		case GT:
+		case GE:
+		case NEG:
+		case NOT:
+		case LENGTH:
+			return withOperands(i);
+		case PHI: {
+			List<Object> key = withOperands(i);
+			key.add(i.block());
+			return key;
+		}
+		case GETFIELD:
+			return Arrays.<Object>asList(i.op, i.operand(0), i.field, version(i.field));
+		case GETSTATIC:
+			return Arrays.<Object>asList(i.op, i.field, version(i.field));
+		case ALOAD:
+			return Arrays.<Object>asList(i.op, i.operand(0), i.operand(1), i.type, version(i.type));
+		default:
+			return null;
+		}
+	}
+
+	private static List<Object> withOperands(Instruction i) {
+		List<Object> key = new ArrayList<Object>();
+		key.add(i.op);
+		key.addAll(i.operands());
+		return key;
+	}
+
+	private static List<Object> commutative(Instruction i) {
+		Instruction a = i.operand(0), b = i.operand(1);
+		if (a.id() > b.id()) {
+			Instruction t = a;
+			a = b;
+			b = t;
+		}
+		return Arrays.<Object>asList(i.op, a, b);
+	}
+}
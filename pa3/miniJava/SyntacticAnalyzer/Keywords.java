@@ -0,0 +1,86 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Recognises reserved words without comparing strings. An identifier's
+ * length and first two characters select the only reserved word it could be
+ * (the switch in candidate is a perfect hash over the keyword set); the rest
+ * of its characters are then checked against that one word.
+ */
+public final class Keywords {
+
+	private Keywords() {
+	}
+
+	private static final char[][] spellings = new char[Token.NULL + 1][];
+
+	static {
+		for (int k = Token.CLASS; k <= Token.NEW; k++)
+			spellings[k] = Token.spell(k).toCharArray();
+		spellings[Token.NULL] = Token.spell(Token.NULL).toCharArray();
+	}
+
+	// the reserved word an identifier of this length starting with c0 c1
+	// would have to be, or IDENTIFIER if there is none
+	private static int candidate(int length, char c0, char c1) {
+		switch (length) {
+		case 2:
+			return c0 == 'i' ? Token.IF : Token.IDENTIFIER;
+		case 3:
+			return c0 == 'i' ? Token.INT : c0 == 'n' ? Token.NEW : Token.IDENTIFIER;
+		case 4:
+			switch (c0) {
+			case 'e':
+				return Token.ELSE;
+			case 'n':
+				return Token.NULL;
+			case 't':
+				return c1 == 'h' ? Token.THIS : Token.TRUE;
+			case 'v':
+				return Token.VOID;
+			}
+			return Token.IDENTIFIER;
+		case 5:
+			return c0 == 'c' ? Token.CLASS : c0 == 'f' ? Token.FALSE : c0 == 'w' ? Token.WHILE : Token.IDENTIFIER;
+		case 6:
+			return c0 == 'p' ? Token.PUBLIC : c0 == 'r' ? Token.RETURN : c0 == 's' ? Token.STATIC : Token.IDENTIFIER;
+		case 7:
+			return c0 == 'b' ? Token.BOOLEAN : c0 == 'p' ? Token.PRIVATE : Token.IDENTIFIER;
+		default:
+			return Token.IDENTIFIER;
+		}
+	}
+
+	// kind of the identifier held in source at [start, start + length)
+	static int kind(ByteBuffer source, int start, int length) {
+		if (length < 2 || length > 7)
+			return Token.IDENTIFIER;
+
+		int kind = candidate(length, (char) source.get(start), (char) source.get(start + 1));
+		if (kind == Token.IDENTIFIER)
+			return kind;
+
+		char[] word = spellings[kind];
+		for (int i = 1; i < length; i++)
+			if (source.get(start + i) != word[i])
+				return Token.IDENTIFIER;
+		return kind;
+	}
+
+	public static int kind(String spelling) {
+		int length = spelling.length();
+		if (length < 2 || length > 7)
+			return Token.IDENTIFIER;
+
+		int kind = candidate(length, spelling.charAt(0), spelling.charAt(1));
+		if (kind == Token.IDENTIFIER)
+			return kind;
+
+		char[] word = spellings[kind];
+		for (int i = 1; i < length; i++)
+			if (spelling.charAt(i) != word[i])
+				return Token.IDENTIFIER;
+		return kind;
+	}
+}
@@ -15,12 +15,32 @@ public class Parser { // creates tree out of tokens
 	private SourcePosition poslit;
 	//private boolean isVoid = false;
 
+	private TokenBuffer tokens; // set when parsing pre-scanned tokens
+	private int nextTokenIndex;
+
 	public Parser(Scanner lexer, ErrorReporter reporter) {
 		lexicalAnalyzer = lexer;
 		errorReporter = reporter;
 		previousTokenPosition = new SourcePosition();
 	}
 
+	public Parser(TokenBuffer tokens, ErrorReporter reporter) {
+		this.tokens = tokens;
+		errorReporter = reporter;
+		previousTokenPosition = new SourcePosition();
+	}
+
+	// nextToken fetches the next token from the scanner or the token buffer;
+	// the buffer hands back its final EOT token indefinitely.
+	private Token nextToken() {
+		if (tokens == null)
+			return lexicalAnalyzer.scan();
+		Token t = tokens.token(nextTokenIndex);
+		if (nextTokenIndex < tokens.size() - 1)
+			nextTokenIndex++;
+		return t;
+	}
+
 	// accept checks whether the current token matches tokenExpected.
 	// If so, fetches the next token.
 	// If not, reports a syntactic error.
@@ -28,7 +48,7 @@ public class Parser { // creates tree out of tokens
 	void accept(int tokenExpected) throws SyntaxError {
 		if (currentToken.kind == tokenExpected) {
 			previousTokenPosition = currentToken.position;
-			currentToken = lexicalAnalyzer.scan();
+			currentToken = nextToken();
 		} else {
 			syntacticError("\"%\" expected here", Token.spell(tokenExpected));
 		}
@@ -36,7 +56,7 @@ public class Parser { // creates tree out of tokens
 
 	void acceptIt() {
 		previousTokenPosition = currentToken.position;
-		currentToken = lexicalAnalyzer.scan();
+		currentToken = nextToken();
 	}
 
 	// start records the position of the start of a phrase.
@@ -64,12 +84,12 @@ public class Parser { // creates tree out of tokens
 	///////////////////////////////////////////////////////////////////////////
 
 	public AST parse() {
-		currentToken = lexicalAnalyzer.scan();
+		currentToken = nextToken();
 		Package pack = null;
 		try {
 			pack = new Package(parseProgram(), poslit);
 		} catch (SyntaxError s) {
-			System.out.println("The syntax error has been caught in parse...");
+			// already reported by syntacticError
 		}
 		return pack;
 	}
@@ -84,11 +104,6 @@ public class Parser { // creates tree out of tokens
 			cd = parseClassDeclaration();
 			cdl.add(cd); 
 		}
-		//System.out.println("cdl size: "+ cdl.size());
-		if (cdl.size() == 0) {
-			System.out.println("no cd's found");
-		}
-		
 		accept(Token.EOT);
 		finish(poslit);
 		return cdl;
@@ -236,7 +251,6 @@ public class Parser { // creates tree out of tokens
 		}
 
 		if (t == null) {
-			System.out.println("parseType wrong");
 			syntacticError("\"%\" cannot start a type", currentToken.spelling);
 		}
 		return t;
@@ -269,7 +283,6 @@ public class Parser { // creates tree out of tokens
 			pdl.add(pd);
 		}
 		if (pdl.size() == 0) {
-			System.out.println("ParameterDeclList wrong");
 			syntacticError("\"%\" cannot start a ParameterList", currentToken.spelling);
 		}
 		return pdl;
@@ -286,7 +299,6 @@ public class Parser { // creates tree out of tokens
 			el.add(e);
 		}
 		if (el.size() == 0) {
-			System.out.println("parseArgList wrong");
 			syntacticError("\"%\" cannot start an ArgList", currentToken.spelling);
 		}
 
@@ -319,7 +331,6 @@ public class Parser { // creates tree out of tokens
 		}
 
 		if (r == null) {
-			System.out.println("parseReference wrong");
 			syntacticError("\"%\" cannot start a reference", currentToken.spelling);
 		}
 
@@ -793,7 +804,7 @@ public class Parser { // creates tree out of tokens
 		if (currentToken.kind == Token.IDENTIFIER) {
 			id = new Identifier(currentToken);
 			previousTokenPosition = currentToken.position;
-			currentToken = lexicalAnalyzer.scan();
+			currentToken = nextToken();
 		} else {
 			syntacticError("\"%\" expected here, instead of \"" + currentToken.spelling + "\"",
 					Token.spell(Token.IDENTIFIER));
@@ -1,16 +1,27 @@
 package miniJava.SyntacticAnalyzer;
 
+import miniJava.ErrorReporter;
+
 public class Scanner { // creates tokens
 
 	private SourceFile sourceFile;
+	private SymbolInterner symbols;
+	private ErrorReporter errorReporter;
 
 	private char currentChar;
-	private StringBuffer currentSpelling;
-	private boolean currentlyScanningToken;
+	private int currentOffset; // offset of currentChar in the source
+
+	// extent and lines of the token most recently scanned by scanKind
+	private int tokenStart;
+	private int tokenLength;
+	private int startLine;
+	private int finishLine;
 
 	private int firstDiv; // identify whether division token is for comment or division
 	private int lastDiv;
+	private int divOffset;
 	private int currentLine;
+	private int tokenCount; // tokens scanned so far, the final EOT included
 
 	private boolean isLetter(char c) {
 		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
@@ -22,24 +33,45 @@ public class Scanner { // creates tokens
 
 	///////////////////////////////////////////////////////////////////////////////
 
-	public Scanner(SourceFile source) {
+	public Scanner(SourceFile source, SymbolInterner symbols, ErrorReporter reporter) {
 		sourceFile = source;
-		currentChar = sourceFile.getSource();
+		this.symbols = symbols;
+		this.errorReporter = reporter;
+		readChar();
 		currentLine = 1;
 	}
 
-	// takeIt appends the current character to the current token, and gets
-	// the next character from the source program.
-	private void takeIt() {
-		if (currentlyScanningToken)
-			currentSpelling.append(currentChar);
+	public SymbolInterner getSymbols() {
+		return symbols;
+	}
+
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	// readChar gets the next character from the source program, remembering
+	// where it sits so token spellings can be sliced out of the source later.
+	private void readChar() {
+		currentOffset = sourceFile.getOffset();
 		currentChar = sourceFile.getSource();
 	}
 
+	private void lexicalError(String messageTemplate, String tokenQuoted) {
+		int line = sourceFile.getCurrentLine();
+		errorReporter.reportError(messageTemplate, tokenQuoted, new SourcePosition(line, line));
+	}
+
+	// takeIt moves past the current character, which belongs to the current
+	// token (or separator). Nothing is copied: the token is recorded as a slice.
+	private void takeIt() {
+		readChar();
+	}
+
 	// scanSeparator skips a single separator.
 	private boolean scanSeparator() {
 		switch (currentChar) {
 		case '/':
+			divOffset = currentOffset;
 			firstDiv = sourceFile.getCurrentLine();
 			takeIt();
 			lastDiv = sourceFile.getCurrentLine();
@@ -48,17 +80,18 @@ public class Scanner { // creates tokens
 					takeIt();
 				takeIt();
 			} else if (currentChar == '*') {
-				currentChar = sourceFile.getSource();
+				readChar();
 				char nextChar = sourceFile.getSource();
 
 				while (currentChar != '*' || nextChar != '/') {
 					if (currentChar == SourceFile.eot) {
-						System.exit(4);
+						lexicalError("unterminated comment", "");
+						return false; // scanning stops at the end of the text
 					}
 					currentChar = nextChar;
 					nextChar = sourceFile.getSource();
 				}
-				currentChar = sourceFile.getSource();
+				readChar();
 			} else
 				return true; // is div or op
 			break;
@@ -133,7 +166,7 @@ public class Scanner { // creates tokens
 			takeIt();
 			while (isLetter(currentChar) || isDigit(currentChar) || currentChar == '_')
 				takeIt();
-			return Token.IDENTIFIER;
+			return Keywords.kind(sourceFile.source, tokenStart, currentOffset - tokenStart);
 
 		case '0':
 		case '1':
@@ -177,15 +210,18 @@ public class Scanner { // creates tokens
 		case '&':
 			takeIt();
 			if (currentChar != '&') {
-				System.exit(4);
+				lexicalError("\"%\" expected here", "&&");
+				return Token.ERROR;
 			}
 			takeIt();
 			return Token.AND;
 
 		case '|':
 			takeIt();
-			if (currentChar != '|')
-				System.exit(4);
+			if (currentChar != '|') {
+				lexicalError("\"%\" expected here", "||");
+				return Token.ERROR;
+			}
 			takeIt();
 			return Token.OR;
 
@@ -258,35 +294,60 @@ public class Scanner { // creates tokens
 		}
 	}
 
-	public Token scan() {
-		Token tok;
-		SourcePosition pos;
-		int kind;
+	// scanKind skips separators and scans one token, leaving its extent in
+	// tokenStart/tokenLength and its lines in startLine/finishLine.
+	private int scanKind() {
+		tokenCount++;
 		boolean isDivOp;
-		currentlyScanningToken = false;
 		while (currentChar == '/' || currentChar == ' ' || currentChar == '\n' || currentChar == '\r'
 				|| currentChar == '\t') {
 			isDivOp = scanSeparator();
 			if (isDivOp) {
-				pos = new SourcePosition();
-				pos.start = firstDiv;
-				pos.finish = lastDiv;
-				tok = new Token(Token.DIV, "/", pos);
-				return tok;
+				tokenStart = divOffset;
+				tokenLength = 1;
+				startLine = firstDiv;
+				finishLine = lastDiv;
+				return Token.DIV;
 			}
 		}
 
-		currentlyScanningToken = true;
-		// SourcePosition pos2 = new SourcePosition();
+		tokenStart = currentOffset;
+		startLine = sourceFile.getCurrentLine();
+
+		int kind = scanToken();
+
+		tokenLength = currentOffset - tokenStart;
+		finishLine = sourceFile.getCurrentLine();
+		return kind;
+	}
 
-		currentSpelling = new StringBuffer("");
-		pos = new SourcePosition();
-		pos.start = sourceFile.getCurrentLine();
+	// only identifiers, literals and bad characters need their own string;
+	// every other kind of token is always spelt the same way
+	static boolean hasOwnSpelling(int kind) {
+		return kind == Token.IDENTIFIER || kind == Token.INTLITERAL || kind == Token.ERROR;
+	}
 
-		kind = scanToken();
+	public Token scan() {
+		int kind = scanKind();
+		SourcePosition pos = new SourcePosition(startLine, finishLine);
+		if (kind == Token.IDENTIFIER) {
+			int symbol = symbols.intern(sourceFile, tokenStart, tokenLength);
+			return new Token(kind, symbols.spelling(symbol), symbol, pos);
+		}
+		String spelling = hasOwnSpelling(kind) ? sourceFile.getSpelling(tokenStart, tokenLength) : Token.spell(kind);
+		return new Token(kind, spelling, pos);
+	}
 
-		pos.finish = sourceFile.getCurrentLine();
-		tok = new Token(kind, currentSpelling.toString(), pos);
-		return tok;
+	// scanAll scans the rest of the source into tokens, including the final
+	// EOT, without creating a Token or a spelling for any of them.
+	public int scanAll(TokenBuffer tokens) {
+		tokens.reset(sourceFile, symbols);
+		int kind;
+		do {
+			kind = scanKind();
+			int symbol = kind == Token.IDENTIFIER ? symbols.intern(sourceFile, tokenStart, tokenLength) : -1;
+			tokens.add(kind, tokenStart, tokenLength, symbol, startLine, finishLine);
+		} while (kind != Token.EOT);
+		return tokens.size();
 	}
-}
\ No newline at end of file
+}
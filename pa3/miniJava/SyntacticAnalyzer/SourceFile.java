@@ -14,43 +14,85 @@
 
 package miniJava.SyntacticAnalyzer;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the characters of a source file to the scanner from memory. The whole
+ * file is read in one go (or memory-mapped when it is at least MAP_THRESHOLD
+ * bytes) instead of issuing one read per character. A file that cannot be
+ * read makes the constructor throw, for the caller to report.
+ */
 public class SourceFile {
 
 	static final char eol = '\n';
 	static final char eot = '\u0000';
 
-	java.io.File sourceFile;
-	java.io.FileInputStream source;
+	// files at least this big are mapped rather than copied onto the heap
+	static final long MAP_THRESHOLD = 1 << 20;
+
+	File sourceFile;
+	ByteBuffer source;
+	int offset; // index of the next character to be returned
 	int currentLine;
 
-	public SourceFile(String filename) {
-		try {
-			sourceFile = new java.io.File(filename);
-			source = new java.io.FileInputStream(sourceFile);
-			currentLine = 1;
-		} catch (java.io.IOException s) {
-			sourceFile = null;
-			source = null;
-			currentLine = 0;
+	public SourceFile(String filename) throws IOException {
+		sourceFile = new File(filename);
+		source = load(sourceFile);
+		currentLine = 1;
+	}
+
+	// a source held in memory rather than in a file
+	public SourceFile(byte[] text) {
+		sourceFile = null;
+		source = ByteBuffer.wrap(text);
+		currentLine = 1;
+	}
+
+	private static ByteBuffer load(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath())) {
+			long size = channel.size();
+			if (size >= MAP_THRESHOLD)
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+				;
+			buffer.flip();
+			return buffer;
 		}
 	}
 
 	char getSource() {
-		try {
-			int c = source.read();
-
-			if (c == -1) {
-				c = eot;
-			} else if (c == eol) {
-				currentLine++;
-			}
-			return (char) c;
-		} catch (java.io.IOException s) {
+		if (offset >= source.limit())
 			return eot;
-		}
+
+		char c = (char) (source.get(offset++) & 0xff);
+		if (c == eol)
+			currentLine++;
+		return c;
 	}
 
 	int getCurrentLine() {
 		return currentLine;
 	}
+
+	// offset of the character the next getSource() call will return
+	int getOffset() {
+		return offset;
+	}
+
+	// builds the spelling of the characters at [start, start + length)
+	String getSpelling(int start, int length) {
+		if (source.hasArray())
+			return new String(source.array(), source.arrayOffset() + start, length, StandardCharsets.ISO_8859_1);
+
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = (char) (source.get(start + i) & 0xff);
+		return new String(chars);
+	}
 }
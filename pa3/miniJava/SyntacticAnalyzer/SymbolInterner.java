@@ -0,0 +1,103 @@
+package miniJava.SyntacticAnalyzer;
+
+/**
+ * Gives each distinct identifier spelling of a compilation a dense int id
+ * (its symbol) and one canonical String. The scanner interns identifiers
+ * straight from the source buffer, so later phases can compare and hash
+ * names by symbol instead of by String.
+ *
+ * The names the contextual analyzer needs to recognise are interned first,
+ * so their symbols are the same in every interner. An interner belongs to a
+ * single compilation and is not thread-safe.
+ */
+public class SymbolInterner {
+
+	public static final int LENGTH = 0, STRING = 1, MAIN = 2, SYSTEM = 3, OUT = 4, PRINTLN = 5, PRINTSTREAM = 6;
+
+	private static final String[] predefined = { "length", "String", "main", "System", "out", "println",
+			"_PrintStream" };
+
+	private String[] spellings = new String[64];
+	private int[] hashes = new int[64];
+	private int count;
+
+	// open-addressed hash of symbol + 1; 0 marks an empty slot
+	private int[] slots = new int[128];
+
+	public SymbolInterner() {
+		for (String name : predefined)
+			intern(name);
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public String spelling(int symbol) {
+		return spellings[symbol];
+	}
+
+	public int intern(String spelling) {
+		int hash = spelling.hashCode();
+		int mask = slots.length - 1;
+		for (int i = hash & mask;; i = (i + 1) & mask) {
+			int symbol = slots[i] - 1;
+			if (symbol < 0)
+				return add(spelling, hash, i);
+			if (hashes[symbol] == hash && spellings[symbol].equals(spelling))
+				return symbol;
+		}
+	}
+
+	// interns the identifier at [start, start + length) of the source without
+	// building a String for it unless it has not been seen before
+	int intern(SourceFile source, int start, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+			hash = 31 * hash + (source.source.get(start + i) & 0xff);
+
+		int mask = slots.length - 1;
+		for (int i = hash & mask;; i = (i + 1) & mask) {
+			int symbol = slots[i] - 1;
+			if (symbol < 0)
+				return add(source.getSpelling(start, length), hash, i);
+			if (hashes[symbol] == hash && sameSpelling(spellings[symbol], source, start, length))
+				return symbol;
+		}
+	}
+
+	private static boolean sameSpelling(String spelling, SourceFile source, int start, int length) {
+		if (spelling.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (spelling.charAt(i) != (char) (source.source.get(start + i) & 0xff))
+				return false;
+		return true;
+	}
+
+	private int add(String spelling, int hash, int slot) {
+		if (count == spellings.length) {
+			spellings = java.util.Arrays.copyOf(spellings, count * 2);
+			hashes = java.util.Arrays.copyOf(hashes, count * 2);
+		}
+		int symbol = count++;
+		spellings[symbol] = spelling;
+		hashes[symbol] = hash;
+		slots[slot] = symbol + 1;
+
+		if (count * 2 > slots.length)
+			rehash();
+		return symbol;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int symbol = 0; symbol < count; symbol++) {
+			int i = hashes[symbol] & mask;
+			while (slots[i] != 0)
+				i = (i + 1) & mask;
+			slots[i] = symbol + 1;
+		}
+	}
+}
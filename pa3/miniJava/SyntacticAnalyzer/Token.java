@@ -7,26 +7,20 @@ package miniJava.SyntacticAnalyzer;
 public class Token extends Object {
 	public int kind;
 	public String spelling;
+	public int symbol; // interned spelling of an identifier, otherwise -1
 	public SourcePosition position;
 
+	// reserved words are told apart from identifiers by the scanner (see
+	// Keywords), so kind is taken as given
 	public Token(int kind, String spelling, SourcePosition position) {
+		this(kind, spelling, -1, position);
+	}
+
+	public Token(int kind, String spelling, int symbol, SourcePosition position) {
 		this.kind = kind;
 		this.spelling = spelling;
+		this.symbol = symbol;
 		this.position = position;
-
-		if (kind == IDENTIFIER) {
-			for (int k = firstReservedWord; k <= lastReservedWord; k++) {
-				if (spelling.equals(tokenTable[k]) || spelling.equals("null")) {
-					// System.out.println(spelling);
-					if (spelling.equals("null")) { // NEW
-						this.kind = NULL;
-					} else {
-						this.kind = k;
-					}
-					break;
-				}
-			}
-		}
 	}
 
 	public static String spell(int kind) {
@@ -58,6 +52,4 @@ public class Token extends Object {
 			">=", "!=", "&&", "||", "!", "+", "-", "*", "/", "=", "class", "return", "public", "private", "static",
 			"int", "boolean", "void", "this", "if", "else", "while", "true", "false", "new", ".", ",", ";", "(", ")",
 			"[", "]", "{", "}", "", "<error>", "null" };
-
-	private final static int firstReservedWord = Token.CLASS, lastReservedWord = Token.NEW;
 }
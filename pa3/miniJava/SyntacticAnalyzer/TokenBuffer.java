@@ -0,0 +1,99 @@
+package miniJava.SyntacticAnalyzer;
+
+/**
+ * Tokens recorded by Scanner.scanAll as (kind, start offset, length, symbol,
+ * lines) in parallel int arrays over the source buffer. The arrays are kept
+ * between uses, so a buffer can be reset and refilled without allocating; a
+ * spelling or a Token is only built when somebody asks for one.
+ */
+public class TokenBuffer {
+
+	private SourceFile sourceFile;
+	private SymbolInterner symbols;
+	private int count;
+
+	private int[] kinds;
+	private int[] starts;
+	private int[] lengths;
+	private int[] symbolIds;
+	private int[] startLines;
+	private int[] finishLines;
+
+	public TokenBuffer() {
+		this(1024);
+	}
+
+	public TokenBuffer(int capacity) {
+		kinds = new int[capacity];
+		starts = new int[capacity];
+		lengths = new int[capacity];
+		symbolIds = new int[capacity];
+		startLines = new int[capacity];
+		finishLines = new int[capacity];
+	}
+
+	void reset(SourceFile source, SymbolInterner symbols) {
+		sourceFile = source;
+		this.symbols = symbols;
+		count = 0;
+	}
+
+	void add(int kind, int start, int length, int symbol, int startLine, int finishLine) {
+		if (count == kinds.length)
+			grow();
+		kinds[count] = kind;
+		starts[count] = start;
+		lengths[count] = length;
+		symbolIds[count] = symbol;
+		startLines[count] = startLine;
+		finishLines[count] = finishLine;
+		count++;
+	}
+
+	private void grow() {
+		int capacity = kinds.length * 2;
+		kinds = java.util.Arrays.copyOf(kinds, capacity);
+		starts = java.util.Arrays.copyOf(starts, capacity);
+		lengths = java.util.Arrays.copyOf(lengths, capacity);
+		symbolIds = java.util.Arrays.copyOf(symbolIds, capacity);
+		startLines = java.util.Arrays.copyOf(startLines, capacity);
+		finishLines = java.util.Arrays.copyOf(finishLines, capacity);
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int kind(int i) {
+		return kinds[i];
+	}
+
+	public int start(int i) {
+		return starts[i];
+	}
+
+	public int length(int i) {
+		return lengths[i];
+	}
+
+	public int symbol(int i) {
+		return symbolIds[i];
+	}
+
+	public int line(int i) {
+		return startLines[i];
+	}
+
+	public String spelling(int i) {
+		int kind = kinds[i];
+		if (kind == Token.IDENTIFIER)
+			return symbols.spelling(symbolIds[i]);
+		if (Scanner.hasOwnSpelling(kind))
+			return sourceFile.getSpelling(starts[i], lengths[i]);
+		return Token.spell(kind);
+	}
+
+	public Token token(int i) {
+		return new Token(kinds[i], spelling(i), symbolIds[i], new SourcePosition(startLines[i], finishLines[i]));
+	}
+}